@@ -25,6 +25,7 @@ import java.util.function.Consumer;
 
 import dev.aoqia.leaf.api.EnvType;
 import dev.aoqia.leaf.loader.api.entrypoint.EntrypointContainer;
+import dev.aoqia.leaf.loader.api.entrypoint.EntrypointTiming;
 import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
 
 /**
@@ -116,6 +117,17 @@ public interface LeafLoader {
 	 */
 	<T> void invokeEntrypoints(String key, Class<T> type, Consumer<? super T> invoker);
 
+	/**
+	 * Get the time and memory spent on the entrypoints created so far.
+	 *
+	 * <p>With the {@code leaf.debug.entrypointTimings} system property set, the timings are also written to
+	 * {@code entrypointTimings.csv} in the leaf dir after each {@link #invokeEntrypoints} call, which helps to
+	 * attribute a slow startup to specific mods.
+	 *
+	 * @return the timings per entrypoint and key, grouped by key in first use order
+	 */
+	List<EntrypointTiming> getEntrypointTimings();
+
 	/**
 	 * Get the object share for inter-mod communication.
 	 *
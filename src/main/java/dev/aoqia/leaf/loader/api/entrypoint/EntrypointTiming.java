@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.api.entrypoint;
+
+import dev.aoqia.leaf.loader.api.LeafLoader;
+import dev.aoqia.leaf.loader.api.ModContainer;
+
+/**
+ * Time and memory spent on an entrypoint for a specific key.
+ *
+ * <p>Creation is measured when the entrypoint instance gets created for the key, invocation whenever the loader
+ * invokes it through {@link LeafLoader#invokeEntrypoints}. Entrypoints invoked by other means only report their
+ * creation.
+ *
+ * @see LeafLoader#getEntrypointTimings()
+ */
+public interface EntrypointTiming {
+	/**
+	 * Returns the entrypoint key, e.g. {@code main}.
+	 */
+	String getKey();
+
+	/**
+	 * Returns the mod that provided the entrypoint.
+	 */
+	ModContainer getProvider();
+
+	/**
+	 * Returns a string representation of the entrypoint's definition.
+	 */
+	String getDefinition();
+
+	/**
+	 * Returns whether the entrypoint instance was already created for another key and got reused for this one.
+	 *
+	 * <p>Shared entrypoints report their creation only for the key that created them, the creation times for this
+	 * key are -1 and 0.
+	 */
+	boolean isShared();
+
+	/**
+	 * Returns the time spent loading and initializing the entrypoint class in nanoseconds.
+	 *
+	 * @return the time or -1 if it couldn't be measured separately and is included in {@link #getConstructNanos()}
+	 */
+	long getClassLoadNanos();
+
+	/**
+	 * Returns the time spent creating the entrypoint instance through its language adapter in nanoseconds.
+	 *
+	 * @return the time or 0 if the instance is {@link #isShared() shared}
+	 */
+	long getConstructNanos();
+
+	/**
+	 * Returns the wall time spent invoking the entrypoint in nanoseconds, summed over all invocations.
+	 */
+	long getInvokeNanos();
+
+	/**
+	 * Returns the bytes allocated by the threads creating and invoking the entrypoint while doing so.
+	 *
+	 * @return the allocated bytes or -1 if the JVM doesn't support measuring them
+	 */
+	long getAllocatedBytes();
+}
@@ -50,6 +50,7 @@ import dev.aoqia.leaf.loader.api.ModContainer;
 import dev.aoqia.leaf.loader.api.ObjectShare;
 import dev.aoqia.leaf.loader.api.SemanticVersion;
 import dev.aoqia.leaf.loader.api.entrypoint.EntrypointContainer;
+import dev.aoqia.leaf.loader.api.entrypoint.EntrypointTiming;
 import dev.aoqia.leaf.loader.impl.discovery.ArgumentModCandidateFinder;
 import dev.aoqia.leaf.loader.impl.discovery.CachedirModCandidateFinder;
 import dev.aoqia.leaf.loader.impl.discovery.ClasspathModCandidateFinder;
@@ -60,6 +61,8 @@ import dev.aoqia.leaf.loader.impl.discovery.ModResolver;
 import dev.aoqia.leaf.loader.impl.discovery.RuntimeModRemapper;
 import dev.aoqia.leaf.loader.impl.discovery.WorkshopModCandidateFinder;
 import dev.aoqia.leaf.loader.impl.entrypoint.EntrypointStorage;
+import dev.aoqia.leaf.loader.impl.entrypoint.EntrypointTimingImpl;
+import dev.aoqia.leaf.loader.impl.entrypoint.ParallelEntrypoints;
 import dev.aoqia.leaf.loader.impl.game.GameProvider;
 import dev.aoqia.leaf.loader.impl.launch.LeafLauncherBase;
 import dev.aoqia.leaf.loader.impl.launch.MappingConfiguration;
@@ -83,6 +86,9 @@ public final class LeafLoaderImpl extends LeafLoader {
 
 	public static final int ASM_VERSION = Opcodes.ASM9;
 
+	private static final boolean PARALLEL_ENTRYPOINTS = SystemProperties.isSet(SystemProperties.PARALLEL_ENTRYPOINTS);
+	private static final boolean WRITE_ENTRYPOINT_TIMINGS = SystemProperties.isSet(SystemProperties.DEBUG_ENTRYPOINT_TIMINGS);
+
     public static final String VERSION = BuildInfo.VERSION;
     public static final String MOD_ID = "leafloader";
 
@@ -91,7 +97,10 @@ public final class LeafLoaderImpl extends LeafLoader {
     // Relative to leaf cache dir.
     private static final String PROCESSED_MODS_DIR_NAME = "processedMods";
     public static final String REMAPPED_JARS_DIR_NAME = "remappedJars";
+    public static final String CLASS_CACHE_DIR_NAME = "classCache";
+    public static final String NESTED_JARS_DIR_NAME = "nestedJars";
     private static final String TMP_DIR_NAME = "tmp";
+    private static final String ENTRYPOINT_TIMINGS_FILE_NAME = "entrypointTimings.csv";
 
 	private final Map<String, ModContainerImpl> modMap = new HashMap<>();
 	private List<ModCandidateImpl> modCandidates;
@@ -480,32 +489,62 @@ public final class LeafLoaderImpl extends LeafLoader {
 		RuntimeException exception = null;
 		Collection<EntrypointContainer<T>> entrypoints = LeafLoaderImpl.INSTANCE.getEntrypointContainers(key, type);
 
+		if (PARALLEL_ENTRYPOINTS && entrypoints.size() > 1) {
+			entrypoints = ParallelEntrypoints.create(key, entrypoints, id -> modMap.get(id));
+		}
+
 		Log.debug(LogCategory.ENTRYPOINT, "Iterating over entrypoint '%s'", key);
+		long startTime = System.nanoTime();
 
 		for (EntrypointContainer<T> container : entrypoints) {
 			try {
-				invoker.accept(container.getEntrypoint());
+				T entrypoint = container.getEntrypoint();
+				EntrypointTimingImpl timing = EntrypointStorage.getTiming(container);
+				long invokeBytes = EntrypointTimingImpl.getCurrentThreadAllocatedBytes();
+				long invokeTime = System.nanoTime();
+
+				try {
+					invoker.accept(entrypoint);
+				} finally {
+					if (timing != null) {
+						timing.recordInvocation(System.nanoTime() - invokeTime,
+								invokeBytes >= 0 ? EntrypointTimingImpl.getCurrentThreadAllocatedBytes() - invokeBytes : -1);
+					}
+				}
 			} catch (Throwable t) {
 				exception = ExceptionUtil.gatherExceptions(t,
 						exception,
 						exc -> new RuntimeException(String.format("Could not execute entrypoint stage '%s' due to errors, provided by '%s' at '%s'!",
 								key, container.getProvider().getMetadata().getId(), container.getDefinition()),
 								exc));
+			} finally {
+				ParallelEntrypoints.markInvoked(container);
 			}
 		}
 
+		Log.debug(LogCategory.ENTRYPOINT, "Entrypoint '%s' took %.1f ms", key, (System.nanoTime() - startTime) * 1e-6);
+
+		if (WRITE_ENTRYPOINT_TIMINGS && leafDir != null) {
+			entrypointStorage.writeTimingReport(leafDir.resolve(ENTRYPOINT_TIMINGS_FILE_NAME));
+		}
+
 		if (exception != null) {
 			throw exception;
 		}
 	}
 
+	@Override
+	public List<EntrypointTiming> getEntrypointTimings() {
+		return entrypointStorage.getTimings();
+	}
+
 	@Override
 	public MappingResolver getMappingResolver() {
 		if (mappingResolver == null) {
 			MappingConfiguration config = LeafLauncherBase.getLauncher().getMappingConfiguration();
 			String runtimeNamespace = config.getRuntimeNamespace();
 
-			mappingResolver = new LazyMappingResolver(() -> new MappingResolverImpl(config.getMappings(), runtimeNamespace),
+			mappingResolver = new LazyMappingResolver(() -> new MappingResolverImpl(config.getMappingIndex(), runtimeNamespace),
 					runtimeNamespace);
 		}
 
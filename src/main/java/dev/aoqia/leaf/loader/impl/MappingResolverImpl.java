@@ -21,14 +21,14 @@ import java.util.Collections;
 import java.util.HashSet;
 
 import dev.aoqia.leaf.loader.api.MappingResolver;
-import net.fabricmc.mappingio.tree.MappingTree;
+import dev.aoqia.leaf.loader.impl.util.mappings.MappingIndex;
 
 class MappingResolverImpl implements MappingResolver {
-	private final MappingTree mappings;
+	private final MappingIndex mappings;
 	private final String targetNamespace;
 	private final int targetNamespaceId;
 
-	MappingResolverImpl(MappingTree mappings, String targetNamespace) {
+	MappingResolverImpl(MappingIndex mappings, String targetNamespace) {
 		this.mappings = mappings;
 		this.targetNamespace = targetNamespace;
 		this.targetNamespaceId = mappings.getNamespaceId(targetNamespace);
@@ -36,9 +36,7 @@ class MappingResolverImpl implements MappingResolver {
 
 	@Override
 	public Collection<String> getNamespaces() {
-		HashSet<String> namespaces = new HashSet<>(mappings.getDstNamespaces());
-		namespaces.add(mappings.getSrcNamespace());
-		return Collections.unmodifiableSet(namespaces);
+		return Collections.unmodifiableSet(new HashSet<>(mappings.getNamespaces()));
 	}
 
 	@Override
@@ -52,7 +50,7 @@ class MappingResolverImpl implements MappingResolver {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + className);
 		}
 
-		return replaceSlashesWithDots(mappings.mapClassName(replaceDotsWithSlashes(className), mappings.getNamespaceId(namespace), targetNamespaceId));
+		return replaceSlashesWithDots(mappings.mapClassName(replaceDotsWithSlashes(className), getNamespaceId(namespace), targetNamespaceId));
 	}
 
 	@Override
@@ -61,7 +59,7 @@ class MappingResolverImpl implements MappingResolver {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + className);
 		}
 
-		return replaceSlashesWithDots(mappings.mapClassName(replaceDotsWithSlashes(className), targetNamespaceId, mappings.getNamespaceId(namespace)));
+		return replaceSlashesWithDots(mappings.mapClassName(replaceDotsWithSlashes(className), targetNamespaceId, getNamespaceId(namespace)));
 	}
 
 	@Override
@@ -70,8 +68,8 @@ class MappingResolverImpl implements MappingResolver {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + owner);
 		}
 
-		MappingTree.FieldMapping field = mappings.getField(replaceDotsWithSlashes(owner), name, descriptor, mappings.getNamespaceId(namespace));
-		return field == null ? name : field.getName(targetNamespaceId);
+		int field = mappings.findField(replaceDotsWithSlashes(owner), name, descriptor, getNamespaceId(namespace));
+		return field < 0 ? name : mappings.getFieldName(field, targetNamespaceId);
 	}
 
 	@Override
@@ -80,8 +78,15 @@ class MappingResolverImpl implements MappingResolver {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + owner);
 		}
 
-		MappingTree.MethodMapping method = mappings.getMethod(replaceDotsWithSlashes(owner), name, descriptor, mappings.getNamespaceId(namespace));
-		return method == null ? name : method.getName(targetNamespaceId);
+		int method = mappings.findMethod(replaceDotsWithSlashes(owner), name, descriptor, getNamespaceId(namespace));
+		return method < 0 ? name : mappings.getMethodName(method, targetNamespaceId);
+	}
+
+	private int getNamespaceId(String namespace) {
+		int ret = mappings.getNamespaceId(namespace);
+		if (ret < 0) throw new IllegalArgumentException("Unknown namespace: " + namespace);
+
+		return ret;
 	}
 
 	private static String replaceSlashesWithDots(String cname) {
@@ -16,25 +16,21 @@
 
 package dev.aoqia.leaf.loader.impl.discovery;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.jetbrains.annotations.Nullable;
 
 import dev.aoqia.leaf.loader.api.Version;
@@ -45,7 +41,9 @@ import dev.aoqia.leaf.loader.impl.metadata.AbstractModMetadata;
 import dev.aoqia.leaf.loader.impl.metadata.DependencyOverrides;
 import dev.aoqia.leaf.loader.impl.metadata.LoaderModMetadata;
 import dev.aoqia.leaf.loader.impl.metadata.VersionOverrides;
+import dev.aoqia.leaf.loader.impl.models.JarHashCache;
 import dev.aoqia.leaf.loader.impl.models.ModInfo;
+import dev.aoqia.leaf.loader.impl.util.MappedZipFile;
 
 public final class ModCandidateImpl implements DomainObject.Mod {
 	static final Comparator<ModCandidateImpl> ID_VERSION_COMPARATOR = new Comparator<ModCandidateImpl>() {
@@ -66,9 +64,10 @@ public final class ModCandidateImpl implements DomainObject.Mod {
 	private final Collection<ModCandidateImpl> nestedMods;
 	private final Collection<ModCandidateImpl> parentMods;
 	private int minNestLevel;
-	private SoftReference<ByteBuffer> dataRef;
+	private SoftReference<ByteBuffer> data; // mapped or a slice of a mapped parent, recreated from the paths or parent once collected
     private final ModSource source;
     private ModInfo modInfo = null;
+    private volatile String jarHash;
 
 	static ModCandidateImpl createBuiltin(BuiltinMod mod, VersionOverrides versionOverrides, DependencyOverrides depOverrides) {
 		LoaderModMetadata metadata = new BuiltinMetadataWrapper(mod.metadata);
@@ -102,8 +101,8 @@ public final class ModCandidateImpl implements DomainObject.Mod {
 		return new ModCandidateImpl(null, localPath, hash, metadata, requiresRemap, nestedMods, ModSource.UNKNOWN);
 	}
 
-	static long hash(ZipEntry entry) {
-		if (entry.getSize() < 0 || entry.getCrc() < 0) throw new IllegalArgumentException("uninitialized entry: "+entry);
+	static long hash(MappedZipFile.Entry entry) {
+		if (entry.getSize() < 0) throw new IllegalArgumentException("uninitialized entry: "+entry.getName());
 
 		return entry.getCrc() << 32 | entry.getSize();
 	}
@@ -183,11 +182,23 @@ public final class ModCandidateImpl implements DomainObject.Mod {
             return null;
         }
 
-        try {
-            return DigestUtils.sha256Hex(Files.newInputStream(Paths.get(getLocalPath())));
-        } catch (IOException e) {
-            throw new FormattedException("Failed to get secure JAR hash for mod '%s' (%s)", getId(), getGameId());
+        String ret = jarHash;
+
+        if (ret == null) { // not precomputed during discovery
+            try {
+                ret = JarHashCache.hash(Paths.get(getLocalPath()));
+            } catch (IOException e) {
+                throw new FormattedException("Failed to get secure JAR hash for mod '%s' (%s)", getId(), getGameId());
+            }
+
+            jarHash = ret;
         }
+
+        return ret;
+    }
+
+    void setJarHash(String jarHash) {
+        this.jarHash = jarHash;
     }
 
     public @Nullable String getWorkshopId() {
@@ -276,11 +287,17 @@ public final class ModCandidateImpl implements DomainObject.Mod {
 	}
 
 	void setData(ByteBuffer data) {
-		this.dataRef = new SoftReference<>(data);
+		this.data = new SoftReference<>(data);
+	}
+
+	private ByteBuffer getCachedData() {
+		SoftReference<ByteBuffer> ref = data;
+
+		return ref != null ? ref.get() : null;
 	}
 
 	void clearCachedData() {
-		this.dataRef = null;
+		this.data = null;
 	}
 
 	public Path copyToDir(Path outputDir, boolean temp) throws IOException {
@@ -338,18 +355,7 @@ public final class ModCandidateImpl implements DomainObject.Mod {
 	private static final Pattern FILE_NAME_SANITIZING_PATTERN = Pattern.compile("[^\\w\\.\\-\\+]+");
 
 	private void copyToFile(Path out) throws IOException {
-		SoftReference<ByteBuffer> dataRef = this.dataRef;
-
-		if (dataRef != null) {
-			ByteBuffer data = dataRef.get();
-
-			if (data != null) {
-				Files.copy(new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.arrayOffset() + data.limit()), out, StandardCopyOption.REPLACE_EXISTING);
-				return;
-			}
-		}
-
-		if (paths != null) {
+		if (getCachedData() == null && paths != null) {
 			if (paths.size() != 1) throw new UnsupportedOperationException("multiple paths for "+this);
 
 			Files.copy(paths.get(0), out);
@@ -357,81 +363,42 @@ public final class ModCandidateImpl implements DomainObject.Mod {
 			return;
 		}
 
-		ModCandidateImpl parent = getBestSourcingParent();
-
-		if (parent.paths != null) {
-			if (parent.paths.size() != 1) throw new UnsupportedOperationException("multiple parent paths for "+this);
+		ByteBuffer buf = getData().duplicate();
 
-			try (ZipFile zf = new ZipFile(parent.paths.get(0).toFile())) {
-				ZipEntry entry = zf.getEntry(localPath);
-				if (entry == null) throw new IOException(String.format("can't find nested mod %s in its parent mod %s", this, parent));
-
-				Files.copy(zf.getInputStream(entry), out);
+		try (FileChannel channel = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buf.hasRemaining()) {
+				channel.write(buf);
 			}
-		} else {
-			ByteBuffer data = parent.getData();
-
-			try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.arrayOffset() + data.limit()))) {
-				ZipEntry entry = null;
-
-				while ((entry = zis.getNextEntry()) != null) {
-					if (entry.getName().equals(localPath)) {
-						Files.copy(zis, out);
-						return;
-					}
-				}
-			}
-
-			throw new IOException(String.format("can't find nested mod %s in its parent mod %s", this, parent));
 		}
 	}
 
 	private ByteBuffer getData() throws IOException {
-		SoftReference<ByteBuffer> dataRef = this.dataRef;
-
-		if (dataRef != null) {
-			ByteBuffer ret = dataRef.get();
-			if (ret != null) return ret;
-		}
-
-		ByteBuffer ret;
+		ByteBuffer ret = getCachedData();
+		if (ret != null) return ret;
 
 		if (paths != null) {
 			if (paths.size() != 1) throw new UnsupportedOperationException("multiple paths for "+this);
 
-			ret = ByteBuffer.wrap(Files.readAllBytes(paths.get(0)));
+			ret = MappedZipFile.map(paths.get(0));
 		} else {
 			ModCandidateImpl parent = getBestSourcingParent();
+			MappedZipFile zf;
 
-			if (parent.paths != null) {
+			if (parent.getCachedData() == null && parent.paths != null) {
 				if (parent.paths.size() != 1) throw new UnsupportedOperationException("multiple parent paths for "+this);
 
-				try (ZipFile zf = new ZipFile(parent.paths.get(0).toFile())) {
-					ZipEntry entry = zf.getEntry(localPath);
-					if (entry == null) throw new IOException(String.format("can't find nested mod %s in its parent mod %s", this, parent));
-
-					ret = ModDiscoverer.readMod(zf.getInputStream(entry));
-				}
+				zf = MappedZipFile.open(parent.paths.get(0));
 			} else {
-				ByteBuffer data = parent.getData();
-				ret = null;
-
-				try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.arrayOffset() + data.limit()))) {
-					ZipEntry entry = null;
+				zf = MappedZipFile.open(parent.getData(), parent);
+			}
 
-					while ((entry = zis.getNextEntry()) != null) {
-						if (entry.getName().equals(localPath)) {
-							ret = ModDiscoverer.readMod(zis);
-							break;
-						}
-					}
-				}
+			MappedZipFile.Entry entry = zf.getEntry(localPath);
+			if (entry == null) throw new IOException(String.format("can't find nested mod %s in its parent mod %s", this, parent));
 
-				if (ret == null) throw new IOException(String.format("can't find nested mod %s in its parent mods %s", this, parent));
-			}
+			ret = NestedJarStore.get(zf, entry, hash);
 		}
 
-		this.dataRef = new SoftReference<>(ret);
+		this.data = new SoftReference<>(ret);
 
 		return ret;
 	}
@@ -445,7 +412,7 @@ public final class ModCandidateImpl implements DomainObject.Mod {
 			if (parent.minNestLevel >= minNestLevel) continue;
 
 			if (parent.paths != null && parent.paths.size() == 1
-					|| parent.dataRef != null && parent.dataRef.get() != null) {
+					|| parent.getCachedData() != null) {
 				return parent;
 			}
 
@@ -17,12 +17,14 @@
 package dev.aoqia.leaf.loader.impl.discovery;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,29 +32,28 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 import dev.aoqia.leaf.api.EnvType;
 import dev.aoqia.leaf.loader.api.SemanticVersion;
 import dev.aoqia.leaf.loader.api.metadata.ModMetadata;
 import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
 import dev.aoqia.leaf.loader.impl.FormattedException;
-import dev.aoqia.leaf.loader.impl.discovery.ModCandidateFinder.ModCandidateConsumer;
 import dev.aoqia.leaf.loader.impl.game.GameProvider.BuiltinMod;
 import dev.aoqia.leaf.loader.impl.gui.UpdatedModDialog;
 import dev.aoqia.leaf.loader.impl.gui.VerifyModDialog;
@@ -62,24 +63,38 @@ import dev.aoqia.leaf.loader.impl.metadata.DependencyOverrides;
 import dev.aoqia.leaf.loader.impl.metadata.LoaderModMetadata;
 import dev.aoqia.leaf.loader.impl.metadata.MetadataVerifier;
 import dev.aoqia.leaf.loader.impl.metadata.ModMetadataParser;
+import dev.aoqia.leaf.loader.impl.metadata.ModMetadataSnapshot;
 import dev.aoqia.leaf.loader.impl.metadata.NestedJarEntry;
 import dev.aoqia.leaf.loader.impl.metadata.ParseMetadataException;
 import dev.aoqia.leaf.loader.impl.metadata.VersionOverrides;
+import dev.aoqia.leaf.loader.impl.models.JarHashCache;
 import dev.aoqia.leaf.loader.impl.models.VerifiedModList;
 import dev.aoqia.leaf.loader.impl.util.ExceptionUtil;
 import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
+import dev.aoqia.leaf.loader.impl.util.MappedZipFile;
 import dev.aoqia.leaf.loader.impl.util.SystemProperties;
 import dev.aoqia.leaf.loader.impl.util.log.Log;
 import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
 
 public final class ModDiscoverer {
+	private static final String DISCOVERY_INDEX_FILE_PREFIX = "discoveryIndex-";
+	private static final String DISCOVERY_INDEX_FILE_SUFFIX = ".bin";
+	private static final String JAR_HASHES_FILE_NAME = "jar_hashes.txt";
+	// the scan tasks spend most of their time blocked on zip reads, so use more threads than cores
+	private static final int PARALLELISM = Math.min(Math.max(Runtime.getRuntime().availableProcessors() * 2, 4), 32);
+	private static final long PROGRESS_LOG_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
 	private final VersionOverrides versionOverrides;
 	private final DependencyOverrides depOverrides;
 	private final List<ModCandidateFinder> candidateFinders = new ArrayList<>();
 	private final EnvType envType = LeafLoaderImpl.INSTANCE.getEnvironmentType();
 	private final Map<Long, ModScanTask> jijDedupMap = new ConcurrentHashMap<>(); // avoids reading the same jar twice
-	private final List<NestedModInitData> nestedModInitDatas = Collections.synchronizedList(new ArrayList<>()); // breaks potential cycles from deduplication
+	// nested mod list -> pending nested scan tasks, initialized from the consuming thread to break potential cycles from deduplication
+	private final Map<Collection<ModCandidateImpl>, NestedModInitData> nestedModInitDatas = Collections.synchronizedMap(new IdentityHashMap<>());
 	private final List<Path> nonLeafMods = Collections.synchronizedList(new ArrayList<>());
+	private ModDiscoveryIndex prevIndex = new ModDiscoveryIndex(); // scan results from the previous launch
+	private final ModDiscoveryIndex index = new ModDiscoveryIndex(); // scan results from this launch, written on success
+	private JarHashCache jarHashes;
 
 	public ModDiscoverer(VersionOverrides versionOverrides, DependencyOverrides depOverrides) {
 		this.versionOverrides = versionOverrides;
@@ -92,32 +107,64 @@ public final class ModDiscoverer {
 
 	public List<ModCandidateImpl> discoverMods(LeafLoaderImpl loader, Map<String, Set<ModCandidateImpl>> envDisabledModsOut) throws ModResolutionException {
 		long startTime = System.nanoTime();
-		ForkJoinPool pool = new ForkJoinPool();
+		Path indexFile = loader.getLeafDir() != null ? getIndexFile(loader.getLeafDir(), envType) : null;
+		if (indexFile != null) prevIndex = ModDiscoveryIndex.read(indexFile);
+
+		if (loader.getLeafDir() != null) {
+			jarHashes = new JarHashCache(loader.getLeafDir().resolve(JAR_HASHES_FILE_NAME));
+			jarHashes.read();
+		}
+
+		// get optional set of disabled mod ids
+		Set<String> disabledModIds = findDisabledModIds();
+
+        // get the mods currently loaded by the game
+        // usually these are the last loaded mods from the previous play session
+        Set<String> enabledGameModIds = getEnabledGameModIds(loader);
+
+        VerifiedModList verifiedModList = new VerifiedModList(loader.getLeafDir().resolve("verified_mods.txt"));
+        try {
+            verifiedModList.readOrCreate();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read user-verified leaf mod list file");
+        }
+
+		ModCollector collector = new ModCollector(envDisabledModsOut, disabledModIds, enabledGameModIds, verifiedModList);
+
+		ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
 		Set<Path> processedPaths = new HashSet<>(); // suppresses duplicate paths
-		List<Future<ModCandidateImpl>> futures = new ArrayList<>();
+		BlockingQueue<ScanResult> completed = new LinkedBlockingQueue<>();
+		List<FinderProgress> finderProgress = new ArrayList<>(candidateFinders.size());
+		int pending = 0;
+
+		for (ModCandidateFinder finder : candidateFinders) {
+			FinderProgress progress = new FinderProgress(finder);
+			finderProgress.add(progress);
 
-		ModCandidateConsumer taskSubmitter = (paths, requiresRemap, source) -> {
-			List<Path> pendingPaths = new ArrayList<>(paths.size());
+			finder.findCandidates((paths, requiresRemap, source) -> {
+				List<Path> pendingPaths = new ArrayList<>(paths.size());
 
-			for (Path path : paths) {
-				assert path.equals(LoaderUtil.normalizeExistingPath(path));
+				for (Path path : paths) {
+					assert path.equals(LoaderUtil.normalizeExistingPath(path));
 
-				if (processedPaths.add(path)) {
-					pendingPaths.add(path);
+					if (processedPaths.add(path)) {
+						pendingPaths.add(path);
+					}
 				}
-			}
 
-			if (!pendingPaths.isEmpty()) {
-				futures.add(pool.submit(new ModScanTask(pendingPaths, requiresRemap, source)));
-			}
-		};
+				if (!pendingPaths.isEmpty()) {
+					ModScanTask task = new ModScanTask(pendingPaths, requiresRemap, source);
+					CompletableFuture<ModCandidateImpl> future = CompletableFuture.supplyAsync(task::invoke, pool);
+					future.whenComplete((candidate, exc) -> completed.add(new ScanResult(progress, future)));
+					progress.submitted++;
+				}
+			});
 
-		for (ModCandidateFinder finder : candidateFinders) {
-			finder.findCandidates(taskSubmitter);
+			progress.findTime = System.nanoTime() - progress.startTime;
+			progress.endTime = progress.startTime + progress.findTime;
+			pending += progress.submitted;
 		}
 
-		List<ModCandidateImpl> candidates = new ArrayList<>();
-
 		// add builtin mods
 		for (BuiltinMod mod : loader.getGameProvider().getBuiltinMods()) {
 			if (!(mod.metadata.getVersion() instanceof SemanticVersion)) {
@@ -132,138 +179,145 @@ public final class ModDiscoverer {
 			}
 
 			ModCandidateImpl candidate = ModCandidateImpl.createBuiltin(mod, versionOverrides, depOverrides);
-			candidates.add(MetadataVerifier.verifyIndev(candidate, loader.isDevelopmentEnvironment()));
+			collector.add(MetadataVerifier.verifyIndev(candidate, loader.isDevelopmentEnvironment()), false);
 		}
 
 		// Add the current Java version
-		candidates.add(MetadataVerifier.verifyIndev(createJavaMod(), loader.isDevelopmentEnvironment()));
+		collector.add(MetadataVerifier.verifyIndev(createJavaMod(), loader.isDevelopmentEnvironment()), false);
 
 		ModResolutionException exception = null;
 
 		int timeout = Integer.getInteger(SystemProperties.DEBUG_DISCOVERY_TIMEOUT, 60);
 		if (timeout <= 0) timeout = Integer.MAX_VALUE;
 
-		try {
-			pool.shutdown();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+		long nextProgressLog = System.nanoTime() + PROGRESS_LOG_INTERVAL;
 
-			pool.awaitTermination(timeout, TimeUnit.SECONDS);
+		// consume the scan results as they complete, nested mods only need to be waited for once their root mod is done
+		try {
+			while (pending > 0) {
+				long now = System.nanoTime();
+				if (deadline - now <= 0) throw new TimeoutException();
 
-			for (Future<ModCandidateImpl> future : futures) {
-				if (!future.isDone()) {
-					throw new TimeoutException();
+				if (now - nextProgressLog >= 0) {
+					logProgress(finderProgress);
+					nextProgressLog = now + PROGRESS_LOG_INTERVAL;
 				}
 
-				try {
-					ModCandidateImpl candidate = future.get();
-					if (candidate != null) candidates.add(candidate);
-				} catch (ExecutionException e) {
-					exception = ExceptionUtil.gatherExceptions(e, exception, exc -> new ModResolutionException("Mod discovery failed!", exc));
-				}
-			}
+				ScanResult result = completed.poll(Math.min(deadline, nextProgressLog) - now, TimeUnit.NANOSECONDS);
+				if (result == null) continue;
 
-			for (NestedModInitData data : nestedModInitDatas) {
-				for (Future<ModCandidateImpl> future : data.futures) {
-					if (!future.isDone()) {
-						throw new TimeoutException();
-					}
+				pending--;
+				result.progress.onScanned();
+
+				try {
+					ModCandidateImpl candidate = result.future.get();
 
-					try {
-						ModCandidateImpl candidate = future.get();
-						if (candidate != null) data.target.add(candidate);
-					} catch (ExecutionException e) {
-						exception = ExceptionUtil.gatherExceptions(e, exception, exc -> new ModResolutionException("Mod discovery failed!", exc));
+					if (candidate != null) {
+						result.progress.mods++;
+						exception = initNestedMods(candidate, deadline, exception);
+						collector.add(candidate, false);
 					}
+				} catch (ExecutionException e) {
+					exception = ExceptionUtil.gatherExceptions(e, exception, exc -> new ModResolutionException("Mod discovery failed!", exc));
 				}
 			}
 		} catch (TimeoutException e) {
+			pool.shutdownNow();
 			throw new FormattedException("Mod discovery took too long!",
 					"Analyzing the mod folder contents took longer than %d seconds. This may be caused by unusually slow hardware, pathological antivirus interference or other issues. The timeout can be changed with the system property %s (-D%<s=<desired timeout in seconds>).",
 					timeout, SystemProperties.DEBUG_DISCOVERY_TIMEOUT);
 		} catch (InterruptedException e) {
+			pool.shutdownNow();
 			throw new FormattedException("Mod discovery interrupted!", e);
 		}
 
+		pool.shutdown();
+
+		for (FinderProgress progress : finderProgress) {
+			Log.debug(LogCategory.DISCOVERY, "%s: %d mods from %d paths, search %.1f ms, done after %.1f ms",
+					progress.name, progress.mods, progress.submitted, progress.findTime * 1e-6, (progress.endTime - progress.startTime) * 1e-6);
+		}
+
 		if (exception != null) {
 			throw exception;
 		}
 
-		// get optional set of disabled mod ids
-		Set<String> disabledModIds = findDisabledModIds();
+		if (indexFile != null) {
+			index.write(indexFile);
 
-        // get the mods currently loaded by the game
-        // usually these are the last loaded mods from the previous play session
-        Set<String> enabledGameModIds = getEnabledGameModIds(loader);
+			// spilled jars are shared by the indexes of all environments
+			List<ModDiscoveryIndex> indexes = new ArrayList<>();
+			indexes.add(index);
+
+			for (EnvType otherEnvType : EnvType.values()) {
+				if (otherEnvType != envType) indexes.add(ModDiscoveryIndex.read(getIndexFile(loader.getLeafDir(), otherEnvType)));
+			}
+
+			NestedJarStore.cleanUp(indexes);
+		}
+
+		// only prompt once discovery succeeded as a whole
+		collector.verifyDeferred();
 
-        VerifiedModList verifiedModList = new VerifiedModList(loader.getLeafDir().resolve("verified_mods.txt"));
         try {
-            verifiedModList.readOrCreate();
+            verifiedModList.write();
         } catch (IOException e) {
-            throw new RuntimeException("Failed to read user-verified leaf mod list file");
+            throw new FormattedException("Failed to write to verified_mods.txt", e);
         }
 
-		// gather all mods (root+nested), initialize parent data
+        if (jarHashes != null) {
+            try {
+                jarHashes.write();
+            } catch (IOException e) {
+                Log.warn(LogCategory.DISCOVERY, "Failed to write %s", JAR_HASHES_FILE_NAME, e);
+            }
+        }
 
-		Set<ModCandidateImpl> ret = Collections.newSetFromMap(new IdentityHashMap<>(candidates.size() * 2));
-		Queue<ModCandidateImpl> queue = new ArrayDeque<>(candidates);
-		ModCandidateImpl mod;
+        long endTime = System.nanoTime();
 
-		while ((mod = queue.poll()) != null) {
-			if (!mod.getMetadata().loadsInEnvironment(envType)) {
-                envDisabledModsOut.computeIfAbsent(mod.getId(), ignore ->
-                    Collections.newSetFromMap(new IdentityHashMap<>())).add(mod);
-            }
+		Log.debug(LogCategory.DISCOVERY, "Mod discovery time: %.1f ms", (endTime - startTime) * 1e-6);
 
-            if (disabledModIds.contains(mod.getId())) {
-                Log.info(LogCategory.DISCOVERY, "Skipping disabled mod %s", mod.getId());
-                continue;
-            }
+		return new ArrayList<>(collector.mods);
+	}
 
-            // TODO(leaf): Support server-side
-            if (!mod.isBuiltin() && (mod.getSource() == ModSource.CACHEDIR || mod.getSource() == ModSource.WORKSHOP)) {
-                // If the mod isn't enabled in the game, don't load it.
-                // Ignore the leaf loader Steam mod (for use with proxy) as it should always be enabled.
-                if (mod.getModInfo() != null && !enabledGameModIds.contains(mod.getGameId())) {
-                    Log.info(LogCategory.DISCOVERY, "Skipping disabled mod '%s' from in-game mod list modid '%s/%s'",
-                        mod.getId(), mod.getWorkshopId(), mod.getGameId());
-                    continue;
-                }
+	/**
+	 * Wait for the nested mods of a freshly scanned mod, recursively, and populate the nested mod lists.
+	 */
+	private ModResolutionException initNestedMods(ModCandidateImpl mod, long deadline, ModResolutionException exception) throws TimeoutException, InterruptedException {
+		Queue<ModCandidateImpl> queue = new ArrayDeque<>();
+		queue.add(mod);
 
-                // If the mod is enabled in the game, but the user hasn't verified it, prompt them to.
-                if (verifiedModList.wasVerified(mod) && UpdatedModDialog.show(mod)) {
-                    // TODO(leaf): Support server-side
-                    verifiedModList.updateMod(mod);
-                } else if (!verifiedModList.isVerified(mod)) {
-                    if (VerifyModDialog.show(mod)) {
-                        // TODO(leaf): Support server-side
-                        verifiedModList.add(mod);
-                    } else {
-                        Log.info(LogCategory.DISCOVERY, "Skipping mod '%s' (from '%s/%s') because it wasn't verified!",
-                            mod.getId(), mod.getWorkshopId(), mod.getGameId());
-                        continue;
-                    }
-                }
-            }
+		while ((mod = queue.poll()) != null) {
+			NestedModInitData data = nestedModInitDatas.remove(mod.getNestedMods());
+			if (data == null) continue; // no nested mods or already initialized through another parent
 
-            if (!ret.add(mod)) continue;
+			for (Future<ModCandidateImpl> future : data.futures) {
+				try {
+					ModCandidateImpl candidate = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
 
-            for (ModCandidateImpl child : mod.getNestedMods()) {
-                if (child.addParent(mod)) {
-                    queue.add(child);
-                }
-            }
+					if (candidate != null) {
+						data.target.add(candidate);
+						queue.add(candidate);
+					}
+				} catch (ExecutionException e) {
+					exception = ExceptionUtil.gatherExceptions(e, exception, exc -> new ModResolutionException("Mod discovery failed!", exc));
+				}
+			}
 		}
 
-        try {
-            verifiedModList.write();
-        } catch (IOException e) {
-            throw new FormattedException("Failed to write to verified_mods.txt", e);
-        }
+		return exception;
+	}
 
-        long endTime = System.nanoTime();
+	private static void logProgress(List<FinderProgress> finderProgress) {
+		StringBuilder sb = new StringBuilder();
 
-		Log.debug(LogCategory.DISCOVERY, "Mod discovery time: %.1f ms", (endTime - startTime) * 1e-6);
+		for (FinderProgress progress : finderProgress) {
+			if (sb.length() > 0) sb.append(", ");
+			sb.append(String.format("%s %d/%d", progress.name, progress.scanned, progress.submitted));
+		}
 
-		return new ArrayList<>(ret);
+		Log.info(LogCategory.DISCOVERY, "Mod discovery in progress: %s", sb);
 	}
 
 	public List<Path> getNonLeafMods() {
@@ -323,32 +377,39 @@ public final class ModDiscoverer {
 	final class ModScanTask extends RecursiveTask<ModCandidateImpl> {
 		private final List<Path> paths;
 		private final String localPath;
-		private final RewindableInputStream is;
+		private final ByteBuffer data; // nested jar content, in place or spilled, see NestedJarStore
 		private final long hash;
 		private final boolean requiresRemap;
 		private final List<String> parentPaths;
         private final ModSource source;
+		private final ModDiscoveryIndex.Entry indexEntry; // previous scan result for nested jars restored from the index
 
 		ModScanTask(List<Path> paths, boolean requiresRemap, ModSource source) {
-			this(paths, null, null, -1, requiresRemap, Collections.emptyList(), source);
+			this(paths, null, null, -1, requiresRemap, Collections.emptyList(), source, null);
 		}
 
-		private ModScanTask(List<Path> paths, String localPath, RewindableInputStream is, long hash,
-				boolean requiresRemap, List<String> parentPaths, ModSource source) {
+		private ModScanTask(List<Path> paths, String localPath, ByteBuffer data, long hash,
+				boolean requiresRemap, List<String> parentPaths, ModSource source, ModDiscoveryIndex.Entry indexEntry) {
 			this.paths = paths;
 			this.localPath = localPath != null ? localPath : paths.get(0).toString();
-			this.is = is;
+			this.data = data;
 			this.hash = hash;
 			this.requiresRemap = requiresRemap;
 			this.parentPaths = parentPaths;
             this.source = source;
+			this.indexEntry = indexEntry;
 		}
 
 		@Override
 		protected ModCandidateImpl compute() {
-			if (is != null) { // nested jar
+			if (data != null || indexEntry != null) { // nested jar
 				try {
-					return computeJarStream();
+					if (indexEntry != null) {
+						index.putNested(hash, indexEntry);
+						return computeIndexed(null, indexEntry);
+					}
+
+					return computeJar(null, MappedZipFile.open(data, localPath), null);
 				} catch (ParseMetadataException e) { // already contains all context
 					throw ExceptionUtil.wrap(e);
 				} catch (Throwable t) {
@@ -366,6 +427,10 @@ public final class ModDiscoverer {
 						}
 
 						if (candidate != null) {
+							if (jarHashes != null && requiresVerification(candidate) && !Files.isDirectory(path)) {
+								candidate.setJarHash(jarHashes.getHash(path));
+							}
+
 							return candidate;
 						}
 					}
@@ -393,173 +458,186 @@ public final class ModDiscoverer {
 		}
 
 		private ModCandidateImpl computeJarFile(Path path) throws IOException, ParseMetadataException {
-			try (ZipFile zf = new ZipFile(path.toFile())) {
-				ZipEntry entry = zf.getEntry("leaf.mod.json");
+			BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+			ModDiscoveryIndex.Entry indexEntry = prevIndex.get(path, attrs);
 
-				if (entry == null) {
-					nonLeafMods.add(path);
-					return null;
-				}
+			if (indexEntry != null) {
+				index.put(path, attrs, indexEntry);
+				return computeIndexed(path, indexEntry);
+			}
 
-				LoaderModMetadata metadata;
+			return computeJar(path, MappedZipFile.open(path), attrs);
+		}
 
-				try (InputStream is = zf.getInputStream(entry)) {
-					metadata = parseMetadata(is, localPath);
-				}
+		/**
+		 * Scan a root or nested jar.
+		 *
+		 * @param path root jar path, null for nested jars
+		 */
+		private ModCandidateImpl computeJar(Path path, MappedZipFile zf, BasicFileAttributes attrs) throws IOException, ParseMetadataException {
+			byte[] metadataBytes = zf.read("leaf.mod.json");
+
+			if (metadataBytes == null) {
+				putIndexEntry(path, attrs, null, Collections.emptyList());
+				if (path != null) nonLeafMods.add(path);
+				return null;
+			}
 
-				if (!metadata.loadsInEnvironment(envType)) {
-					return ModCandidateImpl.createPlain(paths, metadata, requiresRemap, Collections.emptyList(), source);
-				}
+			LoaderModMetadata metadata = ModMetadataParser.readMetadata(new ByteArrayInputStream(metadataBytes), localPath, parentPaths, isDevelopment());
+			byte[] metadataSnapshot = ModMetadataSnapshot.write(metadata); // before overrides mutate it
+			metadata = finishMetadata(metadata, localPath);
+			List<ModScanTask> nestedModTasks;
 
-				List<ModScanTask> nestedModTasks;
+			if (!metadata.loadsInEnvironment(envType) || metadata.getJars().isEmpty()) {
+				nestedModTasks = Collections.emptyList();
+			} else {
+				Set<String> missingJars = new HashSet<>();
+				nestedModTasks = computeNestedMods(zf, metadata.getJars(), missingJars);
 
-				if (metadata.getJars().isEmpty()) {
-					nestedModTasks = Collections.emptyList();
-				} else {
-					Set<NestedJarEntry> nestedJarPaths = new HashSet<>(metadata.getJars());
-
-					nestedModTasks = computeNestedMods(new ZipEntrySource() {
-						@Override
-						public ZipEntry getNextEntry() throws IOException {
-							while (jarIt.hasNext()) {
-								NestedJarEntry jar = jarIt.next();
-								ZipEntry ret = zf.getEntry(jar.getFile());
-
-								if (isValidNestedJarEntry(ret)) {
-									currentEntry = ret;
-									jarIt.remove();
-									return ret;
-								}
-							}
+				if (!missingJars.isEmpty() && LeafLoaderImpl.INSTANCE.isDevelopmentEnvironment()) {
+					Log.warn(LogCategory.METADATA, "Mod %s %s references missing nested jars: %s", metadata.getId(), metadata.getVersion(), missingJars);
+				}
+			}
 
-							currentEntry = null;
-							return null;
-						}
+			List<ModCandidateImpl> nestedMods;
 
-						@Override
-						public RewindableInputStream getInputStream() throws IOException {
-							try (InputStream is = zf.getInputStream(currentEntry)) {
-								return new RewindableInputStream(is);
-							}
-						}
+			if (nestedModTasks.isEmpty()) {
+				nestedMods = Collections.emptyList();
+			} else {
+				nestedMods = new ArrayList<>();
+				nestedModInitDatas.put(nestedMods, new NestedModInitData(nestedModTasks, nestedMods));
+			}
 
-						private final Iterator<NestedJarEntry> jarIt = nestedJarPaths.iterator();
-						private ZipEntry currentEntry;
-					});
+			putIndexEntry(path, attrs, metadataSnapshot, toIndexEntries(nestedModTasks));
 
-					if (!nestedJarPaths.isEmpty() && LeafLoaderImpl.INSTANCE.isDevelopmentEnvironment()) {
-						Log.warn(LogCategory.METADATA, "Mod %s %s references missing nested jars: %s", metadata.getId(), metadata.getVersion(), nestedJarPaths);
-					}
-				}
+			if (path != null) {
+				return ModCandidateImpl.createPlain(paths, metadata, requiresRemap, nestedMods, source);
+			} else {
+				ModCandidateImpl ret = ModCandidateImpl.createNested(localPath, hash, metadata, requiresRemap, nestedMods, source);
+				ret.setData(data);
 
-				List<ModCandidateImpl> nestedMods;
+				return ret;
+			}
+		}
 
-				if (nestedModTasks.isEmpty()) {
-					nestedMods = Collections.emptyList();
-				} else {
-					nestedMods = new ArrayList<>();
-					nestedModInitDatas.add(new NestedModInitData(nestedModTasks, nestedMods));
-				}
+		private void putIndexEntry(Path path, BasicFileAttributes attrs, byte[] metadataSnapshot, List<ModDiscoveryIndex.NestedEntry> nestedJars) {
+			ModDiscoveryIndex.Entry entry = new ModDiscoveryIndex.Entry(metadataSnapshot, nestedJars);
 
-				return ModCandidateImpl.createPlain(paths, metadata, requiresRemap, nestedMods, source);
+			if (path != null) {
+				index.put(path, attrs, entry);
+			} else {
+				index.putNested(hash, entry);
 			}
 		}
 
-		private ModCandidateImpl computeJarStream() throws IOException, ParseMetadataException {
-			LoaderModMetadata metadata = null;
-			ZipEntry entry;
-
-			try (ZipInputStream zis = new ZipInputStream(is)) {
-				while ((entry = zis.getNextEntry()) != null) {
-					if (entry.getName().equals("leaf.mod.json")) {
-						metadata = parseMetadata(zis, localPath);
-						break;
-					}
-				}
+		/**
+		 * Restore a jar's candidate from the previous launch's scan result without opening it.
+		 *
+		 * @param path root jar path, null for nested jars
+		 */
+		private ModCandidateImpl computeIndexed(Path path, ModDiscoveryIndex.Entry entry) throws ParseMetadataException {
+			if (entry.metadata == null) {
+				if (path != null) nonLeafMods.add(path);
+				return null;
 			}
 
-			if (metadata == null) return null;
+			LoaderModMetadata metadata;
 
-			if (!metadata.loadsInEnvironment(envType)) {
-				return ModCandidateImpl.createNested(localPath, hash, metadata, requiresRemap, Collections.emptyList(), source);
+			try {
+				metadata = ModMetadataSnapshot.read(entry.metadata);
+			} catch (IOException e) { // the index checksums are verified on load, so this shouldn't happen
+				ParseMetadataException ex = new ParseMetadataException("Invalid metadata snapshot in the mod discovery index", e);
+				ex.setModPaths(localPath, parentPaths);
+				throw ex;
 			}
 
-			Collection<NestedJarEntry> nestedJars = metadata.getJars();
-			List<ModScanTask> nestedModTasks;
+			metadata = finishMetadata(metadata, localPath);
+			List<ModCandidateImpl> nestedMods;
 
-			if (nestedJars.isEmpty()) {
-				nestedModTasks = Collections.emptyList();
+			if (!metadata.loadsInEnvironment(envType) || entry.nestedJars.isEmpty()) {
+				nestedMods = Collections.emptyList();
 			} else {
-				Set<String> nestedJarPaths = new HashSet<>(nestedJars.size());
-
-				for (NestedJarEntry nestedJar : nestedJars) {
-					nestedJarPaths.add(nestedJar.getFile());
-				}
-
-				is.rewind();
-
-				try (ZipInputStream zis = new ZipInputStream(is)) {
-					nestedModTasks = computeNestedMods(new ZipEntrySource() {
-						@Override
-						public ZipEntry getNextEntry() throws IOException {
-							if (nestedJarPaths.isEmpty()) return null;
+				nestedMods = new ArrayList<>();
+				nestedModInitDatas.put(nestedMods, new NestedModInitData(computeIndexedNestedMods(entry.nestedJars), nestedMods));
+			}
 
-							ZipEntry ret;
+			if (path != null) {
+				return ModCandidateImpl.createPlain(paths, metadata, requiresRemap, nestedMods, source);
+			} else {
+				return ModCandidateImpl.createNested(localPath, hash, metadata, requiresRemap, nestedMods, source);
+			}
+		}
 
-							while ((ret = zis.getNextEntry()) != null) {
-								if (isValidNestedJarEntry(ret) && nestedJarPaths.remove(ret.getName())) {
-									is = new RewindableInputStream(zis); // reads the entry, which completes the ZipEntry with any trailing header data
-									return ret;
-								}
-							}
+		private List<ModScanTask> computeIndexedNestedMods(List<ModDiscoveryIndex.NestedEntry> nestedJars) {
+			List<String> parentPaths = getNestedParentPaths();
+			List<ModScanTask> tasks = new ArrayList<>(nestedJars.size());
+			ModScanTask localTask = null;
 
-							return null;
-						}
+			for (ModDiscoveryIndex.NestedEntry jar : nestedJars) {
+				ModScanTask task = jijDedupMap.get(jar.hash);
 
-						@Override
-						public RewindableInputStream getInputStream() throws IOException {
-							return is;
-						}
+				if (task == null) {
+					task = new ModScanTask(null, jar.name, null, jar.hash, requiresRemap, parentPaths, source, prevIndex.getNested(jar.hash));
+					ModScanTask prev = jijDedupMap.putIfAbsent(jar.hash, task);
 
-						private RewindableInputStream is;
-					});
+					if (prev != null) {
+						task = prev;
+					} else if (localTask == null) { // don't fork first task, leave it for this thread
+						localTask = task;
+					} else {
+						task.fork();
+					}
 				}
 
-				if (!nestedJarPaths.isEmpty() && LeafLoaderImpl.INSTANCE.isDevelopmentEnvironment()) {
-					Log.warn(LogCategory.METADATA, "Mod %s %s references missing nested jars: %s", metadata.getId(), metadata.getVersion(), nestedJarPaths);
-				}
+				tasks.add(task);
 			}
 
-			List<ModCandidateImpl> nestedMods;
+			if (localTask != null) localTask.invoke();
 
-			if (nestedModTasks.isEmpty()) {
-				nestedMods = Collections.emptyList();
-			} else {
-				nestedMods = new ArrayList<>();
-				nestedModInitDatas.add(new NestedModInitData(nestedModTasks, nestedMods));
-			}
+			return tasks;
+		}
 
-			ModCandidateImpl ret = ModCandidateImpl.createNested(localPath, hash, metadata, requiresRemap, nestedMods, source);
-			ret.setData(is.getBuffer());
+		private List<String> getNestedParentPaths() {
+			List<String> ret = new ArrayList<>(this.parentPaths.size() + 1);
+			ret.addAll(this.parentPaths);
+			ret.add(localPath);
 
 			return ret;
 		}
 
-		private List<ModScanTask> computeNestedMods(ZipEntrySource entrySource) throws IOException {
-			List<String> parentPaths = new ArrayList<>(this.parentPaths.size() + 1);
-			parentPaths.addAll(this.parentPaths);
-			parentPaths.add(localPath);
+		private List<ModDiscoveryIndex.NestedEntry> toIndexEntries(List<ModScanTask> tasks) {
+			if (tasks.isEmpty()) return Collections.emptyList();
+
+			List<ModDiscoveryIndex.NestedEntry> ret = new ArrayList<>(tasks.size());
+
+			for (ModScanTask task : tasks) {
+				ret.add(new ModDiscoveryIndex.NestedEntry(task.localPath, task.hash));
+			}
+
+			return ret;
+		}
 
-			List<ModScanTask> tasks = new ArrayList<>(5);
+		private List<ModScanTask> computeNestedMods(MappedZipFile zf, Collection<NestedJarEntry> nestedJars, Set<String> missingJarsOut) throws IOException {
+			List<String> parentPaths = getNestedParentPaths();
+			List<ModScanTask> tasks = new ArrayList<>(nestedJars.size());
 			ModScanTask localTask = null;
-			ZipEntry entry;
+			Set<String> seenJars = new HashSet<>();
+
+			for (NestedJarEntry nestedJar : nestedJars) {
+				if (!seenJars.add(nestedJar.getFile())) continue;
+
+				MappedZipFile.Entry entry = zf.getEntry(nestedJar.getFile());
+
+				if (!isValidNestedJarEntry(entry)) {
+					missingJarsOut.add(nestedJar.getFile());
+					continue;
+				}
 
-			while ((entry = entrySource.getNextEntry()) != null) {
 				long hash = ModCandidateImpl.hash(entry);
 				ModScanTask task = jijDedupMap.get(hash);
 
 				if (task == null) {
-					task = new ModScanTask(null, entry.getName(), entrySource.getInputStream(), hash, requiresRemap, parentPaths, source);
+					task = new ModScanTask(null, entry.getName(), NestedJarStore.get(zf, entry, hash), hash, requiresRemap, parentPaths, source, null);
 					ModScanTask prev = jijDedupMap.putIfAbsent(hash, task);
 
 					if (prev != null) {
@@ -582,87 +660,145 @@ public final class ModDiscoverer {
 		}
 
 		private LoaderModMetadata parseMetadata(InputStream is, String localPath) throws ParseMetadataException {
-			return ModMetadataParser.parseMetadata(is, localPath, parentPaths, versionOverrides, depOverrides, LeafLoaderImpl.INSTANCE.isDevelopmentEnvironment());
+			return ModMetadataParser.parseMetadata(is, localPath, parentPaths, versionOverrides, depOverrides, isDevelopment());
+		}
+
+		private LoaderModMetadata finishMetadata(LoaderModMetadata metadata, String localPath) throws ParseMetadataException {
+			return ModMetadataParser.finishMetadata(metadata, localPath, parentPaths, versionOverrides, depOverrides, isDevelopment());
 		}
-	}
 
-	private static boolean isValidNestedJarEntry(ZipEntry entry) {
-		return entry != null && !entry.isDirectory() && entry.getName().endsWith(".jar");
+		private boolean isDevelopment() {
+			return LeafLoaderImpl.INSTANCE.isDevelopmentEnvironment();
+		}
 	}
 
-	private interface ZipEntrySource {
-		ZipEntry getNextEntry() throws IOException;
-		RewindableInputStream getInputStream() throws IOException;
+	/**
+	 * The index records the nested jars of mods that don't load in an environment as absent, so each environment gets
+	 * its own.
+	 */
+	private static Path getIndexFile(Path leafDir, EnvType envType) {
+		return leafDir.resolve(DISCOVERY_INDEX_FILE_PREFIX + envType.name().toLowerCase(Locale.ENGLISH) + DISCOVERY_INDEX_FILE_SUFFIX);
 	}
 
-	private static final class RewindableInputStream extends InputStream {
-		private final ByteBuffer buffer;
-		private int pos;
+	private static boolean requiresVerification(ModCandidateImpl mod) {
+		return !mod.isBuiltin() && (mod.getSource() == ModSource.CACHEDIR || mod.getSource() == ModSource.WORKSHOP);
+	}
 
-		RewindableInputStream(InputStream parent) throws IOException { // no parent.close()
-			buffer = readMod(parent);
+	private static boolean isValidNestedJarEntry(MappedZipFile.Entry entry) {
+		return entry != null && entry.getName().endsWith(".jar");
+	}
 
-			assert buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0;
+	/**
+	 * Filters the discovered mods and links them with their nested mods as they come in.
+	 *
+	 * <p>Mods that need the user to verify them are deferred until discovery completed successfully.
+	 */
+	private final class ModCollector {
+		final Set<ModCandidateImpl> mods = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Map<String, Set<ModCandidateImpl>> envDisabledModsOut;
+		private final Set<String> disabledModIds;
+		private final Set<String> enabledGameModIds;
+		private final VerifiedModList verifiedModList;
+		private final List<ModCandidateImpl> unverifiedMods = new ArrayList<>();
+
+		ModCollector(Map<String, Set<ModCandidateImpl>> envDisabledModsOut, Set<String> disabledModIds, Set<String> enabledGameModIds, VerifiedModList verifiedModList) {
+			this.envDisabledModsOut = envDisabledModsOut;
+			this.disabledModIds = disabledModIds;
+			this.enabledGameModIds = enabledGameModIds;
+			this.verifiedModList = verifiedModList;
 		}
 
-		public ByteBuffer getBuffer() {
-			return buffer;
-		}
+		/**
+		 * Gather a mod and its nested mods, initializing parent data.
+		 */
+		void add(ModCandidateImpl mod, boolean verified) {
+			Queue<ModCandidateImpl> queue = new ArrayDeque<>();
+			queue.add(mod);
+
+			while ((mod = queue.poll()) != null) {
+				if (!mod.getMetadata().loadsInEnvironment(envType)) {
+					envDisabledModsOut.computeIfAbsent(mod.getId(), ignore ->
+						Collections.newSetFromMap(new IdentityHashMap<>())).add(mod);
+				}
 
-		public void rewind() {
-			pos = 0;
-		}
+				if (disabledModIds.contains(mod.getId())) {
+					Log.info(LogCategory.DISCOVERY, "Skipping disabled mod %s", mod.getId());
+					continue;
+				}
 
-		@Override
-		public int read() throws IOException {
-			if (pos >= buffer.limit()) {
-				return -1;
-			} else {
-				return buffer.get(pos++) & 0xff;
+				// TODO(leaf): Support server-side
+				if (requiresVerification(mod) && !verified) {
+					// If the mod isn't enabled in the game, don't load it.
+					// Ignore the leaf loader Steam mod (for use with proxy) as it should always be enabled.
+					if (mod.getModInfo() != null && !enabledGameModIds.contains(mod.getGameId())) {
+						Log.info(LogCategory.DISCOVERY, "Skipping disabled mod '%s' from in-game mod list modid '%s/%s'",
+							mod.getId(), mod.getWorkshopId(), mod.getGameId());
+						continue;
+					}
+
+					if (!verifiedModList.isVerified(mod)) {
+						unverifiedMods.add(mod);
+						continue;
+					}
+				}
+
+				if (!mods.add(mod)) continue;
+
+				for (ModCandidateImpl child : mod.getNestedMods()) {
+					if (child.addParent(mod)) {
+						queue.add(child);
+					}
+				}
 			}
 		}
 
-		@Override
-		public int read(byte[] b, int off, int len) throws IOException {
-			int rem = buffer.limit() - pos;
-
-			if (rem <= 0) {
-				return -1;
-			} else {
-				len = Math.min(len, rem);
-				System.arraycopy(buffer.array(), pos, b, off, len);
-				pos += len;
+		void verifyDeferred() {
+			for (ModCandidateImpl mod : unverifiedMods) {
+				// If the mod is enabled in the game, but the user hasn't verified it, prompt them to.
+				if (verifiedModList.wasVerified(mod) && UpdatedModDialog.show(mod)) {
+					// TODO(leaf): Support server-side
+					verifiedModList.updateMod(mod);
+				} else if (VerifyModDialog.show(mod)) {
+					// TODO(leaf): Support server-side
+					verifiedModList.add(mod);
+				} else {
+					Log.info(LogCategory.DISCOVERY, "Skipping mod '%s' (from '%s/%s') because it wasn't verified!",
+						mod.getId(), mod.getWorkshopId(), mod.getGameId());
+					continue;
+				}
 
-				return len;
+				add(mod, true);
 			}
 		}
 	}
 
-	static ByteBuffer readMod(InputStream is) throws IOException {
-		int available = is.available();
-		boolean availableGood = available > 1;
-		byte[] buffer = new byte[availableGood ? available : 30_000];
-		int offset = 0;
-		int len;
+	private static final class FinderProgress {
+		final String name;
+		final long startTime = System.nanoTime();
+		long findTime;
+		long endTime = startTime;
+		int submitted;
+		int scanned;
+		int mods;
+
+		FinderProgress(ModCandidateFinder finder) {
+			this.name = finder.getClass().getSimpleName();
+		}
 
-		while ((len = is.read(buffer, offset, buffer.length - offset)) >= 0) {
-			offset += len;
+		void onScanned() {
+			scanned++;
+			endTime = System.nanoTime();
+		}
+	}
 
-			if (offset == buffer.length) {
-				if (availableGood) {
-					int val = is.read();
-					if (val < 0) break;
+	private static final class ScanResult {
+		final FinderProgress progress;
+		final Future<ModCandidateImpl> future;
 
-					availableGood = false;
-					buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, 30_000));
-					buffer[offset++] = (byte) val;
-				} else {
-					buffer = Arrays.copyOf(buffer, buffer.length * 2);
-				}
-			}
+		ScanResult(FinderProgress progress, Future<ModCandidateImpl> future) {
+			this.progress = progress;
+			this.future = future;
 		}
-
-		return ByteBuffer.wrap(buffer, 0, offset);
 	}
 
 	private static class NestedModInitData {
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.discovery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
+import dev.aoqia.leaf.loader.impl.metadata.ModMetadataSnapshot;
+import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * Persistent index of the mod jar scan results from the previous launch.
+ *
+ * <p>Root jars are keyed by path, size and modification time, nested jars by {@link ModCandidateImpl#hash}. A hit
+ * provides the jar's metadata as a {@link ModMetadataSnapshot} and its nested jars without opening the zip or parsing
+ * json. Version and dependency overrides and verification still apply to the restored metadata on every launch.
+ *
+ * <p>Each launch records into a fresh index, so jars that disappeared are dropped when it gets written. Mods that
+ * don't load in the current environment are recorded without their nested jars, which is why every environment type
+ * uses a separate index.
+ */
+final class ModDiscoveryIndex {
+	private static final int FORMAT_VERSION = 3;
+
+	private final Map<String, RootEntry> roots;
+	private final Map<Long, Entry> nested;
+
+	static final class Entry {
+		final byte[] metadata; // ModMetadataSnapshot of leaf.mod.json, null for jars without one
+		final List<NestedEntry> nestedJars;
+
+		Entry(byte[] metadata, List<NestedEntry> nestedJars) {
+			this.metadata = metadata;
+			this.nestedJars = nestedJars;
+		}
+	}
+
+	static final class NestedEntry {
+		final String name;
+		final long hash;
+
+		NestedEntry(String name, long hash) {
+			this.name = name;
+			this.hash = hash;
+		}
+	}
+
+	private static final class RootEntry {
+		final long size;
+		final long mtime;
+		final Entry entry;
+
+		RootEntry(long size, long mtime, Entry entry) {
+			this.size = size;
+			this.mtime = mtime;
+			this.entry = entry;
+		}
+	}
+
+	ModDiscoveryIndex() {
+		this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+	}
+
+	private ModDiscoveryIndex(Map<String, RootEntry> roots, Map<Long, Entry> nested) {
+		this.roots = roots;
+		this.nested = nested;
+	}
+
+	/**
+	 * Look up the scan result for a root jar.
+	 *
+	 * @return the entry or null if the jar isn't indexed or changed since
+	 */
+	Entry get(Path path, BasicFileAttributes attrs) {
+		RootEntry ret = roots.get(path.toString());
+		if (ret == null || ret.size != attrs.size() || ret.mtime != attrs.lastModifiedTime().toMillis()) return null;
+		if (!isComplete(ret.entry)) return null;
+
+		return ret.entry;
+	}
+
+	/**
+	 * Look up the scan result for a nested jar.
+	 */
+	Entry getNested(long hash) {
+		return nested.get(hash);
+	}
+
+	boolean containsNested(long hash) {
+		return nested.containsKey(hash);
+	}
+
+	void put(Path path, BasicFileAttributes attrs, Entry entry) {
+		roots.put(path.toString(), new RootEntry(attrs.size(), attrs.lastModifiedTime().toMillis(), entry));
+	}
+
+	void putNested(long hash, Entry entry) {
+		nested.put(hash, entry);
+	}
+
+	private boolean isComplete(Entry entry) {
+		for (NestedEntry jar : entry.nestedJars) {
+			Entry nestedEntry = nested.get(jar.hash);
+			if (nestedEntry == null || !isComplete(nestedEntry)) return false;
+		}
+
+		return true;
+	}
+
+	static ModDiscoveryIndex read(Path file) {
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (is.readInt() != FORMAT_VERSION || !is.readUTF().equals(LeafLoaderImpl.VERSION)) {
+				return new ModDiscoveryIndex();
+			}
+
+			int count = is.readInt();
+			Map<String, RootEntry> roots = new ConcurrentHashMap<>(count);
+
+			for (int i = 0; i < count; i++) {
+				String path = is.readUTF();
+				long size = is.readLong();
+				long mtime = is.readLong();
+				roots.put(path, new RootEntry(size, mtime, readEntry(is)));
+			}
+
+			count = is.readInt();
+			Map<Long, Entry> nested = new ConcurrentHashMap<>(count);
+
+			for (int i = 0; i < count; i++) {
+				long hash = is.readLong();
+				nested.put(hash, readEntry(is));
+			}
+
+			return new ModDiscoveryIndex(roots, nested);
+		} catch (NoSuchFileException e) {
+			return new ModDiscoveryIndex();
+		} catch (IOException | RuntimeException e) {
+			Log.warn(LogCategory.DISCOVERY, "Error reading mod discovery index %s, rescanning all mods", file, e);
+			return new ModDiscoveryIndex();
+		}
+	}
+
+	private static Entry readEntry(DataInputStream is) throws IOException {
+		int len = is.readInt();
+		byte[] metadata = null;
+
+		if (len >= 0) {
+			metadata = new byte[len];
+			is.readFully(metadata);
+			ModMetadataSnapshot.verify(metadata);
+		}
+
+		int count = is.readInt();
+		List<NestedEntry> nestedJars = count == 0 ? Collections.emptyList() : new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			String name = is.readUTF();
+			nestedJars.add(new NestedEntry(name, is.readLong()));
+		}
+
+		return new Entry(metadata, nestedJars);
+	}
+
+	void write(Path file) {
+		Path tmpFile = file.resolveSibling(file.getFileName().toString() + ".tmp");
+
+		try {
+			Files.createDirectories(file.getParent());
+
+			try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				os.writeInt(FORMAT_VERSION);
+				os.writeUTF(LeafLoaderImpl.VERSION);
+
+				List<Map.Entry<String, RootEntry>> rootEntries = new ArrayList<>(roots.entrySet());
+				os.writeInt(rootEntries.size());
+
+				for (Map.Entry<String, RootEntry> e : rootEntries) {
+					os.writeUTF(e.getKey());
+					os.writeLong(e.getValue().size);
+					os.writeLong(e.getValue().mtime);
+					writeEntry(e.getValue().entry, os);
+				}
+
+				List<Map.Entry<Long, Entry>> nestedEntries = new ArrayList<>(nested.entrySet());
+				os.writeInt(nestedEntries.size());
+
+				for (Map.Entry<Long, Entry> e : nestedEntries) {
+					os.writeLong(e.getKey());
+					writeEntry(e.getValue(), os);
+				}
+			}
+
+			LoaderUtil.replaceFile(tmpFile, file);
+		} catch (IOException e) {
+			Log.warn(LogCategory.DISCOVERY, "Error writing mod discovery index %s", file, e);
+
+			try {
+				Files.deleteIfExists(tmpFile);
+			} catch (IOException e2) {
+				// ignore
+			}
+		}
+	}
+
+	private static void writeEntry(Entry entry, DataOutputStream os) throws IOException {
+		if (entry.metadata == null) {
+			os.writeInt(-1);
+		} else {
+			os.writeInt(entry.metadata.length);
+			os.write(entry.metadata);
+		}
+
+		os.writeInt(entry.nestedJars.size());
+
+		for (NestedEntry jar : entry.nestedJars) {
+			os.writeUTF(jar.name);
+			os.writeLong(jar.hash);
+		}
+	}
+}
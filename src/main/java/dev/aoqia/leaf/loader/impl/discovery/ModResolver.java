@@ -81,6 +81,10 @@ public class ModResolver {
 			}
 		}
 
+		// fingerprint the candidates before preselection takes builtin mods and their id duplicates out
+
+		ResolutionCache cache = ResolutionCache.create(allModsSorted, envType);
+
 		// preselect mods, check for builtin mod collisions
 
 		List<ModCandidateImpl> preselectedMods = new ArrayList<>();
@@ -116,11 +120,18 @@ public class ModResolver {
 
 		ModSolver.Result result;
 
-		try {
-			result = ModSolver.solve(allModsSorted, modsById,
-					selectedMods, uniqueSelectedMods);
-		} catch (ContradictionException | TimeoutException e) {
-			throw new ModResolutionException("Solving failed", e);
+		if (cache != null && cache.apply(allModsSorted, selectedMods, uniqueSelectedMods)) {
+			Log.debug(LogCategory.RESOLUTION, "Reusing mod selection from the previous launch");
+			result = ModSolver.Result.createSuccess();
+		} else {
+			try {
+				result = ModSolver.solve(allModsSorted, modsById,
+						selectedMods, uniqueSelectedMods);
+			} catch (ContradictionException | TimeoutException e) {
+				throw new ModResolutionException("Solving failed", e);
+			}
+
+			if (result.success && cache != null) cache.write(uniqueSelectedMods);
 		}
 
 		if (!result.success) {
@@ -172,6 +183,14 @@ public class ModResolver {
 			}
 		}
 
+		// env disabled mods are only kept for the dependency softening above, their data isn't needed anymore
+
+		for (Set<ModCandidateImpl> mods : envDisabledMods.values()) {
+			for (ModCandidateImpl mod : mods) {
+				mod.clearCachedData();
+			}
+		}
+
 		// recompute minNestLevel (may have changed due to parent associations having been dropped by the above step)
 
 		{
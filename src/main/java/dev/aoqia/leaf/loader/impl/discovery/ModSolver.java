@@ -17,6 +17,7 @@
 package dev.aoqia.leaf.loader.impl.discovery;
 
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,9 +27,19 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import org.sat4j.pb.IPBSolver;
@@ -52,8 +63,22 @@ import dev.aoqia.leaf.loader.impl.util.version.SemanticVersionImpl;
 import dev.aoqia.leaf.loader.impl.util.version.VersionPredicateParser;
 
 final class ModSolver {
+	private static final boolean DISABLE_REDUCTION = SystemProperties.isSet(SystemProperties.DEBUG_DISABLE_SOLVER_REDUCTION);
+
 	static Result solve(List<ModCandidateImpl> allModsSorted, Map<String, List<ModCandidateImpl>> modsById,
 			Map<String, ModCandidateImpl> selectedMods, List<ModCandidateImpl> uniqueSelectedMods) throws ContradictionException, TimeoutException, ModResolutionException {
+		return solve(allModsSorted, modsById, selectedMods, uniqueSelectedMods, !DISABLE_REDUCTION);
+	}
+
+	static Result solve(List<ModCandidateImpl> allModsSorted, Map<String, List<ModCandidateImpl>> modsById,
+			Map<String, ModCandidateImpl> selectedMods, List<ModCandidateImpl> uniqueSelectedMods,
+			boolean reduce) throws ContradictionException, TimeoutException, ModResolutionException {
+		// try the reduced problem first, failures get analyzed on the full problem to keep the explanations accurate
+
+		if (reduce && solveReduced(allModsSorted, modsById, selectedMods, uniqueSelectedMods)) {
+			return Result.createSuccess();
+		}
+
 		// build priority index
 
 		Map<ModCandidateImpl, Integer> priorities = new IdentityHashMap<>(allModsSorted.size());
@@ -66,12 +91,7 @@ final class ModSolver {
 
 		solverPrepTime = System.nanoTime();
 
-		IPBSolver solver = SolverFactory.newDefaultOptimizer();
-
-		int timeout = Integer.getInteger(SystemProperties.DEBUG_RESOLUTION_TIMEOUT, 60);
-		if (timeout > 0) solver.setTimeout(timeout); // in seconds
-
-		DependencyHelper<DomainObject, Explanation> dependencyHelper = createDepHelper(solver);
+		DependencyHelper<DomainObject, Explanation> dependencyHelper = createDepHelper(createSolver());
 
 		setupSolver(allModsSorted, modsById,
 				priorities, selectedMods, uniqueSelectedMods,
@@ -105,37 +125,381 @@ final class ModSolver {
 
 			return Result.createSuccess();
 		} else { // no solution
-			Set<Explanation> reason = dependencyHelper.why();
+			return analyzeFailure(allModsSorted, modsById,
+					priorities, selectedMods, uniqueSelectedMods,
+					dependencyHelper);
+		}
+	}
 
-			// gather all failed deps
+	/**
+	 * Determine the reasons for the failed solve and a fix.
+	 *
+	 * <p>The unsatisfiable core gets extracted on the calling thread while two fix searches run concurrently on their
+	 * own solvers: the regular one, simulating disabled dependencies first and then mod removal and installation for
+	 * the failed dependencies, and a removal-only one as fallback. All of them share one deadline derived from the
+	 * resolution timeout, whatever is done by then gets reported. The regular fix is preferred if it is acceptable.
+	 *
+	 * <p>Sharing the inputs between the threads is safe because all of them are only read: allModsSorted, modsById,
+	 * priorities, selectedMods, uniqueSelectedMods and the candidates aren't modified by any analysis step and the caller
+	 * is blocked until this method returns. Submitting the tasks publishes them to the workers, each task collects its
+	 * results in its own collections and Explanation ids are atomic.
+	 *
+	 * <p>{@code leaf.debug.serialResolutionAnalysis} runs all steps on the calling thread one after another instead.
+	 */
+	private static Result analyzeFailure(List<ModCandidateImpl> allModsSorted, Map<String, List<ModCandidateImpl>> modsById,
+			Map<ModCandidateImpl, Integer> priorities, Map<String, ModCandidateImpl> selectedMods, List<ModCandidateImpl> uniqueSelectedMods,
+			DependencyHelper<DomainObject, Explanation> dependencyHelper) {
+		long startTime = System.nanoTime();
+		int timeout = Integer.getInteger(SystemProperties.DEBUG_RESOLUTION_TIMEOUT, 60);
+		long deadline = timeout > 0 ? startTime + TimeUnit.SECONDS.toNanos(timeout) : Long.MAX_VALUE;
+		ExecutorService executor;
 
-			Set<ModDependency> failedDeps = Collections.newSetFromMap(new IdentityHashMap<>());
-			List<Explanation> failedExplanations = new ArrayList<>();
+		if (SystemProperties.isSet(SystemProperties.DEBUG_SERIAL_RESOLUTION_ANALYSIS)) {
+			executor = null;
+		} else {
+			AtomicInteger threadIndex = new AtomicInteger();
 
-			computeFailureCausesOptional(allModsSorted, modsById,
-					priorities, selectedMods, uniqueSelectedMods,
-					reason, dependencyHelper,
-					failedDeps, failedExplanations);
+			executor = Executors.newFixedThreadPool(2, task -> {
+				Thread thread = new Thread(task, "Leaf Mod Resolution " + threadIndex.incrementAndGet());
+				thread.setDaemon(true);
 
-			// find best solution with mod addition/removal
+				return thread;
+			});
+		}
+
+		try {
+			FutureTask<FailureCauses> causesFuture = new FutureTask<>(() -> {
+				// gather all failed deps
+
+				Set<ModDependency> failedDeps = Collections.newSetFromMap(new IdentityHashMap<>());
+				List<Explanation> failedExplanations = new ArrayList<>();
+
+				computeFailureCausesOptional(allModsSorted, modsById,
+						priorities, selectedMods, uniqueSelectedMods,
+						deadline,
+						failedDeps, failedExplanations);
+
+				// find best solution with mod addition/removal
 
-			fixSetupTime = System.nanoTime();
+				fixSetupTime = System.nanoTime();
 
-			Fix fix = computeFix(uniqueSelectedMods, allModsSorted, modsById,
+				Fix fix = computeFix(uniqueSelectedMods, allModsSorted, modsById,
+						priorities, selectedMods,
+						failedDeps, deadline, true);
+
+				fixEndTime = System.nanoTime();
+
+				return new FailureCauses(failedExplanations, fix);
+			});
+
+			FutureTask<Fix> removalFixFuture = new FutureTask<>(() -> computeFix(uniqueSelectedMods, allModsSorted, modsById,
 					priorities, selectedMods,
-					failedDeps, dependencyHelper);
+					Collections.emptySet(), deadline, false));
+
+			if (executor != null) {
+				executor.execute(causesFuture);
+				executor.execute(removalFixFuture);
+			}
+
+			Set<Explanation> reason;
+
+			try {
+				setTimeout(dependencyHelper.getSolver(), deadline);
+				reason = dependencyHelper.why();
+			} catch (TimeoutException e) {
+				Log.warn(LogCategory.RESOLUTION, "Timed out determining the mod resolution failure reason");
+				reason = Collections.emptySet();
+			} finally {
+				dependencyHelper.reset();
+			}
+
+			if (executor == null) causesFuture.run();
+
+			FailureCauses causes = await(causesFuture, deadline, "failure cause and fix search");
+			Fix fix = causes != null ? causes.fix : null;
+
+			if (fix == null) {
+				if (executor == null) removalFixFuture.run();
+
+				fix = await(removalFixFuture, deadline, "removal fix search");
+			} else {
+				removalFixFuture.cancel(true);
+			}
+
+			if (causes != null) {
+				Log.debug(LogCategory.RESOLUTION, "Mod resolution failure analysis took %.1f ms, fix setup %.1f ms, fix solve %.1f ms",
+						(System.nanoTime() - startTime) * 1e-6,
+						(fixSolveTime - fixSetupTime) * 1e-6,
+						(fixEndTime - fixSolveTime) * 1e-6);
+			}
+
+			return Result.createFailure(reason, causes != null ? causes.failedExplanations : Collections.emptyList(), fix);
+		} finally {
+			if (executor != null) executor.shutdownNow();
+		}
+	}
+
+	private static <T> T await(Future<T> future, long deadline, String desc) {
+		try {
+			if (deadline == Long.MAX_VALUE) return future.get();
+
+			return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+		} catch (java.util.concurrent.TimeoutException e) {
+			Log.warn(LogCategory.RESOLUTION, "Timed out in mod resolution %s", desc);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException) {
+				Log.warn(LogCategory.RESOLUTION, "Timed out in mod resolution %s", desc);
+			} else {
+				Log.warn(LogCategory.RESOLUTION, "Mod resolution %s failed", desc, e.getCause());
+			}
+		}
+
+		future.cancel(true);
+
+		return null;
+	}
+
+	private static final class FailureCauses {
+		final List<Explanation> failedExplanations;
+		final Fix fix; // may be null
+
+		FailureCauses(List<Explanation> failedExplanations, Fix fix) {
+			this.failedExplanations = failedExplanations;
+			this.fix = fix;
+		}
+	}
+
+	/**
+	 * Solve a reduced copy of the problem, applying the result to selectedMods and uniqueSelectedMods on success.
+	 *
+	 * <p>Mods that are part of every solution get preselected before building the SAT problem, see
+	 * {@link #reduce}. Preselected mods aren't checked as thoroughly by the constraints, so the result is verified
+	 * afterwards.
+	 *
+	 * @return whether a verified solution was found, false if the full problem has to be solved
+	 */
+	private static boolean solveReduced(List<ModCandidateImpl> allModsSorted, Map<String, List<ModCandidateImpl>> modsById,
+			Map<String, ModCandidateImpl> selectedMods, List<ModCandidateImpl> uniqueSelectedMods) throws ContradictionException, TimeoutException, ModResolutionException {
+		List<ModCandidateImpl> reducedMods = new ArrayList<>(allModsSorted);
+		Map<String, List<ModCandidateImpl>> reducedModsById = new LinkedHashMap<>(modsById.size());
+		Map<String, ModCandidateImpl> reducedSelectedMods = new HashMap<>(selectedMods);
+		List<ModCandidateImpl> reducedUniqueSelectedMods = new ArrayList<>(uniqueSelectedMods);
+
+		for (Map.Entry<String, List<ModCandidateImpl>> entry : modsById.entrySet()) {
+			reducedModsById.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+		}
+
+		reduce(reducedMods, reducedModsById, reducedSelectedMods, reducedUniqueSelectedMods);
+
+		Log.debug(LogCategory.RESOLUTION, "Reduced solver input from %d to %d mods", allModsSorted.size(), reducedMods.size());
+
+		if (reducedMods.size() == allModsSorted.size()) return false; // nothing to gain
+
+		if (!reducedMods.isEmpty()) {
+			Map<ModCandidateImpl, Integer> priorities = new IdentityHashMap<>(reducedMods.size());
+
+			for (int i = 0; i < reducedMods.size(); i++) {
+				priorities.put(reducedMods.get(i), i);
+			}
+
+			DependencyHelper<DomainObject, Explanation> dependencyHelper = createDepHelper(createSolver());
+
+			try {
+				setupSolver(reducedMods, reducedModsById,
+						priorities, reducedSelectedMods, reducedUniqueSelectedMods,
+						false, null, false,
+						dependencyHelper);
+			} catch (ContradictionException e) { // trivially unsatisfiable, leave it to the full problem
+				return false;
+			}
+
+			if (!dependencyHelper.hasASolution()) return false;
+
+			for (DomainObject obj : dependencyHelper.getASolution()) {
+				if (obj instanceof ModCandidateImpl) {
+					ModResolver.selectMod((ModCandidateImpl) obj, reducedSelectedMods, reducedUniqueSelectedMods);
+				}
+			}
 
 			dependencyHelper.reset();
+		}
+
+		for (ModCandidateImpl mod : reducedUniqueSelectedMods) {
+			if (!hasAllDepsSatisfied(mod, reducedSelectedMods)
+					|| !mod.isRoot() && !isAnyParentSelected(mod, reducedSelectedMods)) {
+				Log.debug(LogCategory.RESOLUTION, "Reduced solution invalid for %s, solving the full problem", mod);
+				return false;
+			}
+		}
+
+		selectedMods.putAll(reducedSelectedMods);
+		uniqueSelectedMods.clear();
+		uniqueSelectedMods.addAll(reducedUniqueSelectedMods);
+
+		return true;
+	}
+
+	/**
+	 * Shrink the problem to its contested core by preselecting mods that are selected in every solution.
+	 *
+	 * <ul>
+	 * <li>root mods that must be loaded and are the only candidate for their id and provided ids
+	 * <li>the only candidate for a hard dependency of a preselected mod
+	 * </ul>
+	 *
+	 * <p>Mods that some candidate declares breaking are left to the solver. Nested mods without any parent left in the
+	 * problem can't be selected and get removed entirely. Fixed selections don't contribute to the objective, so the
+	 * reduced problem has the same optimum as long as the full one has a solution.
+	 */
+	static void reduce(List<ModCandidateImpl> allModsSorted, Map<String, List<ModCandidateImpl>> modsById,
+			Map<String, ModCandidateImpl> selectedMods, List<ModCandidateImpl> uniqueSelectedMods) throws ModResolutionException {
+		Set<String> brokenIds = new HashSet<>();
+
+		for (ModCandidateImpl mod : allModsSorted) {
+			for (ModDependency dep : mod.getDependencies()) {
+				if (dep.getKind() == ModDependency.Kind.BREAKS) brokenIds.add(dep.getModId());
+			}
+		}
+
+		for (ModCandidateImpl mod : uniqueSelectedMods) {
+			for (ModDependency dep : mod.getDependencies()) {
+				if (dep.getKind() == ModDependency.Kind.BREAKS) brokenIds.add(dep.getModId());
+			}
+		}
+
+		// preselect forced mods and propagate
+
+		Queue<ModCandidateImpl> queue = new ArrayDeque<>(uniqueSelectedMods);
+
+		for (List<ModCandidateImpl> variants : modsById.values()) {
+			ModCandidateImpl mod = variants.get(0);
+
+			if (variants.size() == 1 && mod.isRoot() && mod.getLoadCondition() == ModLoadCondition.ALWAYS) {
+				queue.add(mod);
+			}
+		}
+
+		ModCandidateImpl mod;
+
+		while ((mod = queue.poll()) != null) {
+			if (selectedMods.get(mod.getId()) != mod) {
+				if (!isUncontested(mod, modsById, selectedMods, brokenIds)) continue;
+
+				ModResolver.preselectMod(mod, allModsSorted, modsById, selectedMods, uniqueSelectedMods);
+			}
+
+			for (ModDependency dep : mod.getDependencies()) {
+				if (dep.getKind() != ModDependency.Kind.DEPENDS || selectedMods.containsKey(dep.getModId())) continue;
+
+				List<ModCandidateImpl> variants = modsById.get(dep.getModId());
+				if (variants == null || variants.size() != 1) continue;
+
+				ModCandidateImpl target = variants.get(0);
+
+				if (dep.matches(target.getVersion()) && (target.isRoot() || isAnyParentSelected(target, selectedMods))) {
+					queue.add(target);
+				}
+			}
+		}
+
+		// remove nested mods without selectable parents
+
+		Set<ModCandidateImpl> remaining = Collections.newSetFromMap(new IdentityHashMap<>(allModsSorted.size()));
+		remaining.addAll(allModsSorted);
+		boolean changed;
 
-			return Result.createFailure(reason, failedExplanations, fix);
+		do {
+			changed = false;
+
+			for (Iterator<ModCandidateImpl> it = allModsSorted.iterator(); it.hasNext(); ) {
+				ModCandidateImpl m = it.next();
+				if (m.isRoot() || isAnyParentSelected(m, selectedMods)) continue;
+
+				boolean hasParent = false;
+
+				for (ModCandidateImpl parent : m.getParentMods()) {
+					if (remaining.contains(parent)) {
+						hasParent = true;
+						break;
+					}
+				}
+
+				if (hasParent) continue;
+
+				it.remove();
+				remaining.remove(m);
+				removeById(m, m.getId(), modsById);
+
+				for (String provided : m.getProvides()) {
+					removeById(m, provided, modsById);
+				}
+
+				changed = true;
+			}
+		} while (changed);
+	}
+
+	private static boolean isUncontested(ModCandidateImpl mod, Map<String, List<ModCandidateImpl>> modsById, Map<String, ModCandidateImpl> selectedMods,
+			Set<String> brokenIds) {
+		if (!isSoleCandidate(mod, mod.getId(), modsById, selectedMods, brokenIds)) return false;
+
+		for (String provided : mod.getProvides()) {
+			if (!isSoleCandidate(mod, provided, modsById, selectedMods, brokenIds)) return false;
 		}
+
+		return true;
+	}
+
+	private static boolean isSoleCandidate(ModCandidateImpl mod, String id, Map<String, List<ModCandidateImpl>> modsById, Map<String, ModCandidateImpl> selectedMods,
+			Set<String> brokenIds) {
+		List<ModCandidateImpl> variants = modsById.get(id);
+
+		return variants != null && variants.size() == 1 && variants.get(0) == mod
+				&& !selectedMods.containsKey(id)
+				&& !brokenIds.contains(id);
+	}
+
+	private static void removeById(ModCandidateImpl mod, String id, Map<String, List<ModCandidateImpl>> modsById) {
+		List<ModCandidateImpl> variants = modsById.get(id);
+		if (variants == null) return;
+
+		variants.remove(mod);
+		if (variants.isEmpty()) modsById.remove(id);
+	}
+
+	private static IPBSolver createSolver() {
+		IPBSolver solver = SolverFactory.newDefaultOptimizer();
+
+		int timeout = Integer.getInteger(SystemProperties.DEBUG_RESOLUTION_TIMEOUT, 60);
+		if (timeout > 0) solver.setTimeout(timeout); // in seconds
+
+		return solver;
+	}
+
+	private static IPBSolver createSolver(long deadline) {
+		IPBSolver solver = SolverFactory.newDefaultOptimizer();
+		setTimeout(solver, deadline);
+
+		return solver;
+	}
+
+	private static void setTimeout(IPBSolver solver, long deadline) throws TimeoutException {
+		if (deadline == Long.MAX_VALUE) return;
+
+		long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		if (remaining <= 0) throw new TimeoutException("deadline exceeded");
+
+		solver.setTimeoutMs(remaining);
 	}
 
 	static long solverPrepTime;
 	static long solveTime;
 	static long solutionFetchTime;
 	static long solutionAnalyzeTime;
-	static long fixSetupTime;
+	static volatile long fixSetupTime;
+	static volatile long fixEndTime;
 
 	static class Result {
 		final boolean success;
@@ -161,10 +525,9 @@ final class ModSolver {
 
 	private static void computeFailureCausesOptional(List<ModCandidateImpl> allModsSorted, Map<String, List<ModCandidateImpl>> modsById,
 			Map<ModCandidateImpl, Integer> priorities, Map<String, ModCandidateImpl> selectedMods, List<ModCandidateImpl> uniqueSelectedMods,
-			Set<Explanation> reason, DependencyHelper<DomainObject, Explanation> dependencyHelper,
+			long deadline,
 			Set<ModDependency> failedDeps, List<Explanation> failedExplanations) throws ContradictionException, TimeoutException {
-		dependencyHelper.reset();
-		dependencyHelper = createDepHelper(dependencyHelper.getSolver()); // dependencyHelper.reset doesn't fully reset the dep helper
+		DependencyHelper<DomainObject, Explanation> dependencyHelper = createDepHelper(createSolver(deadline));
 
 		setupSolver(allModsSorted, modsById,
 				priorities, selectedMods, uniqueSelectedMods,
@@ -205,7 +568,7 @@ final class ModSolver {
 
 	private static Fix computeFix(List<ModCandidateImpl> uniqueSelectedMods, List<ModCandidateImpl> allModsSorted, Map<String, List<ModCandidateImpl>> modsById,
 			Map<ModCandidateImpl, Integer> priorities, Map<String, ModCandidateImpl> selectedMods,
-			Set<ModDependency> failedDeps, DependencyHelper<DomainObject, Explanation> dependencyHelper) throws ContradictionException, TimeoutException {
+			Set<ModDependency> failedDeps, long deadline, boolean recordTiming) throws ContradictionException, TimeoutException {
 		// group positive deps by mod id
 		Map<String, Set<Collection<VersionPredicate>>> depsById = new HashMap<>();
 
@@ -300,10 +663,9 @@ final class ModSolver {
 
 		// check the determined solution
 
-		fixSolveTime = System.nanoTime();
+		if (recordTiming) fixSolveTime = System.nanoTime();
 
-		dependencyHelper.reset();
-		dependencyHelper = createDepHelper(dependencyHelper.getSolver()); // dependencyHelper.reset doesn't fully reset the dep helper
+		DependencyHelper<DomainObject, Explanation> dependencyHelper = createDepHelper(createSolver(deadline));
 
 		setupSolver(allModsSorted, modsById,
 				priorities, selectedMods, uniqueSelectedMods,
@@ -446,7 +808,7 @@ final class ModSolver {
 		return new Fix(modsToAdd, modsToRemove, modReplacements, activeMods, inactiveMods);
 	}
 
-	static long fixSolveTime;
+	static volatile long fixSolveTime;
 
 	private static Version deriveVersion(VersionInterval interval) {
 		if (!interval.isSemantic()) {
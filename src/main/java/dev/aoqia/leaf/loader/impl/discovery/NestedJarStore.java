@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Locale;
+
+import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
+import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
+import dev.aoqia.leaf.loader.impl.util.MappedZipFile;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * Provides nested jar contents without holding them on the heap.
+ *
+ * <p>Stored nested jars are used in place as a slice of their parent's buffer. Compressed ones get inflated into
+ * {@code nestedJars} in the leaf dir once, named by {@link ModCandidateImpl#hash}, and mapped from there. Both end up
+ * backed by the page cache instead of the heap.
+ */
+final class NestedJarStore {
+	private static final String FILE_SUFFIX = ".jar";
+
+	static ByteBuffer get(MappedZipFile parent, MappedZipFile.Entry entry, long hash) throws IOException {
+		if (entry.isStored()) {
+			return parent.getStoredData(entry);
+		}
+
+		Path dir = getDir();
+
+		if (dir == null) { // no leaf dir to spill to
+			return ByteBuffer.wrap(parent.read(entry.getName()));
+		}
+
+		Path file = dir.resolve(getFileName(hash));
+
+		if (!Files.isRegularFile(file) || Files.size(file) != entry.getSize()) {
+			Files.createDirectories(dir);
+			Path tmpFile = Files.createTempFile(dir, "spill", ".tmp");
+
+			try {
+				try (InputStream is = parent.getInputStream(entry)) {
+					Files.copy(is, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+				}
+
+				LoaderUtil.replaceFile(tmpFile, file);
+			} catch (IOException e) {
+				Files.deleteIfExists(tmpFile);
+
+				// tolerate a concurrent spill of the same jar, the mapped target can't be replaced on some platforms
+				if (!Files.isRegularFile(file) || Files.size(file) != entry.getSize()) throw e;
+			}
+		}
+
+		return MappedZipFile.map(file);
+	}
+
+	/**
+	 * Remove spilled jars that aren't part of any of the discovery indexes anymore.
+	 */
+	static void cleanUp(Collection<ModDiscoveryIndex> indexes) {
+		Path dir = getDir();
+		if (dir == null) return;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path file : stream) {
+				String name = file.getFileName().toString();
+				boolean keep;
+
+				if (name.endsWith(FILE_SUFFIX)) {
+					try {
+						long hash = Long.parseUnsignedLong(name.substring(0, name.length() - FILE_SUFFIX.length()), 16);
+						keep = false;
+
+						for (ModDiscoveryIndex index : indexes) {
+							if (index.containsNested(hash)) {
+								keep = true;
+								break;
+							}
+						}
+					} catch (NumberFormatException e) {
+						keep = false;
+					}
+				} else {
+					keep = false;
+				}
+
+				if (!keep) {
+					try {
+						Files.deleteIfExists(file);
+					} catch (IOException e) {
+						Log.debug(LogCategory.DISCOVERY, "Can't delete stale nested jar %s", file, e);
+					}
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// nothing spilled yet
+		} catch (IOException e) {
+			Log.warn(LogCategory.DISCOVERY, "Error cleaning up nested jars in %s", dir, e);
+		}
+	}
+
+	private static Path getDir() {
+		Path leafDir = LeafLoaderImpl.INSTANCE.getLeafDir();
+
+		return leafDir != null ? leafDir.resolve(LeafLoaderImpl.NESTED_JARS_DIR_NAME) : null;
+	}
+
+	private static String getFileName(long hash) {
+		return String.format(Locale.ENGLISH, "%016x%s", hash, FILE_SUFFIX);
+	}
+}
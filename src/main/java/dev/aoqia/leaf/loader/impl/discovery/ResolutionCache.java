@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.discovery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.aoqia.leaf.api.EnvType;
+import dev.aoqia.leaf.loader.api.metadata.ModDependency;
+import dev.aoqia.leaf.loader.api.metadata.version.VersionPredicate;
+import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
+import dev.aoqia.leaf.loader.impl.util.HashUtil;
+import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
+import dev.aoqia.leaf.loader.impl.util.SystemProperties;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * Persisted mod selection of the last successful resolution.
+ *
+ * <p>The selection is keyed by a fingerprint over every candidate's id, version, origin, provides and dependencies. A
+ * launch with the same fingerprint re-applies the stored selection instead of running the solver, after checking that
+ * it still satisfies all hard dependencies and nesting constraints.
+ */
+final class ResolutionCache {
+	private static final int FORMAT_VERSION = 1;
+	private static final String FILE_NAME = "resolution.bin";
+
+	private final Path file;
+	private final String fingerprint;
+
+	private ResolutionCache(Path file, String fingerprint) {
+		this.file = file;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Create the cache for the supplied candidates.
+	 *
+	 * @return the cache or null if it is disabled or there is no leaf dir to store it in
+	 */
+	static ResolutionCache create(Collection<ModCandidateImpl> candidates, EnvType envType) {
+		if (SystemProperties.isSet(SystemProperties.DEBUG_DISABLE_RESOLUTION_CACHE)) return null;
+
+		Path leafDir = LeafLoaderImpl.INSTANCE.getLeafDir();
+		if (leafDir == null) return null;
+
+		List<String> descriptors = new ArrayList<>(candidates.size());
+
+		for (ModCandidateImpl mod : candidates) {
+			descriptors.add(getDescriptor(mod));
+		}
+
+		Collections.sort(descriptors);
+
+		MessageDigest digest = HashUtil.newSha256();
+		HashUtil.update(digest, "format", Integer.toString(FORMAT_VERSION));
+		HashUtil.update(digest, "loader", LeafLoaderImpl.VERSION);
+		HashUtil.update(digest, "env", envType.name());
+
+		for (String descriptor : descriptors) {
+			HashUtil.update(digest, "mod", descriptor);
+		}
+
+		return new ResolutionCache(leafDir.resolve(FILE_NAME), HashUtil.toHex(digest.digest()));
+	}
+
+	/**
+	 * Apply the stored selection if it matches the candidates and is still valid.
+	 *
+	 * <p>The selection only gets applied in full, selectedMods and uniqueSelectedMods stay as they are otherwise.
+	 *
+	 * @param candidates candidates that aren't preselected yet
+	 * @return whether the stored selection got applied
+	 */
+	boolean apply(List<ModCandidateImpl> candidates, Map<String, ModCandidateImpl> selectedMods, List<ModCandidateImpl> uniqueSelectedMods) {
+		List<String> keys = read();
+		if (keys == null) return false;
+
+		Map<String, List<ModCandidateImpl>> candidatesByKey = new HashMap<>(candidates.size());
+
+		for (ModCandidateImpl mod : candidates) {
+			candidatesByKey.computeIfAbsent(getKey(mod), ignore -> new ArrayList<>(1)).add(mod);
+		}
+
+		for (ModCandidateImpl mod : uniqueSelectedMods) {
+			if (!keys.remove(getKey(mod))) return false;
+		}
+
+		Map<String, ModCandidateImpl> newSelectedMods = new HashMap<>(selectedMods);
+		List<ModCandidateImpl> newUniqueSelectedMods = new ArrayList<>(uniqueSelectedMods);
+
+		try {
+			for (String key : keys) {
+				List<ModCandidateImpl> mods = candidatesByKey.get(key);
+				if (mods == null || mods.isEmpty()) return false;
+
+				ModResolver.selectMod(mods.remove(0), newSelectedMods, newUniqueSelectedMods);
+			}
+		} catch (ModResolutionException e) { // duplicate id
+			return false;
+		}
+
+		for (ModCandidateImpl mod : newUniqueSelectedMods) {
+			if (!ModSolver.hasAllDepsSatisfied(mod, newSelectedMods)
+					|| !mod.isRoot() && !ModSolver.isAnyParentSelected(mod, newSelectedMods)) {
+				return false;
+			}
+		}
+
+		selectedMods.putAll(newSelectedMods);
+		uniqueSelectedMods.clear();
+		uniqueSelectedMods.addAll(newUniqueSelectedMods);
+
+		return true;
+	}
+
+	private List<String> read() {
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (is.readInt() != FORMAT_VERSION || !is.readUTF().equals(fingerprint)) return null;
+
+			int count = is.readInt();
+			List<String> ret = new ArrayList<>(count);
+
+			for (int i = 0; i < count; i++) {
+				ret.add(is.readUTF());
+			}
+
+			return ret;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			Log.debug(LogCategory.RESOLUTION, "Error reading resolution cache %s", file, e);
+			return null;
+		}
+	}
+
+	void write(Collection<ModCandidateImpl> selectedMods) {
+		Path tmpFile = file.resolveSibling(FILE_NAME + ".tmp");
+
+		try {
+			Files.createDirectories(file.getParent());
+
+			try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				os.writeInt(FORMAT_VERSION);
+				os.writeUTF(fingerprint);
+				os.writeInt(selectedMods.size());
+
+				for (ModCandidateImpl mod : selectedMods) {
+					os.writeUTF(getKey(mod));
+				}
+			}
+
+			LoaderUtil.replaceFile(tmpFile, file);
+		} catch (IOException e) {
+			Log.warn(LogCategory.RESOLUTION, "Error writing resolution cache %s", file, e);
+
+			try {
+				Files.deleteIfExists(tmpFile);
+			} catch (IOException e2) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Get the key identifying a candidate within the same candidate set.
+	 */
+	private static String getKey(ModCandidateImpl mod) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(mod.getId()).append(' ').append(mod.getVersion().getFriendlyString());
+
+		if (mod.isBuiltin()) {
+			sb.append(" builtin");
+		} else if (mod.hasPath()) {
+			sb.append(" path ").append(mod.getOriginPaths());
+		} else {
+			List<String> parents = new ArrayList<>(mod.getParentMods().size());
+
+			for (ModCandidateImpl parent : mod.getParentMods()) {
+				parents.add(parent.getId() + " " + parent.getVersion().getFriendlyString());
+			}
+
+			Collections.sort(parents);
+			sb.append(" nested ").append(mod.getLocalPath()).append(" in ").append(parents);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Get the key plus everything the solver considers about a candidate.
+	 */
+	private static String getDescriptor(ModCandidateImpl mod) {
+		StringBuilder sb = new StringBuilder(getKey(mod));
+		List<String> provides = new ArrayList<>(mod.getProvides());
+		Collections.sort(provides);
+		sb.append(" root ").append(mod.isRoot());
+		sb.append(" provides ").append(provides);
+
+		List<String> deps = new ArrayList<>(mod.getDependencies().size());
+
+		for (ModDependency dep : mod.getDependencies()) {
+			StringBuilder depSb = new StringBuilder();
+			depSb.append(dep.getKind().getKey()).append(' ').append(dep.getModId());
+
+			for (VersionPredicate predicate : dep.getVersionRequirements()) {
+				depSb.append(' ').append(predicate);
+			}
+
+			deps.add(depSb.toString());
+		}
+
+		Collections.sort(deps);
+		sb.append(" deps ").append(deps);
+
+		return sb.toString();
+	}
+}
@@ -20,14 +20,17 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -35,7 +38,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.objectweb.asm.commons.Remapper;
 
@@ -48,7 +53,10 @@ import dev.aoqia.leaf.loader.impl.FormattedException;
 import dev.aoqia.leaf.loader.impl.launch.LeafLauncher;
 import dev.aoqia.leaf.loader.impl.launch.LeafLauncherBase;
 import dev.aoqia.leaf.loader.impl.launch.MappingConfiguration;
+import dev.aoqia.leaf.loader.impl.models.JarHashCache;
 import dev.aoqia.leaf.loader.impl.util.FileSystemUtil;
+import dev.aoqia.leaf.loader.impl.util.HashUtil;
+import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
 import dev.aoqia.leaf.loader.impl.util.ManifestUtil;
 import dev.aoqia.leaf.loader.impl.util.SystemProperties;
 import dev.aoqia.leaf.loader.impl.util.log.Log;
@@ -66,6 +74,22 @@ public final class RuntimeModRemapper {
 	private static final String REMAP_TYPE_MIXIN = "mixin";
 	private static final String REMAP_TYPE_STATIC = "static";
 
+	private static final int CACHE_FORMAT_VERSION = 2;
+	private static final String CACHE_DIR_NAME = "remapped";
+	private static final String INPUT_HASHES_FILE_NAME = "input_hashes.txt";
+	private static final Pattern CACHE_FILE_PATTERN = Pattern.compile(".+-[0-9a-f]{32}\\.jar");
+
+	/**
+	 * Remap the mods requiring it into the runtime namespace.
+	 *
+	 * <p>The output jars are content addressed, named by a key over the contents of all remapped mods and the remap
+	 * classpath, the mappings, the namespaces and the class tweakers of all remapped mods. Every mod sees the others
+	 * while remapping, so a change to any input invalidates all outputs. Only mods without an output for their current
+	 * key get passed through tiny remapper, the others reuse the output from a previous launch.
+	 *
+	 * <p>The input hashes are kept in a {@link JarHashCache} next to the outputs, so unchanged inputs don't get hashed
+	 * again.
+	 */
 	public static void remap(Collection<ModCandidateImpl> modCandidates, Path tmpDir, Path outputDir) {
 		List<ModCandidateImpl> modsToRemap = new ArrayList<>();
 		Set<InputTag> remapMixins = new HashSet<>();
@@ -76,14 +100,26 @@ public final class RuntimeModRemapper {
 			}
 		}
 
-		if (modsToRemap.isEmpty()) return;
+		Path cacheDir = outputDir.resolve(CACHE_DIR_NAME);
+
+		if (modsToRemap.isEmpty()) {
+			deleteUnusedOutputs(cacheDir, Collections.emptySet());
+			return;
+		}
 
 		MappingConfiguration config = LeafLauncherBase.getLauncher().getMappingConfiguration();
 		String modNs = config.getDefaultModDistributionNamespace();
 		String runtimeNs = config.getRuntimeNamespace();
-		if (modNs.equals(runtimeNs) || !config.hasAnyMappings()) return;
+
+		if (modNs.equals(runtimeNs) || !config.hasAnyMappings()) {
+			deleteUnusedOutputs(cacheDir, Collections.emptySet());
+			return;
+		}
 
 		Map<ModCandidateImpl, RemapInfo> infoMap = new HashMap<>();
+		List<ModCandidateImpl> modsToProcess = new ArrayList<>();
+		JarHashCache inputHashes = new JarHashCache(cacheDir.resolve(INPUT_HASHES_FILE_NAME));
+		inputHashes.read();
 
 		TinyRemapper remapper = null;
 
@@ -102,14 +138,14 @@ public final class RuntimeModRemapper {
 					if (paths.size() != 1) throw new UnsupportedOperationException("multiple path for "+mod);
 
 					info.inputPath = paths.get(0);
+					info.inputHash = inputHashes.getHash(info.inputPath);
 				} else {
 					info.inputPath = mod.copyToDir(tmpDir, true);
 					info.inputIsTemp = true;
+					// temporary copies get a new path and modification time every launch, caching their hash is useless
+					info.inputHash = HashUtil.hashFile(info.inputPath);
 				}
 
-				info.outputPath = outputDir.resolve(mod.getDefaultFileName());
-				Files.deleteIfExists(info.outputPath);
-
 				String classTweaker = mod.getMetadata().getClassTweaker();
 
 				if (classTweaker != null) {
@@ -126,80 +162,118 @@ public final class RuntimeModRemapper {
 				}
 			}
 
-			remapper = TinyRemapper.newRemapper(new TinyRemapperLoggerAdapter(LogCategory.MOD_REMAP))
-					.withMappings(TinyUtils.createMappingProvider(launcher.getMappingConfiguration().getMappings(), modNs, runtimeNs))
-					.renameInvalidLocals(false)
-					.extension(new MixinExtension(remapMixins::contains))
-					.extraAnalyzeVisitor((mrjVersion, className, next) ->
-					mergedClassTweaker.createClassVisitor(LeafLoaderImpl.ASM_VERSION, next, null))
-					.build();
+			List<Path> remapClasspath = getRemapClasspath();
+			String defaultMixinRemapType = System.getProperty(SystemProperties.DEFAULT_MIXIN_REMAP_TYPE, REMAP_TYPE_MIXIN);
+			byte[] sharedKey = computeSharedKey(modsToRemap, infoMap, config, modNs, runtimeNs, remapClasspath, defaultMixinRemapType, inputHashes);
 
 			try {
-				remapper.readClassPathAsync(getRemapClasspath().toArray(new Path[0]));
+				inputHashes.write();
 			} catch (IOException e) {
-				throw new RuntimeException("Failed to populate remap classpath", e);
+				Log.warn(LogCategory.MOD_REMAP, "Error writing remap input hashes %s", cacheDir, e);
 			}
 
-			String defaultMixinRemapType = System.getProperty(SystemProperties.DEFAULT_MIXIN_REMAP_TYPE, REMAP_TYPE_MIXIN);
-
 			for (ModCandidateImpl mod : modsToRemap) {
 				RemapInfo info = infoMap.get(mod);
+				MessageDigest digest = HashUtil.newSha256();
+				digest.update(sharedKey);
+				HashUtil.update(digest, "mod", mod.getId());
 
-				InputTag tag = remapper.createInputTag();
-				info.tag = tag;
+				info.outputPath = cacheDir.resolve(String.format("%s-%s.jar", mod.getId(), HashUtil.toHex(digest.digest(), 16)));
 
-				if (requiresMixinRemap(info.inputPath, defaultMixinRemapType)) {
-					remapMixins.add(tag);
+				if (!Files.isRegularFile(info.outputPath)) {
+					modsToProcess.add(mod);
 				}
-
-				remapper.readInputsAsync(tag, info.inputPath);
 			}
 
-			//Done in a 2nd loop as we need to make sure all the inputs are present before remapping
-			for (ModCandidateImpl mod : modsToRemap) {
-				RemapInfo info = infoMap.get(mod);
-				OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(info.outputPath).build();
+			Log.debug(LogCategory.MOD_REMAP, "Remapping %d mods, %d cached", modsToProcess.size(), modsToRemap.size() - modsToProcess.size());
+
+			if (!modsToProcess.isEmpty()) {
+				Files.createDirectories(cacheDir);
+
+				remapper = TinyRemapper.newRemapper(new TinyRemapperLoggerAdapter(LogCategory.MOD_REMAP))
+						.withMappings(TinyUtils.createMappingProvider(launcher.getMappingConfiguration().getMappings(), modNs, runtimeNs))
+						.renameInvalidLocals(false)
+						.extension(new MixinExtension(remapMixins::contains))
+						.extraAnalyzeVisitor((mrjVersion, className, next) ->
+						mergedClassTweaker.createClassVisitor(LeafLoaderImpl.ASM_VERSION, next, null))
+						.build();
+
+				// cached mods stay visible as class path so the processed mods see the same class hierarchy as before
 
-				FileSystemUtil.FileSystemDelegate delegate = FileSystemUtil.getJarFileSystem(info.inputPath, false);
+				List<Path> classPath = new ArrayList<>(remapClasspath);
 
-				if (delegate.get() == null) {
-					throw new RuntimeException("Could not open JAR file " + info.inputPath.getFileName() + " for NIO reading!");
+				for (ModCandidateImpl mod : modsToRemap) {
+					if (!modsToProcess.contains(mod)) classPath.add(infoMap.get(mod).inputPath);
 				}
 
-				Path inputJar = delegate.get().getRootDirectories().iterator().next();
-				outputConsumer.addNonClassFiles(inputJar, NonClassCopyMode.FIX_META_INF, remapper);
+				remapper.readClassPathAsync(classPath.toArray(new Path[0]));
 
-				info.outputConsumerPath = outputConsumer;
+				for (ModCandidateImpl mod : modsToProcess) {
+					RemapInfo info = infoMap.get(mod);
 
-				remapper.apply(outputConsumer, info.tag);
-			}
+					InputTag tag = remapper.createInputTag();
+					info.tag = tag;
 
-			//Done in a 3rd loop as this can happen when the remapper is doing its thing.
-			for (ModCandidateImpl mod : modsToRemap) {
-				RemapInfo info = infoMap.get(mod);
+					if (requiresMixinRemap(info.inputPath, defaultMixinRemapType)) {
+						remapMixins.add(tag);
+					}
 
-				if (info.classTweaker != null) {
-					info.classTweaker = remapClassTweaker(info.classTweaker, remapper.getEnvironment().getRemapper(), modNs, runtimeNs);
+					remapper.readInputsAsync(tag, info.inputPath);
 				}
-			}
 
-			remapper.finish();
+				//Done in a 2nd loop as we need to make sure all the inputs are present before remapping
+				for (ModCandidateImpl mod : modsToProcess) {
+					RemapInfo info = infoMap.get(mod);
+					info.tmpOutputPath = info.outputPath.resolveSibling(info.outputPath.getFileName().toString() + ".tmp");
+					Files.deleteIfExists(info.tmpOutputPath);
+					OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(info.tmpOutputPath).build();
 
-			for (ModCandidateImpl mod : modsToRemap) {
-				RemapInfo info = infoMap.get(mod);
+					FileSystemUtil.FileSystemDelegate delegate = FileSystemUtil.getJarFileSystem(info.inputPath, false);
 
-				info.outputConsumerPath.close();
+					if (delegate.get() == null) {
+						throw new RuntimeException("Could not open JAR file " + info.inputPath.getFileName() + " for NIO reading!");
+					}
 
-				if (info.classTweakerPath != null) {
-					try (FileSystemUtil.FileSystemDelegate jarFs = FileSystemUtil.getJarFileSystem(info.outputPath, false)) {
-						FileSystem fs = jarFs.get();
+					Path inputJar = delegate.get().getRootDirectories().iterator().next();
+					outputConsumer.addNonClassFiles(inputJar, NonClassCopyMode.FIX_META_INF, remapper);
+
+					info.outputConsumerPath = outputConsumer;
+
+					remapper.apply(outputConsumer, info.tag);
+				}
+
+				//Done in a 3rd loop as this can happen when the remapper is doing its thing.
+				for (ModCandidateImpl mod : modsToProcess) {
+					RemapInfo info = infoMap.get(mod);
+
+					if (info.classTweaker != null) {
+						info.classTweaker = remapClassTweaker(info.classTweaker, remapper.getEnvironment().getRemapper(), modNs, runtimeNs);
+					}
+				}
+
+				remapper.finish();
+
+				for (ModCandidateImpl mod : modsToProcess) {
+					RemapInfo info = infoMap.get(mod);
 
-						Files.delete(fs.getPath(info.classTweakerPath));
-						Files.write(fs.getPath(info.classTweakerPath), info.classTweaker);
+					info.outputConsumerPath.close();
+
+					if (info.classTweakerPath != null) {
+						try (FileSystemUtil.FileSystemDelegate jarFs = FileSystemUtil.getJarFileSystem(info.tmpOutputPath, false)) {
+							FileSystem fs = jarFs.get();
+
+							Files.delete(fs.getPath(info.classTweakerPath));
+							Files.write(fs.getPath(info.classTweakerPath), info.classTweaker);
+						}
 					}
+
+					// only complete outputs may show up under their final name, they count as cached from then on
+					LoaderUtil.replaceFile(info.tmpOutputPath, info.outputPath);
 				}
+			}
 
-				mod.setPaths(Collections.singletonList(info.outputPath));
+			for (ModCandidateImpl mod : modsToRemap) {
+				mod.setPaths(Collections.singletonList(infoMap.get(mod).outputPath));
 			}
 		} catch (Throwable t) {
 			if (remapper != null) {
@@ -207,14 +281,14 @@ public final class RuntimeModRemapper {
 			}
 
 			for (RemapInfo info : infoMap.values()) {
-				if (info.outputPath == null) {
+				if (info.tmpOutputPath == null) {
 					continue;
 				}
 
 				try {
-					Files.deleteIfExists(info.outputPath);
+					Files.deleteIfExists(info.tmpOutputPath);
 				} catch (IOException e) {
-					Log.warn(LogCategory.MOD_REMAP, "Error deleting failed output jar %s", info.outputPath, e);
+					Log.warn(LogCategory.MOD_REMAP, "Error deleting failed output jar %s", info.tmpOutputPath, e);
 				}
 			}
 
@@ -228,6 +302,92 @@ public final class RuntimeModRemapper {
 				}
 			}
 		}
+
+		Set<Path> usedOutputs = new HashSet<>();
+
+		for (RemapInfo info : infoMap.values()) {
+			usedOutputs.add(info.outputPath);
+		}
+
+		deleteUnusedOutputs(cacheDir, usedOutputs);
+	}
+
+	/**
+	 * Compute the part of the cache key that is the same for all mods.
+	 *
+	 * <p>The contents of all mods are included since every mod is part of the class hierarchy the others get remapped
+	 * against, the class tweakers of all mods since they get merged into one for the remapper's analysis.
+	 */
+	private static byte[] computeSharedKey(List<ModCandidateImpl> mods, Map<ModCandidateImpl, RemapInfo> infoMap, MappingConfiguration config,
+			String modNs, String runtimeNs, List<Path> remapClasspath, String defaultMixinRemapType, JarHashCache inputHashes) throws IOException {
+		MessageDigest digest = HashUtil.newSha256();
+
+		HashUtil.update(digest, "format", Integer.toString(CACHE_FORMAT_VERSION));
+		HashUtil.update(digest, "loader", LeafLoaderImpl.VERSION);
+		HashUtil.update(digest, "mappings", config.getMappingsHash());
+		HashUtil.update(digest, "srcNamespace", modNs);
+		HashUtil.update(digest, "dstNamespace", runtimeNs);
+		HashUtil.update(digest, "mixinRemapType", defaultMixinRemapType);
+
+		for (Path path : remapClasspath) {
+			if (Files.isDirectory(path)) {
+				List<Path> files;
+
+				try (Stream<Path> stream = Files.walk(path)) {
+					files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+				}
+
+				for (Path file : files) {
+					HashUtil.update(digest, "classpath", file + " " + inputHashes.getHash(file));
+				}
+			} else if (Files.exists(path)) {
+				HashUtil.update(digest, "classpath", path + " " + inputHashes.getHash(path));
+			} else {
+				HashUtil.update(digest, "missing", path.toString());
+			}
+		}
+
+		List<ModCandidateImpl> sortedMods = new ArrayList<>(mods);
+		sortedMods.sort(Comparator.comparing(ModCandidateImpl::getId));
+
+		for (ModCandidateImpl mod : sortedMods) {
+			HashUtil.update(digest, "input", mod.getId() + " " + infoMap.get(mod).inputHash);
+		}
+
+		for (ModCandidateImpl mod : sortedMods) {
+			byte[] classTweaker = infoMap.get(mod).classTweaker;
+			if (classTweaker == null) continue;
+
+			MessageDigest ctDigest = HashUtil.newSha256();
+			ctDigest.update(classTweaker);
+			HashUtil.update(digest, "classTweaker", mod.getId() + " " + HashUtil.toHex(ctDigest.digest()));
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * Delete the outputs for keys other than the current ones, they are left behind by updated mods or mappings.
+	 */
+	private static void deleteUnusedOutputs(Path cacheDir, Set<Path> usedOutputs) {
+		if (!Files.isDirectory(cacheDir)) return;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir)) {
+			for (Path file : stream) {
+				if (usedOutputs.contains(file)) continue;
+
+				String name = file.getFileName().toString();
+				if (!CACHE_FILE_PATTERN.matcher(name).matches() && !name.endsWith(".tmp")) continue;
+
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					Log.debug(LogCategory.MOD_REMAP, "Error deleting unused remapped jar %s", file, e);
+				}
+			}
+		} catch (IOException e) {
+			Log.warn(LogCategory.MOD_REMAP, "Error cleaning up remapped jars in %s", cacheDir, e);
+		}
 	}
 
 	private static byte[] remapClassTweaker(byte[] input, Remapper remapper, String modNs, String runtimeNs) {
@@ -272,7 +432,9 @@ public final class RuntimeModRemapper {
 	private static class RemapInfo {
 		InputTag tag;
 		Path inputPath;
+		String inputHash;
 		Path outputPath;
+		Path tmpOutputPath;
 		boolean inputIsTemp;
 		OutputConsumerPath outputConsumerPath;
 		String classTweakerPath;
@@ -24,24 +24,27 @@ public final class EntrypointContainerImpl<T> implements EntrypointContainer<T>
 	private final String key;
 	private final Class<T> type;
 	private final EntrypointStorage.Entry entry;
+	private final EntrypointTimingImpl timing;
 	private T instance;
 
 	/**
 	 * Create EntrypointContainer with lazy init.
 	 */
-	public EntrypointContainerImpl(String key, Class<T> type, EntrypointStorage.Entry entry) {
+	public EntrypointContainerImpl(String key, Class<T> type, EntrypointStorage.Entry entry, EntrypointTimingImpl timing) {
 		this.key = key;
 		this.type = type;
 		this.entry = entry;
+		this.timing = timing;
 	}
 
 	/**
 	 * Create EntrypointContainer without lazy init.
 	 */
-	public EntrypointContainerImpl(EntrypointStorage.Entry entry, T instance) {
+	public EntrypointContainerImpl(EntrypointStorage.Entry entry, T instance, EntrypointTimingImpl timing) {
 		this.key = null;
 		this.type = null;
 		this.entry = entry;
+		this.timing = timing;
 		this.instance = instance;
 	}
 
@@ -50,7 +53,7 @@ public final class EntrypointContainerImpl<T> implements EntrypointContainer<T>
 	public synchronized T getEntrypoint() {
 		if (instance == null) {
 			try {
-				instance = entry.getOrCreate(type);
+				instance = EntrypointStorage.create(entry, type, timing);
 				assert instance != null;
 			} catch (Exception ex) {
 				throw new EntrypointException(key, getProvider().getMetadata().getId(), ex);
@@ -60,6 +63,10 @@ public final class EntrypointContainerImpl<T> implements EntrypointContainer<T>
 		return instance;
 	}
 
+	public EntrypointTimingImpl getTiming() {
+		return timing;
+	}
+
 	@Override
 	public ModContainer getProvider() {
 		return entry.getModContainer();
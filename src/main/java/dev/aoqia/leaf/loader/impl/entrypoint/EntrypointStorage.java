@@ -16,19 +16,28 @@
 
 package dev.aoqia.leaf.loader.impl.entrypoint;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import dev.aoqia.leaf.loader.api.EntrypointException;
 import dev.aoqia.leaf.loader.api.LanguageAdapterException;
 import dev.aoqia.leaf.loader.api.entrypoint.EntrypointContainer;
+import dev.aoqia.leaf.loader.api.entrypoint.EntrypointTiming;
 import dev.aoqia.leaf.loader.impl.ModContainerImpl;
 import dev.aoqia.leaf.loader.impl.launch.LeafLauncherBase;
 import dev.aoqia.leaf.loader.impl.metadata.EntrypointMetadata;
+import dev.aoqia.leaf.loader.impl.util.DefaultLanguageAdapter;
+import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
 import dev.aoqia.leaf.loader.impl.util.log.Log;
 import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
 import dev.aoqia.leaf.loader.language.LanguageAdapter;
@@ -36,6 +45,19 @@ import dev.aoqia.leaf.loader.language.LanguageAdapter;
 public final class EntrypointStorage {
 	interface Entry {
 		<T> T getOrCreate(Class<T> type) throws Exception;
+
+		/**
+		 * Load and initialize the entrypoint class ahead of {@link #getOrCreate}, if its name is known.
+		 *
+		 * @return whether the class was loaded
+		 */
+		boolean loadClass() throws Exception;
+
+		/**
+		 * @return whether {@link #getOrCreate} would return an instance created before, possibly for another key
+		 */
+		boolean hasInstance(Class<?> type);
+
 		boolean isOptional();
 
 		ModContainerImpl getModContainer();
@@ -80,6 +102,16 @@ public final class EntrypointStorage {
 			}
 		}
 
+		@Override
+		public boolean loadClass() {
+			return false;
+		}
+
+		@Override
+		public synchronized boolean hasInstance(Class<?> type) {
+			return object != null;
+		}
+
 		@Override
 		public boolean isOptional() {
 			return true;
@@ -130,6 +162,24 @@ public final class EntrypointStorage {
 			return ret;
 		}
 
+		@Override
+		public boolean loadClass() throws Exception {
+			if (adapter != DefaultLanguageAdapter.INSTANCE) return false; // other adapters may interpret the value differently
+
+			try {
+				Class.forName(value.split("::")[0], true, LeafLauncherBase.getLauncher().getTargetClassLoader());
+			} catch (ClassNotFoundException e) {
+				throw new LanguageAdapterException(e);
+			}
+
+			return true;
+		}
+
+		@Override
+		public synchronized boolean hasInstance(Class<?> type) {
+			return instanceMap.containsKey(type);
+		}
+
 		@Override
 		public boolean isOptional() {
 			return false;
@@ -147,6 +197,7 @@ public final class EntrypointStorage {
 	}
 
 	private final Map<String, List<Entry>> entryMap = new HashMap<>();
+	private final Map<String, Map<Entry, EntrypointTimingImpl>> timings = new LinkedHashMap<>();
 
 	private List<Entry> getOrCreateEntries(String key) {
 		return entryMap.computeIfAbsent(key, (z) -> new ArrayList<>());
@@ -185,7 +236,7 @@ public final class EntrypointStorage {
 
 		for (Entry entry : entries) {
 			try {
-				T result = entry.getOrCreate(type);
+				T result = create(entry, type, getTiming(key, entry));
 
 				if (result != null) {
 					results.add(result);
@@ -219,10 +270,11 @@ public final class EntrypointStorage {
 
 			if (entry.isOptional()) {
 				try {
-					T instance = entry.getOrCreate(type);
+					EntrypointTimingImpl timing = getTiming(key, entry);
+					T instance = create(entry, type, timing);
 					if (instance == null) continue;
 
-					container = new EntrypointContainerImpl<>(entry, instance);
+					container = new EntrypointContainerImpl<>(entry, instance, timing);
 				} catch (Throwable t) {
 					if (exc == null) {
 						exc = new EntrypointException(key, entry.getModContainer().getMetadata().getId(), t);
@@ -233,7 +285,7 @@ public final class EntrypointStorage {
 					continue;
 				}
 			} else {
-				container = new EntrypointContainerImpl<>(key, type, entry);
+				container = new EntrypointContainerImpl<>(key, type, entry, getTiming(key, entry));
 			}
 
 			results.add(container);
@@ -244,6 +296,88 @@ public final class EntrypointStorage {
 		return results;
 	}
 
+	private EntrypointTimingImpl getTiming(String key, Entry entry) {
+		synchronized (timings) {
+			return timings.computeIfAbsent(key, ignore -> new LinkedHashMap<>()).computeIfAbsent(entry, ignore -> new EntrypointTimingImpl(key, entry));
+		}
+	}
+
+	/**
+	 * @return the timing of the supplied container or null if it isn't provided by this storage
+	 */
+	public static EntrypointTimingImpl getTiming(EntrypointContainer<?> container) {
+		if (container instanceof ParallelEntrypoints.FutureContainer) {
+			container = ((ParallelEntrypoints.FutureContainer<?>) container).getParent();
+		}
+
+		return container instanceof EntrypointContainerImpl ? ((EntrypointContainerImpl<?>) container).getTiming() : null;
+	}
+
+	/**
+	 * @return the timings of all entrypoints created so far, grouped by key in first use order
+	 */
+	public List<EntrypointTiming> getTimings() {
+		List<EntrypointTiming> ret = new ArrayList<>();
+
+		synchronized (timings) {
+			for (Map<Entry, EntrypointTimingImpl> keyTimings : timings.values()) {
+				ret.addAll(keyTimings.values());
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Write the timings as csv, overwriting any previous report.
+	 */
+	public void writeTimingReport(Path file) {
+		try {
+			Files.createDirectories(file.getParent());
+
+			try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+				writer.write("key,mod,definition,shared,classLoadUs,constructUs,invokeUs,allocatedBytes\n");
+
+				for (EntrypointTiming timing : getTimings()) {
+					writer.write(LoaderUtil.escapeCsv(timing.getKey())+","+LoaderUtil.escapeCsv(timing.getProvider().getMetadata().getId())+","+LoaderUtil.escapeCsv(timing.getDefinition())
+							+","+timing.isShared()
+							+","+(timing.getClassLoadNanos() >= 0 ? timing.getClassLoadNanos() / 1000 : -1)
+							+","+timing.getConstructNanos() / 1000+","+timing.getInvokeNanos() / 1000+","+timing.getAllocatedBytes()+"\n");
+				}
+			}
+		} catch (IOException e) {
+			Log.warn(LogCategory.ENTRYPOINT, "Error writing entrypoint timings to %s", file, e);
+		}
+	}
+
+	/**
+	 * Get or create the entry's instance, recording the time and memory spent on creation unless already done.
+	 *
+	 * <p>Instances created before for another key are recorded as shared instead of measuring the lookup.
+	 */
+	static <T> T create(Entry entry, Class<T> type, EntrypointTimingImpl timing) throws Exception {
+		if (timing.isCreated()) return entry.getOrCreate(type);
+
+		if (entry.hasInstance(type)) {
+			timing.recordShared();
+			return entry.getOrCreate(type);
+		}
+
+		long startBytes = EntrypointTimingImpl.getCurrentThreadAllocatedBytes();
+		long startTime = System.nanoTime();
+		boolean classLoaded = entry.loadClass();
+		long classLoadTime = System.nanoTime();
+		T ret = entry.getOrCreate(type);
+		long endTime = System.nanoTime();
+		long endBytes = EntrypointTimingImpl.getCurrentThreadAllocatedBytes();
+
+		timing.recordCreation(classLoaded ? classLoadTime - startTime : -1,
+				classLoaded ? endTime - classLoadTime : endTime - startTime,
+				startBytes >= 0 ? endBytes - startBytes : -1);
+
+		return ret;
+	}
+
 	@SuppressWarnings("unchecked") // return value allows "throw" declaration to end method
 	static <E extends Throwable> RuntimeException sneakyThrows(Throwable ex) throws E {
 		throw (E) ex;
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.entrypoint;
+
+import java.lang.management.ManagementFactory;
+
+import dev.aoqia.leaf.loader.api.ModContainer;
+import dev.aoqia.leaf.loader.api.entrypoint.EntrypointTiming;
+
+public final class EntrypointTimingImpl implements EntrypointTiming {
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+
+	private final String key;
+	private final EntrypointStorage.Entry entry;
+	private boolean created;
+	private boolean shared;
+	private long classLoadNanos = -1;
+	private long constructNanos;
+	private long invokeNanos;
+	private long allocatedBytes;
+
+	EntrypointTimingImpl(String key, EntrypointStorage.Entry entry) {
+		this.key = key;
+		this.entry = entry;
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+
+			com.sun.management.ThreadMXBean ret = (com.sun.management.ThreadMXBean) bean;
+			if (!ret.isThreadAllocatedMemorySupported() || !ret.isThreadAllocatedMemoryEnabled()) return null;
+
+			return ret;
+		} catch (Throwable t) { // management classes unavailable
+			return null;
+		}
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread so far or -1 if unsupported
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		return THREAD_BEAN != null ? THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+
+	synchronized boolean isCreated() {
+		return created;
+	}
+
+	synchronized void recordCreation(long classLoadNanos, long constructNanos, long allocatedBytes) {
+		created = true;
+		this.classLoadNanos = classLoadNanos;
+		this.constructNanos = constructNanos;
+		addAllocatedBytes(allocatedBytes);
+	}
+
+	synchronized void recordShared() {
+		created = true;
+		shared = true;
+	}
+
+	public synchronized void recordInvocation(long nanos, long allocatedBytes) {
+		invokeNanos += nanos;
+		addAllocatedBytes(allocatedBytes);
+	}
+
+	private void addAllocatedBytes(long bytes) {
+		if (bytes < 0 || allocatedBytes < 0) {
+			allocatedBytes = -1;
+		} else {
+			allocatedBytes += bytes;
+		}
+	}
+
+	@Override
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public ModContainer getProvider() {
+		return entry.getModContainer();
+	}
+
+	@Override
+	public String getDefinition() {
+		return entry.getDefinition();
+	}
+
+	@Override
+	public synchronized boolean isShared() {
+		return shared;
+	}
+
+	@Override
+	public synchronized long getClassLoadNanos() {
+		return classLoadNanos;
+	}
+
+	@Override
+	public synchronized long getConstructNanos() {
+		return constructNanos;
+	}
+
+	@Override
+	public synchronized long getInvokeNanos() {
+		return invokeNanos;
+	}
+
+	@Override
+	public synchronized long getAllocatedBytes() {
+		return THREAD_BEAN != null ? allocatedBytes : -1;
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.entrypoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import dev.aoqia.leaf.loader.api.ModContainer;
+import dev.aoqia.leaf.loader.api.entrypoint.EntrypointContainer;
+import dev.aoqia.leaf.loader.api.metadata.ModDependency;
+import dev.aoqia.leaf.loader.impl.launch.LeafLauncherBase;
+import dev.aoqia.leaf.loader.impl.util.ExceptionUtil;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * Concurrent creation of entrypoint instances, enabled through {@code leaf.parallelEntrypoints}.
+ *
+ * <p>The providing mods are grouped into stages by their dependencies: a mod's stage comes after the stages of all
+ * loaded mods it depends on, recommends or suggests. The instances of one stage get created concurrently on a worker
+ * pool once the caller invoked all containers of the previous stage, so an entrypoint is only constructed after the
+ * entrypoints of the mods it depends on ran, like on the serial path. The caller invokes the returned containers in
+ * stage order as their instances become available and reports each through {@link #markInvoked}. Dependency cycles
+ * are broken at an arbitrary edge.
+ */
+public final class ParallelEntrypoints {
+	private ParallelEntrypoints() { }
+
+	/**
+	 * Order the containers by their mods' dependencies and start creating their instances.
+	 *
+	 * @param modLookup resolves a mod id or provided id to the loaded mod, null if there is none
+	 * @return containers in dependency order, whose {@link EntrypointContainer#getEntrypoint()} waits for the instance,
+	 * each to be passed to {@link #markInvoked} once invoked
+	 */
+	public static <T> List<EntrypointContainer<T>> create(String key, Collection<EntrypointContainer<T>> containers,
+			Function<String, ModContainer> modLookup) {
+		Map<ModContainer, Integer> modStages = new HashMap<>();
+		List<List<EntrypointContainer<T>>> stages = new ArrayList<>();
+
+		for (EntrypointContainer<T> container : containers) {
+			int stage = getStage(container.getProvider(), modStages, new HashSet<>(), modLookup);
+
+			while (stages.size() <= stage) {
+				stages.add(new ArrayList<>());
+			}
+
+			stages.get(stage).add(container);
+		}
+
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), stages.stream().mapToInt(List::size).max().orElse(1));
+		ClassLoader classLoader = LeafLauncherBase.getLauncher().getTargetClassLoader();
+		AtomicInteger threadIndex = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1), task -> {
+			Thread thread = new Thread(task, "Leaf Entrypoint " + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setContextClassLoader(classLoader);
+
+			return thread;
+		});
+
+		Log.debug(LogCategory.ENTRYPOINT, "Creating %d '%s' entrypoints in %d stages on %d threads", containers.size(), key, stages.size(), threads);
+
+		List<EntrypointContainer<T>> ret = new ArrayList<>(containers.size());
+		CompletableFuture<?> previousStageInvoked = CompletableFuture.completedFuture(null);
+		CompletableFuture<?> lastStageCreated = previousStageInvoked;
+
+		for (List<EntrypointContainer<T>> stage : stages) {
+			if (stage.isEmpty()) continue; // only mods without this entrypoint in the stage, nothing would complete it
+
+			List<CompletableFuture<T>> futures = new ArrayList<>(stage.size());
+			CompletableFuture<Void> invoked = new CompletableFuture<>();
+			AtomicInteger pending = new AtomicInteger(stage.size());
+
+			for (EntrypointContainer<T> container : stage) {
+				// created regardless of failures in earlier stages, the serial path would attempt it as well
+				CompletableFuture<T> future = previousStageInvoked.handleAsync((ignore, exc) -> container.getEntrypoint(), executor);
+				futures.add(future);
+				ret.add(new FutureContainer<>(container, future, pending, invoked));
+			}
+
+			previousStageInvoked = invoked;
+			lastStageCreated = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+		}
+
+		// all tasks are submitted before the last stage completes
+		lastStageCreated.whenComplete((ignore, exc) -> executor.shutdown());
+
+		return ret;
+	}
+
+	/**
+	 * Report that the caller is done invoking a container returned by {@link #create}, successfully or not. The next
+	 * stage starts once this happened for all containers of a stage. Other containers are ignored.
+	 */
+	public static void markInvoked(EntrypointContainer<?> container) {
+		if (container instanceof FutureContainer) {
+			((FutureContainer<?>) container).markInvoked();
+		}
+	}
+
+	private static int getStage(ModContainer mod, Map<ModContainer, Integer> modStages, Set<ModContainer> visiting,
+			Function<String, ModContainer> modLookup) {
+		Integer ret = modStages.get(mod);
+		if (ret != null) return ret;
+		if (!visiting.add(mod)) return -1; // cycle, ignore the edge closing it
+
+		int stage = 0;
+
+		for (ModDependency dep : mod.getMetadata().getDependencies()) {
+			if (!dep.getKind().isPositive()) continue;
+
+			ModContainer depMod = modLookup.apply(dep.getModId());
+			if (depMod == null || depMod == mod) continue;
+
+			stage = Math.max(stage, getStage(depMod, modStages, visiting, modLookup) + 1);
+		}
+
+		visiting.remove(mod);
+		modStages.put(mod, stage);
+
+		return stage;
+	}
+
+	static final class FutureContainer<T> implements EntrypointContainer<T> {
+		private final EntrypointContainer<T> parent;
+		private final CompletableFuture<T> future;
+		private final AtomicInteger stagePending; // containers of the stage not invoked yet
+		private final CompletableFuture<Void> stageInvoked;
+		private boolean invoked;
+
+		FutureContainer(EntrypointContainer<T> parent, CompletableFuture<T> future,
+				AtomicInteger stagePending, CompletableFuture<Void> stageInvoked) {
+			this.parent = parent;
+			this.future = future;
+			this.stagePending = stagePending;
+			this.stageInvoked = stageInvoked;
+		}
+
+		EntrypointContainer<T> getParent() {
+			return parent;
+		}
+
+		void markInvoked() {
+			if (invoked) return;
+
+			invoked = true;
+			if (stagePending.decrementAndGet() == 0) stageInvoked.complete(null);
+		}
+
+		@Override
+		public T getEntrypoint() {
+			try {
+				return future.join();
+			} catch (CompletionException e) {
+				throw ExceptionUtil.wrap(e.getCause());
+			}
+		}
+
+		@Override
+		public ModContainer getProvider() {
+			return parent.getProvider();
+		}
+
+		@Override
+		public String getDefinition() {
+			return parent.getDefinition();
+		}
+	}
+}
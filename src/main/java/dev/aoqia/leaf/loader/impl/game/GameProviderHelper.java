@@ -17,10 +17,14 @@
 package dev.aoqia.leaf.loader.impl.game;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -30,14 +34,21 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.jar.JarFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 import java.util.zip.ZipFile;
 
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.commons.Remapper;
 
 import dev.aoqia.leaf.api.EnvType;
 import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
@@ -45,6 +56,8 @@ import dev.aoqia.leaf.loader.impl.FormattedException;
 import dev.aoqia.leaf.loader.impl.launch.LeafLauncher;
 import dev.aoqia.leaf.loader.impl.launch.MappingConfiguration;
 import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
+import dev.aoqia.leaf.loader.impl.util.MappedZipFile;
+import dev.aoqia.leaf.loader.impl.util.ParallelZipWriter;
 import dev.aoqia.leaf.loader.impl.util.SystemProperties;
 import dev.aoqia.leaf.loader.impl.util.UrlConversionException;
 import dev.aoqia.leaf.loader.impl.util.UrlUtil;
@@ -54,11 +67,13 @@ import dev.aoqia.leaf.loader.impl.util.log.TinyRemapperLoggerAdapter;
 import net.fabricmc.mappingio.tree.MappingTree;
 import net.fabricmc.tinyremapper.InputTag;
 import net.fabricmc.tinyremapper.NonClassCopyMode;
-import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
 import net.fabricmc.tinyremapper.TinyUtils;
 
 public final class GameProviderHelper {
+	private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+	private static final String SERVICES_PREFIX = "META-INF/services/";
+
 	private GameProviderHelper() { }
 
 	public static Path getCommonGameJar() {
@@ -296,7 +311,19 @@ public final class GameProviderHelper {
 
 		try {
 			Files.createDirectories(deobfJarDir);
-			deobfuscate0(inputFiles, outputFiles, tmpFiles, mappingConfig.getMappings(), sourceNamespace, targetNamespace, launcher);
+
+			try {
+				deobfuscate0(inputFiles, outputFiles, tmpFiles, mappingConfig.getMappings(), sourceNamespace, targetNamespace, launcher, true);
+			} catch (StaleRemapStateException e) {
+				Log.warn(LogCategory.GAME_REMAP, "Error reusing previously remapped jar %s, remapping everything", e.previousJar, e.getCause());
+				GameRemapState.delete(e.previousJar);
+
+				for (Path tmpFile : tmpFiles) {
+					Files.deleteIfExists(tmpFile);
+				}
+
+				deobfuscate0(inputFiles, outputFiles, tmpFiles, mappingConfig.getMappings(), sourceNamespace, targetNamespace, launcher, false);
+			}
 		} catch (IOException e) {
 			throw new RuntimeException("error remapping game jars "+inputFiles, e);
 		}
@@ -324,62 +351,163 @@ public final class GameProviderHelper {
 	}
 
 	private static void deobfuscate0(List<Path> inputFiles, List<Path> outputFiles, List<Path> tmpFiles,
-			MappingTree mappings, String sourceNamespace, String targetNamespace, LeafLauncher launcher) throws IOException {
-		TinyRemapper remapper = TinyRemapper.newRemapper(new TinyRemapperLoggerAdapter(LogCategory.GAME_REMAP))
-				.withMappings(TinyUtils.createMappingProvider(mappings, sourceNamespace, targetNamespace))
-				.rebuildSourceFilenames(true)
-				.build();
-
+			MappingTree mappings, String sourceNamespace, String targetNamespace, LeafLauncher launcher,
+			boolean incremental) throws IOException {
+		long startTime = System.nanoTime();
+		int srcNsId = mappings.getNamespaceId(sourceNamespace);
+		int dstNsId = mappings.getNamespaceId(targetNamespace);
+		boolean withClassPath = SystemProperties.isSet(SystemProperties.DEBUG_DEOBFUSCATE_WITH_CLASSPATH);
+		List<MappedZipFile> inputZips = new ArrayList<>(inputFiles.size());
+		int totalFiles = 0;
+
+		AtomicInteger threadIndex = new AtomicInteger();
+		ExecutorService workerPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+			Thread thread = new Thread(task, "Leaf Game Remap Worker " + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		List<GameRemapState> states = new ArrayList<>(inputFiles.size());
+		List<Path> previousFiles = null;
+		List<MappedZipFile> previousZips = null;
+		List<GameRemapState> previousStates = null;
+		Set<String> dirtyClasses = null; // null for a full remap
+		List<Path> splitFiles = new ArrayList<>();
+		List<ParallelZipWriter> writers = new ArrayList<>(inputFiles.size());
+		TinyRemapper remapper = null;
 		Set<Path> depPaths = new HashSet<>();
 
-		if (SystemProperties.isSet(SystemProperties.DEBUG_DEOBFUSCATE_WITH_CLASSPATH)) {
-			for (Path path : launcher.getClassPath()) {
-				if (!inputFiles.contains(path)) {
-					depPaths.add(path);
+		try {
+			for (Path inputFile : inputFiles) {
+				MappedZipFile zf = MappedZipFile.open(inputFile);
+				inputZips.add(zf);
+				totalFiles += zf.getEntryNames().size();
+			}
+
+			for (MappedZipFile zf : inputZips) {
+				states.add(GameRemapState.scan(zf, mappings, sourceNamespace, targetNamespace, workerPool));
+			}
 
-					Log.debug(LogCategory.GAME_REMAP, "Appending '%s' to remapper classpath", path);
-					remapper.readClassPathAsync(path);
+			if (incremental && !withClassPath) { // extra class path entries aren't tracked by the state
+				previousFiles = new ArrayList<>(inputFiles.size());
+				previousZips = new ArrayList<>(inputFiles.size());
+				previousStates = new ArrayList<>(inputFiles.size());
+
+				if (findPrevious(outputFiles, sourceNamespace, targetNamespace, previousFiles, previousZips, previousStates)) {
+					dirtyClasses = getIncrementalDirtyClasses(states, previousZips, previousStates);
 				}
 			}
-		}
 
-		List<OutputConsumerPath> outputConsumers = new ArrayList<>(inputFiles.size());
-		List<InputTag> inputTags = new ArrayList<>(inputFiles.size());
+			remapper = TinyRemapper.newRemapper(new TinyRemapperLoggerAdapter(LogCategory.GAME_REMAP))
+					.withMappings(TinyUtils.createMappingProvider(mappings, sourceNamespace, targetNamespace))
+					.rebuildSourceFilenames(true)
+					.build();
 
-		try {
-			for (int i = 0; i < inputFiles.size(); i++) {
-				Path inputFile = inputFiles.get(i);
-				Path tmpFile = tmpFiles.get(i);
+			if (withClassPath) {
+				for (Path path : launcher.getClassPath()) {
+					if (!inputFiles.contains(path)) {
+						depPaths.add(path);
 
-				InputTag inputTag = remapper.createInputTag();
-				OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(tmpFile)
-						// force jar despite the .tmp extension
-						.assumeArchive(true)
-						.build();
+						Log.debug(LogCategory.GAME_REMAP, "Appending '%s' to remapper classpath", path);
+						remapper.readClassPathAsync(path);
+					}
+				}
+			}
+
+			if (dirtyClasses == null) {
+				Log.info(LogCategory.GAME_REMAP, "Remapping %d game JARs (%d files) from %s to %s", inputFiles.size(), totalFiles, sourceNamespace, targetNamespace);
+			}
+
+			List<InputTag> inputTags = new ArrayList<>(inputFiles.size());
 
-				outputConsumers.add(outputConsumer);
+			for (int i = 0; i < inputFiles.size(); i++) {
+				InputTag inputTag = remapper.createInputTag();
 				inputTags.add(inputTag);
 
-				outputConsumer.addNonClassFiles(inputFile, NonClassCopyMode.FIX_META_INF, remapper);
-				remapper.readInputsAsync(inputTag, inputFile);
+				if (dirtyClasses == null) {
+					remapper.readInputsAsync(inputTag, inputFiles.get(i));
+				} else {
+					// only the dirty classes get remapped, the clean ones are still needed for resolving the hierarchy
+					Path dirtyFile = Files.createTempFile(tmpFiles.get(i).getParent(), "dirty", ".jar.tmp");
+					splitFiles.add(dirtyFile);
+					Path cleanFile = Files.createTempFile(tmpFiles.get(i).getParent(), "clean", ".jar.tmp");
+					splitFiles.add(cleanFile);
+
+					splitClasses(inputZips.get(i), dirtyClasses, dirtyFile, cleanFile, workerPool);
+					remapper.readInputsAsync(inputTag, dirtyFile);
+					remapper.readClassPathAsync(cleanFile);
+				}
 			}
 
+			RemapProgress progress = new RemapProgress(totalFiles);
+
 			for (int i = 0; i < inputFiles.size(); i++) {
-				remapper.apply(outputConsumers.get(i), inputTags.get(i));
+				ParallelZipWriter writer = new ParallelZipWriter(tmpFiles.get(i), workerPool);
+				writers.add(writer);
+
+				copyNonClassFiles(inputZips.get(i), writer, mappings, srcNsId, dstNsId, progress);
+
+				if (dirtyClasses != null) {
+					copyCleanClasses(states.get(i), previousFiles.get(i), previousZips.get(i), previousStates.get(i), dirtyClasses, writer, progress);
+				}
+
+				remapper.apply((name, data) -> {
+					try {
+						writer.write(name + ".class", data);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+
+					progress.increment();
+				}, inputTags.get(i));
+
+				writer.close();
+			}
+
+			Remapper classRemapper = remapper.getEnvironment().getRemapper();
+
+			for (GameRemapState state : states) {
+				for (Map.Entry<String, GameRemapState.ClassState> entry : state.classes.entrySet()) {
+					if (entry.getValue().outputName == null) { // not copied from the previous output
+						entry.getValue().outputName = classRemapper.map(entry.getKey());
+					}
+				}
 			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
 		} finally {
-			for (OutputConsumerPath outputConsumer : outputConsumers) {
-				outputConsumer.close();
+			for (ParallelZipWriter writer : writers) {
+				try {
+					writer.close(); // no-op unless aborted, the leftover .tmp file gets cleaned up on the next launch
+				} catch (IOException | RuntimeException e) {
+					Log.debug(LogCategory.GAME_REMAP, "Error closing aborted output %s", writer.getFile(), e);
+				}
+			}
+
+			workerPool.shutdownNow();
+			if (remapper != null) remapper.finish();
+
+			// the inputs and previous outputs stay locked on Windows while mapped, which breaks replacing or deleting them
+			if (awaitTermination(workerPool)) {
+				closeZips(inputZips);
+				if (previousZips != null) closeZips(previousZips);
+			} else {
+				Log.debug(LogCategory.GAME_REMAP, "Remap workers didn't stop, leaving the game JARs mapped");
 			}
 
-			remapper.finish();
+			for (Path file : splitFiles) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					Log.debug(LogCategory.GAME_REMAP, "Error deleting temporary file %s", file, e);
+				}
+			}
 		}
 
 		// Minecraft doesn't tend to check if a ZipFileSystem is already present,
 		// so we clean up here.
 
-		depPaths.addAll(tmpFiles);
-
 		for (Path p : depPaths) {
 			try {
 				p.getFileSystem().close();
@@ -395,28 +523,278 @@ public final class GameProviderHelper {
 		}
 
 		List<Path> missing = new ArrayList<>();
+		int classCount = 0;
 
 		for (int i = 0; i < inputFiles.size(); i++) {
 			Path inputFile = inputFiles.get(i);
 			Path tmpFile = tmpFiles.get(i);
 			Path outputFile = outputFiles.get(i);
+			int count = writers.get(i).getClassCount(); // validated while writing instead of rescanning the output
 
-			boolean found;
-
-			try (JarFile jar = new JarFile(tmpFile.toFile())) {
-				found = jar.stream().anyMatch((e) -> e.getName().endsWith(".class"));
-			}
-
-			if (!found) {
+			if (count == 0) {
 				missing.add(inputFile);
 				Files.delete(tmpFile);
 			} else {
+				classCount += count;
 				Files.move(tmpFile, outputFile);
+				states.get(i).write(outputFile);
 			}
 		}
 
 		if (!missing.isEmpty()) {
 			throw new RuntimeException("Generated deobfuscated JARs contain no classes: "+missing);
 		}
+
+		Log.info(LogCategory.GAME_REMAP, "Remapped %d game JARs with %d classes in %.1f s", inputFiles.size(), classCount, (System.nanoTime() - startTime) * 1e-9);
+	}
+
+	private static boolean awaitTermination(ExecutorService executor) {
+		try {
+			return executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private static void closeZips(List<MappedZipFile> zips) {
+		for (MappedZipFile zf : zips) {
+			zf.close();
+		}
+	}
+
+	/**
+	 * Locate the previously remapped jar and its state for every output, to be reused for incremental remapping.
+	 *
+	 * <p>A previous jar or state that can't be read gets its state deleted so it isn't picked up again.
+	 *
+	 * @return whether all of them were found
+	 */
+	private static boolean findPrevious(List<Path> outputFiles, String sourceNamespace, String targetNamespace,
+			List<Path> previousFiles, List<MappedZipFile> previousZips, List<GameRemapState> previousStates) {
+		for (Path outputFile : outputFiles) {
+			Path previousFile = GameRemapState.findPrevious(outputFile);
+			if (previousFile == null) return false;
+
+			try {
+				GameRemapState state = GameRemapState.read(previousFile, sourceNamespace, targetNamespace);
+				if (state == null) return false;
+
+				previousZips.add(MappedZipFile.open(previousFile));
+				previousStates.add(state);
+			} catch (IOException | RuntimeException e) {
+				Log.warn(LogCategory.GAME_REMAP, "Error reading previously remapped jar %s, remapping everything", previousFile, e);
+				GameRemapState.delete(previousFile);
+				return false;
+			}
+
+			previousFiles.add(previousFile);
+			Log.debug(LogCategory.GAME_REMAP, "Found previously remapped jar %s", previousFile);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Determine the classes to remap when reusing the previous outputs.
+	 *
+	 * @return the dirty classes or null if a full remap is preferable
+	 */
+	private static @Nullable Set<String> getIncrementalDirtyClasses(List<GameRemapState> states,
+			List<MappedZipFile> previousZips, List<GameRemapState> previousStates) {
+		Set<String> ret = GameRemapState.getDirtyClasses(states, previousStates);
+		int classCount = 0;
+
+		for (int i = 0; i < states.size(); i++) {
+			Map<String, GameRemapState.ClassState> classes = states.get(i).classes;
+			classCount += classes.size();
+
+			for (String name : classes.keySet()) {
+				if (ret.contains(name)) continue;
+
+				GameRemapState.ClassState previous = previousStates.get(i).classes.get(name);
+
+				if (previous == null || !previousZips.get(i).contains(previous.outputName + ".class")) {
+					Log.debug(LogCategory.GAME_REMAP, "Previously remapped jar lacks %s, remapping everything", name);
+					return null;
+				}
+			}
+		}
+
+		if (ret.size() * 2 > classCount) {
+			Log.debug(LogCategory.GAME_REMAP, "%d of %d classes changed, remapping everything", ret.size(), classCount);
+			return null;
+		}
+
+		Log.info(LogCategory.GAME_REMAP, "Game JARs changed, remapping %d of %d classes", ret.size(), classCount);
+
+		return ret;
+	}
+
+	/**
+	 * Split the classes of an input jar into the dirty and clean ones. The jars are only read back once, so they are
+	 * written uncompressed.
+	 */
+	private static void splitClasses(MappedZipFile input, Set<String> dirtyClasses, Path dirtyFile, Path cleanFile, ExecutorService executor) throws IOException {
+		try (ParallelZipWriter dirtyWriter = new ParallelZipWriter(dirtyFile, executor, false);
+				ParallelZipWriter cleanWriter = new ParallelZipWriter(cleanFile, executor, false)) {
+			for (String name : input.getEntryNames()) {
+				if (!name.endsWith(".class")) continue;
+
+				boolean dirty = dirtyClasses.contains(name.substring(0, name.length() - 6));
+				(dirty ? dirtyWriter : cleanWriter).write(name, input.read(name));
+			}
+		}
+	}
+
+	/**
+	 * Copy the remapped form of the classes that don't need remapping from the previous output.
+	 */
+	private static void copyCleanClasses(GameRemapState state, Path previousFile, MappedZipFile previousZip, GameRemapState previousState,
+			Set<String> dirtyClasses, ParallelZipWriter writer, RemapProgress progress) throws IOException {
+		List<String> names = new ArrayList<>(state.classes.keySet());
+		Collections.sort(names);
+
+		for (String name : names) {
+			if (dirtyClasses.contains(name)) continue;
+
+			String outputName = previousState.classes.get(name).outputName;
+			byte[] data;
+
+			try {
+				data = previousZip.read(outputName + ".class");
+			} catch (IOException | RuntimeException e) {
+				throw new StaleRemapStateException(previousFile, e);
+			}
+
+			writer.write(outputName + ".class", data);
+			state.classes.get(name).outputName = outputName;
+			progress.increment();
+		}
+	}
+
+	/**
+	 * Copy everything but classes, mirroring tiny-remapper's {@link NonClassCopyMode#FIX_META_INF}: signatures are
+	 * dropped, the manifest loses its digests and gets its main class remapped, service files are remapped.
+	 */
+	private static void copyNonClassFiles(MappedZipFile input, ParallelZipWriter writer,
+			MappingTree mappings, int srcNsId, int dstNsId, RemapProgress progress) throws IOException {
+		List<String> names = new ArrayList<>(input.getEntryNames());
+		Collections.sort(names);
+
+		if (names.remove(MANIFEST_NAME)) { // manifest first for JarInputStream
+			names.add(0, MANIFEST_NAME);
+		}
+
+		for (String name : names) {
+			if (name.endsWith(".class")) continue;
+
+			progress.increment();
+
+			if (name.startsWith("META-INF/") && name.indexOf('/', 9) < 0) {
+				String fileName = name.substring(9);
+
+				if (fileName.endsWith(".SF") || fileName.endsWith(".DSA") || fileName.endsWith(".RSA") || fileName.endsWith(".EC")
+						|| fileName.startsWith("SIG-")) {
+					continue;
+				}
+			}
+
+			byte[] data = input.read(name);
+
+			if (name.equals(MANIFEST_NAME)) {
+				data = fixManifest(data, mappings, srcNsId, dstNsId);
+			} else if (name.startsWith(SERVICES_PREFIX) && name.indexOf('/', SERVICES_PREFIX.length()) < 0) {
+				name = SERVICES_PREFIX + mapDottedClassName(name.substring(SERVICES_PREFIX.length()), mappings, srcNsId, dstNsId);
+				data = fixServiceFile(data, mappings, srcNsId, dstNsId);
+			}
+
+			writer.write(name, data);
+		}
+	}
+
+	private static byte[] fixManifest(byte[] data, MappingTree mappings, int srcNsId, int dstNsId) throws IOException {
+		Manifest manifest = new Manifest(new ByteArrayInputStream(data));
+		Attributes mainAttrs = manifest.getMainAttributes();
+		String mainClass = mainAttrs.getValue(Attributes.Name.MAIN_CLASS);
+
+		if (mainClass != null) {
+			mainAttrs.put(Attributes.Name.MAIN_CLASS, mapDottedClassName(mainClass, mappings, srcNsId, dstNsId));
+		}
+
+		mainAttrs.remove(Attributes.Name.SIGNATURE_VERSION);
+
+		for (Iterator<Attributes> it = manifest.getEntries().values().iterator(); it.hasNext(); ) {
+			Attributes attrs = it.next();
+			attrs.keySet().removeIf(key -> {
+				String attrName = key.toString();
+				return attrName.endsWith("-Digest") || attrName.contains("-Digest-") || attrName.equals("Magic");
+			});
+
+			if (attrs.isEmpty()) it.remove();
+		}
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream(data.length);
+		manifest.write(os);
+
+		return os.toByteArray();
+	}
+
+	private static byte[] fixServiceFile(byte[] data, MappingTree mappings, int srcNsId, int dstNsId) {
+		StringBuilder sb = new StringBuilder(data.length);
+
+		for (String line : new String(data, StandardCharsets.UTF_8).split("\\r?\\n")) {
+			int end = line.indexOf('#');
+			if (end < 0) end = line.length();
+
+			String className = line.substring(0, end).trim();
+
+			if (!className.isEmpty()) {
+				sb.append(mapDottedClassName(className, mappings, srcNsId, dstNsId)).append('\n');
+			}
+		}
+
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String mapDottedClassName(String name, MappingTree mappings, int srcNsId, int dstNsId) {
+		return mappings.mapClassName(name.replace('.', '/'), srcNsId, dstNsId).replace('/', '.');
+	}
+
+	/**
+	 * Failure reading a previously remapped jar while reusing its classes, to be retried as a full remap.
+	 */
+	@SuppressWarnings("serial")
+	private static final class StaleRemapStateException extends IOException {
+		final Path previousJar;
+
+		StaleRemapStateException(Path previousJar, Throwable cause) {
+			super("error reusing previously remapped jar "+previousJar, cause);
+
+			this.previousJar = previousJar;
+		}
+	}
+
+	/**
+	 * Logs the remap progress in 10% steps, so headless servers show more than the initial notice.
+	 */
+	private static final class RemapProgress {
+		private final int total;
+		private final AtomicInteger done = new AtomicInteger();
+		private final AtomicInteger lastStep = new AtomicInteger();
+
+		RemapProgress(int total) {
+			this.total = Math.max(total, 1);
+		}
+
+		void increment() {
+			int count = done.incrementAndGet();
+			int step = (int) Math.min(count * 10L / total, 9);
+			int last = lastStep.get();
+
+			if (step > last && lastStep.compareAndSet(last, step)) {
+				Log.info(LogCategory.GAME_REMAP, "Remapping game JARs: %d%% (%d/%d files)", step * 10, count, total);
+			}
+		}
 	}
 }
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.objectweb.asm.ClassReader;
+
+import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
+import dev.aoqia.leaf.loader.impl.util.HashUtil;
+import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
+import dev.aoqia.leaf.loader.impl.util.MappedZipFile;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+import net.fabricmc.mappingio.tree.MappingTree;
+
+/**
+ * Per-class record of a remapped game jar, stored next to it to allow remapping a newer game jar incrementally.
+ *
+ * <p>Each input class is recorded with a hash of its bytes, a hash of its own mapping entries and the name it got
+ * remapped to. When the game jar changes, {@link #getDirtyClasses} determines the classes whose remapped form may
+ * differ: those that changed themselves and those referencing a changed class or one of its subclasses, since member
+ * references get resolved through the referenced class' hierarchy. Everything else can be copied from the previous
+ * output.
+ */
+final class GameRemapState {
+	static final String FILE_SUFFIX = ".classes";
+	private static final int FORMAT_VERSION = 1;
+	private static final int HASH_SIZE = 16;
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_CLASS = 7;
+
+	final String srcNamespace;
+	final String dstNamespace;
+	final Map<String, ClassState> classes; // by input class name
+
+	static final class ClassState {
+		final byte[] contentHash;
+		final byte[] mappingHash;
+		String outputName; // remapped class name, known after remapping
+		// hierarchy and references, only for freshly scanned jars
+		final String superName;
+		final String[] interfaces;
+		final Set<String> references;
+
+		ClassState(byte[] contentHash, byte[] mappingHash, String outputName,
+				String superName, String[] interfaces, Set<String> references) {
+			this.contentHash = contentHash;
+			this.mappingHash = mappingHash;
+			this.outputName = outputName;
+			this.superName = superName;
+			this.interfaces = interfaces;
+			this.references = references;
+		}
+
+		boolean matches(ClassState o) {
+			return Arrays.equals(contentHash, o.contentHash) && Arrays.equals(mappingHash, o.mappingHash);
+		}
+	}
+
+	GameRemapState(String srcNamespace, String dstNamespace, Map<String, ClassState> classes) {
+		this.srcNamespace = srcNamespace;
+		this.dstNamespace = dstNamespace;
+		this.classes = classes;
+	}
+
+	static Path getFile(Path jar) {
+		return jar.resolveSibling(jar.getFileName().toString() + FILE_SUFFIX);
+	}
+
+	/**
+	 * Record the classes of an input jar, hashing them on the supplied executor.
+	 */
+	static GameRemapState scan(MappedZipFile zf, MappingTree mappings, String srcNamespace, String dstNamespace, Executor executor) throws IOException {
+		int srcNsId = mappings.getNamespaceId(srcNamespace);
+		int dstNsId = mappings.getNamespaceId(dstNamespace);
+		Map<String, ClassState> classes = new ConcurrentHashMap<>();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+		for (String entryName : zf.getEntryNames()) {
+			if (!entryName.endsWith(".class")) continue;
+
+			futures.add(CompletableFuture.runAsync(() -> {
+				byte[] data;
+
+				try {
+					data = zf.read(entryName);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+
+				String name = entryName.substring(0, entryName.length() - 6);
+				MessageDigest digest = HashUtil.newSha256();
+				digest.update(data);
+
+				ClassReader reader = new ClassReader(data);
+				classes.put(name, new ClassState(Arrays.copyOf(digest.digest(), HASH_SIZE),
+						hashMapping(mappings.getClass(name, srcNsId), dstNsId),
+						null,
+						reader.getSuperName(), reader.getInterfaces(), getReferences(reader)));
+			}, executor));
+		}
+
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw e;
+		}
+
+		return new GameRemapState(srcNamespace, dstNamespace, classes);
+	}
+
+	/**
+	 * Hash everything tiny-remapper takes from a class' own mapping entry.
+	 */
+	private static byte[] hashMapping(/* @Nullable */ MappingTree.ClassMapping cls, int dstNsId) {
+		if (cls == null) return new byte[HASH_SIZE];
+
+		MessageDigest digest = HashUtil.newSha256();
+		update(digest, cls.getName(dstNsId));
+
+		for (MappingTree.FieldMapping field : cls.getFields()) {
+			update(digest, "f");
+			update(digest, field.getSrcName());
+			update(digest, field.getSrcDesc());
+			update(digest, field.getName(dstNsId));
+		}
+
+		for (MappingTree.MethodMapping method : cls.getMethods()) {
+			update(digest, "m");
+			update(digest, method.getSrcName());
+			update(digest, method.getSrcDesc());
+			update(digest, method.getName(dstNsId));
+
+			for (MappingTree.MethodArgMapping arg : method.getArgs()) {
+				update(digest, "a" + arg.getArgPosition() + " " + arg.getLvIndex());
+				update(digest, arg.getName(dstNsId));
+			}
+
+			for (MappingTree.MethodVarMapping var : method.getVars()) {
+				update(digest, "v" + var.getLvIndex() + " " + var.getLvtRowIndex() + " " + var.getStartOpIdx());
+				update(digest, var.getName(dstNsId));
+			}
+		}
+
+		return Arrays.copyOf(digest.digest(), HASH_SIZE);
+	}
+
+	private static void update(MessageDigest digest, /* @Nullable */ String value) {
+		if (value != null) digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Collect the class names a class references through class constants and descriptors or signatures.
+	 *
+	 * <p>Descriptors are found by scanning all utf8 constants for {@code L...;}, which may also pick up unrelated
+	 * strings. That only ever makes the dirty set larger.
+	 */
+	private static Set<String> getReferences(ClassReader reader) {
+		Set<String> ret = new HashSet<>();
+		char[] buffer = new char[reader.getMaxStringLength()];
+
+		for (int i = 1; i < reader.getItemCount(); i++) {
+			int offset = reader.getItem(i);
+			if (offset == 0) continue; // second slot of long/double
+
+			int tag = reader.readByte(offset - 1);
+
+			if (tag == CONSTANT_CLASS) {
+				String name = reader.readUTF8(offset, buffer);
+
+				if (name.startsWith("[")) {
+					addDescriptorReferences(name, ret);
+				} else {
+					ret.add(name);
+				}
+			} else if (tag == CONSTANT_UTF8) {
+				int len = reader.readUnsignedShort(offset);
+				char[] chars = new char[len];
+
+				for (int j = 0; j < len; j++) { // class names are ascii in practice, anything else just won't match
+					chars[j] = (char) reader.readByte(offset + 2 + j);
+				}
+
+				addDescriptorReferences(new String(chars), ret);
+			}
+		}
+
+		return ret;
+	}
+
+	private static void addDescriptorReferences(String s, Set<String> out) {
+		int pos = 0;
+
+		while ((pos = s.indexOf('L', pos)) >= 0) {
+			int end = pos + 1;
+
+			while (end < s.length() && s.charAt(end) != ';' && s.charAt(end) != '<') {
+				end++;
+			}
+
+			if (end < s.length() && end > pos + 1) out.add(s.substring(pos + 1, end));
+
+			pos = end;
+		}
+	}
+
+	/**
+	 * Determine the classes that need remapping, assuming the others are unchanged from the previous state.
+	 *
+	 * @param current freshly scanned state of all input jars
+	 * @param previous state of the previous output for each input jar
+	 * @return names of the classes that need remapping
+	 */
+	static Set<String> getDirtyClasses(List<GameRemapState> current, List<GameRemapState> previous) {
+		Map<String, ClassState> currentClasses = new HashMap<>();
+		Map<String, ClassState> previousClasses = new HashMap<>();
+
+		for (GameRemapState state : current) currentClasses.putAll(state.classes);
+		for (GameRemapState state : previous) previousClasses.putAll(state.classes);
+
+		Set<String> changed = new HashSet<>();
+
+		for (Map.Entry<String, ClassState> entry : currentClasses.entrySet()) {
+			ClassState prev = previousClasses.get(entry.getKey());
+
+			if (prev == null || prev.outputName == null || !prev.matches(entry.getValue())) {
+				changed.add(entry.getKey());
+			}
+		}
+
+		for (String name : previousClasses.keySet()) {
+			if (!currentClasses.containsKey(name)) changed.add(name); // removed
+		}
+
+		if (changed.isEmpty()) return Collections.emptySet();
+
+		// a change affects the resolution of members through any subclass
+		Map<String, List<String>> subclasses = new HashMap<>();
+
+		for (Map.Entry<String, ClassState> entry : currentClasses.entrySet()) {
+			ClassState state = entry.getValue();
+			if (state.superName != null) subclasses.computeIfAbsent(state.superName, ignore -> new ArrayList<>()).add(entry.getKey());
+
+			for (String itf : state.interfaces) {
+				subclasses.computeIfAbsent(itf, ignore -> new ArrayList<>()).add(entry.getKey());
+			}
+		}
+
+		Set<String> affected = new HashSet<>(changed);
+		Queue<String> queue = new ArrayDeque<>(changed);
+		String name;
+
+		while ((name = queue.poll()) != null) {
+			for (String subclass : subclasses.getOrDefault(name, Collections.emptyList())) {
+				if (affected.add(subclass)) queue.add(subclass);
+			}
+		}
+
+		Set<String> ret = new HashSet<>();
+
+		for (Map.Entry<String, ClassState> entry : currentClasses.entrySet()) {
+			if (changed.contains(entry.getKey()) || !Collections.disjoint(entry.getValue().references, affected)) {
+				ret.add(entry.getKey());
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Find the most recent remapped jar with the same name in another version's directory.
+	 *
+	 * @return the previous jar or null if there is none with a state file
+	 */
+	static Path findPrevious(Path outputFile) {
+		Path versionDir = outputFile.getParent();
+		Path remappedJarsDir = versionDir.getParent();
+		if (remappedJarsDir == null) return null;
+
+		String fileName = outputFile.getFileName().toString();
+		Path ret = null;
+		long retTime = Long.MIN_VALUE;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(remappedJarsDir)) {
+			for (Path dir : stream) {
+				if (dir.equals(versionDir)) continue;
+
+				Path jar = dir.resolve(fileName);
+				Path stateFile = getFile(jar);
+				if (!Files.isRegularFile(jar) || !Files.isRegularFile(stateFile)) continue;
+
+				long time = Files.getLastModifiedTime(stateFile).toMillis();
+
+				if (time > retTime) {
+					ret = jar;
+					retTime = time;
+				}
+			}
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			Log.debug(LogCategory.GAME_REMAP, "Error looking for previously remapped jars in %s", remappedJarsDir, e);
+			return null;
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Read the state of a remapped jar.
+	 *
+	 * @return the state or null if it is missing or for different namespaces
+	 * @throws IOException if the state can't be read
+	 */
+	static GameRemapState read(Path jar, String srcNamespace, String dstNamespace) throws IOException {
+		Path file = getFile(jar);
+
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (is.readInt() != FORMAT_VERSION
+					|| !is.readUTF().equals(LeafLoaderImpl.VERSION)
+					|| !is.readUTF().equals(srcNamespace)
+					|| !is.readUTF().equals(dstNamespace)) {
+				return null;
+			}
+
+			int count = is.readInt();
+			Map<String, ClassState> classes = new HashMap<>(count * 4 / 3 + 1);
+
+			for (int i = 0; i < count; i++) {
+				String name = is.readUTF();
+				String outputName = is.readUTF();
+				byte[] contentHash = new byte[HASH_SIZE];
+				is.readFully(contentHash);
+				byte[] mappingHash = new byte[HASH_SIZE];
+				is.readFully(mappingHash);
+
+				classes.put(name, new ClassState(contentHash, mappingHash, outputName, null, new String[0], Collections.emptySet()));
+			}
+
+			return new GameRemapState(srcNamespace, dstNamespace, classes);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (RuntimeException e) {
+			throw new IOException("corrupt remap state "+file, e);
+		}
+	}
+
+	/**
+	 * Delete the state of a remapped jar, so it won't be used for incremental remapping again.
+	 */
+	static void delete(Path jar) {
+		Path file = getFile(jar);
+
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			Log.debug(LogCategory.GAME_REMAP, "Error deleting remap state %s", file, e);
+		}
+	}
+
+	/**
+	 * Store the state next to its remapped jar, all output names have to be known.
+	 */
+	void write(Path jar) {
+		Path file = getFile(jar);
+		Path tmpFile = file.resolveSibling(file.getFileName().toString() + ".tmp");
+
+		try {
+			try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				os.writeInt(FORMAT_VERSION);
+				os.writeUTF(LeafLoaderImpl.VERSION);
+				os.writeUTF(srcNamespace);
+				os.writeUTF(dstNamespace);
+				os.writeInt(classes.size());
+
+				for (Map.Entry<String, ClassState> entry : classes.entrySet()) {
+					ClassState state = entry.getValue();
+
+					os.writeUTF(entry.getKey());
+					os.writeUTF(state.outputName);
+					os.write(state.contentHash);
+					os.write(state.mappingHash);
+				}
+			}
+
+			LoaderUtil.replaceFile(tmpFile, file);
+		} catch (IOException e) {
+			Log.warn(LogCategory.GAME_REMAP, "Error writing remap state %s", file, e);
+
+			try {
+				Files.deleteIfExists(tmpFile);
+			} catch (IOException e2) {
+				// ignore
+			}
+		}
+	}
+}
@@ -18,6 +18,7 @@ package dev.aoqia.leaf.loader.impl.launch;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.JarURLConnection;
 import java.net.URI;
@@ -28,10 +29,13 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -39,11 +43,13 @@ import java.util.zip.ZipFile;
 import org.jetbrains.annotations.Nullable;
 
 import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
+import dev.aoqia.leaf.loader.impl.util.HashUtil;
 import dev.aoqia.leaf.loader.impl.util.ManifestUtil;
 import dev.aoqia.leaf.loader.impl.util.SystemProperties;
 import dev.aoqia.leaf.loader.impl.util.log.Log;
 import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
 import dev.aoqia.leaf.loader.impl.util.mappings.FilteringMappingVisitor;
+import dev.aoqia.leaf.loader.impl.util.mappings.MappingIndex;
 import net.fabricmc.mappingio.MappingReader;
 import net.fabricmc.mappingio.MappingVisitor;
 import net.fabricmc.mappingio.tree.MappingTree;
@@ -51,6 +57,7 @@ import net.fabricmc.mappingio.tree.MemoryMappingTree;
 
 public final class MappingConfiguration {
 	private static final boolean FIX_PACKAGE_ACCESS = SystemProperties.isSet(SystemProperties.FIX_PACKAGE_ACCESS);
+	private static final String MAPPING_INDEX_FILE_NAME = "mappings.idx";
 
 	// same ns between client and server
 	public static final String OFFICIAL_NAMESPACE = "official";
@@ -77,6 +84,10 @@ public final class MappingConfiguration {
 	private List<String> namespaces;
 	@Nullable
 	private MemoryMappingTree mappings;
+	@Nullable
+	private String mappingsHash;
+	@Nullable
+	private MappingIndex mappingIndex;
 
 	@Nullable
 	public String getGameId() {
@@ -121,11 +132,108 @@ public final class MappingConfiguration {
 	}
 
 	public boolean hasAnyMappings() {
+		if (!initializedMappings) { // avoid parsing the mappings if the index suffices
+			return getMappingIndex().getClassCount() > 0;
+		}
+
 		MappingTree tree = getMappings();
 
 		return !tree.getClasses().isEmpty();
 	}
 
+	/**
+	 * Get the compact index of the mappings for runtime lookups.
+	 *
+	 * <p>The index is mapped from the leaf dir if it was stored there for the same mappings before, otherwise it is
+	 * built from {@link #getMappings()} and stored for subsequent launches.
+	 */
+	public MappingIndex getMappingIndex() {
+		if (mappingIndex == null) {
+			mappingIndex = loadMappingIndex();
+		}
+
+		return mappingIndex;
+	}
+
+	private MappingIndex loadMappingIndex() {
+		long time = System.nanoTime();
+		String key = getMappingsHash();
+		Path file = getMappingIndexFile();
+		MappingIndex ret = file != null ? MappingIndex.open(file, key) : null;
+
+		if (ret != null) {
+			Log.debug(LogCategory.MAPPINGS, "Loading mapping index %s took %.2f ms", file, (System.nanoTime() - time) * 1e-6);
+			return ret;
+		}
+
+		ret = MappingIndex.create(getMappings(), key);
+		if (file != null) ret.write(file);
+
+		Log.debug(LogCategory.MAPPINGS, "Building mapping index took %.2f ms", (System.nanoTime() - time) * 1e-6);
+
+		return ret;
+	}
+
+	@Nullable
+	private static Path getMappingIndexFile() {
+		LeafLoaderImpl loader = LeafLoaderImpl.INSTANCE;
+		if (loader == null || loader.tryGetGameProvider() == null) return null; // game dir unknown yet
+
+		return loader.getGameDir().resolve(LeafLoaderImpl.CACHE_DIR_NAME).resolve(MAPPING_INDEX_FILE_NAME);
+	}
+
+	/**
+	 * Get a hash of the raw mapping source content, for keying caches of remapped output.
+	 *
+	 * @return hex encoded SHA-256 hash, an empty string if there are no mappings
+	 */
+	public String getMappingsHash() {
+		if (mappingsHash == null) {
+			mappingsHash = computeMappingsHash();
+		}
+
+		return mappingsHash;
+	}
+
+	private String computeMappingsHash() {
+		MappingSource source = getMappingSource();
+		MessageDigest digest = HashUtil.newSha256();
+
+		try {
+			if (source.path != null) {
+				if (Files.isDirectory(source.path)) { // e.g. enigma mapping dirs
+					List<Path> files;
+
+					try (Stream<Path> stream = Files.walk(source.path)) {
+						files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+					}
+
+					for (Path file : files) {
+						HashUtil.update(digest, "file", source.path.relativize(file).toString());
+
+						try (InputStream is = Files.newInputStream(file)) {
+							HashUtil.updateContent(digest, is);
+						}
+					}
+				} else {
+					try (InputStream is = Files.newInputStream(source.path)) {
+						HashUtil.updateContent(digest, is);
+					}
+				}
+			} else if (source.url != null) {
+				try (InputStream is = source.url.openStream()) {
+					HashUtil.updateContent(digest, is);
+				}
+			} else {
+				return "";
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error hashing mappings", e);
+		}
+
+		return HashUtil.toHex(digest.digest());
+	}
+
 	public String getRuntimeNamespace() {
 		if (namespace == null) {
 			namespace = computeRuntimeNamespace();
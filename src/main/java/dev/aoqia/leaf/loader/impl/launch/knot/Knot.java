@@ -158,6 +158,10 @@ public final class Knot extends LeafLauncherBase {
 			throw FormattedException.ofLocalized("exception.initializerFailure", e);
 		}
 
+		// after preLaunch, which may still adjust the class path or mixin setup before the first game classes load
+		classLoader.initializeClassCache();
+		classLoader.warmUp();
+
 		return cl;
 	}
 
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.launch.knot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.transformer.Config;
+
+import dev.aoqia.leaf.api.EnvType;
+import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
+import dev.aoqia.leaf.loader.impl.ModContainerImpl;
+import dev.aoqia.leaf.loader.impl.game.GameProvider;
+import dev.aoqia.leaf.loader.impl.launch.LeafLauncherBase;
+import dev.aoqia.leaf.loader.impl.util.HashUtil;
+import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
+import dev.aoqia.leaf.loader.impl.util.SystemProperties;
+import dev.aoqia.leaf.loader.impl.util.UrlUtil;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * On-disk cache of fully transformed (game transformer, leaf transformer and mixin) class bytes.
+ *
+ * <p>Entries live in a directory named after a fingerprint of everything that can influence the transformation output:
+ * the loader, the code sources (game jars, mods, libraries), the mod set with its class tweakers, the contents of the
+ * registered mixin configs and their mixin packages and the mixin system properties. Any change yields a new
+ * fingerprint, the directories for other fingerprints are removed when the cache gets opened. The cache is opened
+ * after preLaunch to include the mixin configs registered by then.
+ *
+ * <p>Cache hits bypass the mixin transformer, so classes targeted by any mixin are never cached. The transformer has
+ * to see those to apply the mixins with their config plugin callbacks and to generate the synthetic classes they need.
+ * This also keeps configs registered after opening the cache from being served stale output. The cache is opt-in
+ * through {@link dev.aoqia.leaf.loader.impl.util.SystemProperties#CLASS_CACHE}.
+ */
+final class KnotClassCache {
+	private static final int FORMAT_VERSION = 1;
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private final Path dir;
+	private volatile MixinTargets mixinTargets;
+
+	private KnotClassCache(Path dir) {
+		this.dir = dir;
+	}
+
+	static KnotClassCache open(Path cacheRoot, Collection<Path> codeSources, EnvType envType, GameProvider provider) throws IOException {
+		String fingerprint = computeFingerprint(codeSources, envType, provider);
+		Path dir = cacheRoot.resolve(fingerprint);
+
+		if (Files.isDirectory(cacheRoot)) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheRoot)) {
+				for (Path path : stream) {
+					if (!path.equals(dir)) {
+						Log.debug(LogCategory.KNOT, "Removing stale class cache %s", path.getFileName());
+						deleteRecursively(path);
+					}
+				}
+			}
+		}
+
+		Files.createDirectories(dir);
+		Log.debug(LogCategory.KNOT, "Using class cache %s", dir);
+
+		return new KnotClassCache(dir);
+	}
+
+	/**
+	 * Get the cached transformed bytes for a class.
+	 *
+	 * @param name binary class name with dots
+	 * @return transformed class bytes or null if not cached
+	 */
+	byte[] get(String name) {
+		Path file = getFile(name);
+		byte[] ret;
+
+		try {
+			ret = Files.readAllBytes(file);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			Log.debug(LogCategory.KNOT, "Error reading cached class %s", name, e);
+			return null;
+		}
+
+		if (!isClassFile(ret)) { // shouldn't happen due to the atomic moves, but don't trust what's on disk
+			Log.warn(LogCategory.KNOT, "Discarding corrupt cached class %s", name);
+
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				// ignore, will be replaced on put
+			}
+
+			return null;
+		}
+
+		return ret;
+	}
+
+	void put(String name, byte[] bytes) {
+		Path file = getFile(name);
+		Path tmpFile = file.resolveSibling(file.getFileName().toString() + "." + Thread.currentThread().getId() + TMP_SUFFIX);
+
+		try {
+			Files.createDirectories(file.getParent());
+			Files.write(tmpFile, bytes);
+
+			LoaderUtil.replaceFile(tmpFile, file);
+		} catch (IOException e) {
+			Log.debug(LogCategory.KNOT, "Error caching transformed class %s", name, e);
+
+			try {
+				Files.deleteIfExists(tmpFile);
+			} catch (IOException e2) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Determine whether mixins may apply to a class, which rules out serving or storing its cached bytes.
+	 *
+	 * <p>Mixin only resolves the targets of a config once the transformer processed a class after the config got
+	 * registered, every class counts as a potential target until then.
+	 *
+	 * @param name binary class name with dots
+	 */
+	boolean isMixinTarget(String name) {
+		if (Mixins.getUnvisitedCount() > 0) return true;
+
+		Set<Config> configs = Mixins.getConfigs();
+		MixinTargets targets = mixinTargets;
+
+		if (targets == null || targets.configCount != configs.size()) {
+			targets = new MixinTargets(configs);
+			mixinTargets = targets;
+		}
+
+		return targets.names.contains(name);
+	}
+
+	private Path getFile(String name) {
+		return dir.resolve(name.replace('.', '/').concat(".class"));
+	}
+
+	private static boolean isClassFile(byte[] bytes) {
+		return bytes.length >= 4
+				&& (bytes[0] & 0xff) == 0xca
+				&& (bytes[1] & 0xff) == 0xfe
+				&& (bytes[2] & 0xff) == 0xba
+				&& (bytes[3] & 0xff) == 0xbe;
+	}
+
+	private static String computeFingerprint(Collection<Path> codeSources, EnvType envType, GameProvider provider) throws IOException {
+		MessageDigest digest = HashUtil.newSha256();
+
+		HashUtil.update(digest, "format", Integer.toString(FORMAT_VERSION));
+		HashUtil.update(digest, "loader", LeafLoaderImpl.VERSION);
+		HashUtil.update(digest, "game", provider.getGameId() + " " + provider.getRawGameVersion());
+		HashUtil.update(digest, "env", envType.name());
+		HashUtil.update(digest, "namespace", LeafLauncherBase.getLauncher().getMappingConfiguration().getRuntimeNamespace());
+		HashUtil.update(digest, "fixPackageAccess", Boolean.toString(SystemProperties.isSet(SystemProperties.FIX_PACKAGE_ACCESS)));
+
+		// loader and mixin jars, both affect the output and may change without a version bump for local builds
+
+		updateFile(digest, UrlUtil.LOADER_CODE_SOURCE);
+		updateFile(digest, UrlUtil.getCodeSource(Mixins.class));
+
+		List<Path> sortedCodeSources = new ArrayList<>(codeSources);
+		Collections.sort(sortedCodeSources);
+
+		for (Path path : sortedCodeSources) {
+			updateFile(digest, path);
+		}
+
+		for (ModContainerImpl mod : LeafLoaderImpl.INSTANCE.getModsInternal()) {
+			HashUtil.update(digest, "mod", mod.getMetadata().getId() + " " + mod.getMetadata().getVersion().getFriendlyString());
+
+			String classTweaker = mod.getMetadata().getClassTweaker();
+			if (classTweaker != null) HashUtil.update(digest, "classTweaker", classTweaker);
+		}
+
+		// all registered configs including those added by preLaunch, not just the ones declared in the mod metadata
+		List<Config> configs = new ArrayList<>(Mixins.getConfigs());
+		configs.sort(Comparator.comparing(Config::getName));
+
+		for (Config config : configs) {
+			HashUtil.update(digest, "mixin", config.getName());
+			updateMixinConfig(digest, config);
+		}
+
+		Map<String, String> mixinProperties = new TreeMap<>();
+
+		for (String key : System.getProperties().stringPropertyNames()) {
+			if (key.startsWith("mixin.")) mixinProperties.put(key, System.getProperty(key));
+		}
+
+		for (Map.Entry<String, String> entry : mixinProperties.entrySet()) {
+			HashUtil.update(digest, entry.getKey(), entry.getValue());
+		}
+
+		return HashUtil.toHex(digest.digest(), 16);
+	}
+
+	/**
+	 * Add the contents of a mixin config and all files in its mixin package to the digest.
+	 *
+	 * <p>File stamps of the code sources don't suffice, mod directories don't change their stamp with their contents.
+	 */
+	private static void updateMixinConfig(MessageDigest digest, Config config) throws IOException {
+		String packagePath = config.getConfig().getMixinPackage().replace('.', '/');
+
+		for (ModContainerImpl mod : LeafLoaderImpl.INSTANCE.getModsInternal()) {
+			for (Path root : mod.getRootPaths()) {
+				Path file = root.resolve(config.getName());
+				if (!Files.isRegularFile(file)) continue;
+
+				updateContent(digest, file);
+
+				Path packageDir = packagePath.isEmpty() ? root : root.resolve(packagePath);
+				if (!Files.isDirectory(packageDir)) return;
+
+				List<Path> files;
+
+				try (Stream<Path> stream = Files.walk(packageDir)) {
+					files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+				}
+
+				for (Path mixinFile : files) {
+					HashUtil.update(digest, "mixinFile", packageDir.relativize(mixinFile).toString());
+					updateContent(digest, mixinFile);
+				}
+
+				return;
+			}
+		}
+
+		throw new IOException("can't locate mixin config "+config.getName()+" in any mod");
+	}
+
+	private static void updateContent(MessageDigest digest, Path file) throws IOException {
+		try (InputStream is = Files.newInputStream(file)) {
+			HashUtil.updateContent(digest, is);
+		}
+	}
+
+	private static void updateFile(MessageDigest digest, Path path) throws IOException {
+		if (path != null) HashUtil.updateFileStamp(digest, path);
+	}
+
+	private static final class MixinTargets {
+		final int configCount;
+		final Set<String> names = new HashSet<>();
+
+		MixinTargets(Set<Config> configs) {
+			configCount = configs.size();
+
+			for (Config config : configs) {
+				names.addAll(config.getConfig().getTargets());
+			}
+		}
+	}
+
+	private static void deleteRecursively(Path path) throws IOException {
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				if (exc != null) throw exc;
+
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -38,9 +38,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.jar.Manifest;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
@@ -54,6 +57,7 @@ import dev.aoqia.leaf.loader.impl.game.GameProvider;
 import dev.aoqia.leaf.loader.impl.launch.LeafLauncherBase;
 import dev.aoqia.leaf.loader.impl.launch.knot.KnotClassDelegate.ClassLoaderAccess;
 import dev.aoqia.leaf.loader.impl.transformer.LeafTransformer;
+import dev.aoqia.leaf.loader.impl.util.ClassLoadProfiler;
 import dev.aoqia.leaf.loader.impl.util.ExceptionUtil;
 import dev.aoqia.leaf.loader.impl.util.FileSystemUtil;
 import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
@@ -69,6 +73,9 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 	private static final boolean LOG_CLASS_LOAD_ERRORS = LOG_CLASS_LOAD || SystemProperties.isSet(SystemProperties.DEBUG_LOG_CLASS_LOAD_ERRORS);
 	private static final boolean LOG_TRANSFORM_ERRORS = SystemProperties.isSet(SystemProperties.DEBUG_LOG_TRANSFORM_ERRORS);
 	private static final boolean DISABLE_ISOLATION = SystemProperties.isSet(SystemProperties.DEBUG_DISABLE_CLASS_PATH_ISOLATION);
+	private static final boolean ENABLE_CLASS_CACHE = SystemProperties.isSet(SystemProperties.CLASS_CACHE);
+	private static final boolean ENABLE_WARM_UP = SystemProperties.isSet(SystemProperties.WARM_UP);
+	private static final int WARM_UP_TIMEOUT_SECONDS = Integer.getInteger(SystemProperties.WARM_UP_TIMEOUT, 120);
 
 	static final class Metadata {
 		static final Metadata EMPTY = new Metadata(null, null);
@@ -96,6 +103,9 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 	private volatile Set<Path> validParentCodeSources = null; // null = disabled isolation, game provider has to set it to opt in
 	private final Map<Path, String[]> allowedPrefixes = new ConcurrentHashMap<>();
 	private final Set<String> parentSourcedClasses = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	private volatile KnotClassCache classCache; // null = disabled
+	private final KnotCodeSourceIndex codeSourceIndex = new KnotCodeSourceIndex();
+	private volatile Queue<String> loadedClassLog; // transformed classes in load order, null = not recording
 
 	private static final Collection<Path> JVM_NATIVE_DIRS = computeJvmNativeDirs();
 	private static final Map<String, String> PROCESSED_NATIVES = new HashMap<>();
@@ -134,6 +144,54 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 		}
 
 		transformInitialized = true;
+
+		if (ENABLE_WARM_UP) { // record from the first transformed class on, including those loaded by preLaunch
+			Queue<String> loadedClassLog = new ConcurrentLinkedQueue<>();
+			this.loadedClassLog = loadedClassLog;
+			KnotWarmUp.recordOnExit(loadedClassLog, KnotWarmUp.getClassListFile(LeafLoaderImpl.INSTANCE.getLeafDir(), envType));
+		}
+	}
+
+	@Override
+	public void initializeClassCache() {
+		if (!ENABLE_CLASS_CACHE) return;
+
+		if (isDevelopment) { // class directories can't be fingerprinted cheaply
+			Log.debug(LogCategory.KNOT, "Class cache disabled in development environments");
+			return;
+		}
+
+		Path cacheRoot = LeafLoaderImpl.INSTANCE.getLeafDir().resolve(LeafLoaderImpl.CLASS_CACHE_DIR_NAME);
+
+		try {
+			classCache = KnotClassCache.open(cacheRoot, codeSources, envType, provider);
+		} catch (IOException e) {
+			Log.warn(LogCategory.KNOT, "Error opening class cache at %s, continuing without it", cacheRoot, e);
+		}
+	}
+
+	@Override
+	public void warmUp() {
+		if (!ENABLE_WARM_UP) return;
+		if (!transformInitialized) throw new IllegalStateException("warm-up before transformer initialization");
+
+		List<String> classNames = KnotWarmUp.readClassList(KnotWarmUp.getClassListFile(LeafLoaderImpl.INSTANCE.getLeafDir(), envType));
+
+		if (classNames.isEmpty()) {
+			Log.debug(LogCategory.KNOT, "No warm-up class list yet, recording one for the next launch");
+			return;
+		}
+
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		KnotWarmUp.start(classNames, this::warmUpClass, classLoader, threads, WARM_UP_TIMEOUT_SECONDS);
+	}
+
+	private void warmUpClass(String name) throws ClassNotFoundException {
+		synchronized (classLoader.getClassLoadingLockFwd(name)) {
+			if (classLoader.findLoadedClassFwd(name) == null) {
+				tryLoadClass(name, false);
+			}
+		}
 	}
 
 	private IMixinTransformer getMixinTransformer() {
@@ -154,6 +212,12 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 			newCodeSources.add(path);
 
 			this.codeSources = newCodeSources;
+			codeSourceIndex.add(path);
+
+			if (classCache != null) { // the fingerprint doesn't cover the new code source
+				Log.debug(LogCategory.KNOT, "Disabling class cache due to late code source addition %s", path);
+				classCache = null;
+			}
 		}
 
 		try {
@@ -294,12 +358,24 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 			return null;
 		}
 
+		ClassLoadProfiler.Record profile = ClassLoadProfiler.begin(name);
+		boolean defined = false;
+
+		try {
+			Class<?> ret = tryLoadClass0(name, allowFromParent, profile);
+			defined = ret != null;
+
+			return ret;
+		} finally {
+			ClassLoadProfiler.end(profile, defined);
+		}
+	}
+
+	private Class<?> tryLoadClass0(String name, boolean allowFromParent, ClassLoadProfiler.Record profile) throws ClassNotFoundException {
 		if (!allowedPrefixes.isEmpty() && !DISABLE_ISOLATION) { // check prefix restrictions (allows exposing libraries partially during startup)
-			String fileName = LoaderUtil.getClassFileName(name);
-			URL url = classLoader.getResource(fileName);
+			Path codeSource = findCodeSource(LoaderUtil.getClassFileName(name));
 
-			if (url != null && hasRegularCodeSource(url)) {
-				Path codeSource = getCodeSource(url, fileName);
+			if (codeSource != null) {
 				String[] prefixes = allowedPrefixes.get(codeSource);
 
 				if (prefixes != null) {
@@ -348,7 +424,8 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 			parentSourcedClasses.add(name);
 		}
 
-		KnotClassDelegate.Metadata metadata = getMetadata(name);
+		Path codeSource = findCodeSource(LoaderUtil.getClassFileName(name));
+		KnotClassDelegate.Metadata metadata = codeSource != null ? getMetadata(codeSource) : Metadata.EMPTY;
 
 		int pkgDelimiterPos = name.lastIndexOf('.');
 
@@ -365,15 +442,39 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 			}
 		}
 
-		return classLoader.defineClassFwd(name, input, 0, input.length, metadata.codeSource);
+		if (profile != null) {
+			profile.setCodeSource(codeSource);
+			profile.setOutputBytes(input.length);
+		}
+
+		long startTime = ClassLoadProfiler.start();
+		Class<?> ret = classLoader.defineClassFwd(name, input, 0, input.length, metadata.codeSource);
+		ClassLoadProfiler.stop(ClassLoadProfiler.Stage.DEFINE, startTime);
+
+		Queue<String> loadedClassLog = this.loadedClassLog;
+		if (loadedClassLog != null && !allowFromParent) loadedClassLog.add(name);
+
+		return ret;
 	}
 
-	private Metadata getMetadata(String name) {
-		String fileName = LoaderUtil.getClassFileName(name);
+	/**
+	 * Determine the code source for a resource the way {@link ClassLoader#getResource} would see it.
+	 *
+	 * <p>This uses the code source index for the own code sources, misses fall back to {@link ClassLoader#getResource}.
+	 *
+	 * @return the code source or null if the resource wasn't found or isn't from a file or jar
+	 */
+	private Path findCodeSource(String fileName) {
+		if (codeSourceIndex.isComplete()) {
+			KnotCodeSourceIndex.Source source = codeSourceIndex.find(fileName);
+			if (source != null) return source.path;
+		}
+
 		URL url = classLoader.getResource(fileName);
-		if (url == null || !hasRegularCodeSource(url)) return Metadata.EMPTY;
 
-		return getMetadata(getCodeSource(url, fileName));
+		if (url == null || !hasRegularCodeSource(url)) return null;
+
+		return getCodeSource(url, fileName);
 	}
 
 	private Metadata getMetadata(Path codeSource) {
@@ -425,25 +526,61 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 	}
 
 	private byte[] getPostMixinClassByteArray(String name, boolean allowFromParent) {
+		// only classes from our own code sources are covered by the cache fingerprint
+		KnotClassCache classCache = allowFromParent ? null : this.classCache;
+
+		if (classCache != null && transformInitialized && canTransformClass(name) && !classCache.isMixinTarget(name)) {
+			long startTime = ClassLoadProfiler.start();
+			byte[] cached = classCache.get(name);
+			ClassLoadProfiler.stop(ClassLoadProfiler.Stage.CACHE_READ, startTime);
+
+			if (cached != null) {
+				ClassLoadProfiler.Record profile = ClassLoadProfiler.current();
+				if (profile != null) profile.setInputBytes(cached.length);
+
+				return cached;
+			}
+		} else {
+			classCache = null;
+		}
+
 		byte[] transformedClassArray = getPreMixinClassByteArray(name, allowFromParent);
 
 		if (!transformInitialized || !canTransformClass(name)) {
 			return transformedClassArray;
 		}
 
+		byte[] ret;
+		long startTime = ClassLoadProfiler.start();
+
 		try {
-			return getMixinTransformer().transformClassBytes(name, name, transformedClassArray);
+			ret = getMixinTransformer().transformClassBytes(name, name, transformedClassArray);
+			ClassLoadProfiler.stop(ClassLoadProfiler.Stage.MIXIN, startTime);
 		} catch (Throwable t) {
 			String msg = String.format("Mixin transformation of %s failed", name);
 			if (LOG_TRANSFORM_ERRORS) Log.warn(LogCategory.KNOT, msg, t);
 
 			throw new RuntimeException(msg, t);
 		}
+
+		if (classCache != null && transformedClassArray != null && ret != null // skip mixin synthesized classes
+				&& !classCache.isMixinTarget(name)) { // the transformer resolved pending configs above
+			classCache.put(name, ret);
+		}
+
+		return ret;
 	}
 
 	@Override
 	public byte[] getPreMixinClassBytes(String name) {
-		return getPreMixinClassByteArray(name, true);
+		// not a class load on its own, the time is already part of the caller's stage
+		ClassLoadProfiler.Record profile = ClassLoadProfiler.begin(name);
+
+		try {
+			return getPreMixinClassByteArray(name, true);
+		} finally {
+			ClassLoadProfiler.end(profile, false);
+		}
 	}
 
 	/**
@@ -461,7 +598,9 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 			}
 		}
 
+		long startTime = ClassLoadProfiler.start();
 		byte[] input = provider.getEntrypointTransformer().transform(name);
+		ClassLoadProfiler.stop(ClassLoadProfiler.Stage.GAME_TRANSFORM, startTime);
 
 		if (input == null) {
 			try {
@@ -486,11 +625,41 @@ final class KnotClassDelegate<T extends ClassLoader & ClassLoaderAccess> impleme
 
 	@Override
 	public byte[] getRawClassBytes(String name) throws IOException {
-		return getRawClassByteArray(name, true);
+		ClassLoadProfiler.Record profile = ClassLoadProfiler.begin(name);
+
+		try {
+			return getRawClassByteArray(name, true);
+		} finally {
+			ClassLoadProfiler.end(profile, false);
+		}
 	}
 
 	private byte[] getRawClassByteArray(String name, boolean allowFromParent) throws IOException {
+		if (!ClassLoadProfiler.isEnabled()) return readRawClassByteArray(name, allowFromParent);
+
+		long startTime = ClassLoadProfiler.start();
+		byte[] ret = readRawClassByteArray(name, allowFromParent);
+		ClassLoadProfiler.stop(ClassLoadProfiler.Stage.READ, startTime);
+
+		ClassLoadProfiler.Record profile = ClassLoadProfiler.current();
+		if (profile != null && ret != null) profile.setInputBytes(ret.length);
+
+		return ret;
+	}
+
+	private byte[] readRawClassByteArray(String name, boolean allowFromParent) throws IOException {
 		name = LoaderUtil.getClassFileName(name);
+
+		if (codeSourceIndex.isComplete()) {
+			KnotCodeSourceIndex.Source source = codeSourceIndex.find(name);
+
+			if (source != null) {
+				byte[] ret = source.read(name);
+				if (ret != null) return ret;
+			}
+		}
+
+		// index misses and entries it can't read directly go through the url lookup
 		URL url = classLoader.findResourceFwd(name);
 
 		if (url == null) {
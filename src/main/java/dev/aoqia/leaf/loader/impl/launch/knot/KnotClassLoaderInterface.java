@@ -35,6 +35,8 @@ interface KnotClassLoaderInterface {
 	}
 
 	void initializeTransformers();
+	void initializeClassCache();
+	void warmUp();
 
 	ClassLoader getClassLoader();
 
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.launch.knot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import dev.aoqia.leaf.loader.impl.util.MappedZipFile;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * Package to code source index for Knot's own code sources.
+ *
+ * <p>Jars get memory mapped and their central directory read once when added, see {@link MappedZipFile}. Directories and jars that can't be indexed are consulted
+ * for every lookup like the URL class loader would. Lookups honor the order in which code sources were added.
+ *
+ * <p>Entries under {@code META-INF/versions/<n>/} of multi-release jars are indexed under their unversioned name if
+ * the running JVM would see them. The index only answers hits, callers have to fall back to the URL class loader for
+ * names it doesn't find.
+ */
+final class KnotCodeSourceIndex {
+	private static final String MULTI_RELEASE_PREFIX = "META-INF/versions/";
+	private static final Attributes.Name MULTI_RELEASE = new Attributes.Name("Multi-Release");
+	private static final int JAVA_VERSION = Integer.parseInt(System.getProperty("java.specification.version").replaceFirst("^1\\.", ""));
+	private static final Source[] NO_SOURCES = new Source[0];
+
+	private final Map<String, Source[]> packages = new ConcurrentHashMap<>();
+	private volatile Source[] unindexedSources = NO_SOURCES;
+	private volatile boolean complete = true;
+	private int nextOrdinal;
+
+	static final class Source {
+		final Path path;
+		final int ordinal;
+		final MappedZipFile zipFile; // null for directories or unindexed jars
+		final Set<String> versionedNames; // unversioned names of the multi-release entries visible to this JVM
+
+		Source(Path path, int ordinal, MappedZipFile zipFile, Set<String> versionedNames) {
+			this.path = path;
+			this.ordinal = ordinal;
+			this.zipFile = zipFile;
+			this.versionedNames = versionedNames;
+		}
+
+		boolean contains(String name) {
+			if (zipFile != null) {
+				return zipFile.contains(name) || versionedNames.contains(name);
+			} else if (Files.isDirectory(path)) {
+				return Files.isRegularFile(path.resolve(name));
+			} else {
+				return false;
+			}
+		}
+
+		/**
+		 * Read an entry directly, bypassing the URL handlers.
+		 *
+		 * @return the entry's bytes or null if it isn't accessible this way (absent, multi-release or unindexed jar)
+		 */
+		byte[] read(String name) throws IOException {
+			if (zipFile != null) {
+				if (!versionedNames.isEmpty()) return null; // versioned lookup is up to the URL class loader
+
+				return zipFile.read(name);
+			} else if (Files.isDirectory(path)) {
+				return Files.readAllBytes(path.resolve(name));
+			} else {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Add a code source to the index, must be synchronized externally.
+	 */
+	void add(Path path) {
+		int ordinal = nextOrdinal++;
+
+		if (Files.isDirectory(path)) {
+			addUnindexed(new Source(path, ordinal, null, Collections.emptySet()));
+			return;
+		}
+
+		MappedZipFile zipFile;
+
+		try {
+			zipFile = MappedZipFile.open(path);
+		} catch (IOException e) {
+			Log.debug(LogCategory.KNOT, "Can't index code source %s, falling back to linear lookup", path, e);
+			addUnindexed(new Source(path, ordinal, null, Collections.emptySet()));
+			complete = false;
+			return;
+		}
+
+		Set<String> pkgs = new HashSet<>();
+		Set<String> versionedNames = new HashSet<>();
+		Boolean multiRelease = null; // determined on the first versioned entry
+
+		for (String name : zipFile.getEntryNames()) {
+			if (name.startsWith(MULTI_RELEASE_PREFIX)) {
+				if (multiRelease == null) multiRelease = isMultiRelease(path, zipFile);
+				if (!multiRelease) continue;
+
+				// META-INF/versions/<n>/pkg/Cls.class -> pkg/Cls.class
+				int pos = name.indexOf('/', MULTI_RELEASE_PREFIX.length());
+				if (pos < 0 || pos + 1 == name.length()) continue;
+
+				int version;
+
+				try {
+					version = Integer.parseInt(name.substring(MULTI_RELEASE_PREFIX.length(), pos));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+
+				if (version < 9 || version > JAVA_VERSION) continue;
+
+				name = name.substring(pos + 1);
+				versionedNames.add(name);
+			}
+
+			pkgs.add(getPackage(name));
+		}
+
+		Source source = new Source(path, ordinal, zipFile, versionedNames.isEmpty() ? Collections.emptySet() : versionedNames);
+
+		for (String pkg : pkgs) {
+			packages.merge(pkg, new Source[] { source }, KnotCodeSourceIndex::append);
+		}
+	}
+
+	/**
+	 * Determine whether the JVM treats a jar as multi-release, which requires its manifest to declare it.
+	 */
+	private static boolean isMultiRelease(Path path, MappedZipFile zipFile) {
+		if (JAVA_VERSION < 9) return false;
+
+		try {
+			byte[] data = zipFile.read(JarFile.MANIFEST_NAME);
+			if (data == null) return false;
+
+			Manifest manifest = new Manifest(new ByteArrayInputStream(data));
+
+			return Boolean.parseBoolean(manifest.getMainAttributes().getValue(MULTI_RELEASE));
+		} catch (IOException e) {
+			Log.debug(LogCategory.KNOT, "Can't read manifest of %s", path, e);
+			return true; // assume versioned entries apply, reads go through the URL class loader anyway
+		}
+	}
+
+	private void addUnindexed(Source source) {
+		unindexedSources = append(unindexedSources, new Source[] { source });
+	}
+
+	/**
+	 * Find the first code source containing the resource with the supplied name.
+	 *
+	 * @return the code source or null if none of the indexed code sources or directories has it
+	 */
+	Source find(String name) {
+		Source[] indexed = packages.getOrDefault(getPackage(name), NO_SOURCES);
+		Source[] unindexed = unindexedSources;
+		int i = 0;
+		int j = 0;
+
+		// merge both lists by ordinal to preserve the class path order
+		while (i < indexed.length || j < unindexed.length) {
+			Source source;
+
+			if (j >= unindexed.length || i < indexed.length && indexed[i].ordinal < unindexed[j].ordinal) {
+				source = indexed[i++];
+			} else {
+				source = unindexed[j++];
+			}
+
+			if (source.contains(name)) return source;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Whether lookups may be answered by {@link #find} alone.
+	 *
+	 * <p>Unindexed jars can only be queried through their URL, so they require falling back to the URL class loader.
+	 */
+	boolean isComplete() {
+		return complete;
+	}
+
+	private static String getPackage(String name) {
+		int pos = name.lastIndexOf('/');
+
+		return pos < 0 ? "" : name.substring(0, pos);
+	}
+
+	private static Source[] append(Source[] a, Source[] b) {
+		Source[] ret = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, ret, a.length, b.length);
+
+		return ret;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.launch.knot;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.aoqia.leaf.api.EnvType;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * Parallel class warm-up from the class list recorded by a previous launch.
+ *
+ * <p>Loading a class runs the full transformation pipeline including mixin, which is otherwise done lazily on the
+ * game's main thread. Doing it on a background worker pool while the game starts moves most of that work off the
+ * critical path. The warm-up starts after the preLaunch entrypoints ran, so their effects apply to the loaded classes
+ * as they would without it.
+ */
+final class KnotWarmUp {
+	private static final int MAX_RECORDED_CLASSES = 100_000;
+
+	interface ClassWarmer {
+		void warmUp(String name) throws ClassNotFoundException;
+	}
+
+	static Path getClassListFile(Path leafDir, EnvType envType) {
+		return leafDir.resolve("warmUpClasses-" + envType.name().toLowerCase(Locale.ENGLISH) + ".txt");
+	}
+
+	static List<String> readClassList(Path file) {
+		List<String> ret = new ArrayList<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty()) ret.add(line);
+			}
+		} catch (NoSuchFileException e) {
+			return Collections.emptyList();
+		} catch (IOException e) {
+			Log.warn(LogCategory.KNOT, "Error reading warm-up class list %s", file, e);
+			return Collections.emptyList();
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Write the classes loaded during this run to the class list file when the JVM exits.
+	 */
+	static void recordOnExit(Collection<String> loadedClasses, Path file) {
+		Thread thread = new Thread(() -> {
+			if (loadedClasses.isEmpty()) return;
+
+			Path tmpFile = file.resolveSibling(file.getFileName().toString() + ".tmp");
+
+			try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+				int count = 0;
+
+				for (String name : loadedClasses) {
+					if (count++ >= MAX_RECORDED_CLASSES) break;
+
+					writer.write(name);
+					writer.write('\n');
+				}
+			} catch (IOException e) {
+				Log.warn(LogCategory.KNOT, "Error writing warm-up class list %s", file, e);
+				return;
+			}
+
+			try {
+				Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				Log.warn(LogCategory.KNOT, "Error writing warm-up class list %s", file, e);
+			}
+		}, "Leaf Warm-Up Recorder");
+
+		Runtime.getRuntime().addShutdownHook(thread);
+	}
+
+	/**
+	 * Load the supplied classes on a background worker pool without waiting for them.
+	 *
+	 * @param timeoutSeconds time after which the remaining classes are abandoned, <= 0 for no limit
+	 */
+	static void start(List<String> classNames, ClassWarmer warmer, ClassLoader contextClassLoader, int threads, int timeoutSeconds) {
+		long startTime = System.nanoTime();
+		AtomicInteger threadIndex = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+			Thread thread = new Thread(task, "Leaf Warm-Up " + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setContextClassLoader(contextClassLoader);
+
+			return thread;
+		});
+
+		for (String name : classNames) {
+			pool.execute(() -> {
+				try {
+					warmer.warmUp(name);
+				} catch (Throwable t) { // the regular load will run into the same issue and report it properly
+					failed.incrementAndGet();
+					Log.debug(LogCategory.KNOT, "Warming up class %s failed", name, t);
+				}
+			});
+		}
+
+		pool.shutdown();
+
+		Thread watchdog = new Thread(() -> {
+			try {
+				long timeout = timeoutSeconds > 0 ? timeoutSeconds : Long.MAX_VALUE;
+
+				if (!pool.awaitTermination(timeout, TimeUnit.SECONDS)) {
+					pool.shutdownNow();
+					Log.warn(LogCategory.KNOT, "Class warm-up didn't finish within %d seconds, abandoning the remaining classes", timeoutSeconds);
+					return;
+				}
+			} catch (InterruptedException e) {
+				pool.shutdownNow();
+				return;
+			}
+
+			Log.debug(LogCategory.KNOT, "Warmed up %d classes (%d failed) on %d threads in %.1f ms",
+					classNames.size(), failed.get(), threads, (System.nanoTime() - startTime) * 1e-6);
+		}, "Leaf Warm-Up Watchdog");
+		watchdog.setDaemon(true);
+		watchdog.start();
+	}
+}
@@ -235,7 +235,7 @@ public class JsonReader implements Closeable {
 	 * We decode literals directly out of this buffer, so it must be at least as
 	 * long as the longest token that can be reported as a number.
 	 */
-	private char[] buffer = new char[8192]; // Fabric - increase buffer size, remove final for resizing
+	private final char[] buffer = new char[8192]; // Fabric - increase buffer size
 	private int pos = 0;
 	private int limit = 0;
 
@@ -1278,20 +1278,21 @@ public class JsonReader implements Closeable {
 	private boolean fillBuffer(int minimum) throws IOException {
 		char[] buffer = this.buffer;
 
-		if (!rewindEnabled) { // Fabric - preserve data for rewinding by expanding the buffer instead of compacting 
-			lineStart -= pos;
-			if (limit != pos) {
-				limit -= pos;
-				System.arraycopy(buffer, pos, buffer, 0, limit);
-			} else {
-				limit = 0;
-			}
+		if (captureStart >= 0) { // Fabric - keep the captured part of a raw value before it gets discarded
+			if (capture == null) capture = new StringBuilder();
+			capture.append(buffer, captureStart, pos - captureStart);
+			captureStart = 0;
+		}
 
-			pos = 0;
-		} else if (buffer.length - limit < minimum) {
-			buffer = Arrays.copyOf(buffer, buffer.length + Math.max(buffer.length, minimum));
+		lineStart -= pos;
+		if (limit != pos) {
+			limit -= pos;
+			System.arraycopy(buffer, pos, buffer, 0, limit);
+		} else {
+			limit = 0;
 		}
 
+		pos = 0;
 		int total;
 		while ((total = in.read(buffer, limit, buffer.length - limit)) != -1) {
 			limit += total;
@@ -1592,7 +1593,7 @@ public class JsonReader implements Closeable {
 		pos += 5;
 	}
 
-	// Fabric - added methods for warning messages and rewinding
+	// Fabric - added methods for warning messages
 
 	public int getLineNumber() {
 		return this.lineNumber + 1;
@@ -1602,22 +1603,61 @@ public class JsonReader implements Closeable {
 		return this.pos - this.lineStart + 1;
 	}
 
-	private boolean rewindEnabled;
+	// Fabric - added methods for deferred parsing of values
 
-	public void rewind() {
-		if (!rewindEnabled) throw new IllegalStateException("rewind disabled");
+	private int captureStart = -1;
+	private StringBuilder capture;
 
-		pos = 0;
-		lineNumber = 0;
-		lineStart = 0;
-		peeked = PEEKED_NONE;
-		stackSize = 1;
-		stack[0] = JsonScope.EMPTY_DOCUMENT;
+	/**
+	 * Skips the next value like {@link #skipValue} and returns its JSON source text.
+	 *
+	 * <p>The text starts where the reader was positioned, with the separator before the value replaced by whitespace.
+	 * It can be parsed later with a new reader, {@link #setLocation} with this reader's location from before the call
+	 * keeps the reported locations relative to the original document.
+	 */
+	public String nextRawValue() throws IOException {
+		if (peeked != PEEKED_NONE) throw new IllegalStateException("value already peeked");
+
+		captureStart = pos;
+		String ret;
+
+		try {
+			skipValue();
+
+			if (capture == null) {
+				ret = new String(buffer, captureStart, pos - captureStart);
+			} else {
+				ret = capture.append(buffer, captureStart, pos - captureStart).toString();
+			}
+		} finally {
+			captureStart = -1;
+			capture = null;
+		}
+
+		// blank the separator preceding the value, keeping the whitespace so positions within the text stay aligned
+		char[] chars = null;
+
+		for (int i = 0; i < ret.length(); i++) {
+			char c = ret.charAt(i);
+
+			if (c == ':' || c == '=' || c == '>' || c == ',' || c == ';') {
+				if (chars == null) chars = ret.toCharArray();
+				chars[i] = ' ';
+			} else if (c > ' ') {
+				break;
+			}
+		}
+
+		return chars != null ? new String(chars) : ret;
 	}
 
-	public void setRewindEnabled(boolean value) {
-		if (value && (pos > 0 || lineNumber > 0)) throw new IllegalStateException("already read some data");
+	/**
+	 * Sets the location reported for the start of the input, must be called before reading.
+	 */
+	public void setLocation(int line, int column) {
+		if (pos > 0 || lineNumber > 0) throw new IllegalStateException("already read some data");
 
-		rewindEnabled = value;
+		lineNumber = line - 1;
+		lineStart = 1 - column;
 	}
 }
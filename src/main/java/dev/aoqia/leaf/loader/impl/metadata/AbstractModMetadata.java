@@ -16,6 +16,9 @@
 
 package dev.aoqia.leaf.loader.impl.metadata;
 
+import java.util.Collections;
+import java.util.List;
+
 import dev.aoqia.leaf.loader.api.metadata.CustomValue;
 import dev.aoqia.leaf.loader.api.metadata.ModMetadata;
 
@@ -23,6 +26,9 @@ public abstract class AbstractModMetadata implements ModMetadata {
 	public static final String TYPE_BUILTIN = "builtin";
 	public static final String TYPE_LEAF_MOD = "leaf";
 
+	// warnings from parsing the mod json, kept in snapshots to be logged again when restoring them
+	List<ParseWarning> parseWarnings = Collections.emptyList();
+
 	@Override
 	public boolean containsCustomElement(String key) {
 		return containsCustomValue(key);
@@ -17,6 +17,9 @@
 package dev.aoqia.leaf.loader.impl.metadata;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -25,6 +28,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import dev.aoqia.leaf.loader.api.metadata.CustomValue;
 import dev.aoqia.leaf.loader.impl.lib.gson.JsonReader;
@@ -80,6 +85,26 @@ abstract class CustomValueImpl implements CustomValue {
 		}
 	}
 
+	/**
+	 * Create a map of custom values that get parsed from their json source text on first access.
+	 *
+	 * <p>A value failing to parse throws a {@link RuntimeException} naming the mod and the value's field from the
+	 * accessing method, caused by the {@link ParseMetadataException} locating the error within the value.
+	 */
+	static Map<String, CustomValue> lazyMap(String modId, Map<String, String> rawValues) {
+		if (rawValues.isEmpty()) return Collections.emptyMap();
+
+		return new LazyMap(modId, rawValues);
+	}
+
+	static CustomValue parse(String rawValue) throws ParseMetadataException {
+		try (JsonReader reader = new JsonReader(new StringReader(rawValue))) {
+			return readCustomValue(reader);
+		} catch (IOException e) {
+			throw new ParseMetadataException(e);
+		}
+	}
+
 	@Override
 	public final CvObject getAsObject() {
 		if (this instanceof ObjectImpl) {
@@ -125,6 +150,77 @@ abstract class CustomValueImpl implements CustomValue {
 		}
 	}
 
+	private static final class LazyMap extends AbstractMap<String, CustomValue> {
+		private final String modId;
+		private final Map<String, String> rawValues;
+		private final Map<String, CustomValue> values = new ConcurrentHashMap<>();
+
+		LazyMap(String modId, Map<String, String> rawValues) {
+			this.modId = modId;
+			this.rawValues = rawValues;
+		}
+
+		@Override
+		public int size() {
+			return rawValues.size();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key != null && rawValues.containsKey(key);
+		}
+
+		@Override
+		public CustomValue get(Object key) {
+			if (key == null) return null; // unsupported by ConcurrentHashMap, custom value keys can't be null anyway
+
+			CustomValue ret = values.get(key);
+			if (ret != null) return ret;
+
+			String rawValue = rawValues.get(key);
+			if (rawValue == null) return null;
+
+			try {
+				ret = parse(rawValue);
+			} catch (ParseMetadataException e) {
+				throw new RuntimeException(String.format("Invalid value of field \"custom/%s\" in leaf.mod.json of mod %s", key, modId), e);
+			}
+
+			CustomValue prev = values.putIfAbsent((String) key, ret);
+
+			return prev != null ? prev : ret;
+		}
+
+		@Override
+		public Set<Entry<String, CustomValue>> entrySet() {
+			return new AbstractSet<Entry<String, CustomValue>>() {
+				@Override
+				public int size() {
+					return rawValues.size();
+				}
+
+				@Override
+				public Iterator<Entry<String, CustomValue>> iterator() {
+					Iterator<String> keys = rawValues.keySet().iterator();
+
+					return new Iterator<Entry<String, CustomValue>>() {
+						@Override
+						public boolean hasNext() {
+							return keys.hasNext();
+						}
+
+						@Override
+						public Entry<String, CustomValue> next() {
+							String key = keys.next();
+
+							return new SimpleImmutableEntry<>(key, get(key));
+						}
+					};
+				}
+			};
+		}
+	}
+
 	private static final class ObjectImpl extends CustomValueImpl implements CvObject {
 		private final Map<String, CustomValue> entries;
 
@@ -25,18 +25,21 @@ import dev.aoqia.leaf.loader.api.VersionParsingException;
 import dev.aoqia.leaf.loader.api.metadata.ModDependency;
 import dev.aoqia.leaf.loader.api.metadata.version.VersionInterval;
 import dev.aoqia.leaf.loader.api.metadata.version.VersionPredicate;
+import dev.aoqia.leaf.loader.impl.util.version.VersionRangeMatcher;
 
 public final class ModDependencyImpl implements ModDependency {
 	private Kind kind;
 	private final String modId;
 	private final List<String> matcherStringList;
 	private final Collection<VersionPredicate> ranges;
+	private final VersionRangeMatcher matcher;
 
 	public ModDependencyImpl(Kind kind, String modId, List<String> matcherStringList) throws VersionParsingException {
 		this.kind = kind;
 		this.modId = modId;
 		this.matcherStringList = matcherStringList;
 		this.ranges = VersionPredicate.parse(this.matcherStringList);
+		this.matcher = VersionRangeMatcher.compile(ranges);
 	}
 
 	@Override
@@ -55,11 +58,11 @@ public final class ModDependencyImpl implements ModDependency {
 
 	@Override
 	public boolean matches(Version version) {
-		for (VersionPredicate predicate : ranges) {
-			if (predicate.test(version)) return true;
-		}
+		return matcher.test(version);
+	}
 
-		return false;
+	List<String> getMatcherStrings() {
+		return matcherStringList;
 	}
 
 	@Override
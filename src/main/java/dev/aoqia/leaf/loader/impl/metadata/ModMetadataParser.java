@@ -19,7 +19,9 @@ package dev.aoqia.leaf.loader.impl.metadata;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -40,9 +42,34 @@ public final class ModMetadataParser {
 	// For all intents and purposes of replicating the logic of Gson's fromJson before we have migrated to JsonReader, duplicate keys will replace previous entries.
 	public static LoaderModMetadata parseMetadata(InputStream is, String modPath, List<String> modParentPaths,
 			VersionOverrides versionOverrides, DependencyOverrides depOverrides, boolean isDevelopment) throws ParseMetadataException {
+		return finishMetadata(readMetadata(is, modPath, modParentPaths, isDevelopment), modPath, modParentPaths, versionOverrides, depOverrides, isDevelopment);
+	}
+
+	/**
+	 * Read the metadata as written in the file, without applying overrides or verifying it.
+	 *
+	 * <p>The result has to go through {@link #finishMetadata} before use, it may be stored with
+	 * {@link ModMetadataSnapshot} beforehand.
+	 */
+	public static LoaderModMetadata readMetadata(InputStream is, String modPath, List<String> modParentPaths, boolean isDevelopment) throws ParseMetadataException {
 		try {
-			LoaderModMetadata ret = readModMetadata(is, isDevelopment);
+			return readModMetadata(is, isDevelopment);
+		} catch (ParseMetadataException e) {
+			e.setModPaths(modPath, modParentPaths);
+			throw e;
+		} catch (Throwable t) {
+			ParseMetadataException e = new ParseMetadataException(t);
+			e.setModPaths(modPath, modParentPaths);
+			throw e;
+		}
+	}
 
+	/**
+	 * Apply the version and dependency overrides to freshly read metadata and verify it.
+	 */
+	public static LoaderModMetadata finishMetadata(LoaderModMetadata ret, String modPath, List<String> modParentPaths,
+			VersionOverrides versionOverrides, DependencyOverrides depOverrides, boolean isDevelopment) throws ParseMetadataException {
+		try {
 			versionOverrides.apply(ret);
 			depOverrides.apply(ret);
 
@@ -64,83 +91,67 @@ public final class ModMetadataParser {
 		// Per the json specification, ordering of fields is not typically enforced.
 		// Furthermore we cannot guarantee the `schemaVersion` is the first field in every `leaf.mod.json`
 		//
-		// To work around this, we do the following:
-		// Try to read first field
-		// If the first field is the schemaVersion, read the file normally.
-		//
-		// If the first field is not the schema version, fallback to a more exhaustive check.
-		// Read the rest of the file, looking for the `schemaVersion` field.
-		// If we find the field, cache the value
-		// If there happens to be another `schemaVersion` that has a differing value, then fail.
-		// At the end, if we find no `schemaVersion` then assume the `schemaVersion` is 0
-		// Re-read the JSON file.
-		int schemaVersion = 0;
+		// To work around this, we read the file in a single pass:
+		// Fields after the `schemaVersion` are handed to the parser for that version directly.
+		// Fields before it are recorded as their json source text and replayed once the version is known.
+		// At the end, if we find no `schemaVersion` then assume the `schemaVersion` is 0 and replay everything.
+		SchemaParser parser = null;
+		List<DeferredField> deferredFields = Collections.emptyList();
+		boolean deferredContent = false;
 
 		try (JsonReader reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-			reader.setRewindEnabled(true);
-
 			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
 				throw new ParseMetadataException("Root of \"leaf.mod.json\" must be an object", reader);
 			}
 
 			reader.beginObject();
 
-			boolean firstField = true;
-
 			while (reader.hasNext()) {
-				// Try to read the schemaVersion
 				String key = reader.nextName();
 
-				if (key.equals("schemaVersion")) {
+				if (parser != null) { // schema known, duplicate schemaVersion fields are validated by the parser
+					parser.readField(key, reader);
+				} else if (key.equals("schemaVersion")) {
 					if (reader.peek() != JsonToken.NUMBER) {
 						throw new ParseMetadataException("\"schemaVersion\" must be a number.", reader);
 					}
 
-					schemaVersion = reader.nextInt();
-
-					if (firstField) {
-						reader.setRewindEnabled(false);
-						// Finish reading the metadata
-						LoaderModMetadata ret = readModMetadata(reader, schemaVersion);
-						reader.endObject();
-
-						return ret;
-					}
-
-					// schemaVersion found, but after some content -> start over to parse all data with the detected version
-					break;
+					parser = createParser(reader.nextInt());
+					replay(deferredFields, parser);
 				} else {
-					reader.skipValue();
-				}
+					if (deferredFields.isEmpty()) deferredFields = new ArrayList<>();
+					deferredFields.add(new DeferredField(key, reader.getLineNumber(), reader.getColumn(), reader.nextRawValue()));
 
-				if (!IGNORED_KEYS.contains(key)) {
-					firstField = false;
+					if (!IGNORED_KEYS.contains(key)) {
+						deferredContent = true;
+					}
 				}
 			}
 
-			// Slow path, schema version wasn't specified early enough, re-read with detected/inferred version
-
-			reader.rewind();
-			reader.setRewindEnabled(false);
-
-			reader.beginObject();
-			LoaderModMetadata ret = readModMetadata(reader, schemaVersion);
 			reader.endObject();
+		}
 
-			if (isDevelopment) {
-				Log.warn(LogCategory.METADATA, "\"leaf.mod.json\" from mod %s did not have \"schemaVersion\" as first field.", ret.getId());
-			}
+		if (parser == null) { // no schemaVersion, assume 0
+			parser = createParser(0);
+			replay(deferredFields, parser);
+			deferredContent = true;
+		}
 
-			return ret;
+		LoaderModMetadata ret = parser.build();
+
+		if (isDevelopment && deferredContent) {
+			Log.warn(LogCategory.METADATA, "\"leaf.mod.json\" from mod %s did not have \"schemaVersion\" as first field.", ret.getId());
 		}
+
+		return ret;
 	}
 
-	private static LoaderModMetadata readModMetadata(JsonReader reader, int schemaVersion) throws IOException, ParseMetadataException {
+	private static SchemaParser createParser(int schemaVersion) throws ParseMetadataException {
 		switch (schemaVersion) {
 		case 1:
-			return V1ModMetadataParser.parse(reader);
+			return new V1ModMetadataParser();
 		case 0:
-			return V0ModMetadataParser.parse(reader);
+			return new V0ModMetadataParser();
 		default:
 			if (schemaVersion > 0) {
 				throw new ParseMetadataException(String.format("This version of fabric-loader doesn't support the newer schema version of \"%s\""
@@ -151,6 +162,40 @@ public final class ModMetadataParser {
 		}
 	}
 
+	private static void replay(List<DeferredField> fields, SchemaParser parser) throws IOException, ParseMetadataException {
+		for (DeferredField field : fields) {
+			try (JsonReader reader = new JsonReader(new StringReader(field.value))) {
+				reader.setLocation(field.line, field.column);
+				parser.readField(field.key, reader);
+			}
+		}
+	}
+
+	/**
+	 * Parser for the root entries of a specific schema version.
+	 */
+	interface SchemaParser {
+		void readField(String key, JsonReader reader) throws IOException, ParseMetadataException;
+		LoaderModMetadata build() throws ParseMetadataException;
+	}
+
+	/**
+	 * Root entry read before the schema version was known, stored as its json source text.
+	 */
+	private static final class DeferredField {
+		final String key;
+		final int line;
+		final int column;
+		final String value;
+
+		DeferredField(String key, int line, int column, String value) {
+			this.key = key;
+			this.line = line;
+			this.column = column;
+			this.value = value;
+		}
+	}
+
 	static void logWarningMessages(String id, List<ParseWarning> warnings) {
 		if (warnings.isEmpty()) return;
 
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import dev.aoqia.leaf.loader.api.Version;
+import dev.aoqia.leaf.loader.api.VersionParsingException;
+import dev.aoqia.leaf.loader.api.metadata.ContactInformation;
+import dev.aoqia.leaf.loader.api.metadata.ModDependency;
+import dev.aoqia.leaf.loader.api.metadata.ModEnvironment;
+import dev.aoqia.leaf.loader.api.metadata.Person;
+import dev.aoqia.leaf.loader.impl.util.version.VersionParser;
+
+/**
+ * Compact binary form of parsed {@code leaf.mod.json} metadata.
+ *
+ * <p>A snapshot holds the metadata as read from the file, before version and dependency overrides or verification,
+ * so restoring one is equivalent to parsing the json again, including logging the parse warnings. The layout is a
+ * format byte, the schema version, the schema specific payload, the parse warnings and a trailing CRC32 over
+ * everything before it.
+ */
+public final class ModMetadataSnapshot {
+	private static final int FORMAT_VERSION = 2;
+	private static final int CHECKSUM_SIZE = 4;
+
+	public static byte[] write(LoaderModMetadata metadata) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+
+		try (DataOutputStream os = new DataOutputStream(bos)) {
+			os.writeByte(FORMAT_VERSION);
+			os.writeByte(metadata.getSchemaVersion());
+
+			if (metadata instanceof V1ModMetadata) {
+				((V1ModMetadata) metadata).write(os);
+			} else if (metadata instanceof V0ModMetadata) {
+				((V0ModMetadata) metadata).write(os);
+			} else {
+				throw new IllegalArgumentException("unsupported metadata type: "+metadata.getClass().getName());
+			}
+
+			writeWarnings(((AbstractModMetadata) metadata).parseWarnings, os);
+
+			CRC32 crc = new CRC32();
+			crc.update(bos.toByteArray());
+			os.writeInt((int) crc.getValue());
+		} catch (IOException e) {
+			throw new RuntimeException(e); // can't happen for an in-memory stream
+		}
+
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Check the format and checksum of a snapshot without decoding it.
+	 *
+	 * @throws IOException if the snapshot is truncated, corrupt or from an incompatible format
+	 */
+	public static void verify(byte[] data) throws IOException {
+		if (data.length < 2 + CHECKSUM_SIZE) throw new IOException("truncated metadata snapshot");
+		if (data[0] != FORMAT_VERSION) throw new IOException("unsupported metadata snapshot format "+data[0]);
+
+		int end = data.length - CHECKSUM_SIZE;
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, end);
+
+		int expected = (data[end] & 0xff) << 24 | (data[end + 1] & 0xff) << 16 | (data[end + 2] & 0xff) << 8 | data[end + 3] & 0xff;
+		if ((int) crc.getValue() != expected) throw new IOException("metadata snapshot checksum mismatch");
+	}
+
+	public static LoaderModMetadata read(byte[] data) throws IOException {
+		verify(data);
+
+		try (DataInputStream is = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1 - CHECKSUM_SIZE))) {
+			int schemaVersion = is.readUnsignedByte();
+			AbstractModMetadata ret;
+
+			switch (schemaVersion) {
+			case 1:
+				ret = V1ModMetadata.read(is);
+				break;
+			case 0:
+				ret = V0ModMetadata.read(is);
+				break;
+			default:
+				throw new IOException("unsupported schema version "+schemaVersion);
+			}
+
+			ret.parseWarnings = readWarnings(is);
+			ModMetadataParser.logWarningMessages(ret.getId(), ret.parseWarnings);
+
+			return (LoaderModMetadata) ret;
+		}
+	}
+
+	private static void writeWarnings(List<ParseWarning> warnings, DataOutputStream os) throws IOException {
+		os.writeInt(warnings.size());
+
+		for (ParseWarning warning : warnings) {
+			os.writeInt(warning.getLine());
+			os.writeInt(warning.getColumn());
+			writeString(warning.getKey(), os);
+			writeString(warning.getReason(), os);
+		}
+	}
+
+	private static List<ParseWarning> readWarnings(DataInputStream is) throws IOException {
+		int count = is.readInt();
+		if (count == 0) return Collections.emptyList();
+
+		List<ParseWarning> ret = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			int line = is.readInt();
+			int column = is.readInt();
+			String key = readString(is);
+			ret.add(new ParseWarning(line, column, key, readString(is)));
+		}
+
+		return ret;
+	}
+
+	// strings use their own length prefix since writeUTF is limited to 64k, which e.g. custom values may exceed
+
+	static void writeString(String s, DataOutputStream os) throws IOException {
+		if (s == null) {
+			os.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			os.writeInt(bytes.length);
+			os.write(bytes);
+		}
+	}
+
+	static String readString(DataInputStream is) throws IOException {
+		int len = is.readInt();
+		if (len < 0) return null;
+
+		byte[] bytes = new byte[len];
+		is.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeStrings(Collection<String> strings, DataOutputStream os) throws IOException {
+		os.writeInt(strings.size());
+
+		for (String s : strings) {
+			writeString(s, os);
+		}
+	}
+
+	static List<String> readStrings(DataInputStream is) throws IOException {
+		int count = is.readInt();
+		List<String> ret = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			ret.add(readString(is));
+		}
+
+		return ret;
+	}
+
+	static void writeStringMap(Map<String, String> map, DataOutputStream os) throws IOException {
+		os.writeInt(map.size());
+
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			writeString(entry.getKey(), os);
+			writeString(entry.getValue(), os);
+		}
+	}
+
+	static Map<String, String> readStringMap(DataInputStream is) throws IOException {
+		int count = is.readInt();
+		Map<String, String> ret = new LinkedHashMap<>(count * 2);
+
+		for (int i = 0; i < count; i++) {
+			String key = readString(is);
+			ret.put(key, readString(is));
+		}
+
+		return ret;
+	}
+
+	static void writeVersion(Version version, DataOutputStream os) throws IOException {
+		writeString(version.getFriendlyString(), os);
+	}
+
+	static Version readVersion(DataInputStream is) throws IOException {
+		try {
+			return VersionParser.parse(readString(is), false);
+		} catch (VersionParsingException e) {
+			throw new IOException(e);
+		}
+	}
+
+	static void writeEnvironment(ModEnvironment environment, DataOutputStream os) throws IOException {
+		os.writeByte(environment.ordinal());
+	}
+
+	static ModEnvironment readEnvironment(DataInputStream is) throws IOException {
+		int ordinal = is.readUnsignedByte();
+		ModEnvironment[] values = ModEnvironment.values();
+		if (ordinal >= values.length) throw new IOException("invalid environment "+ordinal);
+
+		return values[ordinal];
+	}
+
+	static void writeDependencies(Collection<ModDependency> dependencies, DataOutputStream os) throws IOException {
+		os.writeInt(dependencies.size());
+
+		for (ModDependency dep : dependencies) {
+			writeString(dep.getKind().getKey(), os);
+			writeString(dep.getModId(), os);
+			writeStrings(((ModDependencyImpl) dep).getMatcherStrings(), os);
+		}
+	}
+
+	static List<ModDependency> readDependencies(DataInputStream is) throws IOException {
+		int count = is.readInt();
+		List<ModDependency> ret = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			String kindKey = readString(is);
+			ModDependency.Kind kind = ModDependency.Kind.parse(kindKey);
+			if (kind == null) throw new IOException("invalid dependency kind "+kindKey);
+
+			String modId = readString(is);
+
+			try {
+				ret.add(new ModDependencyImpl(kind, modId, readStrings(is)));
+			} catch (VersionParsingException e) {
+				throw new IOException(e);
+			}
+		}
+
+		return ret;
+	}
+
+	static void writePeople(Collection<Person> people, DataOutputStream os) throws IOException {
+		os.writeInt(people.size());
+
+		for (Person person : people) {
+			writeString(person.getName(), os);
+			writeContact(person instanceof ContactInfoBackedPerson ? person.getContact() : null, os);
+		}
+	}
+
+	static List<Person> readPeople(DataInputStream is) throws IOException {
+		int count = is.readInt();
+		List<Person> ret = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			String name = readString(is);
+			ContactInformation contact = readContact(is);
+
+			ret.add(contact != null ? new ContactInfoBackedPerson(name, contact) : new SimplePerson(name));
+		}
+
+		return ret;
+	}
+
+	static void writeContact(/* @Nullable */ ContactInformation contact, DataOutputStream os) throws IOException {
+		if (contact == null) {
+			os.writeByte(0);
+		} else if (contact == ContactInformation.EMPTY) {
+			os.writeByte(1);
+		} else {
+			os.writeByte(2);
+			writeStringMap(contact.asMap(), os);
+		}
+	}
+
+	static /* @Nullable */ ContactInformation readContact(DataInputStream is) throws IOException {
+		int type = is.readUnsignedByte();
+
+		switch (type) {
+		case 0:
+			return null;
+		case 1:
+			return ContactInformation.EMPTY;
+		case 2:
+			return new ContactInformationImpl(readStringMap(is));
+		default:
+			throw new IOException("invalid contact type "+type);
+		}
+	}
+}
@@ -16,6 +16,9 @@
 
 package dev.aoqia.leaf.loader.impl.metadata;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -251,6 +254,47 @@ final class V0ModMetadata extends AbstractModMetadata implements LoaderModMetada
 		return null; // intentional null
 	}
 
+	// Snapshot serialization, see ModMetadataSnapshot
+
+	void write(DataOutputStream os) throws IOException {
+		ModMetadataSnapshot.writeString(this.id, os);
+		ModMetadataSnapshot.writeVersion(this.version, os);
+		ModMetadataSnapshot.writeDependencies(this.dependencies, os);
+		ModMetadataSnapshot.writeStrings(this.mixins.client, os);
+		ModMetadataSnapshot.writeStrings(this.mixins.common, os);
+		ModMetadataSnapshot.writeStrings(this.mixins.server, os);
+		ModMetadataSnapshot.writeEnvironment(this.environment, os);
+		ModMetadataSnapshot.writeString(this.initializer, os);
+		ModMetadataSnapshot.writeStrings(this.initializers, os);
+		ModMetadataSnapshot.writeString(this.name, os);
+		ModMetadataSnapshot.writeString(this.description, os);
+		ModMetadataSnapshot.writePeople(this.authors, os);
+		ModMetadataSnapshot.writePeople(this.contributors, os);
+		ModMetadataSnapshot.writeContact(this.links, os);
+		ModMetadataSnapshot.writeString(this.license, os);
+	}
+
+	static V0ModMetadata read(DataInputStream is) throws IOException {
+		String id = ModMetadataSnapshot.readString(is);
+		Version version = ModMetadataSnapshot.readVersion(is);
+		List<ModDependency> dependencies = ModMetadataSnapshot.readDependencies(is);
+		List<String> client = ModMetadataSnapshot.readStrings(is);
+		List<String> common = ModMetadataSnapshot.readStrings(is);
+		List<String> server = ModMetadataSnapshot.readStrings(is);
+		ModEnvironment environment = ModMetadataSnapshot.readEnvironment(is);
+		String initializer = ModMetadataSnapshot.readString(is);
+		List<String> initializers = ModMetadataSnapshot.readStrings(is);
+		String name = ModMetadataSnapshot.readString(is);
+		String description = ModMetadataSnapshot.readString(is);
+		List<Person> authors = ModMetadataSnapshot.readPeople(is);
+		List<Person> contributors = ModMetadataSnapshot.readPeople(is);
+		ContactInformation links = ModMetadataSnapshot.readContact(is);
+		String license = ModMetadataSnapshot.readString(is);
+
+		return new V0ModMetadata(id, version, dependencies, new Mixins(client, common, server), environment, initializer, initializers,
+				name, description, authors, contributors, links, license);
+	}
+
 	static final class Mixins {
 		final Collection<String> client;
 		final Collection<String> common;
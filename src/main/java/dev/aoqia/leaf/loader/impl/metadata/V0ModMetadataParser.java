@@ -36,179 +36,179 @@ import dev.aoqia.leaf.loader.impl.lib.gson.JsonReader;
 import dev.aoqia.leaf.loader.impl.lib.gson.JsonToken;
 import dev.aoqia.leaf.loader.impl.util.version.VersionParser;
 
-final class V0ModMetadataParser {
+final class V0ModMetadataParser implements ModMetadataParser.SchemaParser {
 	private static final Pattern WEBSITE_PATTERN = Pattern.compile("\\((.+)\\)");
 	private static final Pattern EMAIL_PATTERN = Pattern.compile("<(.+)>");
 
-	public static LoaderModMetadata parse(JsonReader reader) throws IOException, ParseMetadataException {
-		List<ParseWarning> warnings = new ArrayList<>();
-
-		// All the values the `fabric.mod.json` may contain:
-		// Required
-		String id = null;
-		Version version = null;
-
-		// Optional (mod loading)
-		List<ModDependency> dependencies = new ArrayList<>();
-		V0ModMetadata.Mixins mixins = null;
-		ModEnvironment environment = ModEnvironment.UNIVERSAL; // Default is always universal
-		String initializer = null;
-		List<String> initializers = new ArrayList<>();
+	private final List<ParseWarning> warnings = new ArrayList<>();
+
+	// All the values the `fabric.mod.json` may contain:
+	// Required
+	private String id;
+	private Version version;
+
+	// Optional (mod loading)
+	private final List<ModDependency> dependencies = new ArrayList<>();
+	private V0ModMetadata.Mixins mixins;
+	private ModEnvironment environment = ModEnvironment.UNIVERSAL; // Default is always universal
+	private String initializer;
+	private final List<String> initializers = new ArrayList<>();
+
+	private String name;
+	private String description;
+	private final List<Person> authors = new ArrayList<>();
+	private final List<Person> contributors = new ArrayList<>();
+	private ContactInformation links;
+	private String license;
+
+	@Override
+	public void readField(String key, JsonReader reader) throws IOException, ParseMetadataException {
+		switch (key) {
+		case "schemaVersion":
+			// Duplicate field, make sure it matches our current schema version
+			if (reader.peek() != JsonToken.NUMBER) {
+				throw new ParseMetadataException("Duplicate \"schemaVersion\" field is not a number", reader);
+			}
 
-		String name = null;
-		String description = null;
-		List<Person> authors = new ArrayList<>();
-		List<Person> contributors = new ArrayList<>();
-		ContactInformation links = null;
-		String license = null;
+			final int read = reader.nextInt();
 
-		while (reader.hasNext()) {
-			final String key = reader.nextName();
+			if (read != 0) {
+				throw new ParseMetadataException(String.format("Duplicate \"schemaVersion\" field does not match the predicted schema version of 0. Duplicate field value is %s", read), reader);
+			}
 
-			switch (key) {
-			case "schemaVersion":
-				// Duplicate field, make sure it matches our current schema version
-				if (reader.peek() != JsonToken.NUMBER) {
-					throw new ParseMetadataException("Duplicate \"schemaVersion\" field is not a number", reader);
-				}
+			break;
+		case "id":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Mod id must be a non-empty string with a length of 3-64 characters.", reader);
+			}
 
-				final int read = reader.nextInt();
+			id = reader.nextString();
+			break;
+		case "version":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Version must be a non-empty string", reader);
+			}
 
-				if (read != 0) {
-					throw new ParseMetadataException(String.format("Duplicate \"schemaVersion\" field does not match the predicted schema version of 0. Duplicate field value is %s", read), reader);
-				}
+			final String rawVersion = reader.nextString();
 
-				break;
-			case "id":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Mod id must be a non-empty string with a length of 3-64 characters.", reader);
-				}
-
-				id = reader.nextString();
-				break;
-			case "version":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Version must be a non-empty string", reader);
-				}
+			try {
+				version = VersionParser.parse(rawVersion, false);
+			} catch (VersionParsingException e) {
+				throw new ParseMetadataException(String.format("Failed to parse version: %s", rawVersion), e);
+			}
 
-				final String rawVersion = reader.nextString();
+			break;
+		case "requires":
+			readDependenciesContainer(reader, ModDependency.Kind.DEPENDS, dependencies, "requires");
+			break;
+		case "conflicts":
+			readDependenciesContainer(reader, ModDependency.Kind.BREAKS, dependencies, "conflicts");
+			break;
+		case "mixins":
+			mixins = readMixins(warnings, reader);
+			break;
+		case "side":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Side must be a string", reader);
+			}
 
-				try {
-					version = VersionParser.parse(rawVersion, false);
-				} catch (VersionParsingException e) {
-					throw new ParseMetadataException(String.format("Failed to parse version: %s", rawVersion), e);
-				}
+			final String rawEnvironment = reader.nextString();
 
+			switch (rawEnvironment) {
+			case "universal":
+				environment = ModEnvironment.UNIVERSAL;
 				break;
-			case "requires":
-				readDependenciesContainer(reader, ModDependency.Kind.DEPENDS, dependencies, "requires");
-				break;
-			case "conflicts":
-				readDependenciesContainer(reader, ModDependency.Kind.BREAKS, dependencies, "conflicts");
-				break;
-			case "mixins":
-				mixins = readMixins(warnings, reader);
+			case "client":
+				environment = ModEnvironment.CLIENT;
 				break;
-			case "side":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Side must be a string", reader);
-				}
-
-				final String rawEnvironment = reader.nextString();
-
-				switch (rawEnvironment) {
-				case "universal":
-					environment = ModEnvironment.UNIVERSAL;
-					break;
-				case "client":
-					environment = ModEnvironment.CLIENT;
-					break;
-				case "server":
-					environment = ModEnvironment.SERVER;
-					break;
-				default:
-					warnings.add(new ParseWarning(reader.getLineNumber(), reader.getColumn(), rawEnvironment, "Invalid side type"));
-				}
-
+			case "server":
+				environment = ModEnvironment.SERVER;
 				break;
-			case "initializer":
-				// `initializer` and `initializers` cannot be used at the same time
-				if (!initializers.isEmpty()) {
-					throw new ParseMetadataException("initializer and initializers should not be set at the same time! (mod ID '" + id + "')");
-				}
+			default:
+				warnings.add(new ParseWarning(reader.getLineNumber(), reader.getColumn(), rawEnvironment, "Invalid side type"));
+			}
 
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Initializer must be a non-empty string", reader);
-				}
+			break;
+		case "initializer":
+			// `initializer` and `initializers` cannot be used at the same time
+			if (!initializers.isEmpty()) {
+				throw new ParseMetadataException("initializer and initializers should not be set at the same time! (mod ID '" + id + "')");
+			}
 
-				initializer = reader.nextString();
-				break;
-			case "initializers":
-				// `initializer` and `initializers` cannot be used at the same time
-				if (initializer != null) {
-					throw new ParseMetadataException("initializer and initializers should not be set at the same time! (mod ID '" + id + "')");
-				}
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Initializer must be a non-empty string", reader);
+			}
 
-				if (reader.peek() != JsonToken.BEGIN_ARRAY) {
-					throw new ParseMetadataException("Initializers must be in a list", reader);
-				}
+			initializer = reader.nextString();
+			break;
+		case "initializers":
+			// `initializer` and `initializers` cannot be used at the same time
+			if (initializer != null) {
+				throw new ParseMetadataException("initializer and initializers should not be set at the same time! (mod ID '" + id + "')");
+			}
 
-				reader.beginArray();
+			if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+				throw new ParseMetadataException("Initializers must be in a list", reader);
+			}
 
-				while (reader.hasNext()) {
-					if (reader.peek() != JsonToken.STRING) {
-						throw new ParseMetadataException("Initializer in initializers list must be a string", reader);
-					}
+			reader.beginArray();
 
-					initializers.add(reader.nextString());
+			while (reader.hasNext()) {
+				if (reader.peek() != JsonToken.STRING) {
+					throw new ParseMetadataException("Initializer in initializers list must be a string", reader);
 				}
 
-				reader.endArray();
+				initializers.add(reader.nextString());
+			}
 
-				break;
-			case "name":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Name must be a string", reader);
-				}
+			reader.endArray();
 
-				name = reader.nextString();
-				break;
-			case "description":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Mod description must be a string", reader);
-				}
+			break;
+		case "name":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Name must be a string", reader);
+			}
 
-				description = reader.nextString();
-				break;
-			case "recommends":
-				readDependenciesContainer(reader, ModDependency.Kind.SUGGESTS, dependencies, "recommends");
-				break;
-			case "authors":
-				readPeople(warnings, reader, authors);
-				break;
-			case "contributors":
-				readPeople(warnings, reader, contributors);
-				break;
-			case "links":
-				links = readLinks(warnings, reader);
-				break;
-			case "license":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("License name must be a string", reader);
-				}
+			name = reader.nextString();
+			break;
+		case "description":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Mod description must be a string", reader);
+			}
 
-				license = reader.nextString();
-				break;
-			default:
-				if (!ModMetadataParser.IGNORED_KEYS.contains(key)) {
-					warnings.add(new ParseWarning(reader.getLineNumber(), reader.getColumn(), key, "Unsupported root entry"));
-				}
+			description = reader.nextString();
+			break;
+		case "recommends":
+			readDependenciesContainer(reader, ModDependency.Kind.SUGGESTS, dependencies, "recommends");
+			break;
+		case "authors":
+			readPeople(warnings, reader, authors);
+			break;
+		case "contributors":
+			readPeople(warnings, reader, contributors);
+			break;
+		case "links":
+			links = readLinks(warnings, reader);
+			break;
+		case "license":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("License name must be a string", reader);
+			}
 
-				reader.skipValue();
-				break;
+			license = reader.nextString();
+			break;
+		default:
+			if (!ModMetadataParser.IGNORED_KEYS.contains(key)) {
+				warnings.add(new ParseWarning(reader.getLineNumber(), reader.getColumn(), key, "Unsupported root entry"));
 			}
+
+			reader.skipValue();
+			break;
 		}
+	}
 
+	@Override
+	public LoaderModMetadata build() throws ParseMetadataException {
 		// Validate all required fields are resolved
 		if (id == null) {
 			throw new ParseMetadataException.MissingField("id");
@@ -225,7 +225,10 @@ final class V0ModMetadataParser {
 			links = ContactInformation.EMPTY;
 		}
 
-		return new V0ModMetadata(id, version, dependencies, mixins, environment, initializer, initializers, name, description, authors, contributors, links, license);
+		V0ModMetadata ret = new V0ModMetadata(id, version, dependencies, mixins, environment, initializer, initializers, name, description, authors, contributors, links, license);
+		ret.parseWarnings = warnings;
+
+		return ret;
 	}
 
 	private static ContactInformation readLinks(List<ParseWarning> warnings, JsonReader reader) throws IOException, ParseMetadataException {
@@ -16,13 +16,19 @@
 
 package dev.aoqia.leaf.loader.impl.metadata;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.SortedMap;
+import java.util.TreeMap;
 
 import dev.aoqia.leaf.api.EnvType;
 import dev.aoqia.leaf.loader.api.Version;
@@ -71,6 +77,7 @@ final class V1ModMetadata extends AbstractModMetadata implements LoaderModMetada
 	private final Map<String, String> languageAdapters;
 
 	// Optional (custom values)
+	private final Map<String, String> rawCustomValues;
 	private final Map<String, CustomValue> customValues;
 
 	V1ModMetadata(String id, Version version, Collection<String> provides,
@@ -80,7 +87,7 @@ final class V1ModMetadata extends AbstractModMetadata implements LoaderModMetada
 			/* @Nullable */ String name, /* @Nullable */String description,
 			Collection<Person> authors, Collection<Person> contributors, /* @Nullable */ContactInformation contact, Collection<String> license, IconEntry icon,
 			Map<String, String> languageAdapters,
-			Map<String, CustomValue> customValues) {
+			Map<String, String> rawCustomValues) {
 		this.id = id;
 		this.version = version;
 		this.provides = Collections.unmodifiableCollection(provides);
@@ -118,7 +125,8 @@ final class V1ModMetadata extends AbstractModMetadata implements LoaderModMetada
 		}
 
 		this.languageAdapters = Collections.unmodifiableMap(languageAdapters);
-		this.customValues = Collections.unmodifiableMap(customValues);
+		this.rawCustomValues = rawCustomValues;
+		this.customValues = Collections.unmodifiableMap(CustomValueImpl.lazyMap(id, rawCustomValues));
 	}
 
 	@Override
@@ -280,6 +288,150 @@ final class V1ModMetadata extends AbstractModMetadata implements LoaderModMetada
 		}
 	}
 
+	// Snapshot serialization, see ModMetadataSnapshot
+
+	void write(DataOutputStream os) throws IOException {
+		ModMetadataSnapshot.writeString(this.id, os);
+		ModMetadataSnapshot.writeVersion(this.version, os);
+		ModMetadataSnapshot.writeStrings(this.provides, os);
+		ModMetadataSnapshot.writeEnvironment(this.environment, os);
+
+		os.writeInt(this.entrypoints.size());
+
+		for (Map.Entry<String, List<EntrypointMetadata>> entry : this.entrypoints.entrySet()) {
+			ModMetadataSnapshot.writeString(entry.getKey(), os);
+			os.writeInt(entry.getValue().size());
+
+			for (EntrypointMetadata entrypoint : entry.getValue()) {
+				ModMetadataSnapshot.writeString(entrypoint.getAdapter(), os);
+				ModMetadataSnapshot.writeString(entrypoint.getValue(), os);
+			}
+		}
+
+		os.writeInt(this.jars.size());
+
+		for (NestedJarEntry jar : this.jars) {
+			ModMetadataSnapshot.writeString(jar.getFile(), os);
+		}
+
+		os.writeInt(this.mixins.size());
+
+		for (MixinEntry mixin : this.mixins) {
+			ModMetadataSnapshot.writeString(mixin.config, os);
+			ModMetadataSnapshot.writeEnvironment(mixin.environment, os);
+		}
+
+		ModMetadataSnapshot.writeString(this.classTweaker, os);
+		ModMetadataSnapshot.writeDependencies(this.dependencies, os);
+		os.writeBoolean(this.hasRequires);
+		ModMetadataSnapshot.writeString(this.name, os);
+		ModMetadataSnapshot.writeString(this.description, os);
+		ModMetadataSnapshot.writePeople(this.authors, os);
+		ModMetadataSnapshot.writePeople(this.contributors, os);
+		ModMetadataSnapshot.writeContact(this.contact, os);
+		ModMetadataSnapshot.writeStrings(this.license, os);
+
+		if (this.icon instanceof Single) {
+			os.writeByte(1);
+			ModMetadataSnapshot.writeString(((Single) this.icon).icon, os);
+		} else if (this.icon instanceof MapEntry) {
+			SortedMap<Integer, String> icons = ((MapEntry) this.icon).icons;
+			os.writeByte(2);
+			os.writeInt(icons.size());
+
+			for (Map.Entry<Integer, String> entry : icons.entrySet()) {
+				os.writeInt(entry.getKey());
+				ModMetadataSnapshot.writeString(entry.getValue(), os);
+			}
+		} else {
+			os.writeByte(0);
+		}
+
+		ModMetadataSnapshot.writeStringMap(this.languageAdapters, os);
+		ModMetadataSnapshot.writeStringMap(this.rawCustomValues, os);
+	}
+
+	static V1ModMetadata read(DataInputStream is) throws IOException {
+		String id = ModMetadataSnapshot.readString(is);
+		Version version = ModMetadataSnapshot.readVersion(is);
+		List<String> provides = ModMetadataSnapshot.readStrings(is);
+		ModEnvironment environment = ModMetadataSnapshot.readEnvironment(is);
+
+		int count = is.readInt();
+		Map<String, List<EntrypointMetadata>> entrypoints = new HashMap<>(count * 2);
+
+		for (int i = 0; i < count; i++) {
+			String key = ModMetadataSnapshot.readString(is);
+			int entrypointCount = is.readInt();
+			List<EntrypointMetadata> list = new ArrayList<>(entrypointCount);
+
+			for (int j = 0; j < entrypointCount; j++) {
+				String adapter = ModMetadataSnapshot.readString(is);
+				list.add(new EntrypointMetadataImpl(adapter, ModMetadataSnapshot.readString(is)));
+			}
+
+			entrypoints.put(key, list);
+		}
+
+		count = is.readInt();
+		List<NestedJarEntry> jars = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			jars.add(new JarEntry(ModMetadataSnapshot.readString(is)));
+		}
+
+		count = is.readInt();
+		List<MixinEntry> mixins = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			String config = ModMetadataSnapshot.readString(is);
+			mixins.add(new MixinEntry(config, ModMetadataSnapshot.readEnvironment(is)));
+		}
+
+		String classTweaker = ModMetadataSnapshot.readString(is);
+		List<ModDependency> dependencies = ModMetadataSnapshot.readDependencies(is);
+		boolean hasRequires = is.readBoolean();
+		String name = ModMetadataSnapshot.readString(is);
+		String description = ModMetadataSnapshot.readString(is);
+		List<Person> authors = ModMetadataSnapshot.readPeople(is);
+		List<Person> contributors = ModMetadataSnapshot.readPeople(is);
+		ContactInformation contact = ModMetadataSnapshot.readContact(is);
+		List<String> license = ModMetadataSnapshot.readStrings(is);
+		IconEntry icon;
+		int iconType = is.readUnsignedByte();
+
+		switch (iconType) {
+		case 0:
+			icon = NO_ICON;
+			break;
+		case 1:
+			icon = new Single(ModMetadataSnapshot.readString(is));
+			break;
+		case 2: {
+			count = is.readInt();
+			SortedMap<Integer, String> icons = new TreeMap<>(Comparator.naturalOrder());
+
+			for (int i = 0; i < count; i++) {
+				int size = is.readInt();
+				icons.put(size, ModMetadataSnapshot.readString(is));
+			}
+
+			icon = new MapEntry(icons);
+			break;
+		}
+		default:
+			throw new IOException("invalid icon type "+iconType);
+		}
+
+		Map<String, String> languageAdapters = ModMetadataSnapshot.readStringMap(is);
+		Map<String, String> customValues = ModMetadataSnapshot.readStringMap(is);
+
+		return new V1ModMetadata(id, version, provides,
+				environment, entrypoints, jars, mixins, classTweaker,
+				dependencies, hasRequires,
+				name, description, authors, contributors, contact, license, icon, languageAdapters, customValues);
+	}
+
 	static final class EntrypointMetadataImpl implements EntrypointMetadata {
 		private final String adapter;
 		private final String value;
@@ -29,7 +29,6 @@ import java.util.TreeMap;
 import dev.aoqia.leaf.loader.api.Version;
 import dev.aoqia.leaf.loader.api.VersionParsingException;
 import dev.aoqia.leaf.loader.api.metadata.ContactInformation;
-import dev.aoqia.leaf.loader.api.metadata.CustomValue;
 import dev.aoqia.leaf.loader.api.metadata.ModDependency;
 import dev.aoqia.leaf.loader.api.metadata.ModEnvironment;
 import dev.aoqia.leaf.loader.api.metadata.Person;
@@ -37,180 +36,179 @@ import dev.aoqia.leaf.loader.impl.lib.gson.JsonReader;
 import dev.aoqia.leaf.loader.impl.lib.gson.JsonToken;
 import dev.aoqia.leaf.loader.impl.util.version.VersionParser;
 
-final class V1ModMetadataParser {
+final class V1ModMetadataParser implements ModMetadataParser.SchemaParser {
+	private final List<ParseWarning> warnings = new ArrayList<>();
+
+	// All the values the `leaf.mod.json` may contain:
+	// Required
+	private String id;
+	private Version version;
+
+	// Optional (id provides)
+	private final List<String> provides = new ArrayList<>();
+
+	// Optional (mod loading)
+	private ModEnvironment environment = ModEnvironment.UNIVERSAL; // Default is always universal
+	private final Map<String, List<EntrypointMetadata>> entrypoints = new HashMap<>();
+	private final List<NestedJarEntry> jars = new ArrayList<>();
+	private final List<V1ModMetadata.MixinEntry> mixins = new ArrayList<>();
+	private String classTweaker;
+
+	// Optional (dependency resolution)
+	private final List<ModDependency> dependencies = new ArrayList<>();
+	// Happy little accidents
+	private boolean hasRequires;
+
+	// Optional (metadata)
+	private String name;
+	private String description;
+	private final List<Person> authors = new ArrayList<>();
+	private final List<Person> contributors = new ArrayList<>();
+	private ContactInformation contact;
+	private final List<String> license = new ArrayList<>();
+	private V1ModMetadata.IconEntry icon;
+
+	// Optional (language adapter providers)
+	private final Map<String, String> languageAdapters = new HashMap<>();
+
+	// Optional (custom values), kept as json source text until a mod queries them
+	private final Map<String, String> customValues = new HashMap<>();
+
 	/**
-	 * Reads a {@code leaf.mod.json} file of schema version {@code 1}.
+	 * Reads a root entry of a {@code leaf.mod.json} file of schema version {@code 1}.
 	 *
-	 * @param logger the logger to print warnings to
-	 * @param reader the json reader to read the file with
-	 * @return the metadata of this file, null if the file could not be parsed
+	 * @param key the entry's key
+	 * @param reader the json reader positioned at the entry's value
 	 * @throws IOException         if there was any issue reading the file
 	 */
-	static LoaderModMetadata parse(JsonReader reader) throws IOException, ParseMetadataException {
-		List<ParseWarning> warnings = new ArrayList<>();
-
-		// All the values the `leaf.mod.json` may contain:
-		// Required
-		String id = null;
-		Version version = null;
-
-		// Optional (id provides)
-		List<String> provides = new ArrayList<>();
-
-		// Optional (mod loading)
-		ModEnvironment environment = ModEnvironment.UNIVERSAL; // Default is always universal
-		Map<String, List<EntrypointMetadata>> entrypoints = new HashMap<>();
-		List<NestedJarEntry> jars = new ArrayList<>();
-		List<V1ModMetadata.MixinEntry> mixins = new ArrayList<>();
-		String classTweaker = null;
-
-		// Optional (dependency resolution)
-		List<ModDependency> dependencies = new ArrayList<>();
-		// Happy little accidents
-		boolean hasRequires = false;
-
-		// Optional (metadata)
-		String name = null;
-		String description = null;
-		List<Person> authors = new ArrayList<>();
-		List<Person> contributors = new ArrayList<>();
-		ContactInformation contact = null;
-		List<String> license = new ArrayList<>();
-		V1ModMetadata.IconEntry icon = null;
-
-		// Optional (language adapter providers)
-		Map<String, String> languageAdapters = new HashMap<>();
-
-		// Optional (custom values)
-		Map<String, CustomValue> customValues = new HashMap<>();
-
-		while (reader.hasNext()) {
-			final String key = reader.nextName();
-
-			// Work our way from required to entirely optional
-			switch (key) {
-			case "schemaVersion":
-				// Duplicate field, make sure it matches our current schema version
-				if (reader.peek() != JsonToken.NUMBER) {
-					throw new ParseMetadataException("Duplicate \"schemaVersion\" field is not a number", reader);
-				}
-
-				final int read = reader.nextInt();
+	@Override
+	public void readField(String key, JsonReader reader) throws IOException, ParseMetadataException {
+		// Work our way from required to entirely optional
+		switch (key) {
+		case "schemaVersion":
+			// Duplicate field, make sure it matches our current schema version
+			if (reader.peek() != JsonToken.NUMBER) {
+				throw new ParseMetadataException("Duplicate \"schemaVersion\" field is not a number", reader);
+			}
 
-				if (read != 1) {
-					throw new ParseMetadataException(String.format("Duplicate \"schemaVersion\" field does not match the predicted schema version of 1. Duplicate field value is %s", read), reader);
-				}
+			final int read = reader.nextInt();
 
-				break;
-			case "id":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Mod id must be a non-empty string with a length of 3-64 characters.", reader);
-				}
+			if (read != 1) {
+				throw new ParseMetadataException(String.format("Duplicate \"schemaVersion\" field does not match the predicted schema version of 1. Duplicate field value is %s", read), reader);
+			}
 
-				id = reader.nextString();
-				break;
-			case "version":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Version must be a non-empty string", reader);
-				}
+			break;
+		case "id":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Mod id must be a non-empty string with a length of 3-64 characters.", reader);
+			}
 
-				try {
-					version = VersionParser.parse(reader.nextString(), false);
-				} catch (VersionParsingException e) {
-					throw new ParseMetadataException("Failed to parse version", e);
-				}
+			id = reader.nextString();
+			break;
+		case "version":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Version must be a non-empty string", reader);
+			}
 
-				break;
-			case "provides":
-				readProvides(reader, provides);
-				break;
-			case "environment":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Environment must be a string", reader);
-				}
+			try {
+				version = VersionParser.parse(reader.nextString(), false);
+			} catch (VersionParsingException e) {
+				throw new ParseMetadataException("Failed to parse version", e);
+			}
 
-				environment = readEnvironment(reader);
-				break;
-			case "entrypoints":
-				readEntrypoints(warnings, reader, entrypoints);
-				break;
-			case "jars":
-				readNestedJarEntries(warnings, reader, jars);
-				break;
-			case "mixins":
-				readMixinConfigs(warnings, reader, mixins);
-				break;
-			case "accessWidener":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Access Widener file must be a string", reader);
-				}
+			break;
+		case "provides":
+			readProvides(reader, provides);
+			break;
+		case "environment":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Environment must be a string", reader);
+			}
 
-				classTweaker = reader.nextString();
-				break;
-			case "depends":
-				readDependenciesContainer(reader, ModDependency.Kind.DEPENDS, dependencies);
-				break;
-			case "recommends":
-				readDependenciesContainer(reader, ModDependency.Kind.RECOMMENDS, dependencies);
-				break;
-			case "suggests":
-				readDependenciesContainer(reader, ModDependency.Kind.SUGGESTS, dependencies);
-				break;
-			case "conflicts":
-				readDependenciesContainer(reader, ModDependency.Kind.CONFLICTS, dependencies);
-				break;
-			case "breaks":
-				readDependenciesContainer(reader, ModDependency.Kind.BREAKS, dependencies);
-				break;
-			case "requires":
-				hasRequires = true;
-				reader.skipValue();
-				break;
-			case "name":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Mod name must be a string", reader);
-				}
+			environment = readEnvironment(reader);
+			break;
+		case "entrypoints":
+			readEntrypoints(warnings, reader, entrypoints);
+			break;
+		case "jars":
+			readNestedJarEntries(warnings, reader, jars);
+			break;
+		case "mixins":
+			readMixinConfigs(warnings, reader, mixins);
+			break;
+		case "accessWidener":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Access Widener file must be a string", reader);
+			}
 
-				name = reader.nextString();
-				break;
-			case "description":
-				if (reader.peek() != JsonToken.STRING) {
-					throw new ParseMetadataException("Mod description must be a string", reader);
-				}
+			classTweaker = reader.nextString();
+			break;
+		case "depends":
+			readDependenciesContainer(reader, ModDependency.Kind.DEPENDS, dependencies);
+			break;
+		case "recommends":
+			readDependenciesContainer(reader, ModDependency.Kind.RECOMMENDS, dependencies);
+			break;
+		case "suggests":
+			readDependenciesContainer(reader, ModDependency.Kind.SUGGESTS, dependencies);
+			break;
+		case "conflicts":
+			readDependenciesContainer(reader, ModDependency.Kind.CONFLICTS, dependencies);
+			break;
+		case "breaks":
+			readDependenciesContainer(reader, ModDependency.Kind.BREAKS, dependencies);
+			break;
+		case "requires":
+			hasRequires = true;
+			reader.skipValue();
+			break;
+		case "name":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Mod name must be a string", reader);
+			}
 
-				description = reader.nextString();
-				break;
-			case "authors":
-				readPeople(warnings, reader, authors);
-				break;
-			case "contributors":
-				readPeople(warnings, reader, contributors);
-				break;
-			case "contact":
-				contact = readContactInfo(reader);
-				break;
-			case "license":
-				readLicense(reader, license);
-				break;
-			case "icon":
-				icon = readIcon(reader);
-				break;
-			case "languageAdapters":
-				readLanguageAdapters(reader, languageAdapters);
-				break;
-			case "custom":
-				readCustomValues(reader, customValues);
-				break;
-			default:
-				if (!ModMetadataParser.IGNORED_KEYS.contains(key)) {
-					warnings.add(new ParseWarning(reader.getLineNumber(), reader.getColumn(), key, "Unsupported root entry"));
-				}
+			name = reader.nextString();
+			break;
+		case "description":
+			if (reader.peek() != JsonToken.STRING) {
+				throw new ParseMetadataException("Mod description must be a string", reader);
+			}
 
-				reader.skipValue();
-				break;
+			description = reader.nextString();
+			break;
+		case "authors":
+			readPeople(warnings, reader, authors);
+			break;
+		case "contributors":
+			readPeople(warnings, reader, contributors);
+			break;
+		case "contact":
+			contact = readContactInfo(reader);
+			break;
+		case "license":
+			readLicense(reader, license);
+			break;
+		case "icon":
+			icon = readIcon(reader);
+			break;
+		case "languageAdapters":
+			readLanguageAdapters(reader, languageAdapters);
+			break;
+		case "custom":
+			readCustomValues(reader, customValues);
+			break;
+		default:
+			if (!ModMetadataParser.IGNORED_KEYS.contains(key)) {
+				warnings.add(new ParseWarning(reader.getLineNumber(), reader.getColumn(), key, "Unsupported root entry"));
 			}
+
+			reader.skipValue();
+			break;
 		}
+	}
 
+	@Override
+	public LoaderModMetadata build() throws ParseMetadataException {
 		// Validate all required fields are resolved
 		if (id == null) {
 			throw new ParseMetadataException.MissingField("id");
@@ -222,10 +220,13 @@ final class V1ModMetadataParser {
 
 		ModMetadataParser.logWarningMessages(id, warnings);
 
-		return new V1ModMetadata(id, version, provides,
+		V1ModMetadata ret = new V1ModMetadata(id, version, provides,
 				environment, entrypoints, jars, mixins, classTweaker,
 				dependencies, hasRequires,
 				name, description, authors, contributors, contact, license, icon, languageAdapters, customValues);
+		ret.parseWarnings = warnings;
+
+		return ret;
 	}
 
 	private static void readProvides(JsonReader reader, List<String> provides) throws IOException, ParseMetadataException {
@@ -648,7 +649,7 @@ final class V1ModMetadataParser {
 		reader.endObject();
 	}
 
-	private static void readCustomValues(JsonReader reader, Map<String, CustomValue> customValues) throws IOException, ParseMetadataException {
+	private static void readCustomValues(JsonReader reader, Map<String, String> customValues) throws IOException, ParseMetadataException {
 		if (reader.peek() != JsonToken.BEGIN_OBJECT) {
 			throw new ParseMetadataException("Custom values must be in an object!", reader);
 		}
@@ -656,12 +657,9 @@ final class V1ModMetadataParser {
 		reader.beginObject();
 
 		while (reader.hasNext()) {
-			customValues.put(reader.nextName(), CustomValueImpl.readCustomValue(reader));
+			customValues.put(reader.nextName(), reader.nextRawValue());
 		}
 
 		reader.endObject();
 	}
-
-	private V1ModMetadataParser() {
-	}
 }
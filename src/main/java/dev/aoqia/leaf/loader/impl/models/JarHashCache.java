@@ -0,0 +1,129 @@
+package dev.aoqia.leaf.loader.impl.models;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * Persistent SHA-256 hashes of mod jars, reused as long as a jar's size and modification time don't change.
+ *
+ * <p>Safe for concurrent use, the hashes get computed on the discovery threads.
+ */
+public class JarHashCache {
+    public static final int VERSION = 1;
+
+    private final Path path;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Path> usedJars = ConcurrentHashMap.newKeySet(); // looked up this session, others are pruned
+    private volatile boolean dirty;
+
+    private static final class Entry {
+        final long size;
+        final long mtime;
+        final String hash;
+
+        Entry(long size, long mtime, String hash) {
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = hash;
+        }
+    }
+
+    public JarHashCache(Path path) {
+        this.path = path;
+    }
+
+    public void read() {
+        try (BufferedReader br = Files.newBufferedReader(this.path)) {
+            String line = br.readLine();
+            if (line == null || !line.equals(Integer.toString(VERSION))) {
+                return;
+            }
+
+            while ((line = br.readLine()) != null) {
+                String[] components = line.split("\t");
+                if (components.length != 4) {
+                    continue;
+                }
+
+                this.entries.put(path.getFileSystem().getPath(components[0]),
+                    new Entry(Long.parseLong(components[1]), Long.parseLong(components[2]), components[3]));
+            }
+        } catch (NoSuchFileException e) {
+            // first launch
+        } catch (IOException | RuntimeException e) {
+            Log.warn(LogCategory.DISCOVERY, "Failed to read jar hash cache %s, rehashing all mods", this.path, e);
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * Persist the hashes of the jars looked up this session, dropping the entries of all other jars.
+     */
+    public void write() throws IOException {
+        if (this.entries.keySet().retainAll(this.usedJars)) {
+            this.dirty = true;
+        }
+
+        if (!this.dirty) {
+            return;
+        }
+
+        Path tmpPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        Files.createDirectories(this.path.getParent());
+
+        try (BufferedWriter bw = Files.newBufferedWriter(tmpPath)) {
+            bw.write(VERSION + "\n");
+            for (Map.Entry<Path, Entry> e : this.entries.entrySet()) {
+                bw.write(e.getKey()
+                    + "\t" + e.getValue().size
+                    + "\t" + e.getValue().mtime
+                    + "\t" + e.getValue().hash
+                    + "\n");
+            }
+        }
+
+        Files.move(tmpPath, this.path, StandardCopyOption.REPLACE_EXISTING);
+        this.dirty = false;
+    }
+
+    /**
+     * Get the jar's hash, hashing it only if it isn't cached or changed since.
+     */
+    public String getHash(Path jar) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(jar, BasicFileAttributes.class);
+        long mtime = attrs.lastModifiedTime().toMillis();
+        Entry entry = this.entries.get(jar);
+        this.usedJars.add(jar);
+
+        if (entry != null && entry.size == attrs.size() && entry.mtime == mtime) {
+            return entry.hash;
+        }
+
+        String hash = hash(jar);
+        this.entries.put(jar, new Entry(attrs.size(), mtime, hash));
+        this.dirty = true;
+
+        return hash;
+    }
+
+    public static String hash(Path jar) throws IOException {
+        try (InputStream is = Files.newInputStream(jar)) {
+            return DigestUtils.sha256Hex(is);
+        }
+    }
+}
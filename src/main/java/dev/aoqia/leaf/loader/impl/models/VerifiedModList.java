@@ -10,7 +10,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 import dev.aoqia.leaf.loader.impl.FormattedException;
 import dev.aoqia.leaf.loader.impl.discovery.ModCandidateImpl;
@@ -20,16 +19,19 @@ public class VerifiedModList {
 
     private final Path path;
     private final Map<String, List<Mod>> internal;
+    // workshop id, game mod id and leaf mod id to the stored entry, avoids scanning the lists
+    private final Map<String, Mod> index;
 
     public VerifiedModList(Path path) {
         this.path = path;
         this.internal = new HashMap<>();
+        this.index = new HashMap<>();
     }
 
     public void readOrCreate() throws IOException {
         // If the mod list data file doesn't exist, initialise it and return empty.
         if (!Files.exists(this.path)) {
-            Files.createDirectory(this.path.getParent());
+            Files.createDirectories(this.path.getParent());
             Files.write(this.path, (VERSION + "\n").getBytes());
             return;
         }
@@ -54,14 +56,13 @@ public class VerifiedModList {
                 String leafModId = components[2];
                 String jarHash = components[3];
 
-                this.internal.putIfAbsent(workshopId, new ArrayList<>());
-                this.internal.get(workshopId).add(new Mod(workshopId, leafModId, gameModId, jarHash));
+                put(new Mod(workshopId, leafModId, gameModId, jarHash));
             }
         }
     }
 
     public void write() throws IOException {
-        try (BufferedWriter bw = Files.newBufferedWriter(this.path, StandardOpenOption.CREATE)) {
+        try (BufferedWriter bw = Files.newBufferedWriter(this.path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
             bw.write(VERSION + "\n");
             for (String workshopId : this.internal.keySet()) {
                 for (Mod mod : this.internal.get(workshopId)) {
@@ -76,37 +77,36 @@ public class VerifiedModList {
     }
 
     public void add(ModCandidateImpl mod) {
-        this.internal.putIfAbsent(mod.getGameId(), new ArrayList<>());
-        this.internal.get(mod.getGameId()).add(new Mod(mod));
+        put(new Mod(mod));
     }
 
-    public boolean contains(ModCandidateImpl mod) {
-        return this.internal.containsKey(mod.getWorkshopId()) && this.internal.get(mod.getWorkshopId())
-            .stream()
-            .anyMatch(m ->
-                m.getGameId().equals(mod.getGameId())
-                    && m.getWorkshopId().equals(mod.getWorkshopId())
-                    && m.getId().equals(mod.getId())
-                    && m.getJarHash().equals(mod.getJarHash()));
+    private void put(Mod mod) {
+        Mod prev = this.index.put(getKey(mod.getWorkshopId(), mod.getGameId(), mod.getId()), mod);
+        List<Mod> mods = this.internal.computeIfAbsent(mod.getWorkshopId(), ignore -> new ArrayList<>());
+
+        if (prev != null) {
+            mods.remove(prev);
+        }
+
+        mods.add(mod);
     }
 
-    private boolean containsIgnoreHash(ModCandidateImpl mod) {
-        return this.internal.containsKey(mod.getWorkshopId()) && this.internal.get(mod.getWorkshopId())
-            .stream()
-            .anyMatch(m ->
-                m.getGameId().equals(mod.getGameId())
-                    && m.getWorkshopId().equals(mod.getWorkshopId())
-                    && m.getId().equals(mod.getId()));
+    private Mod get(ModCandidateImpl mod) {
+        return this.index.get(getKey(mod.getWorkshopId(), mod.getGameId(), mod.getId()));
+    }
+
+    private static String getKey(String workshopId, String gameId, String id) {
+        return workshopId + "\t" + gameId + "\t" + id;
+    }
+
+    public boolean contains(ModCandidateImpl mod) {
+        Mod stored = get(mod);
+        return stored != null && stored.getJarHash().equals(mod.getJarHash());
     }
 
     private boolean containsWithBadHash(ModCandidateImpl mod) {
-        return this.internal.containsKey(mod.getWorkshopId()) && this.internal.get(mod.getWorkshopId())
-            .stream()
-            .anyMatch(m ->
-                m.getGameId().equals(mod.getGameId())
-                    && m.getWorkshopId().equals(mod.getWorkshopId())
-                    && m.getId().equals(mod.getId())
-                    && !m.getJarHash().equals(mod.getJarHash()));
+        Mod stored = get(mod);
+        return stored != null && !stored.getJarHash().equals(mod.getJarHash());
     }
 
     public boolean isVerified(ModCandidateImpl mod) {
@@ -118,16 +118,13 @@ public class VerifiedModList {
     }
 
     public void updateMod(ModCandidateImpl mod) {
-        Optional<Mod> stored = this.internal.get(mod.getGameId()).stream().findFirst();
-        if (!stored.isPresent()) {
+        Mod stored = get(mod);
+        if (stored == null) {
             throw new FormattedException("Failed to update mod %s (%s/%s) after verifying",
                 mod.getId(), mod.getWorkshopId(), mod.getGameId());
         }
 
-        stored.get().setWorkshopId(mod.getWorkshopId());
-        stored.get().setId(mod.getId());
-        stored.get().setGameId(mod.getGameId());
-        stored.get().setJarHash(mod.getJarHash());
+        stored.setJarHash(mod.getJarHash());
     }
 
     public Map<String, List<Mod>> getInternal() {
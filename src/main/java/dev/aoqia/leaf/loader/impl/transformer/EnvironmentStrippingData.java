@@ -16,10 +16,12 @@
 
 package dev.aoqia.leaf.loader.impl.transformer;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.HashSet;
 
 import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
@@ -36,6 +38,9 @@ public class EnvironmentStrippingData extends ClassVisitor {
 	private static final String ENVIRONMENT_DESCRIPTOR = Type.getDescriptor(Environment.class);
 	private static final String ENVIRONMENT_INTERFACE_DESCRIPTOR = Type.getDescriptor(EnvironmentInterface.class);
 	private static final String ENVIRONMENT_INTERFACES_DESCRIPTOR = Type.getDescriptor(EnvironmentInterfaces.class);
+	// common prefix of the descriptors above, without the trailing ;
+	private static final byte[] DESCRIPTOR_PREFIX = ENVIRONMENT_DESCRIPTOR.substring(0, ENVIRONMENT_DESCRIPTOR.length() - 1).getBytes(StandardCharsets.UTF_8);
+	private static final int CONSTANT_UTF8_TAG = 1;
 
 	private final String envType;
 
@@ -98,6 +103,36 @@ public class EnvironmentStrippingData extends ClassVisitor {
 		return null;
 	}
 
+	/**
+	 * Check whether the class' constant pool references any of the environment annotations.
+	 *
+	 * <p>Annotation descriptors are always stored as constant pool strings, so a class without them doesn't need to be
+	 * scanned. This only looks at the already indexed constant pool and doesn't visit the class.
+	 */
+	public static boolean hasEnvironmentAnnotations(ClassReader reader) {
+		for (int i = 1, max = reader.getItemCount(); i < max; i++) {
+			int offset = reader.getItem(i); // entry start + 1, 0 for the unused slot after long and double entries
+			if (offset == 0 || reader.readByte(offset - 1) != CONSTANT_UTF8_TAG) continue;
+
+			int len = reader.readUnsignedShort(offset);
+			if (len < DESCRIPTOR_PREFIX.length) continue;
+
+			int start = offset + 2;
+			boolean matches = true;
+
+			for (int j = 0; j < DESCRIPTOR_PREFIX.length; j++) {
+				if (reader.readByte(start + j) != DESCRIPTOR_PREFIX[j]) {
+					matches = false;
+					break;
+				}
+			}
+
+			if (matches) return true;
+		}
+
+		return false;
+	}
+
 	public EnvironmentStrippingData(int api, String envType) {
 		super(api);
 		this.envType = envType;
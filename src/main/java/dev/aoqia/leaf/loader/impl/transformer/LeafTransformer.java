@@ -26,52 +26,71 @@ import dev.aoqia.leaf.api.EnvType;
 import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
 import dev.aoqia.leaf.loader.impl.game.GameProvider.BuiltinTransform;
 import dev.aoqia.leaf.loader.impl.launch.LeafLauncherBase;
+import dev.aoqia.leaf.loader.impl.util.ClassLoadProfiler;
 
 public final class LeafTransformer {
 	public static byte[] transform(boolean isDevelopment, EnvType envType, String name, byte[] bytes) {
 		Set<BuiltinTransform> transforms = LeafLoaderImpl.INSTANCE.getGameProvider().getBuiltinTransforms(name);
 		boolean transformAccess = transforms.contains(BuiltinTransform.WIDEN_ALL_PACKAGE_ACCESS) && LeafLauncherBase.getLauncher().getMappingConfiguration().requiresPackageAccessHack();
 		boolean environmentStrip = transforms.contains(BuiltinTransform.STRIP_ENVIRONMENT);
-		boolean applyClassTweaker = transforms.contains(BuiltinTransform.CLASS_TWEAKS) && LeafLoaderImpl.INSTANCE.getClassTweaker().getTargets().contains(name.replace('.', '/'));
+		boolean applyClassTweaker = transforms.contains(BuiltinTransform.CLASS_TWEAKS) && isClassTweakerTarget(name);
 
 		if (!transformAccess && !environmentStrip && !applyClassTweaker) {
 			return bytes;
 		}
 
 		ClassReader classReader = new ClassReader(bytes);
+		EnvironmentStrippingData stripData = null;
+
+		if (environmentStrip) {
+			long startTime = ClassLoadProfiler.start();
+
+			// most classes don't use the annotations, skip visiting those
+			if (EnvironmentStrippingData.hasEnvironmentAnnotations(classReader)) {
+				stripData = new EnvironmentStrippingData(LeafLoaderImpl.ASM_VERSION, envType.toString());
+				classReader.accept(stripData, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+			}
+
+			ClassLoadProfiler.stop(ClassLoadProfiler.Stage.ENVIRONMENT_SCAN, startTime);
+
+			if (stripData != null && stripData.stripEntireClass()) {
+				throw new RuntimeException("Cannot load class " + name + " in environment type " + envType);
+			}
+
+			if (stripData != null && stripData.isEmpty()) stripData = null;
+		}
+
+		if (!transformAccess && !applyClassTweaker && stripData == null) {
+			return bytes;
+		}
+
 		ClassWriter classWriter = new ClassWriter(classReader, 0);
 		ClassVisitor visitor = classWriter;
-		int visitorCount = 0;
 
 		if (applyClassTweaker) {
 			visitor = LeafLoaderImpl.INSTANCE.getClassTweaker().createClassVisitor(LeafLoaderImpl.ASM_VERSION, visitor, null); // TODO: generated classes?
-			visitorCount++;
 		}
 
 		if (transformAccess) {
 			visitor = new PackageAccessFixer(LeafLoaderImpl.ASM_VERSION, visitor);
-			visitorCount++;
 		}
 
-		if (environmentStrip) {
-			EnvironmentStrippingData stripData = new EnvironmentStrippingData(LeafLoaderImpl.ASM_VERSION, envType.toString());
-			classReader.accept(stripData, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+		if (stripData != null) {
+			visitor = new ClassStripper(LeafLoaderImpl.ASM_VERSION, visitor, stripData.getStripInterfaces(), stripData.getStripFields(), stripData.getStripMethods());
+		}
 
-			if (stripData.stripEntireClass()) {
-				throw new RuntimeException("Cannot load class " + name + " in environment type " + envType);
-			}
+		// the visitors run chained in a single pass, so they can only be timed together
+		long startTime = ClassLoadProfiler.start();
+		classReader.accept(visitor, 0);
+		byte[] ret = classWriter.toByteArray();
+		ClassLoadProfiler.stop(ClassLoadProfiler.Stage.LEAF_TRANSFORM, startTime);
 
-			if (!stripData.isEmpty()) {
-				visitor = new ClassStripper(LeafLoaderImpl.ASM_VERSION, visitor, stripData.getStripInterfaces(), stripData.getStripFields(), stripData.getStripMethods());
-				visitorCount++;
-			}
-		}
+		return ret;
+	}
 
-		if (visitorCount <= 0) {
-			return bytes;
-		}
+	private static boolean isClassTweakerTarget(String name) {
+		Set<String> targets = LeafLoaderImpl.INSTANCE.getClassTweaker().getTargets();
 
-		classReader.accept(visitor, 0);
-		return classWriter.toByteArray();
+		return !targets.isEmpty() && targets.contains(name.replace('.', '/'));
 	}
 }
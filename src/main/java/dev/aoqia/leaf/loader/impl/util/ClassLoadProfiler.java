@@ -0,0 +1,299 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
+import dev.aoqia.leaf.loader.impl.ModContainerImpl;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * Per class timing of the class loading pipeline, enabled through {@link SystemProperties#DEBUG_PROFILE_CLASS_LOAD}.
+ *
+ * <p>Every class loaded through Knot gets a {@link Record} with the time spent in each {@link Stage}. Stages are
+ * exclusive except for {@link Stage#DEFINE}, which includes loading super types that weren't loaded yet. The records are
+ * available in-process through {@link #getRecords()} and written to {@code classLoadProfile-classes.csv} and
+ * {@code classLoadProfile-mods.csv} in the leaf dir on exit.
+ */
+public final class ClassLoadProfiler {
+	private static final boolean ENABLED = SystemProperties.isSet(SystemProperties.DEBUG_PROFILE_CLASS_LOAD);
+	private static final Queue<Record> RECORDS = new ConcurrentLinkedQueue<>();
+	private static final ThreadLocal<ArrayDeque<Record>> ACTIVE = ThreadLocal.withInitial(ArrayDeque::new);
+	private static final int TOP_MODS_LOGGED = 10;
+
+	public enum Stage {
+		CACHE_READ("cache"),
+		READ("read"),
+		GAME_TRANSFORM("game"),
+		ENVIRONMENT_SCAN("envScan"),
+		LEAF_TRANSFORM("leaf"),
+		MIXIN("mixin"),
+		DEFINE("define");
+
+		public final String key;
+
+		Stage(String key) {
+			this.key = key;
+		}
+	}
+
+	public static final class Record {
+		private final String className;
+		private final long[] stageNanos = new long[Stage.values().length];
+		private volatile Path codeSource;
+		private volatile int inputBytes;
+		private volatile int outputBytes;
+
+		Record(String className) {
+			this.className = className;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		/* @Nullable */
+		public Path getCodeSource() {
+			return codeSource;
+		}
+
+		public void setCodeSource(Path codeSource) {
+			this.codeSource = codeSource;
+		}
+
+		public long getNanos(Stage stage) {
+			return stageNanos[stage.ordinal()];
+		}
+
+		public long getTotalNanos() {
+			long ret = 0;
+
+			for (long nanos : stageNanos) {
+				ret += nanos;
+			}
+
+			return ret;
+		}
+
+		/**
+		 * @return the size of the untransformed class file
+		 */
+		public int getInputBytes() {
+			return inputBytes;
+		}
+
+		public void setInputBytes(int inputBytes) {
+			this.inputBytes = inputBytes;
+		}
+
+		/**
+		 * @return the size of the class file passed to defineClass
+		 */
+		public int getOutputBytes() {
+			return outputBytes;
+		}
+
+		public void setOutputBytes(int outputBytes) {
+			this.outputBytes = outputBytes;
+		}
+	}
+
+	static {
+		if (ENABLED) {
+			Runtime.getRuntime().addShutdownHook(new Thread(ClassLoadProfiler::writeReport, "Leaf Class Load Profiler"));
+		}
+	}
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * @return a snapshot of all records so far, in load completion order
+	 */
+	public static List<Record> getRecords() {
+		return new ArrayList<>(RECORDS);
+	}
+
+	/**
+	 * Sum up the total time per owning mod.
+	 *
+	 * @return map from mod id to nanoseconds, classes without an owning mod are listed under their code source or "unknown"
+	 */
+	public static Map<String, Long> getTotalNanosByMod() {
+		Map<Path, String> modsByPath = getModsByPath();
+		Map<String, Long> ret = new HashMap<>();
+
+		for (Record record : RECORDS) {
+			ret.merge(getOwner(record, modsByPath), record.getTotalNanos(), Long::sum);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Start profiling a class load on the current thread.
+	 *
+	 * @return the new record or null if profiling is disabled
+	 */
+	public static Record begin(String className) {
+		if (!ENABLED) return null;
+
+		Record ret = new Record(className);
+		ACTIVE.get().push(ret);
+
+		return ret;
+	}
+
+	/**
+	 * Finish profiling a class load started with {@link #begin}.
+	 *
+	 * @param publish whether to keep the record, false for lookups that don't end up defining a class
+	 */
+	public static void end(Record record, boolean publish) {
+		if (record == null) return;
+
+		ArrayDeque<Record> active = ACTIVE.get();
+		if (active.peek() == record) active.pop();
+
+		if (publish) RECORDS.add(record);
+	}
+
+	/**
+	 * @return the record of the class currently being loaded on this thread or null if there is none
+	 */
+	public static Record current() {
+		return ENABLED ? ACTIVE.get().peek() : null;
+	}
+
+	public static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Attribute the time since {@code startNanos} to a stage of the class currently being loaded on this thread.
+	 */
+	public static void stop(Stage stage, long startNanos) {
+		if (!ENABLED) return;
+
+		Record record = ACTIVE.get().peek();
+		if (record != null) record.stageNanos[stage.ordinal()] += System.nanoTime() - startNanos;
+	}
+
+	private static Map<Path, String> getModsByPath() {
+		Map<Path, String> ret = new HashMap<>();
+
+		for (ModContainerImpl mod : LeafLoaderImpl.INSTANCE.getModsInternal()) {
+			for (Path path : mod.getCodeSourcePaths()) {
+				ret.putIfAbsent(LoaderUtil.normalizePath(path), mod.getMetadata().getId());
+			}
+		}
+
+		return ret;
+	}
+
+	private static String getOwner(Record record, Map<Path, String> modsByPath) {
+		Path codeSource = record.getCodeSource();
+		if (codeSource == null) return "unknown";
+
+		String ret = modsByPath.get(codeSource);
+
+		return ret != null ? ret : codeSource.getFileName().toString();
+	}
+
+	private static void writeReport() {
+		Path leafDir = LeafLoaderImpl.INSTANCE.getLeafDir();
+		if (leafDir == null || RECORDS.isEmpty()) return;
+
+		List<Record> records = getRecords();
+		records.sort(Comparator.comparingLong(Record::getTotalNanos).reversed());
+		Map<Path, String> modsByPath = getModsByPath();
+
+		Map<String, long[]> modTotals = new HashMap<>(); // stage nanos..., total nanos, class count, input bytes
+		int width = Stage.values().length;
+
+		for (Record record : records) {
+			long[] totals = modTotals.computeIfAbsent(getOwner(record, modsByPath), ignore -> new long[width + 3]);
+
+			for (Stage stage : Stage.values()) {
+				totals[stage.ordinal()] += record.getNanos(stage);
+			}
+
+			totals[width] += record.getTotalNanos();
+			totals[width + 1]++;
+			totals[width + 2] += record.getInputBytes();
+		}
+
+		List<Map.Entry<String, long[]>> mods = new ArrayList<>(modTotals.entrySet());
+		mods.sort(Collections.reverseOrder(Comparator.comparingLong(e -> e.getValue()[width])));
+
+		try {
+			Files.createDirectories(leafDir);
+
+			try (Writer writer = Files.newBufferedWriter(leafDir.resolve("classLoadProfile-classes.csv"), StandardCharsets.UTF_8)) {
+				writer.write("class,owner,inputBytes,outputBytes");
+				for (Stage stage : Stage.values()) writer.write(","+stage.key+"Us");
+				writer.write(",totalUs\n");
+
+				for (Record record : records) {
+					writer.write(LoaderUtil.escapeCsv(record.getClassName())+","+LoaderUtil.escapeCsv(getOwner(record, modsByPath))+","+record.getInputBytes()+","+record.getOutputBytes());
+					for (Stage stage : Stage.values()) writer.write(","+record.getNanos(stage) / 1000);
+					writer.write(","+record.getTotalNanos() / 1000+"\n");
+				}
+			}
+
+			try (Writer writer = Files.newBufferedWriter(leafDir.resolve("classLoadProfile-mods.csv"), StandardCharsets.UTF_8)) {
+				writer.write("owner,classes,inputBytes");
+				for (Stage stage : Stage.values()) writer.write(","+stage.key+"Us");
+				writer.write(",totalUs\n");
+
+				for (Map.Entry<String, long[]> entry : mods) {
+					long[] totals = entry.getValue();
+					writer.write(LoaderUtil.escapeCsv(entry.getKey())+","+totals[width + 1]+","+totals[width + 2]);
+					for (Stage stage : Stage.values()) writer.write(","+totals[stage.ordinal()] / 1000);
+					writer.write(","+totals[width] / 1000+"\n");
+				}
+			}
+		} catch (IOException e) {
+			Log.warn(LogCategory.KNOT, "Error writing class load profile to %s", leafDir, e);
+		}
+
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < Math.min(TOP_MODS_LOGGED, mods.size()); i++) {
+			Map.Entry<String, long[]> entry = mods.get(i);
+			sb.append(String.format("%n\t- %s: %.1f ms, %d classes", entry.getKey(), entry.getValue()[width] * 1e-6, entry.getValue()[width + 1]));
+		}
+
+		Log.info(LogCategory.KNOT, "Class loading time by owner (%d classes, full report in %s):%s", records.size(), leafDir, sb);
+	}
+}
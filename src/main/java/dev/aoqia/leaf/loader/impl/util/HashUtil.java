@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helpers for computing the content keys of the various caches in the leaf dir.
+ */
+public final class HashUtil {
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	public static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static void update(MessageDigest digest, String key, String value) {
+		digest.update(key.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) '=');
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) '\n');
+	}
+
+	/**
+	 * Add a cheap fingerprint of a file to the digest, consisting of its path, size and modification time.
+	 */
+	public static void updateFileStamp(MessageDigest digest, Path path) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+
+		update(digest, "path", path.toString());
+		update(digest, "size", Long.toString(attrs.size()));
+		update(digest, "mtime", Long.toString(attrs.lastModifiedTime().toMillis()));
+	}
+
+	public static void updateContent(MessageDigest digest, InputStream is) throws IOException {
+		byte[] buffer = new byte[0x4000];
+		int len;
+
+		while ((len = is.read(buffer)) >= 0) {
+			digest.update(buffer, 0, len);
+		}
+	}
+
+	public static String hashFile(Path path) throws IOException {
+		MessageDigest digest = newSha256();
+
+		try (InputStream is = Files.newInputStream(path)) {
+			updateContent(digest, is);
+		}
+
+		return toHex(digest.digest());
+	}
+
+	public static String toHex(byte[] bytes) {
+		return toHex(bytes, bytes.length);
+	}
+
+	/**
+	 * Format the first {@code len} bytes as lower case hex.
+	 */
+	public static String toHex(byte[] bytes, int len) {
+		char[] ret = new char[len * 2];
+
+		for (int i = 0; i < len; i++) {
+			ret[i * 2] = HEX_DIGITS[(bytes[i] >>> 4) & 0xf];
+			ret[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+
+		return new String(ret);
+	}
+}
@@ -19,8 +19,10 @@ package dev.aoqia.leaf.loader.impl.util;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -57,6 +59,35 @@ public final class LoaderUtil {
 		}
 	}
 
+	/**
+	 * Move a file over another one, atomically if the file system supports it.
+	 *
+	 * <p>Used to publish cache files written to a temporary sibling, so readers never observe partial contents where
+	 * possible.
+	 */
+	public static void replaceFile(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Quote a csv field if it contains a separator, quote or line break.
+	 */
+	public static String escapeCsv(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+				return '"'+value.replace("\"", "\"\"")+'"';
+			}
+		}
+
+		return value;
+	}
+
 	public static void verifyNotInTargetCl(Class<?> cls) {
 		if (cls.getClassLoader().getClass().getName().equals("dev.aoqia.leaf.loader.impl.launch.knot.KnotClassLoader")) {
 			// This usually happens when fabric loader has been added to the target class loader. This is a bad state.
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+
+/**
+ * Minimal read-only zip reader backed by a memory mapped file or any other byte buffer.
+ *
+ * <p>The central directory is parsed once on open, entry reads then inflate straight from the mapped region into an
+ * exactly sized array (or copy it for stored entries) without going through the jar URL handler, its streams and an
+ * intermediate buffer. Stored entries can also be accessed in place, which allows reading nested jars without
+ * extracting them.
+ *
+ * <p>Only what mod and class path jars need is supported: stored and deflated entries, zip64 sizes and offsets. Anything
+ * else is reported as an {@link IOException} so the caller can fall back to the JDK implementation.
+ *
+ * <p>A file mapping normally lives until the buffer gets garbage collected, which keeps the file locked on Windows.
+ * {@link #close} releases it right away for users that replace or delete the file afterwards.
+ */
+public final class MappedZipFile implements Closeable {
+	private static final int LOCAL_HEADER_SIG = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+	private static final int END_SIG = 0x06054b50;
+	private static final int ZIP64_END_SIG = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+	private static final int END_SIZE = 22;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+	private static final long UINT32_MAX = 0xffffffffL;
+
+	private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+	private static final ThreadLocal<byte[]> INPUT_BUFFER = ThreadLocal.withInitial(() -> new byte[0x4000]);
+	private static final MethodHandle UNMAP = findUnmap(); // (ByteBuffer)void, null if unsupported
+
+	private final Object source; // path or description for messages
+	private final ByteBuffer buffer;
+	private final Map<String, Entry> entries;
+	private final ByteBuffer mapping; // mapping created by open(Path), null for buffers supplied by the caller
+	private volatile boolean closed;
+
+	public static final class Entry {
+		final String name;
+		final int method;
+		final long crc;
+		final int compressedSize;
+		final int size;
+		final long localHeaderOffset;
+
+		Entry(String name, int method, long crc, int compressedSize, int size, long localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isStored() {
+			return method == METHOD_STORED;
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+
+		public int getSize() {
+			return size;
+		}
+	}
+
+	private MappedZipFile(Object source, ByteBuffer buffer, Map<String, Entry> entries, ByteBuffer mapping) {
+		this.source = source;
+		this.buffer = buffer;
+		this.entries = entries;
+		this.mapping = mapping;
+	}
+
+	public static MappedZipFile open(Path path) throws IOException {
+		ByteBuffer mapping = map(path);
+
+		try {
+			ByteBuffer buffer = mapping.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+			return new MappedZipFile(path, buffer, readCentralDirectory(path, buffer), mapping);
+		} catch (IOException | RuntimeException e) {
+			unmap(mapping);
+			throw e;
+		}
+	}
+
+	/**
+	 * Open a zip file held in a buffer, e.g. a stored nested jar sliced from its parent.
+	 *
+	 * @param source object identifying the buffer's origin in error messages
+	 */
+	public static MappedZipFile open(ByteBuffer buffer, Object source) throws IOException {
+		buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+		return new MappedZipFile(source, buffer, readCentralDirectory(source, buffer), null);
+	}
+
+	/**
+	 * Map a whole file read-only, the mapping stays valid after the file got closed.
+	 */
+	public static ByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) throw new ZipException("file too large to map: "+path);
+
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	public Object getSource() {
+		return source;
+	}
+
+	public Collection<String> getEntryNames() {
+		return entries.keySet();
+	}
+
+	public boolean contains(String name) {
+		return entries.containsKey(name);
+	}
+
+	/**
+	 * @return the entry or null if there is no file entry with the supplied name
+	 */
+	public Entry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Read the full content of an entry.
+	 *
+	 * @return the entry's bytes or null if there is no entry with the supplied name
+	 */
+	public byte[] read(String name) throws IOException {
+		Entry entry = entries.get(name);
+		if (entry == null) return null;
+
+		ByteBuffer buf = getRawData(entry);
+		byte[] ret = new byte[entry.size];
+
+		if (entry.method == METHOD_STORED) {
+			buf.get(ret);
+		} else if (entry.method == METHOD_DEFLATED) {
+			inflate(buf, entry.compressedSize, ret, entry.name);
+		} else {
+			throw new ZipException("unsupported compression method "+entry.method+" for "+entry.name+" in "+source);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Access a stored entry's content in place, without copying it.
+	 */
+	public ByteBuffer getStoredData(Entry entry) throws IOException {
+		if (entry.method != METHOD_STORED) throw new ZipException("entry "+entry.name+" in "+source+" isn't stored");
+
+		ByteBuffer ret = getRawData(entry);
+		ret.limit(ret.position() + entry.size);
+
+		return ret.slice();
+	}
+
+	/**
+	 * Stream an entry's content, inflating it as needed.
+	 */
+	public InputStream getInputStream(Entry entry) throws IOException {
+		if (entry.method == METHOD_STORED) {
+			return new ByteBufferInputStream(getStoredData(entry));
+		} else if (entry.method == METHOD_DEFLATED) {
+			ByteBuffer buf = getRawData(entry);
+			buf.limit(buf.position() + entry.compressedSize);
+			Inflater inflater = new Inflater(true);
+
+			return new InflaterInputStream(new ByteBufferInputStream(buf.slice()), inflater, 0x4000) {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					inflater.end();
+				}
+			};
+		} else {
+			throw new ZipException("unsupported compression method "+entry.method+" for "+entry.name+" in "+source);
+		}
+	}
+
+	/**
+	 * Release the file mapping if this instance was opened from a path, no-op for buffers supplied by the caller.
+	 *
+	 * <p>Neither this instance nor any buffer or stream obtained from it may be used concurrently or afterwards,
+	 * accessing the unmapped memory would crash the JVM.
+	 */
+	@Override
+	public void close() {
+		if (closed) return;
+
+		closed = true;
+		if (mapping != null) unmap(mapping);
+	}
+
+	private ByteBuffer getRawData(Entry entry) throws IOException {
+		if (closed) throw new IllegalStateException("zip file "+source+" is closed");
+
+		ByteBuffer buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int pos = checkOffset(entry.localHeaderOffset);
+
+		if (pos + LOCAL_HEADER_SIZE > buf.limit() || buf.getInt(pos) != LOCAL_HEADER_SIG) throw new ZipException("invalid local header for "+entry.name+" in "+source);
+
+		int dataPos = pos + LOCAL_HEADER_SIZE + (buf.getShort(pos + 26) & 0xffff) + (buf.getShort(pos + 28) & 0xffff);
+		if (dataPos + entry.compressedSize > buf.limit()) throw new ZipException("truncated entry "+entry.name+" in "+source);
+
+		buf.position(dataPos);
+
+		return buf;
+	}
+
+	private void inflate(ByteBuffer buf, int compressedSize, byte[] out, String name) throws IOException {
+		Inflater inflater = INFLATER.get();
+		byte[] input = INPUT_BUFFER.get();
+		int remaining = compressedSize;
+		int written = 0;
+
+		inflater.reset();
+
+		try {
+			while (written < out.length) {
+				if (inflater.needsInput()) {
+					if (remaining <= 0) break;
+
+					int len = Math.min(remaining, input.length);
+					buf.get(input, 0, len);
+					remaining -= len;
+					inflater.setInput(input, 0, len);
+				}
+
+				int len = inflater.inflate(out, written, out.length - written);
+
+				if (len == 0 && (inflater.finished() || inflater.needsDictionary())) break;
+
+				written += len;
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException("invalid deflate data for "+name+" in "+source+": "+e.getMessage());
+		}
+
+		if (written != out.length) throw new ZipException("size mismatch for "+name+" in "+source);
+	}
+
+	/**
+	 * Unmap a buffer created by {@link #map}, leaving it to the garbage collector if the JVM doesn't allow it.
+	 */
+	private static void unmap(ByteBuffer buffer) {
+		if (UNMAP == null) return;
+
+		try {
+			UNMAP.invokeExact(buffer);
+		} catch (Throwable t) {
+			Log.debug(LogCategory.GENERAL, "Error unmapping buffer", t);
+		}
+	}
+
+	private static MethodHandle findUnmap() {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType type = MethodType.methodType(void.class, ByteBuffer.class);
+
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+
+			try { // Java 9+
+				Field field = unsafeClass.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+
+				return lookup.findVirtual(unsafeClass, "invokeCleaner", type).bindTo(field.get(null));
+			} catch (NoSuchMethodException e) { // Java 8
+				Class<?> directBufferClass = Class.forName("sun.nio.ch.DirectBuffer");
+				Class<?> cleanerClass = Class.forName("sun.misc.Cleaner");
+				MethodHandle getCleaner = lookup.findVirtual(directBufferClass, "cleaner", MethodType.methodType(cleanerClass));
+				MethodHandle clean = lookup.findVirtual(cleanerClass, "clean", MethodType.methodType(void.class));
+
+				return MethodHandles.filterReturnValue(getCleaner, clean).asType(type);
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			Log.debug(LogCategory.GENERAL, "Can't unmap buffers explicitly", e);
+			return null;
+		}
+	}
+
+	private static Map<String, Entry> readCentralDirectory(Object source, ByteBuffer buf) throws IOException {
+		int endPos = findEnd(buf);
+		if (endPos < 0) throw new ZipException("no end of central directory record in "+source);
+
+		long count = buf.getShort(endPos + 10) & 0xffff;
+		long cdOffset = buf.getInt(endPos + 16) & UINT32_MAX;
+
+		if (count == 0xffff || cdOffset == UINT32_MAX) { // zip64
+			int locatorPos = endPos - ZIP64_LOCATOR_SIZE;
+
+			if (locatorPos >= 0 && buf.getInt(locatorPos) == ZIP64_LOCATOR_SIG) {
+				int zip64EndPos = checkOffset(buf.getLong(locatorPos + 8));
+				if (buf.getInt(zip64EndPos) != ZIP64_END_SIG) throw new ZipException("invalid zip64 end record in "+source);
+
+				count = buf.getLong(zip64EndPos + 32);
+				cdOffset = buf.getLong(zip64EndPos + 48);
+			}
+		}
+
+		Map<String, Entry> ret = new HashMap<>((int) Math.min(count, 1 << 20) * 4 / 3 + 1);
+		int pos = checkOffset(cdOffset);
+
+		for (long i = 0; i < count; i++) {
+			if (pos + CENTRAL_HEADER_SIZE > buf.limit() || buf.getInt(pos) != CENTRAL_HEADER_SIG) {
+				throw new ZipException("invalid central directory entry "+i+" in "+source);
+			}
+
+			int method = buf.getShort(pos + 10) & 0xffff;
+			long crc = buf.getInt(pos + 16) & UINT32_MAX;
+			long compressedSize = buf.getInt(pos + 20) & UINT32_MAX;
+			long size = buf.getInt(pos + 24) & UINT32_MAX;
+			int nameLen = buf.getShort(pos + 28) & 0xffff;
+			int extraLen = buf.getShort(pos + 30) & 0xffff;
+			int commentLen = buf.getShort(pos + 32) & 0xffff;
+			long localHeaderOffset = buf.getInt(pos + 42) & UINT32_MAX;
+
+			byte[] nameBytes = new byte[nameLen];
+			ByteBuffer dup = buf.duplicate();
+			dup.position(pos + CENTRAL_HEADER_SIZE);
+			dup.get(nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			if (size == UINT32_MAX || compressedSize == UINT32_MAX || localHeaderOffset == UINT32_MAX) {
+				// values are in the zip64 extra field, in this order and only if the regular field is saturated
+				int extraPos = pos + CENTRAL_HEADER_SIZE + nameLen;
+				int extraEnd = extraPos + extraLen;
+
+				while (extraPos + 4 <= extraEnd) {
+					int id = buf.getShort(extraPos) & 0xffff;
+					int len = buf.getShort(extraPos + 2) & 0xffff;
+					int valuePos = extraPos + 4;
+
+					if (id == ZIP64_EXTRA_ID) {
+						if (size == UINT32_MAX) {
+							size = buf.getLong(valuePos);
+							valuePos += 8;
+						}
+
+						if (compressedSize == UINT32_MAX) {
+							compressedSize = buf.getLong(valuePos);
+							valuePos += 8;
+						}
+
+						if (localHeaderOffset == UINT32_MAX) {
+							localHeaderOffset = buf.getLong(valuePos);
+						}
+
+						break;
+					}
+
+					extraPos += 4 + len;
+				}
+			}
+
+			if (!name.endsWith("/")) {
+				if (size > Integer.MAX_VALUE || compressedSize > Integer.MAX_VALUE) throw new ZipException("entry "+name+" too large in "+source);
+
+				ret.putIfAbsent(name, new Entry(name, method, crc, (int) compressedSize, (int) size, localHeaderOffset));
+			}
+
+			pos += CENTRAL_HEADER_SIZE + nameLen + extraLen + commentLen;
+		}
+
+		return ret;
+	}
+
+	private static int findEnd(ByteBuffer buf) {
+		int minPos = Math.max(0, buf.limit() - END_SIZE - 0xffff); // max comment length
+
+		for (int pos = buf.limit() - END_SIZE; pos >= minPos; pos--) {
+			if (buf.getInt(pos) == END_SIG) return pos;
+		}
+
+		return -1;
+	}
+
+	private static int checkOffset(long offset) throws ZipException {
+		if (offset < 0 || offset > Integer.MAX_VALUE) throw new ZipException("invalid offset "+offset);
+
+		return (int) offset;
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) return -1;
+
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
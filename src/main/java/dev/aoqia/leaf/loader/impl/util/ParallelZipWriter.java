@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal zip writer that compresses entries on an executor while a single stream writes them out.
+ *
+ * <p>Each entry gets deflated on a worker thread or stored if that isn't smaller. Parent directory entries are added
+ * implicitly. The compressed entries are held in memory and written sorted by name on {@link #close}, so the output
+ * is the same for the same content no matter in which order or from which threads the entries were added.
+ *
+ * <p>This is the counterpart to {@link MappedZipFile} and supports the same subset: stored and deflated entries plus
+ * zip64 offsets and entry counts.
+ */
+public final class ParallelZipWriter implements Closeable {
+	private static final int LOCAL_HEADER_SIG = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+	private static final int END_SIG = 0x06054b50;
+	private static final int ZIP64_END_SIG = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_END_SIZE = 56;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+	private static final int VERSION = 20;
+	private static final int VERSION_ZIP64 = 45;
+	private static final int FLAG_UTF8 = 0x800;
+	private static final int DOS_DATE = (1 << 5) | 1; // 1980-01-01 00:00, keeps the output reproducible
+	private static final long UINT32_MAX = 0xffffffffL;
+	private static final int UINT16_MAX = 0xffff;
+
+	private final Path file;
+	private final Executor executor;
+	private final boolean compress;
+	private final OutputStream os;
+	private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream(0x10000);
+	private final Map<String, CompletableFuture<CompressedEntry>> entries = new TreeMap<>();
+	private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>(); // idle deflaters, ended on close
+	private long offset;
+	private long entryCount;
+	private int classCount;
+	private volatile boolean closed;
+
+	private static final class CompressedEntry {
+		final byte[] name;
+		final int method;
+		final long crc;
+		final byte[] data;
+		final int compressedSize;
+		final int size;
+
+		CompressedEntry(byte[] name, int method, long crc, byte[] data, int compressedSize, int size) {
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.data = data;
+			this.compressedSize = compressedSize;
+			this.size = size;
+		}
+	}
+
+	public ParallelZipWriter(Path file, Executor executor) throws IOException {
+		this(file, executor, true);
+	}
+
+	/**
+	 * @param compress whether to deflate entries, otherwise they are all stored
+	 */
+	public ParallelZipWriter(Path file, Executor executor, boolean compress) throws IOException {
+		this.file = file;
+		this.executor = executor;
+		this.compress = compress;
+		this.os = new BufferedOutputStream(Files.newOutputStream(file), 0x10000);
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Add a file entry, may be called from any thread.
+	 *
+	 * <p>The data array must not be modified afterwards, it is compressed asynchronously.
+	 */
+	public synchronized void write(String name, byte[] data) throws IOException {
+		if (closed) throw new IllegalStateException("writer for "+file+" is closed");
+		if (name.isEmpty() || name.endsWith("/")) throw new IllegalArgumentException("invalid file entry name: "+name);
+		if (entries.containsKey(name)) throw new ZipException("duplicate entry "+name+" in "+file);
+
+		addParentDirs(name);
+
+		if (name.endsWith(".class")) classCount++;
+
+		entries.put(name, CompletableFuture.supplyAsync(() -> compress(name, data), executor));
+	}
+
+	/**
+	 * Get the number of {@code .class} entries added so far.
+	 */
+	public synchronized int getClassCount() {
+		return classCount;
+	}
+
+	private void addParentDirs(String name) {
+		int pos = name.lastIndexOf('/');
+		if (pos < 0) return;
+
+		String dir = name.substring(0, pos + 1);
+		if (entries.containsKey(dir)) return;
+
+		addParentDirs(dir.substring(0, pos));
+		entries.put(dir, CompletableFuture.completedFuture(new CompressedEntry(dir.getBytes(StandardCharsets.UTF_8), METHOD_STORED, 0, new byte[0], 0, 0)));
+	}
+
+	private CompressedEntry compress(String name, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+		if (!compress) {
+			return new CompressedEntry(nameBytes, METHOD_STORED, crc.getValue(), data, data.length, data.length);
+		}
+
+		Deflater deflater = deflaters.poll();
+		if (deflater == null) deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+		// deflate at most as many bytes as the input has, storing is better beyond that
+		byte[] out = new byte[Math.max(data.length, 64)];
+		int len = 0;
+		boolean finished;
+
+		try {
+			deflater.reset();
+			deflater.setInput(data);
+			deflater.finish();
+
+			while (!deflater.finished() && len < out.length) {
+				len += deflater.deflate(out, len, out.length - len);
+			}
+
+			finished = deflater.finished();
+		} finally {
+			releaseDeflater(deflater);
+		}
+
+		if (!finished || len >= data.length) {
+			return new CompressedEntry(nameBytes, METHOD_STORED, crc.getValue(), data, data.length, data.length);
+		} else {
+			// the entries are held until close, so don't keep the oversized buffer
+			return new CompressedEntry(nameBytes, METHOD_DEFLATED, crc.getValue(), Arrays.copyOf(out, len), len, data.length);
+		}
+	}
+
+	private void releaseDeflater(Deflater deflater) {
+		deflaters.add(deflater);
+
+		// a task finishing after close has to end its deflater itself
+		if (closed) endDeflaters();
+	}
+
+	private void endDeflaters() {
+		Deflater deflater;
+
+		while ((deflater = deflaters.poll()) != null) {
+			deflater.end();
+		}
+	}
+
+	private static CompressedEntry join(CompletableFuture<CompressedEntry> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private void writeEntry(CompressedEntry entry) throws IOException {
+		boolean zip64 = offset >= UINT32_MAX;
+
+		ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(LOCAL_HEADER_SIG);
+		header.putShort((short) VERSION);
+		header.putShort((short) FLAG_UTF8);
+		header.putShort((short) entry.method);
+		header.putShort((short) 0); // time
+		header.putShort((short) DOS_DATE);
+		header.putInt((int) entry.crc);
+		header.putInt(entry.compressedSize);
+		header.putInt(entry.size);
+		header.putShort((short) entry.name.length);
+		header.putShort((short) 0); // extra length
+		os.write(header.array());
+		os.write(entry.name);
+		os.write(entry.data, 0, entry.compressedSize);
+
+		ByteBuffer central = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + (zip64 ? 12 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+		central.putInt(CENTRAL_HEADER_SIG);
+		central.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION)); // made by
+		central.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION)); // needed
+		central.putShort((short) FLAG_UTF8);
+		central.putShort((short) entry.method);
+		central.putShort((short) 0); // time
+		central.putShort((short) DOS_DATE);
+		central.putInt((int) entry.crc);
+		central.putInt(entry.compressedSize);
+		central.putInt(entry.size);
+		central.putShort((short) entry.name.length);
+		central.putShort((short) (zip64 ? 12 : 0)); // extra length
+		central.putShort((short) 0); // comment length
+		central.putShort((short) 0); // disk
+		central.putShort((short) 0); // internal attributes
+		central.putInt(0); // external attributes
+		central.putInt((int) Math.min(offset, UINT32_MAX));
+
+		centralDirectory.write(central.array(), 0, CENTRAL_HEADER_SIZE);
+		centralDirectory.write(entry.name);
+
+		if (zip64) {
+			central.putShort((short) ZIP64_EXTRA_ID);
+			central.putShort((short) 8);
+			central.putLong(offset);
+			centralDirectory.write(central.array(), CENTRAL_HEADER_SIZE, 12);
+		}
+
+		offset += LOCAL_HEADER_SIZE + entry.name.length + entry.compressedSize;
+		entryCount++;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) return;
+		closed = true;
+
+		try {
+			for (CompletableFuture<CompressedEntry> future : entries.values()) {
+				writeEntry(join(future));
+			}
+
+			entries.clear();
+
+			long cdOffset = offset;
+			long cdSize = centralDirectory.size();
+			centralDirectory.writeTo(os);
+
+			if (entryCount >= UINT16_MAX || cdOffset >= UINT32_MAX) {
+				long zip64EndOffset = cdOffset + cdSize;
+
+				ByteBuffer buf = ByteBuffer.allocate(ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				buf.putInt(ZIP64_END_SIG);
+				buf.putLong(ZIP64_END_SIZE - 12); // size of the remaining record
+				buf.putShort((short) VERSION_ZIP64);
+				buf.putShort((short) VERSION_ZIP64);
+				buf.putInt(0); // disk
+				buf.putInt(0); // central directory disk
+				buf.putLong(entryCount);
+				buf.putLong(entryCount);
+				buf.putLong(cdSize);
+				buf.putLong(cdOffset);
+
+				buf.putInt(ZIP64_LOCATOR_SIG);
+				buf.putInt(0); // zip64 end record disk
+				buf.putLong(zip64EndOffset);
+				buf.putInt(1); // disk count
+				os.write(buf.array());
+			}
+
+			ByteBuffer end = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(END_SIG);
+			end.putShort((short) 0); // disk
+			end.putShort((short) 0); // central directory disk
+			end.putShort((short) Math.min(entryCount, UINT16_MAX));
+			end.putShort((short) Math.min(entryCount, UINT16_MAX));
+			end.putInt((int) Math.min(cdSize, UINT32_MAX));
+			end.putInt((int) Math.min(cdOffset, UINT32_MAX));
+			end.putShort((short) 0); // comment length
+			os.write(end.array());
+		} finally {
+			try {
+				os.close();
+			} finally {
+				endDeflaters();
+			}
+		}
+	}
+}
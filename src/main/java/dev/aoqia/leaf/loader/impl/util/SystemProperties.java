@@ -49,6 +49,10 @@ public final class SystemProperties {
 	public static final String LOG_FILE = "leaf.log.file";
 	// minimum log level for builtin log handler
 	public static final String LOG_LEVEL = "leaf.log.level";
+	// deliver log messages to the log handler in batches on a background thread
+	public static final String LOG_ASYNC = "leaf.log.async";
+	// what to do with non-error messages while the async log buffer is full: block (default) or drop
+	public static final String LOG_ASYNC_OVERFLOW = "leaf.log.asyncOverflow";
 	// a path to a directory to replace the default mod search directory
 	public static final String MODS_FOLDER = "leaf.modsFolder";
 	// a path to a directory to replace the default Project Zomboid Steam search directory
@@ -70,6 +74,14 @@ public final class SystemProperties {
 	public static final String PATH_GROUPS = "leaf.classPathGroups";
 	// enable the fixing of package access errors in the game jar(s)
 	public static final String FIX_PACKAGE_ACCESS = "leaf.fixPackageAccess";
+	// cache transformed classes not targeted by mixins in the leaf dir, reused by later launches with the same game, mods and loader
+	public static final String CLASS_CACHE = "leaf.classCache";
+	// load the classes recorded by the previous launch in the background after preLaunch, recording the list for the next one
+	public static final String WARM_UP = "leaf.warmUp";
+	// override the class warm-up timeout after which loading the remaining classes is abandoned, unit in seconds, <= 0 to disable
+	public static final String WARM_UP_TIMEOUT = "leaf.warmUpTimeout";
+	// create the entrypoint instances of independent mods concurrently, invoking them in dependency order
+	public static final String PARALLEL_ENTRYPOINTS = "leaf.parallelEntrypoints";
 	// system level libraries, matching code sources will not be assumed to be part of the game or mods and remain on the system class path
 	// paths separated by path separator, @ prefix for meta-file with each line referencing an actual file)
 	public static final String SYSTEM_LIBRARIES = "leaf.systemLibraries";
@@ -83,8 +95,16 @@ public final class SystemProperties {
 	public static final String DEBUG_LOG_CLASS_LOAD_ERRORS = "leaf.debug.logClassLoadErrors";
 	// logs class transformation errors to uncover caught exceptions without adequate logging
 	public static final String DEBUG_LOG_TRANSFORM_ERRORS = "leaf.debug.logTransformErrors";
+	// profiles class loading per pipeline stage and owning mod, writing a report to the leaf dir on exit
+	public static final String DEBUG_PROFILE_CLASS_LOAD = "leaf.debug.profileClassLoad";
+	// writes the entrypoint timings as csv to the leaf dir after each invoked entrypoint key
+	public static final String DEBUG_ENTRYPOINT_TIMINGS = "leaf.debug.entrypointTimings";
 	// disables system class path isolation, allowing bogus lib accesses (too early, transient jars)
 	public static final String DEBUG_DISABLE_CLASS_PATH_ISOLATION = "leaf.debug.disableClassPathIsolation";
+	// disables reusing the previous launch's mod selection for an identical candidate set, always running the solver
+	public static final String DEBUG_DISABLE_RESOLUTION_CACHE = "leaf.debug.disableResolutionCache";
+	// disables preselecting uncontested mods before building the mod resolution SAT problem
+	public static final String DEBUG_DISABLE_SOLVER_REDUCTION = "leaf.debug.disableSolverReduction";
 	// disables mod load order shuffling to be the same in-dev as in production
 	public static final String DEBUG_DISABLE_MOD_SHUFFLE = "leaf.debug.disableModShuffle";
 	// workaround for bad load order dependencies
@@ -93,6 +113,8 @@ public final class SystemProperties {
 	public static final String DEBUG_DISCOVERY_TIMEOUT = "leaf.debug.discoveryTimeout";
 	// override the mod resolution timeout, unit in seconds, <= 0 to disable
 	public static final String DEBUG_RESOLUTION_TIMEOUT = "leaf.debug.resolutionTimeout";
+	// runs the mod resolution failure analysis on the calling thread instead of concurrently
+	public static final String DEBUG_SERIAL_RESOLUTION_ANALYSIS = "leaf.debug.serialResolutionAnalysis";
 	// replace mod versions (modA:versionA,modB:versionB,...)
 	public static final String DEBUG_REPLACE_VERSION = "leaf.debug.replaceVersion";
 	// deobfuscate the game jar with the classpath
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util.log;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.aoqia.leaf.loader.impl.util.SystemProperties;
+
+/**
+ * LogHandler decorator delivering messages to another handler on a background thread, enabled through
+ * {@code leaf.log.async}.
+ *
+ * <p>Messages are queued in a bounded lock-free ring buffer and delivered in batches in the order they were queued.
+ * Formatting of {@link Log#logFormat} messages is deferred to the writer thread if all arguments are immutable.
+ * Errors are never dropped and wait until they got delivered, other messages follow the overflow policy
+ * {@code leaf.log.asyncOverflow} ({@code block} or {@code drop}) if the buffer is full. Messages logged by the
+ * delegate itself and after closing are delivered directly.
+ */
+final class AsyncLogHandler implements LogHandler {
+	private static final int CAPACITY = 8192; // power of 2
+	private static final int BATCH_SIZE = 256;
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	private static final long CLOSE_TIMEOUT_MS = 5000;
+
+	private final LogHandler delegate;
+	private final boolean dropOnOverflow;
+	private final AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<>(CAPACITY);
+	private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+	private final AtomicLong tail = new AtomicLong(); // next position to claim by producers
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread writer;
+	private final Thread shutdownHook;
+	private long head; // next position to read, writer thread only
+	private volatile long delivered; // number of entries handed to the delegate
+	private volatile boolean writerParked;
+	private volatile boolean closed;
+
+	static boolean isEnabled() {
+		return SystemProperties.isSet(SystemProperties.LOG_ASYNC);
+	}
+
+	AsyncLogHandler(LogHandler delegate) {
+		this.delegate = delegate;
+
+		String overflow = System.getProperty(SystemProperties.LOG_ASYNC_OVERFLOW, "block").toLowerCase(Locale.ENGLISH);
+
+		switch (overflow) {
+		case "block":
+			dropOnOverflow = false;
+			break;
+		case "drop":
+			dropOnOverflow = true;
+			break;
+		default:
+			throw new IllegalArgumentException("invalid log overflow policy: "+overflow);
+		}
+
+		for (int i = 0; i < CAPACITY; i++) {
+			sequences.set(i, i);
+		}
+
+		writer = new Thread(this::runWriter, "Leaf Log Writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		shutdownHook = new Thread(this::shutdown, "AsyncLogHandler shutdown hook");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	@Override
+	public void log(long time, LogLevel level, LogCategory category, String msg, Throwable exc, boolean fromReplay, boolean wasSuppressed) {
+		enqueue(new Entry(time, level, category, msg, null, exc, fromReplay, wasSuppressed));
+	}
+
+	/**
+	 * Queue a message to be formatted on the writer thread.
+	 *
+	 * @param args format arguments, must satisfy {@link #canDefer}
+	 */
+	void logFormat(long time, LogLevel level, LogCategory category, String format, Object[] args, Throwable exc) {
+		enqueue(new Entry(time, level, category, format, args, exc, false, false));
+	}
+
+	/**
+	 * Determine whether formatting the arguments later yields the same message as formatting them now.
+	 */
+	static boolean canDefer(Object[] args) {
+		for (Object arg : args) {
+			if (arg != null
+					&& !(arg instanceof String)
+					&& !(arg instanceof Integer)
+					&& !(arg instanceof Long)
+					&& !(arg instanceof Boolean)
+					&& !(arg instanceof Character)
+					&& !(arg instanceof Double)
+					&& !(arg instanceof Float)
+					&& !(arg instanceof Short)
+					&& !(arg instanceof Byte)
+					&& !(arg instanceof Enum)
+					&& !(arg instanceof Class)
+					&& !(arg instanceof Path)
+					&& !(arg instanceof UUID)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean shouldLog(LogLevel level, LogCategory category) {
+		return delegate.shouldLog(level, category);
+	}
+
+	private void enqueue(Entry entry) {
+		if (closed || !writer.isAlive() || Thread.currentThread() == writer) { // avoid waiting on ourselves for output produced by the delegate
+			deliver(entry);
+			return;
+		}
+
+		boolean isError = !entry.level.isLessThan(LogLevel.ERROR);
+		long pos;
+
+		while ((pos = offer(entry)) < 0) {
+			if (dropOnOverflow && !isError) {
+				dropped.incrementAndGet();
+				return;
+			}
+
+			if (closed || !writer.isAlive()) {
+				deliver(entry);
+				return;
+			}
+
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(FULL_PARK_NANOS);
+		}
+
+		if (writerParked) LockSupport.unpark(writer);
+
+		if (isError) awaitDelivery(pos + 1);
+	}
+
+	/**
+	 * Claim the next free slot and publish the entry to it.
+	 *
+	 * @return the claimed position or -1 if the buffer is full
+	 */
+	private long offer(Entry entry) {
+		long pos = tail.get();
+
+		for (;;) {
+			int idx = (int) pos & (CAPACITY - 1);
+			long diff = sequences.get(idx) - pos;
+
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					entries.set(idx, entry);
+					sequences.set(idx, pos + 1); // publish
+					return pos;
+				}
+
+				pos = tail.get();
+			} else if (diff < 0) { // slot still occupied by the entry from the previous lap
+				return -1;
+			} else { // another producer claimed it
+				pos = tail.get();
+			}
+		}
+	}
+
+	private Entry poll() {
+		int idx = (int) head & (CAPACITY - 1);
+		if (sequences.get(idx) != head + 1) return null;
+
+		Entry ret = entries.get(idx);
+		entries.set(idx, null);
+		sequences.set(idx, head + CAPACITY); // release the slot for the next lap
+		head++;
+
+		return ret;
+	}
+
+	private void runWriter() {
+		Entry[] batch = new Entry[BATCH_SIZE];
+
+		for (;;) {
+			int count = 0;
+			Entry entry;
+
+			while (count < BATCH_SIZE && (entry = poll()) != null) {
+				batch[count++] = entry;
+			}
+
+			if (count == 0) {
+				if (closed) break;
+
+				writerParked = true;
+
+				if (sequences.get((int) head & (CAPACITY - 1)) != head + 1) { // re-check after announcing the park
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+
+				writerParked = false;
+				continue;
+			}
+
+			synchronized (this) {
+				for (int i = 0; i < count; i++) {
+					deliverSafely(batch[i]);
+					batch[i] = null;
+				}
+
+				long droppedCount = dropped.getAndSet(0);
+
+				if (droppedCount > 0) {
+					deliverSafely(new Entry(System.currentTimeMillis(), LogLevel.WARN, LogCategory.LOG,
+							String.format("Dropped %d log messages due to a full log buffer", droppedCount), null, null, false, false));
+				}
+
+				delivered += count;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Deliver an entry on the writer thread, which has to survive delegate failures to keep the producers going.
+	 */
+	private void deliverSafely(Entry entry) {
+		try {
+			deliver(entry);
+		} catch (Throwable t) {
+			System.err.printf("Error delivering log message \"%s\":%n", entry.msg);
+			t.printStackTrace();
+		}
+	}
+
+	private synchronized void deliver(Entry entry) {
+		String msg = entry.args != null ? Log.format(entry.msg, entry.args).trim() : entry.msg;
+
+		delegate.log(entry.time, entry.level, entry.category, msg, entry.exc, entry.fromReplay, entry.wasSuppressed);
+	}
+
+	private synchronized void awaitDelivery(long count) {
+		boolean interrupted = false;
+
+		while (delivered < count && writer.isAlive()) {
+			try {
+				wait(PARK_NANOS / 1000000);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	private void shutdown() {
+		closed = true;
+		LockSupport.unpark(writer);
+
+		try {
+			writer.join(CLOSE_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// ignore
+		}
+
+		shutdown();
+		delegate.close();
+	}
+
+	private static final class Entry {
+		Entry(long time, LogLevel level, LogCategory category, String msg, Object[] args, Throwable exc, boolean fromReplay, boolean wasSuppressed) {
+			this.time = time;
+			this.level = level;
+			this.category = category;
+			this.msg = msg;
+			this.args = args;
+			this.exc = exc;
+			this.fromReplay = fromReplay;
+			this.wasSuppressed = wasSuppressed;
+		}
+
+		final long time;
+		final LogLevel level;
+		final LogCategory category;
+		final String msg; // format string if args is set
+		final Object[] args;
+		final Throwable exc;
+		final boolean fromReplay;
+		final boolean wasSuppressed;
+	}
+}
@@ -31,9 +31,11 @@ public final class Log {
 		LogHandler oldHandler = Log.handler;
 
 		if (oldHandler instanceof BuiltinLogHandler) {
-			((BuiltinLogHandler) oldHandler).replay(handler);
+			((BuiltinLogHandler) oldHandler).replay(handler); // synchronously into the actual handler, keeping it ahead of new output
 		}
 
+		if (AsyncLogHandler.isEnabled()) handler = new AsyncLogHandler(handler);
+
 		Log.handler = handler;
 		oldHandler.close();
 	}
@@ -163,17 +165,26 @@ public final class Log {
 
 			assert getRequiredArgs(format) == newArgs.length;
 
-			try {
-				msg = String.format(format, newArgs);
-			} catch (IllegalFormatException e) {
-				msg = "Format error: fmt=["+format+"] args="+Arrays.toString(args);
-				warn(LogCategory.LOG, "Invalid format string.", e);
+			if (handler instanceof AsyncLogHandler && AsyncLogHandler.canDefer(newArgs)) {
+				((AsyncLogHandler) handler).logFormat(System.currentTimeMillis(), level, category, format, newArgs, exc);
+				return;
 			}
+
+			msg = format(format, newArgs);
 		}
 
 		log(handler, level, category, msg, exc);
 	}
 
+	static String format(String format, Object[] args) {
+		try {
+			return String.format(format, args);
+		} catch (IllegalFormatException e) {
+			warn(LogCategory.LOG, "Invalid format string.", e);
+			return "Format error: fmt=["+format+"] args="+Arrays.toString(args);
+		}
+	}
+
 	private static int getRequiredArgs(String format) {
 		int ret = 0;
 		int minRet = 0;
@@ -0,0 +1,576 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util.mappings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.aoqia.leaf.loader.impl.LeafLoaderImpl;
+import dev.aoqia.leaf.loader.impl.util.LoaderUtil;
+import dev.aoqia.leaf.loader.impl.util.MappedZipFile;
+import dev.aoqia.leaf.loader.impl.util.log.Log;
+import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
+import net.fabricmc.mappingio.tree.MappingTree;
+
+/**
+ * Compact read-only form of a mapping tree for answering the runtime name lookups of the mapping resolver.
+ *
+ * <p>Every name and descriptor is stored once in a string pool together with its {@link String#hashCode()}. Classes
+ * are found by binary searching a per-namespace array sorted by name hash, members by comparing name and descriptor
+ * hashes within their owner. Candidates are confirmed by comparing the pooled UTF-8 bytes, so lookups don't decode
+ * anything but the result.
+ *
+ * <p>All data lives in a single buffer. Once written to the leaf dir, it gets memory mapped on later launches instead
+ * of parsing the mapping file into a heap resident tree.
+ */
+public final class MappingIndex {
+	private static final int FORMAT_VERSION = 1;
+	private static final int NO_STRING = -1;
+
+	private final ByteBuffer buffer;
+	private final List<String> namespaces;
+	private final int stringHashesPos;
+	private final int stringOffsetsPos;
+	private final int stringDataPos;
+	private final int classCount;
+	private final int classNamesPos;
+	private final int[] classLookupPos;
+	private final int[] classLookupCount;
+	private final MemberTable fields;
+	private final MemberTable methods;
+
+	/**
+	 * Location of the members of one kind, stored as name and descriptor string ids per namespace.
+	 */
+	private static final class MemberTable {
+		final int startsPos; // first member index per class, plus the end
+		final int membersPos;
+
+		MemberTable(int startsPos, int membersPos) {
+			this.startsPos = startsPos;
+			this.membersPos = membersPos;
+		}
+	}
+
+	private MappingIndex(ByteBuffer buffer, String key) {
+		this.buffer = buffer;
+
+		Reader reader = new Reader(buffer);
+
+		if (reader.readInt() != FORMAT_VERSION
+				|| !LeafLoaderImpl.VERSION.equals(reader.readString())
+				|| !key.equals(reader.readString())) {
+			throw new IllegalArgumentException("mismatched mapping index");
+		}
+
+		int namespaceCount = reader.readInt();
+		List<String> namespaces = new ArrayList<>(namespaceCount);
+
+		for (int i = 0; i < namespaceCount; i++) {
+			namespaces.add(reader.readString());
+		}
+
+		this.namespaces = Collections.unmodifiableList(namespaces);
+
+		int stringCount = reader.readInt();
+		stringHashesPos = reader.skipInts(stringCount);
+		stringOffsetsPos = reader.skipInts(stringCount + 1);
+		stringDataPos = reader.skip(buffer.getInt(stringOffsetsPos + stringCount * 4));
+
+		classCount = reader.readInt();
+		classNamesPos = reader.skipInts(namespaceCount * classCount);
+		classLookupPos = new int[namespaceCount];
+		classLookupCount = new int[namespaceCount];
+
+		for (int ns = 0; ns < namespaceCount; ns++) {
+			classLookupCount[ns] = reader.readInt();
+			classLookupPos[ns] = reader.skipInts(classLookupCount[ns] * 2);
+		}
+
+		fields = readMemberTable(reader, classCount, namespaceCount);
+		methods = readMemberTable(reader, classCount, namespaceCount);
+	}
+
+	private static MemberTable readMemberTable(Reader reader, int classCount, int namespaceCount) {
+		int startsPos = reader.skipInts(classCount + 1);
+		int memberCount = reader.readInt();
+		int membersPos = reader.skipInts(memberCount * namespaceCount * 2);
+
+		return new MemberTable(startsPos, membersPos);
+	}
+
+	/**
+	 * Create an index held on heap.
+	 *
+	 * @param key identifies the mappings for {@link #open}, e.g. a hash of the mapping file
+	 */
+	public static MappingIndex create(MappingTree tree, String key) {
+		return new MappingIndex(ByteBuffer.wrap(serialize(tree, key)), key);
+	}
+
+	/**
+	 * Map a previously written index.
+	 *
+	 * @return the index or null if it is missing, unreadable or for different mappings
+	 */
+	public static MappingIndex open(Path file, String key) {
+		try {
+			return new MappingIndex(MappedZipFile.map(file), key);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			Log.debug(LogCategory.MAPPINGS, "Error reading mapping index %s", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Store the index so it can be mapped by {@link #open} on subsequent launches.
+	 */
+	public void write(Path file) {
+		Path tmpFile = file.resolveSibling(file.getFileName().toString() + ".tmp");
+
+		try {
+			Files.createDirectories(file.getParent());
+
+			try (OutputStream os = Files.newOutputStream(tmpFile)) {
+				ByteBuffer data = buffer.duplicate();
+				data.clear();
+
+				if (data.hasArray()) {
+					os.write(data.array(), data.arrayOffset(), data.remaining());
+				} else {
+					byte[] bytes = new byte[data.remaining()];
+					data.get(bytes);
+					os.write(bytes);
+				}
+			}
+
+			LoaderUtil.replaceFile(tmpFile, file);
+		} catch (IOException e) {
+			Log.warn(LogCategory.MAPPINGS, "Error writing mapping index %s", file, e);
+
+			try {
+				Files.deleteIfExists(tmpFile);
+			} catch (IOException e2) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * @return the source namespace followed by the destination namespaces
+	 */
+	public List<String> getNamespaces() {
+		return namespaces;
+	}
+
+	/**
+	 * @return the namespace's index in {@link #getNamespaces()} or -1 if it is unknown
+	 */
+	public int getNamespaceId(String namespace) {
+		return namespaces.indexOf(namespace);
+	}
+
+	public int getClassCount() {
+		return classCount;
+	}
+
+	/**
+	 * Map an internal class name, keeping it as is if there is no mapping.
+	 */
+	public String mapClassName(String name, int srcNamespace, int dstNamespace) {
+		if (srcNamespace == dstNamespace) return name;
+
+		int cls = findClass(name, srcNamespace);
+		if (cls < 0) return name;
+
+		String ret = getString(getClassNameId(cls, dstNamespace));
+
+		return ret != null ? ret : name;
+	}
+
+	/**
+	 * @param desc descriptor in the supplied namespace or null to match any
+	 * @return the field's index or -1 if there is no such field
+	 */
+	public int findField(String owner, String name, /* @Nullable */ String desc, int namespace) {
+		return findMember(fields, owner, name, desc, namespace);
+	}
+
+	/**
+	 * @return the field's name or null if it has none in the namespace
+	 */
+	public String getFieldName(int field, int namespace) {
+		return getString(getMemberStringId(fields, field, namespace, 0));
+	}
+
+	/**
+	 * @param desc descriptor in the supplied namespace or null to match any
+	 * @return the method's index or -1 if there is no such method
+	 */
+	public int findMethod(String owner, String name, /* @Nullable */ String desc, int namespace) {
+		return findMember(methods, owner, name, desc, namespace);
+	}
+
+	/**
+	 * @return the method's name or null if it has none in the namespace
+	 */
+	public String getMethodName(int method, int namespace) {
+		return getString(getMemberStringId(methods, method, namespace, 0));
+	}
+
+	private int findClass(String name, int namespace) {
+		int pos = classLookupPos[namespace];
+		int count = classLookupCount[namespace];
+		int hash = name.hashCode();
+		int low = 0;
+		int high = count;
+
+		while (low < high) { // first entry with a hash >= the searched one
+			int mid = (low + high) >>> 1;
+
+			if (buffer.getInt(pos + mid * 8) < hash) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		byte[] bytes = null;
+
+		for (int i = low; i < count && buffer.getInt(pos + i * 8) == hash; i++) {
+			int cls = buffer.getInt(pos + i * 8 + 4);
+			if (bytes == null) bytes = name.getBytes(StandardCharsets.UTF_8);
+
+			if (stringEquals(getClassNameId(cls, namespace), bytes)) return cls;
+		}
+
+		return -1;
+	}
+
+	private int findMember(MemberTable table, String owner, String name, String desc, int namespace) {
+		int cls = findClass(owner, namespace);
+		if (cls < 0) return -1;
+
+		int start = buffer.getInt(table.startsPos + cls * 4);
+		int end = buffer.getInt(table.startsPos + cls * 4 + 4);
+		int nameHash = name.hashCode();
+		int descHash = desc != null ? desc.hashCode() : 0;
+		byte[] nameBytes = null;
+		byte[] descBytes = null;
+
+		for (int member = start; member < end; member++) {
+			int nameId = getMemberStringId(table, member, namespace, 0);
+			if (nameId == NO_STRING || getStringHash(nameId) != nameHash) continue;
+
+			if (nameBytes == null) nameBytes = name.getBytes(StandardCharsets.UTF_8);
+			if (!stringEquals(nameId, nameBytes)) continue;
+
+			if (desc != null) {
+				int descId = getMemberStringId(table, member, namespace, 1);
+
+				if (descId != NO_STRING) { // members without descriptor match any
+					if (getStringHash(descId) != descHash) continue;
+
+					if (descBytes == null) descBytes = desc.getBytes(StandardCharsets.UTF_8);
+					if (!stringEquals(descId, descBytes)) continue;
+				}
+			}
+
+			return member;
+		}
+
+		return -1;
+	}
+
+	private int getClassNameId(int cls, int namespace) {
+		return buffer.getInt(classNamesPos + (namespace * classCount + cls) * 4);
+	}
+
+	/**
+	 * @param field 0 for the name, 1 for the descriptor
+	 */
+	private int getMemberStringId(MemberTable table, int member, int namespace, int field) {
+		return buffer.getInt(table.membersPos + ((member * namespaces.size() + namespace) * 2 + field) * 4);
+	}
+
+	private int getStringHash(int id) {
+		return buffer.getInt(stringHashesPos + id * 4);
+	}
+
+	private boolean stringEquals(int id, byte[] bytes) {
+		if (id == NO_STRING) return false;
+
+		int start = stringDataPos + buffer.getInt(stringOffsetsPos + id * 4);
+		int end = stringDataPos + buffer.getInt(stringOffsetsPos + id * 4 + 4);
+		if (end - start != bytes.length) return false;
+
+		for (int i = 0; i < bytes.length; i++) {
+			if (buffer.get(start + i) != bytes[i]) return false;
+		}
+
+		return true;
+	}
+
+	private String getString(int id) {
+		if (id == NO_STRING) return null;
+
+		int start = stringDataPos + buffer.getInt(stringOffsetsPos + id * 4);
+		int end = stringDataPos + buffer.getInt(stringOffsetsPos + id * 4 + 4);
+		byte[] bytes = new byte[end - start];
+
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] serialize(MappingTree tree, String key) {
+		List<String> namespaces = new ArrayList<>(tree.getDstNamespaces().size() + 1);
+		namespaces.add(tree.getSrcNamespace() != null ? tree.getSrcNamespace() : "");
+		namespaces.addAll(tree.getDstNamespaces());
+
+		int namespaceCount = namespaces.size();
+		List<MappingTree.ClassMapping> classes = new ArrayList<>(tree.getClasses());
+		int classCount = classes.size();
+		StringPool pool = new StringPool();
+
+		int[] classNames = new int[namespaceCount * classCount];
+		int[][] classLookup = new int[namespaceCount][];
+
+		for (int ns = 0; ns < namespaceCount; ns++) {
+			long[] lookup = new long[classCount];
+			int count = 0;
+
+			for (int cls = 0; cls < classCount; cls++) {
+				String name = classes.get(cls).getName(ns - 1); // tree namespace ids start at -1 for the source
+				classNames[ns * classCount + cls] = pool.add(name);
+
+				if (name != null) lookup[count++] = (long) name.hashCode() << 32 | cls;
+			}
+
+			Arrays.sort(lookup, 0, count);
+			classLookup[ns] = new int[count * 2];
+
+			for (int i = 0; i < count; i++) {
+				classLookup[ns][i * 2] = (int) (lookup[i] >> 32);
+				classLookup[ns][i * 2 + 1] = (int) lookup[i];
+			}
+		}
+
+		List<Collection<? extends MappingTree.MemberMapping>> classFields = new ArrayList<>(classCount);
+		List<Collection<? extends MappingTree.MemberMapping>> classMethods = new ArrayList<>(classCount);
+
+		for (MappingTree.ClassMapping cls : classes) {
+			classFields.add(cls.getFields());
+			classMethods.add(cls.getMethods());
+		}
+
+		int[] fieldStrings = collectMembers(classFields, namespaceCount, pool);
+		int[] methodStrings = collectMembers(classMethods, namespaceCount, pool);
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(pool.dataSize * 2 + classNames.length * 8);
+
+		try (DataOutputStream os = new DataOutputStream(bos)) {
+			os.writeInt(FORMAT_VERSION);
+			writeString(os, LeafLoaderImpl.VERSION);
+			writeString(os, key);
+			os.writeInt(namespaceCount);
+
+			for (String namespace : namespaces) {
+				writeString(os, namespace);
+			}
+
+			pool.write(os);
+
+			os.writeInt(classCount);
+			writeInts(os, classNames);
+
+			for (int[] lookup : classLookup) {
+				os.writeInt(lookup.length / 2);
+				writeInts(os, lookup);
+			}
+
+			writeMembers(os, classFields, fieldStrings);
+			writeMembers(os, classMethods, methodStrings);
+		} catch (IOException e) {
+			throw new RuntimeException(e); // can't happen for in-memory streams
+		}
+
+		return bos.toByteArray();
+	}
+
+	/**
+	 * @return the name and descriptor string ids of all members for every namespace, in class order
+	 */
+	private static int[] collectMembers(List<Collection<? extends MappingTree.MemberMapping>> classMembers, int namespaceCount, StringPool pool) {
+		int memberCount = 0;
+
+		for (Collection<? extends MappingTree.MemberMapping> members : classMembers) {
+			memberCount += members.size();
+		}
+
+		int[] ret = new int[memberCount * namespaceCount * 2];
+		int pos = 0;
+
+		for (Collection<? extends MappingTree.MemberMapping> members : classMembers) {
+			for (MappingTree.MemberMapping member : members) {
+				for (int ns = 0; ns < namespaceCount; ns++) {
+					ret[pos++] = pool.add(member.getName(ns - 1));
+					ret[pos++] = pool.add(member.getDesc(ns - 1));
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	private static void writeMembers(DataOutputStream os, List<Collection<? extends MappingTree.MemberMapping>> classMembers, int[] strings) throws IOException {
+		int start = 0;
+		os.writeInt(start);
+
+		for (Collection<? extends MappingTree.MemberMapping> members : classMembers) {
+			start += members.size();
+			os.writeInt(start);
+		}
+
+		os.writeInt(start);
+		writeInts(os, strings);
+	}
+
+	private static void writeInts(DataOutputStream os, int[] values) throws IOException {
+		for (int value : values) {
+			os.writeInt(value);
+		}
+	}
+
+	private static void writeString(DataOutputStream os, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		os.writeInt(bytes.length);
+		os.write(bytes);
+	}
+
+	private static final class StringPool {
+		final Map<String, Integer> ids = new HashMap<>();
+		final List<byte[]> values = new ArrayList<>();
+		final List<String> strings = new ArrayList<>();
+		int dataSize;
+
+		int add(/* @Nullable */ String value) {
+			if (value == null) return NO_STRING;
+
+			Integer ret = ids.get(value);
+			if (ret != null) return ret;
+
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			ret = values.size();
+			ids.put(value, ret);
+			values.add(bytes);
+			strings.add(value);
+			dataSize += bytes.length;
+
+			return ret;
+		}
+
+		void write(DataOutputStream os) throws IOException {
+			os.writeInt(values.size());
+
+			for (String value : strings) {
+				os.writeInt(value.hashCode());
+			}
+
+			int offset = 0;
+			os.writeInt(offset);
+
+			for (byte[] value : values) {
+				offset += value.length;
+				os.writeInt(offset);
+			}
+
+			for (byte[] value : values) {
+				os.write(value);
+			}
+		}
+	}
+
+	/**
+	 * Sequential reader for locating the sections, the lookups use absolute accesses.
+	 */
+	private static final class Reader {
+		private final ByteBuffer buffer;
+		private int pos;
+
+		Reader(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		int readInt() {
+			int ret = buffer.getInt(pos);
+			pos += 4;
+
+			return ret;
+		}
+
+		String readString() {
+			int len = readInt();
+			if (len < 0 || len > buffer.limit() - pos) throw new BufferUnderflowException();
+
+			byte[] bytes = new byte[len];
+
+			for (int i = 0; i < len; i++) {
+				bytes[i] = buffer.get(pos + i);
+			}
+
+			pos += len;
+
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		int skipInts(int count) {
+			return skip(count * 4);
+		}
+
+		/**
+		 * @return the position before skipping
+		 */
+		int skip(int len) {
+			if (len < 0 || len > buffer.limit() - pos) throw new BufferUnderflowException();
+
+			int ret = pos;
+			pos += len;
+
+			return ret;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util.version;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache handing out one shared instance per key, values must be immutable.
+ *
+ * <p>Once full, newly created values are returned without being retained.
+ */
+final class InternCache<K, V> {
+	private static final int MAX_SIZE = 8192;
+
+	private final Map<K, V> map = new ConcurrentHashMap<>();
+
+	V get(Object key) {
+		return map.get(key);
+	}
+
+	/**
+	 * Store a value unless the key is already present or the cache is full.
+	 *
+	 * @return the value stored for the key, or the supplied value if none is
+	 */
+	V intern(K key, V value) {
+		if (map.size() >= MAX_SIZE) return value;
+
+		V prev = map.putIfAbsent(key, value);
+
+		return prev != null ? prev : value;
+	}
+}
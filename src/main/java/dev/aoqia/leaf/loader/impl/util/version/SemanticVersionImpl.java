@@ -20,7 +20,6 @@ import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.StringTokenizer;
-import java.util.regex.Pattern;
 
 import dev.aoqia.leaf.loader.api.SemanticVersion;
 import dev.aoqia.leaf.loader.api.Version;
@@ -37,12 +36,18 @@ import dev.aoqia.leaf.loader.api.VersionParsingException;
  */
 @SuppressWarnings("deprecation")
 public class SemanticVersionImpl extends dev.aoqia.leaf.loader.util.version.SemanticVersionImpl implements SemanticVersion {
-	private static final Pattern DOT_SEPARATED_ID = Pattern.compile("|[-0-9A-Za-z]+(\\.[-0-9A-Za-z]+)*");
-	private static final Pattern UNSIGNED_INTEGER = Pattern.compile("0|[1-9][0-9]*");
+	private static final String[] NO_PRERELEASE = new String[0];
+	private static final int PACKED_COMPONENTS = 4;
+	private static final int PACKED_COMPONENT_BITS = 16;
+
 	private final int[] components;
 	private final String prerelease;
 	private final String build;
 	private String friendlyName;
+	// derived comparison keys, computed once so equals, hashCode and compareTo don't allocate
+	private long packedComponents; // first 4 components as 16 bit each, -1 if not representable
+	private String[] prereleaseParts; // dot separated prerelease identifiers
+	private int hash;
 
 	public SemanticVersionImpl(String version, boolean storeX) throws VersionParsingException {
 		int buildDelimPos = version.indexOf('+');
@@ -63,7 +68,7 @@ public class SemanticVersionImpl extends dev.aoqia.leaf.loader.util.version.Sema
 			prerelease = null;
 		}
 
-		if (prerelease != null && !DOT_SEPARATED_ID.matcher(prerelease).matches()) {
+		if (prerelease != null && !isDotSeparatedId(prerelease)) {
 			throw new VersionParsingException("Invalid prerelease string '" + prerelease + "'!");
 		}
 
@@ -126,6 +131,7 @@ public class SemanticVersionImpl extends dev.aoqia.leaf.loader.util.version.Sema
 		this.components = components;
 
 		buildFriendlyName();
+		computeKeys();
 	}
 
 	public SemanticVersionImpl(int[] components, String prerelease, String build) {
@@ -136,6 +142,111 @@ public class SemanticVersionImpl extends dev.aoqia.leaf.loader.util.version.Sema
 		this.build = build;
 
 		buildFriendlyName();
+		computeKeys();
+	}
+
+	private void computeKeys() {
+		// strip trailing components matching the implicit padding, they don't affect equality (1.0 equals 1.0.0)
+		int len = components.length;
+
+		while (len > 1) {
+			int last = components[len - 1];
+			int prev = components[len - 2];
+
+			if (prev == COMPONENT_WILDCARD ? last != COMPONENT_WILDCARD : last != 0) break;
+
+			len--;
+		}
+
+		long packed = 0;
+
+		if (len <= PACKED_COMPONENTS) {
+			for (int i = 0; i < PACKED_COMPONENTS; i++) {
+				int c = i < len ? components[i] : 0;
+
+				if (c < 0 || c >= 1 << PACKED_COMPONENT_BITS) { // wildcard or too large
+					packed = -1;
+					break;
+				}
+
+				packed = packed << PACKED_COMPONENT_BITS | c;
+			}
+		} else {
+			packed = -1;
+		}
+
+		packedComponents = packed;
+		prereleaseParts = prerelease != null ? splitPrerelease(prerelease) : NO_PRERELEASE;
+
+		int h = 1;
+
+		for (int i = 0; i < len; i++) {
+			h = 31 * h + components[i];
+		}
+
+		hash = h * 73 + (prerelease != null ? prerelease.hashCode() * 11 : 0) + (build != null ? build.hashCode() : 0);
+	}
+
+	/**
+	 * Check for {@code |[-0-9A-Za-z]+(\.[-0-9A-Za-z]+)*}.
+	 */
+	private static boolean isDotSeparatedId(String s) {
+		if (s.isEmpty()) return true;
+
+		boolean segmentEmpty = true;
+
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+
+			if (c == '.') {
+				if (segmentEmpty) return false;
+				segmentEmpty = true;
+			} else if (c >= '0' && c <= '9' || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c == '-') {
+				segmentEmpty = false;
+			} else {
+				return false;
+			}
+		}
+
+		return !segmentEmpty;
+	}
+
+	/**
+	 * Check for {@code 0|[1-9][0-9]*}.
+	 */
+	private static boolean isUnsignedInteger(String s) {
+		int len = s.length();
+		if (len == 0 || len > 1 && s.charAt(0) == '0') return false;
+
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') return false;
+		}
+
+		return true;
+	}
+
+	private static String[] splitPrerelease(String s) {
+		if (s.isEmpty()) return NO_PRERELEASE;
+
+		int count = 1;
+
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) == '.') count++;
+		}
+
+		String[] ret = new String[count];
+		int start = 0;
+
+		for (int i = 0; i < count; i++) {
+			int end = s.indexOf('.', start);
+			if (end < 0) end = s.length();
+
+			ret[i] = s.substring(start, end);
+			start = end + 1;
+		}
+
+		return ret;
 	}
 
 	private void buildFriendlyName() {
@@ -205,12 +316,18 @@ public class SemanticVersionImpl extends dev.aoqia.leaf.loader.util.version.Sema
 
 	@Override
 	public boolean equals(Object o) {
-		if (!(o instanceof SemanticVersionImpl)) {
+		if (o == this) {
+			return true;
+		} else if (!(o instanceof SemanticVersionImpl)) {
 			return false;
 		} else {
 			SemanticVersionImpl other = (SemanticVersionImpl) o;
 
-			if (!equalsComponentsExactly(other)) {
+			if (hash != other.hash) {
+				return false;
+			} else if (packedComponents >= 0 && other.packedComponents >= 0) {
+				if (packedComponents != other.packedComponents) return false;
+			} else if (!equalsComponentsExactly(other)) {
 				return false;
 			}
 
@@ -220,7 +337,7 @@ public class SemanticVersionImpl extends dev.aoqia.leaf.loader.util.version.Sema
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(components) * 73 + (prerelease != null ? prerelease.hashCode() * 11 : 0) + (build != null ? build.hashCode() : 0);
+		return hash;
 	}
 
 	@Override
@@ -255,6 +372,10 @@ public class SemanticVersionImpl extends dev.aoqia.leaf.loader.util.version.Sema
 			return getFriendlyString().compareTo(other.getFriendlyString());
 		}
 
+		if (other instanceof SemanticVersionImpl) {
+			return compareTo((SemanticVersionImpl) other);
+		}
+
 		SemanticVersion o = (SemanticVersion) other;
 
 		for (int i = 0; i < Math.max(getVersionComponentCount(), o.getVersionComponentCount()); i++) {
@@ -282,15 +403,15 @@ public class SemanticVersionImpl extends dev.aoqia.leaf.loader.util.version.Sema
 						String partA = prereleaseATokenizer.nextToken();
 						String partB = prereleaseBTokenizer.nextToken();
 
-						if (UNSIGNED_INTEGER.matcher(partA).matches()) {
-							if (UNSIGNED_INTEGER.matcher(partB).matches()) {
+						if (isUnsignedInteger(partA)) {
+							if (isUnsignedInteger(partB)) {
 								int compare = Integer.compare(partA.length(), partB.length());
 								if (compare != 0) return compare;
 							} else {
 								return -1;
 							}
 						} else {
-							if (UNSIGNED_INTEGER.matcher(partB).matches()) {
+							if (isUnsignedInteger(partB)) {
 								return 1;
 							}
 						}
@@ -312,4 +433,61 @@ public class SemanticVersionImpl extends dev.aoqia.leaf.loader.util.version.Sema
 			return 0;
 		}
 	}
+
+	private int compareTo(SemanticVersionImpl o) {
+		if (o == this) return 0;
+
+		if (packedComponents >= 0 && o.packedComponents >= 0) {
+			int compare = Long.compareUnsigned(packedComponents, o.packedComponents);
+			if (compare != 0) return compare;
+		} else {
+			for (int i = 0; i < Math.max(components.length, o.components.length); i++) {
+				int first = getVersionComponent(i);
+				int second = o.getVersionComponent(i);
+
+				if (first == COMPONENT_WILDCARD || second == COMPONENT_WILDCARD) {
+					continue;
+				}
+
+				int compare = Integer.compare(first, second);
+				if (compare != 0) return compare;
+			}
+		}
+
+		if (prerelease != null || o.prerelease != null) {
+			if (prerelease != null && o.prerelease != null) {
+				String[] partsA = prereleaseParts;
+				String[] partsB = o.prereleaseParts;
+
+				for (int i = 0; i < Math.min(partsA.length, partsB.length); i++) {
+					String partA = partsA[i];
+					String partB = partsB[i];
+
+					if (isUnsignedInteger(partA)) {
+						if (isUnsignedInteger(partB)) {
+							int compare = Integer.compare(partA.length(), partB.length());
+							if (compare != 0) return compare;
+						} else {
+							return -1;
+						}
+					} else {
+						if (isUnsignedInteger(partB)) {
+							return 1;
+						}
+					}
+
+					int compare = partA.compareTo(partB);
+					if (compare != 0) return compare;
+				}
+
+				return Integer.compare(partsA.length, partsB.length);
+			} else if (prerelease != null) {
+				return o.hasWildcard() ? 0 : -1;
+			} else { // o.prerelease != null
+				return hasWildcard() ? 0 : 1;
+			}
+		} else {
+			return 0;
+		}
+	}
 }
@@ -21,12 +21,18 @@ import dev.aoqia.leaf.loader.api.Version;
 import dev.aoqia.leaf.loader.api.VersionParsingException;
 
 public final class VersionParser {
+	// parsed versions by input to avoid parsing the same strings over and over
+	private static final InternCache<String, Version> CACHE = new InternCache<>();
+	private static final InternCache<String, Version> X_CACHE = new InternCache<>(); // with storeX
+
 	public static Version parse(String s, boolean storeX) throws VersionParsingException {
 		if (s == null || s.isEmpty()) {
 			throw new VersionParsingException("Version must be a non-empty string!");
 		}
 
-		Version version;
+		InternCache<String, Version> cache = storeX ? X_CACHE : CACHE;
+		Version version = cache.get(s);
+		if (version != null) return version;
 
 		try {
 			version = new SemanticVersionImpl(s, storeX);
@@ -34,7 +40,7 @@ public final class VersionParser {
 			version = new StringVersion(s);
 		}
 
-		return version;
+		return cache.intern(s, version);
 	}
 
 	public static SemanticVersion parseSemantic(String s) throws VersionParsingException {
@@ -42,6 +48,12 @@ public final class VersionParser {
 			throw new VersionParsingException("Version must be a non-empty string!");
 		}
 
-		return new SemanticVersionImpl(s, false);
+		Version version = CACHE.get(s);
+		if (version instanceof SemanticVersion) return (SemanticVersion) version;
+
+		SemanticVersion ret = new SemanticVersionImpl(s, false);
+		version = CACHE.intern(s, ret);
+
+		return version instanceof SemanticVersion ? (SemanticVersion) version : ret;
 	}
 }
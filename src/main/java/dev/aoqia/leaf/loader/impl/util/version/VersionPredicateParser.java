@@ -34,8 +34,17 @@ import dev.aoqia.leaf.loader.api.metadata.version.VersionPredicate.PredicateTerm
 
 public final class VersionPredicateParser {
 	private static final VersionComparisonOperator[] OPERATORS = VersionComparisonOperator.values();
+	// parsed predicates by input, shared between all mods using the same string
+	private static final InternCache<String, VersionPredicate> CACHE = new InternCache<>();
 
 	public static VersionPredicate parse(String predicate) throws VersionParsingException {
+		VersionPredicate ret = CACHE.get(predicate);
+		if (ret != null) return ret;
+
+		return CACHE.intern(predicate, parse0(predicate));
+	}
+
+	private static VersionPredicate parse0(String predicate) throws VersionParsingException {
 		List<SingleVersionPredicate> predicateList = new ArrayList<>();
 
 		for (String s : predicate.split(" ")) {
@@ -205,15 +214,23 @@ public final class VersionPredicateParser {
 
 	static class MultiVersionPredicate implements VersionPredicate {
 		private final List<SingleVersionPredicate> predicates;
+		private final boolean semantic;
+		private final VersionInterval interval; // intersection of all terms, only used if semantic
 
 		MultiVersionPredicate(List<SingleVersionPredicate> predicates) {
 			this.predicates = predicates;
+			this.semantic = VersionRangeMatcher.isSemantic(this);
+			this.interval = semantic ? getInterval() : null;
 		}
 
 		@Override
 		public boolean test(Version version) {
 			Objects.requireNonNull(version, "null version");
 
+			if (semantic && version instanceof SemanticVersion) {
+				return VersionRangeMatcher.contains(interval, (SemanticVersion) version);
+			}
+
 			for (SingleVersionPredicate predicate : predicates) {
 				if (!predicate.test(version)) return false;
 			}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util.version;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import dev.aoqia.leaf.loader.api.SemanticVersion;
+import dev.aoqia.leaf.loader.api.Version;
+import dev.aoqia.leaf.loader.api.metadata.version.VersionInterval;
+import dev.aoqia.leaf.loader.api.metadata.version.VersionPredicate;
+import dev.aoqia.leaf.loader.api.metadata.version.VersionPredicate.PredicateTerm;
+
+/**
+ * A set of alternative version predicates compiled into sorted, disjoint version intervals.
+ *
+ * <p>Semantic versions are matched with a binary search over the intervals instead of testing every predicate term.
+ * Predicates with non-semantic reference versions, and non-semantic versions, use the predicates' own test since
+ * their matching isn't expressible as intervals.
+ */
+public final class VersionRangeMatcher {
+	// compiled matchers by predicate set, many mods declare the same dependency ranges
+	private static final InternCache<Set<VersionPredicate>, VersionRangeMatcher> CACHE = new InternCache<>();
+
+	private final Collection<VersionPredicate> predicates;
+	private final VersionInterval[] intervals; // null if not all predicates are semantic
+
+	private VersionRangeMatcher(Collection<VersionPredicate> predicates, VersionInterval[] intervals) {
+		this.predicates = predicates;
+		this.intervals = intervals;
+	}
+
+	/**
+	 * Get the matcher accepting versions that satisfy any of the supplied predicates.
+	 */
+	public static VersionRangeMatcher compile(Collection<VersionPredicate> predicates) {
+		VersionRangeMatcher ret = CACHE.get(predicates);
+		if (ret != null) return ret;
+
+		Set<VersionPredicate> key = Collections.unmodifiableSet(new HashSet<>(predicates));
+
+		return CACHE.intern(key, new VersionRangeMatcher(key, compileIntervals(key)));
+	}
+
+	private static VersionInterval[] compileIntervals(Collection<VersionPredicate> predicates) {
+		List<VersionInterval> ret = Collections.emptyList();
+
+		for (VersionPredicate predicate : predicates) {
+			if (!isSemantic(predicate)) return null;
+
+			ret = VersionIntervalImpl.or(ret, predicate.getInterval());
+		}
+
+		return ret.toArray(new VersionInterval[0]);
+	}
+
+	static boolean isSemantic(VersionPredicate predicate) {
+		for (PredicateTerm term : predicate.getTerms()) {
+			if (!(term.getReferenceVersion() instanceof SemanticVersion)) return false;
+		}
+
+		return true;
+	}
+
+	public boolean test(Version version) {
+		if (intervals == null || !(version instanceof SemanticVersion)) {
+			for (VersionPredicate predicate : predicates) {
+				if (predicate.test(version)) return true;
+			}
+
+			return false;
+		}
+
+		SemanticVersion semVer = (SemanticVersion) version;
+
+		// find the last interval whose lower bound is satisfied, the intervals are sorted and disjoint
+		int low = 0;
+		int high = intervals.length - 1;
+		int found = -1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+
+			if (isAboveMin(intervals[mid], semVer)) {
+				found = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return found >= 0 && isBelowMax(intervals[found], semVer);
+	}
+
+	/**
+	 * Check whether a semantic version lies within a semantic interval.
+	 *
+	 * @param interval interval to check, null for the empty interval
+	 */
+	static boolean contains(VersionInterval interval, SemanticVersion version) {
+		return interval != null && isAboveMin(interval, version) && isBelowMax(interval, version);
+	}
+
+	private static boolean isAboveMin(VersionInterval interval, SemanticVersion version) {
+		Version min = interval.getMin();
+		if (min == null) return true;
+
+		int cmp = version.compareTo(min);
+
+		return cmp > 0 || cmp == 0 && interval.isMinInclusive();
+	}
+
+	private static boolean isBelowMax(VersionInterval interval, SemanticVersion version) {
+		Version max = interval.getMax();
+		if (max == null) return true;
+
+		int cmp = version.compareTo(max);
+
+		return cmp < 0 || cmp == 0 && interval.isMaxInclusive();
+	}
+}
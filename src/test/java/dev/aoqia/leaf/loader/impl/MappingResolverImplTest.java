@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.aoqia.leaf.loader.impl.util.mappings.MappingIndex;
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.tree.MappingTree;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+
+public class MappingResolverImplTest {
+	private static final String KEY = "test";
+
+	@TempDir
+	Path tempDir;
+
+	/*
+	 * Test that a written and re-read index answers every lookup like the tree it was created from
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		MemoryMappingTree tree = createTree();
+		Path file = tempDir.resolve("mappings.idx");
+		MappingIndex.create(tree, KEY).write(file);
+
+		Assertions.assertNull(MappingIndex.open(file, "other"));
+
+		MappingIndex index = MappingIndex.open(file, KEY);
+		Assertions.assertNotNull(index);
+		Assertions.assertEquals(tree.getClasses().size(), index.getClassCount());
+
+		List<String> namespaces = new ArrayList<>();
+		namespaces.add(tree.getSrcNamespace());
+		namespaces.addAll(tree.getDstNamespaces());
+		Assertions.assertEquals(namespaces, index.getNamespaces());
+
+		for (String target : namespaces) {
+			MappingResolverImpl resolver = new MappingResolverImpl(index, target);
+			int targetId = tree.getNamespaceId(target);
+
+			for (String namespace : namespaces) {
+				int nsId = tree.getNamespaceId(namespace);
+
+				for (String name : getNames(tree, nsId, null)) {
+					String dotted = name.replace('/', '.');
+
+					Assertions.assertEquals(tree.mapClassName(name, nsId, targetId).replace('/', '.'), resolver.mapClassName(namespace, dotted), name);
+					Assertions.assertEquals(tree.mapClassName(name, targetId, nsId).replace('/', '.'), resolver.unmapClassName(namespace, dotted), name);
+				}
+
+				for (MappingTree.ClassMapping cls : tree.getClasses()) {
+					String owner = cls.getName(nsId);
+					if (owner == null) continue;
+
+					for (MappingTree.FieldMapping field : cls.getFields()) {
+						for (String desc : Arrays.asList(field.getDesc(nsId), null, "Lmissing;")) {
+							for (String name : getNames(tree, nsId, field)) {
+								MappingTree.FieldMapping expected = tree.getField(owner, name, desc, nsId);
+
+								Assertions.assertEquals(expected == null ? name : expected.getName(targetId),
+										resolver.mapFieldName(namespace, owner.replace('/', '.'), name, desc), owner + "." + name + desc);
+							}
+						}
+					}
+
+					for (MappingTree.MethodMapping method : cls.getMethods()) {
+						for (String desc : Arrays.asList(method.getDesc(nsId), null, "()Lmissing;")) {
+							for (String name : getNames(tree, nsId, method)) {
+								MappingTree.MethodMapping expected = tree.getMethod(owner, name, desc, nsId);
+
+								Assertions.assertEquals(expected == null ? name : expected.getName(targetId),
+										resolver.mapMethodName(namespace, owner.replace('/', '.'), name, desc), owner + "." + name + desc);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collect the names of all classes or all members of the same kind as the supplied one, plus an unknown name.
+	 */
+	private static Set<String> getNames(MappingTree tree, int nsId, /* @Nullable */ MappingTree.MemberMapping kind) {
+		Set<String> ret = new LinkedHashSet<>();
+
+		for (MappingTree.ClassMapping cls : tree.getClasses()) {
+			if (kind == null) {
+				if (cls.getName(nsId) != null) ret.add(cls.getName(nsId));
+			} else {
+				for (MappingTree.MemberMapping member : kind instanceof MappingTree.FieldMapping ? cls.getFields() : cls.getMethods()) {
+					if (member.getName(nsId) != null) ret.add(member.getName(nsId));
+				}
+			}
+		}
+
+		ret.add("missing");
+
+		return ret;
+	}
+
+	/**
+	 * Create mappings with colliding name hashes ("Aa" and "BB") and a class and members lacking some names.
+	 */
+	private static MemoryMappingTree createTree() throws IOException {
+		MemoryMappingTree tree = new MemoryMappingTree();
+
+		if (tree.visitHeader()) {
+			tree.visitNamespaces("official", Arrays.asList("intermediary", "named"));
+		}
+
+		if (tree.visitContent()) {
+			visitClass(tree, "Aa", "net/minecraft/class_1", "zombie/Alpha");
+			visitField(tree, "Aa", "I", "field_1", "alpha");
+			visitField(tree, "BB", "I", "field_2", "beta");
+			visitMethod(tree, "Aa", "()V", "method_1", "run");
+			visitMethod(tree, "BB", "(LAa;)LBB;", "method_2", "convert");
+
+			visitClass(tree, "BB", "net/minecraft/class_2", "zombie/Beta");
+			visitField(tree, "Aa", "LAa;", "field_3", "owner");
+			visitMethod(tree, "Aa", "(I)V", "method_4", "set");
+
+			visitClass(tree, "c", null, "zombie/Gamma");
+			visitField(tree, "a", "J", "field_5", null);
+			visitMethod(tree, "b", "()LBB;", null, "get");
+		}
+
+		tree.visitEnd();
+
+		return tree;
+	}
+
+	private static void visitClass(MemoryMappingTree tree, String name, String intermediary, String named) throws IOException {
+		tree.visitClass(name);
+		visitDstNames(tree, MappedElementKind.CLASS, intermediary, named);
+	}
+
+	private static void visitField(MemoryMappingTree tree, String name, String desc, String intermediary, String named) throws IOException {
+		tree.visitField(name, desc);
+		visitDstNames(tree, MappedElementKind.FIELD, intermediary, named);
+	}
+
+	private static void visitMethod(MemoryMappingTree tree, String name, String desc, String intermediary, String named) throws IOException {
+		tree.visitMethod(name, desc);
+		visitDstNames(tree, MappedElementKind.METHOD, intermediary, named);
+	}
+
+	private static void visitDstNames(MemoryMappingTree tree, MappedElementKind kind, String intermediary, String named) throws IOException {
+		if (intermediary != null) tree.visitDstName(kind, 0, intermediary);
+		if (named != null) tree.visitDstName(kind, 1, named);
+		tree.visitElementContent(kind);
+	}
+}
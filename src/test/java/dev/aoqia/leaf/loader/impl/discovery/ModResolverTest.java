@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.discovery;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import dev.aoqia.leaf.loader.api.Version;
+import dev.aoqia.leaf.loader.api.metadata.ModDependency;
+import dev.aoqia.leaf.loader.impl.metadata.AbstractModMetadata;
+import dev.aoqia.leaf.loader.impl.metadata.LoaderModMetadata;
+import dev.aoqia.leaf.loader.impl.metadata.ModDependencyImpl;
+import dev.aoqia.leaf.loader.impl.util.SystemProperties;
+
+public class ModResolverTest {
+	/*
+	 * Test that optional deps and greedy nested mods are resolved the same with and without reduction
+	 */
+	@Test
+	public void testReductionOptional() throws Exception {
+		assertSameResult(() -> {
+			ModCandidateImpl a = root("a", "1.0.0", dep(ModDependency.Kind.DEPENDS, "b", "*"), dep(ModDependency.Kind.RECOMMENDS, "c", ">=2"));
+			ModCandidateImpl b = root("b", "1.0.0", dep(ModDependency.Kind.SUGGESTS, "d", "*"));
+			ModCandidateImpl c = root("c", "1.0.0");
+			ModCandidateImpl opt = nested(a, "opt", "1.0.0", dep(ModDependency.Kind.DEPENDS, "missing", "*"));
+			ModCandidateImpl extra = nested(b, "extra", "1.0.0");
+
+			return Arrays.asList(a, b, c, opt, extra);
+		}, true);
+	}
+
+	/*
+	 * Test that nested mods with competing versions are resolved the same with and without reduction
+	 */
+	@Test
+	public void testReductionNested() throws Exception {
+		assertSameResult(() -> {
+			ModCandidateImpl a = root("a", "1.0.0");
+			ModCandidateImpl b = root("b", "1.0.0");
+			ModCandidateImpl c = root("c", "1.0.0", dep(ModDependency.Kind.DEPENDS, "lib", ">=1.1.0"), dep(ModDependency.Kind.DEPENDS, "a", "*"));
+			ModCandidateImpl libA = nested(a, "lib", "1.0.0");
+			ModCandidateImpl libB = nested(b, "lib", "1.1.0");
+			ModCandidateImpl deep = nested(libB, "deep", "1.0.0");
+			ModCandidateImpl orphan = nested(deep, "orphan", "1.0.0", dep(ModDependency.Kind.DEPENDS, "lib", "<1.1.0"));
+
+			return Arrays.asList(a, b, c, libA, libB, deep, orphan);
+		}, true);
+	}
+
+	/*
+	 * Test that solvable conflicts are resolved the same with and without reduction
+	 */
+	@Test
+	public void testReductionConflicting() throws Exception {
+		assertSameResult(() -> {
+			ModCandidateImpl a = root("a", "1.0.0", dep(ModDependency.Kind.BREAKS, "b", "<2.0.0"));
+			ModCandidateImpl b = root("b", "1.0.0");
+			ModCandidateImpl c = root("c", "1.0.0", dep(ModDependency.Kind.CONFLICTS, "d", "*"));
+			ModCandidateImpl b2 = nested(c, "b", "2.0.0");
+			ModCandidateImpl d = nested(a, "d", "1.0.0");
+
+			return Arrays.asList(a, b, c, b2, d);
+		}, true);
+	}
+
+	/*
+	 * Test that unsatisfiable conflicts fail the same with and without reduction
+	 */
+	@Test
+	public void testReductionUnsatisfiable() throws Exception {
+		assertSameResult(() -> {
+			ModCandidateImpl a = root("a", "1.0.0", dep(ModDependency.Kind.BREAKS, "b", "*"));
+			ModCandidateImpl b = root("b", "1.0.0");
+			ModCandidateImpl c = root("c", "1.0.0", dep(ModDependency.Kind.DEPENDS, "missing", "*"));
+
+			return Arrays.asList(a, b, c);
+		}, false);
+	}
+
+	/*
+	 * Test that the concurrent failure analysis explains an unsatisfiable set like the serial one
+	 */
+	@Test
+	public void testFailureAnalysisMatchesSerial() throws Exception {
+		Scenario scenario = () -> {
+			ModCandidateImpl a = root("a", "1.0.0", dep(ModDependency.Kind.BREAKS, "b", "*"));
+			ModCandidateImpl b = root("b", "1.0.0");
+			ModCandidateImpl c = root("c", "1.0.0", dep(ModDependency.Kind.DEPENDS, "lib", ">=2.0.0"), dep(ModDependency.Kind.DEPENDS, "missing", "*"));
+			ModCandidateImpl lib = root("lib", "1.0.0");
+			ModCandidateImpl d = root("d", "1.0.0");
+			ModCandidateImpl nestedLib = nested(d, "lib", "1.5.0");
+
+			return Arrays.asList(a, b, c, lib, d, nestedLib);
+		};
+
+		Outcome parallel = solve(scenario.create(), false);
+		Outcome serial;
+
+		System.setProperty(SystemProperties.DEBUG_SERIAL_RESOLUTION_ANALYSIS, "true");
+
+		try {
+			serial = solve(scenario.create(), false);
+		} finally {
+			System.clearProperty(SystemProperties.DEBUG_SERIAL_RESOLUTION_ANALYSIS);
+		}
+
+		Assertions.assertFalse(parallel.success);
+		Assertions.assertFalse(serial.success);
+		Assertions.assertFalse(serial.result.immediateReason.isEmpty());
+		Assertions.assertNotNull(serial.result.fix);
+		Assertions.assertEquals(describe(serial.result.immediateReason), describe(parallel.result.immediateReason));
+		Assertions.assertEquals(describe(serial.result.reason), describe(parallel.result.reason));
+		Assertions.assertNotNull(parallel.result.fix);
+		Assertions.assertEquals(describe(serial.result.fix.modsToAdd), describe(parallel.result.fix.modsToAdd));
+		Assertions.assertEquals(describe(serial.result.fix.modsToRemove), describe(parallel.result.fix.modsToRemove));
+		Assertions.assertEquals(describe(serial.result.fix.modReplacements.entrySet()), describe(parallel.result.fix.modReplacements.entrySet()));
+	}
+
+	private static Collection<String> describe(Collection<?> objects) {
+		Collection<String> ret = new TreeSet<>();
+
+		for (Object obj : objects) {
+			ret.add(obj.toString());
+		}
+
+		return ret;
+	}
+
+	private static void assertSameResult(Scenario scenario, boolean expectSuccess) throws Exception {
+		Outcome reduced = solve(scenario.create(), true);
+		Outcome full = solve(scenario.create(), false);
+
+		Assertions.assertEquals(expectSuccess, full.success);
+		Assertions.assertEquals(full.success, reduced.success);
+		Assertions.assertEquals(full.selected, reduced.selected);
+	}
+
+	/**
+	 * Solve like {@link ModResolver} does, without builtin mods and the resolution cache.
+	 */
+	static Outcome solve(Collection<ModCandidateImpl> candidates, boolean reduce) throws Exception {
+		List<ModCandidateImpl> allModsSorted = new ArrayList<>(candidates);
+		Map<String, List<ModCandidateImpl>> modsById = new LinkedHashMap<>();
+		ModPrioSorter.sort(allModsSorted, modsById);
+
+		Map<String, ModCandidateImpl> selectedMods = new HashMap<>();
+		List<ModCandidateImpl> uniqueSelectedMods = new ArrayList<>();
+		ModSolver.Result result = ModSolver.solve(allModsSorted, modsById, selectedMods, uniqueSelectedMods, reduce);
+
+		return new Outcome(result, uniqueSelectedMods);
+	}
+
+	static ModCandidateImpl root(String id, String version, ModDependency... deps) throws Exception {
+		return ModCandidateImpl.createPlain(Collections.singletonList(Paths.get(id + "-" + version + ".jar")),
+				metadata(id, version, deps), false, new ArrayList<>());
+	}
+
+	static ModCandidateImpl nested(ModCandidateImpl parent, String id, String version, ModDependency... deps) throws Exception {
+		String localPath = "META-INF/jars/" + id + "-" + version + ".jar";
+		ModCandidateImpl ret = ModCandidateImpl.createNested(localPath, localPath.hashCode(), metadata(id, version, deps), false, new ArrayList<>());
+		parent.getNestedMods().add(ret);
+		ret.addParent(parent);
+
+		return ret;
+	}
+
+	static ModDependency dep(ModDependency.Kind kind, String id, String predicate) {
+		try {
+			return new ModDependencyImpl(kind, id, Collections.singletonList(predicate));
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static LoaderModMetadata metadata(String id, String version, ModDependency... deps) throws Exception {
+		LoaderModMetadata ret = mock();
+		when(ret.getId()).thenReturn(id);
+		when(ret.getVersion()).thenReturn(Version.parse(version));
+		when(ret.getType()).thenReturn(AbstractModMetadata.TYPE_LEAF_MOD);
+		when(ret.getSchemaVersion()).thenReturn(1);
+		when(ret.getProvides()).thenReturn(Collections.emptyList());
+		when(ret.getDependencies()).thenReturn(Arrays.asList(deps));
+
+		return ret;
+	}
+
+	interface Scenario {
+		List<ModCandidateImpl> create() throws Exception;
+	}
+
+	static final class Outcome {
+		final ModSolver.Result result;
+		final boolean success;
+		final Collection<String> selected = new TreeSet<>();
+
+		Outcome(ModSolver.Result result, List<ModCandidateImpl> uniqueSelectedMods) {
+			this.result = result;
+			this.success = result.success;
+
+			for (ModCandidateImpl mod : uniqueSelectedMods) {
+				selected.add(mod.getId() + "@" + mod.getVersion().getFriendlyString() + " " + mod.getLocalPath());
+			}
+		}
+	}
+}
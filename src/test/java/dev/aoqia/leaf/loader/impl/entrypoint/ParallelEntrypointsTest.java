@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.entrypoint;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import dev.aoqia.leaf.loader.api.ModContainer;
+import dev.aoqia.leaf.loader.api.VersionParsingException;
+import dev.aoqia.leaf.loader.api.entrypoint.EntrypointContainer;
+import dev.aoqia.leaf.loader.api.metadata.ModDependency;
+import dev.aoqia.leaf.loader.api.metadata.ModMetadata;
+import dev.aoqia.leaf.loader.impl.launch.LeafLauncher;
+import dev.aoqia.leaf.loader.impl.launch.LeafLauncherBase;
+import dev.aoqia.leaf.loader.impl.metadata.ModDependencyImpl;
+
+public class ParallelEntrypointsTest {
+	private final Map<String, ModContainer> mods = new HashMap<>();
+	private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+	@BeforeEach
+	public void setUp() {
+		LeafLauncher launcher = mock();
+		when(launcher.getTargetClassLoader()).thenReturn(getClass().getClassLoader());
+		LeafLauncherBase.setLauncher(launcher);
+	}
+
+	/*
+	 * Test that an entrypoint is only constructed after the entrypoint of the mod it depends on got invoked, with
+	 * the first stage left empty by a dependency without entrypoints
+	 */
+	@Test
+	public void testDependencyInvokedBeforeConstruction() throws VersionParsingException {
+		mod("lib");
+		EntrypointContainer<Runnable> dependency = container(mod("dependency", "lib"));
+		EntrypointContainer<Runnable> dependent = container(mod("dependent", "dependency"));
+
+		List<EntrypointContainer<Runnable>> containers = ParallelEntrypoints.create("main", Arrays.asList(dependent, dependency), mods::get);
+
+		Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			for (EntrypointContainer<Runnable> container : containers) {
+				try {
+					container.getEntrypoint().run();
+				} finally {
+					ParallelEntrypoints.markInvoked(container);
+				}
+			}
+		});
+
+		Assertions.assertEquals(Arrays.asList("construct dependency", "invoke dependency", "construct dependent", "invoke dependent"), events);
+	}
+
+	private ModContainer mod(String id, String... deps) throws VersionParsingException {
+		List<ModDependency> dependencies = new ArrayList<>();
+
+		for (String dep : deps) {
+			dependencies.add(new ModDependencyImpl(ModDependency.Kind.DEPENDS, dep, Collections.singletonList("*")));
+		}
+
+		ModMetadata metadata = mock();
+		when(metadata.getId()).thenReturn(id);
+		when(metadata.getDependencies()).thenReturn(dependencies);
+
+		ModContainer ret = mock();
+		when(ret.getMetadata()).thenReturn(metadata);
+		mods.put(id, ret);
+
+		return ret;
+	}
+
+	private EntrypointContainer<Runnable> container(ModContainer mod) {
+		String id = mod.getMetadata().getId();
+
+		return new EntrypointContainer<Runnable>() {
+			@Override
+			public Runnable getEntrypoint() {
+				events.add("construct " + id);
+
+				return () -> events.add("invoke " + id);
+			}
+
+			@Override
+			public ModContainer getProvider() {
+				return mod;
+			}
+		};
+	}
+}
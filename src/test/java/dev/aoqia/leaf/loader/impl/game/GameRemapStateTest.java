@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.game;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class GameRemapStateTest {
+	private Map<String, GameRemapState.ClassState> previous;
+	private Map<String, GameRemapState.ClassState> current;
+
+	/*
+	 * Set up identical previous and current states: b extends a, c references a, e references b, d stands alone
+	 */
+	@BeforeEach
+	public void setUp() {
+		previous = new HashMap<>();
+		current = new HashMap<>();
+
+		for (Map<String, GameRemapState.ClassState> classes : Arrays.asList(previous, current)) {
+			String outputName = classes == previous ? "" : null;
+
+			put(classes, "a", "a1", "am1", outputName, "java/lang/Object");
+			put(classes, "b", "b1", "bm1", outputName, "a", "a");
+			put(classes, "c", "c1", "cm1", outputName, "java/lang/Object", "a");
+			put(classes, "d", "d1", "dm1", outputName, "java/lang/Object");
+			put(classes, "e", "e1", "em1", outputName, "java/lang/Object", "b");
+		}
+	}
+
+	@Test
+	public void testUnchanged() {
+		assertDirty();
+	}
+
+	@Test
+	public void testChangedContent() {
+		put(current, "d", "d2", "dm1", null, "java/lang/Object");
+
+		assertDirty("d");
+	}
+
+	@Test
+	public void testChangedMapping() {
+		put(current, "d", "d1", "dm2", null, "java/lang/Object");
+
+		assertDirty("d");
+	}
+
+	/*
+	 * Test that e gets remapped as its reference b inherits from the changed a
+	 */
+	@Test
+	public void testSubclassPropagation() {
+		put(current, "a", "a1", "am2", null, "java/lang/Object");
+
+		assertDirty("a", "b", "c", "e");
+	}
+
+	/*
+	 * Test that classes referencing a changed class through their constant pool get remapped, but not transitively
+	 */
+	@Test
+	public void testReferencePropagation() {
+		put(previous, "f", "f1", "fm1", "", "java/lang/Object", "d");
+		put(current, "f", "f1", "fm1", null, "java/lang/Object", "d");
+		put(previous, "g", "g1", "gm1", "", "java/lang/Object", "f");
+		put(current, "g", "g1", "gm1", null, "java/lang/Object", "f");
+		put(current, "d", "d2", "dm1", null, "java/lang/Object");
+
+		assertDirty("d", "f");
+	}
+
+	@Test
+	public void testAddedClass() {
+		put(current, "h", "h1", "hm1", null, "d");
+		put(previous, "i", "i1", "im1", "", "java/lang/Object", "h");
+		put(current, "i", "i1", "im1", null, "java/lang/Object", "h");
+
+		assertDirty("h", "i");
+	}
+
+	/*
+	 * Test that classes still referencing a removed class get remapped, including through its subclasses
+	 */
+	@Test
+	public void testRemovedClass() {
+		current.remove("a");
+
+		assertDirty("b", "c", "e");
+	}
+
+	@Test
+	public void testMissingOutputName() {
+		put(previous, "d", "d1", "dm1", null, "java/lang/Object");
+
+		assertDirty("d");
+	}
+
+	private void assertDirty(String... expected) {
+		GameRemapState currentState = new GameRemapState("official", "named", current);
+		GameRemapState previousState = new GameRemapState("official", "named", previous);
+
+		Set<String> dirty = GameRemapState.getDirtyClasses(Collections.singletonList(currentState), Collections.singletonList(previousState));
+
+		Assertions.assertEquals(new HashSet<>(Arrays.asList(expected)), dirty);
+	}
+
+	/**
+	 * Record a class, outputName is "" to use the class name and null for classes that weren't remapped yet.
+	 */
+	private static void put(Map<String, GameRemapState.ClassState> classes, String name, String content, String mapping, String outputName,
+			String superName, String... references) {
+		classes.put(name, new GameRemapState.ClassState(hash(content), hash(mapping),
+				outputName != null && outputName.isEmpty() ? name : outputName,
+				superName, new String[0], new HashSet<>(Arrays.asList(references))));
+	}
+
+	private static byte[] hash(String s) {
+		return Arrays.copyOf(s.getBytes(StandardCharsets.UTF_8), 16);
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.transformer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import dev.aoqia.leaf.api.EnvType;
+import dev.aoqia.leaf.api.Environment;
+import dev.aoqia.leaf.api.EnvironmentInterface;
+import dev.aoqia.leaf.api.EnvironmentInterfaces;
+
+public class EnvironmentStrippingDataTest {
+	/*
+	 * Test that the constant pool prefilter accepts exactly the classes a full scan finds environment annotations in
+	 */
+	@Test
+	public void testPrefilterMatchesScan() throws IOException {
+		assertPrefilter(Plain.class, false);
+		assertPrefilter(OtherAnnotations.class, false);
+		assertPrefilter(Constants.class, false);
+		assertPrefilter(AnnotatedClass.class, true);
+		assertPrefilter(AnnotatedField.class, true);
+		assertPrefilter(AnnotatedMethod.class, true);
+		assertPrefilter(AnnotatedInterface.class, true);
+		assertPrefilter(AnnotatedInterfaces.class, true);
+		assertPrefilter(ExplicitAnnotatedInterfaces.class, true);
+		assertPrefilter(AnnotatedConstants.class, true);
+	}
+
+	private static void assertPrefilter(Class<?> cls, boolean expected) throws IOException {
+		ClassReader reader = read(cls);
+		boolean scanned = false;
+
+		for (EnvType envType : EnvType.values()) {
+			EnvironmentStrippingData data = new EnvironmentStrippingData(Opcodes.ASM9, envType.name());
+			reader.accept(data, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+
+			// every annotation mismatches one of the environments
+			if (data.stripEntireClass() || !data.isEmpty()) scanned = true;
+		}
+
+		Assertions.assertEquals(expected, scanned, cls.getName());
+		Assertions.assertEquals(scanned, EnvironmentStrippingData.hasEnvironmentAnnotations(reader), cls.getName());
+	}
+
+	private static ClassReader read(Class<?> cls) throws IOException {
+		try (InputStream is = cls.getResourceAsStream("/" + cls.getName().replace('.', '/') + ".class")) {
+			return new ClassReader(is);
+		}
+	}
+
+	static class Plain implements Runnable {
+		String value = "Ldev/aoqia/leaf/api/Env";
+
+		@Override
+		public void run() { }
+	}
+
+	@Deprecated
+	static class OtherAnnotations {
+		@SuppressWarnings("unused")
+		private int value;
+	}
+
+	static class Constants {
+		static final long LONG = 0x123456789ABCDEFL;
+		static final double DOUBLE = 1.5e300;
+		long value = LONG + 1;
+		double otherValue = DOUBLE / 3;
+	}
+
+	@Environment(EnvType.CLIENT)
+	static class AnnotatedClass { }
+
+	static class AnnotatedField {
+		@Environment(EnvType.SERVER)
+		int value;
+	}
+
+	static class AnnotatedMethod {
+		@Environment(EnvType.CLIENT)
+		void run() { }
+	}
+
+	@EnvironmentInterface(value = EnvType.SERVER, itf = Runnable.class)
+	static class AnnotatedInterface implements Runnable {
+		@Override
+		public void run() { }
+	}
+
+	// repeated annotations get wrapped in @EnvironmentInterfaces by javac
+	@EnvironmentInterface(value = EnvType.CLIENT, itf = Runnable.class)
+	@EnvironmentInterface(value = EnvType.SERVER, itf = AutoCloseable.class)
+	static class AnnotatedInterfaces implements Runnable, AutoCloseable {
+		@Override
+		public void run() { }
+
+		@Override
+		public void close() { }
+	}
+
+	@EnvironmentInterfaces({
+			@EnvironmentInterface(value = EnvType.SERVER, itf = Runnable.class)
+	})
+	static class ExplicitAnnotatedInterfaces implements Runnable {
+		@Override
+		public void run() { }
+	}
+
+	// the annotation descriptor follows the long and double entries, which take two constant pool slots each
+	static class AnnotatedConstants {
+		static final long LONG = 0x123456789ABCDEFL;
+		static final double DOUBLE = 1.5e300;
+		long value = LONG + 1;
+		double otherValue = DOUBLE / 3;
+
+		@Environment(EnvType.CLIENT)
+		void run() { }
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedZipFileTest {
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void readStoredAndDeflated() throws IOException {
+		byte[] stored = "stored content".getBytes(StandardCharsets.UTF_8);
+		byte[] deflated = new byte[100_000];
+
+		for (int i = 0; i < deflated.length; i++) {
+			deflated[i] = (byte) (i % 7);
+		}
+
+		Path jar = tempDir.resolve("test.jar");
+
+		try (OutputStream os = Files.newOutputStream(jar);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			zos.putNextEntry(new ZipEntry("pkg/"));
+			zos.closeEntry();
+
+			ZipEntry storedEntry = new ZipEntry("pkg/Stored.class");
+			CRC32 crc = new CRC32();
+			crc.update(stored);
+			storedEntry.setMethod(ZipEntry.STORED);
+			storedEntry.setSize(stored.length);
+			storedEntry.setCrc(crc.getValue());
+			zos.putNextEntry(storedEntry);
+			zos.write(stored);
+			zos.closeEntry();
+
+			zos.putNextEntry(new ZipEntry("pkg/sub/Deflated.class"));
+			zos.write(deflated);
+			zos.closeEntry();
+		}
+
+		MappedZipFile zip = MappedZipFile.open(jar);
+
+		Assertions.assertEquals(2, zip.getEntryNames().size());
+		Assertions.assertTrue(zip.contains("pkg/Stored.class"));
+		Assertions.assertFalse(zip.contains("pkg/"));
+		Assertions.assertArrayEquals(stored, zip.read("pkg/Stored.class"));
+		Assertions.assertArrayEquals(deflated, zip.read("pkg/sub/Deflated.class"));
+		Assertions.assertNull(zip.read("pkg/Missing.class"));
+	}
+
+	@Test
+	public void openStoredNestedJar() throws IOException {
+		byte[] content = "nested content".getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream nested = new ByteArrayOutputStream();
+
+		try (ZipOutputStream zos = new ZipOutputStream(nested)) {
+			zos.putNextEntry(new ZipEntry("Nested.class"));
+			zos.write(content);
+			zos.closeEntry();
+		}
+
+		byte[] nestedJar = nested.toByteArray();
+		Path jar = tempDir.resolve("outer.jar");
+
+		try (OutputStream os = Files.newOutputStream(jar);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			ZipEntry entry = new ZipEntry("META-INF/jars/nested.jar");
+			CRC32 crc = new CRC32();
+			crc.update(nestedJar);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(nestedJar.length);
+			entry.setCrc(crc.getValue());
+			zos.putNextEntry(entry);
+			zos.write(nestedJar);
+			zos.closeEntry();
+		}
+
+		MappedZipFile outer = MappedZipFile.open(jar);
+		MappedZipFile.Entry entry = outer.getEntry("META-INF/jars/nested.jar");
+
+		Assertions.assertTrue(entry.isStored());
+		Assertions.assertEquals(nestedJar.length, entry.getSize());
+
+		MappedZipFile inner = MappedZipFile.open(outer.getStoredData(entry), entry.getName());
+		MappedZipFile.Entry innerEntry = inner.getEntry("Nested.class");
+
+		Assertions.assertFalse(innerEntry.isStored());
+		Assertions.assertArrayEquals(content, inner.read("Nested.class"));
+
+		try (InputStream is = inner.getInputStream(innerEntry)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4];
+			int len;
+
+			while ((len = is.read(buffer)) >= 0) {
+				out.write(buffer, 0, len);
+			}
+
+			Assertions.assertArrayEquals(content, out.toByteArray());
+		}
+	}
+
+	@Test
+	public void closeReleasesFile() throws IOException {
+		byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+		Path jar = tempDir.resolve("closed.jar");
+
+		try (OutputStream os = Files.newOutputStream(jar);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			zos.putNextEntry(new ZipEntry("Closed.class"));
+			zos.write(content);
+			zos.closeEntry();
+		}
+
+		MappedZipFile zip = MappedZipFile.open(jar);
+		Assertions.assertArrayEquals(content, zip.read("Closed.class"));
+
+		zip.close();
+		zip.close();
+
+		Assertions.assertThrows(IllegalStateException.class, () -> zip.read("Closed.class"));
+		Assertions.assertTrue(zip.contains("Closed.class"));
+
+		// fails on Windows while the file is still mapped
+		Files.delete(jar);
+		Assertions.assertFalse(Files.exists(jar));
+	}
+}
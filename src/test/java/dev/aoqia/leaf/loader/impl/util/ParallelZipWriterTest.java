@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ParallelZipWriterTest {
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void writeReadableByJdkAndMapped() throws IOException {
+		Path jar = tempDir.resolve("test.jar");
+		Map<String, byte[]> expected = new HashMap<>();
+		Random random = new Random(42);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try (ParallelZipWriter writer = new ParallelZipWriter(jar, executor)) {
+			for (int i = 0; i < 2000; i++) {
+				byte[] data = new byte[random.nextInt(4000)];
+
+				if (i % 2 == 0) { // incompressible, ends up stored
+					random.nextBytes(data);
+				} else {
+					for (int j = 0; j < data.length; j++) data[j] = (byte) (j % 7);
+				}
+
+				String name = "pkg/sub" + (i % 5) + "/File" + i + (i % 4 == 0 ? ".txt" : ".class");
+				expected.put(name, data);
+				writer.write(name, data);
+			}
+
+			Assertions.assertEquals(1500, writer.getClassCount());
+			Assertions.assertThrows(ZipException.class, () -> writer.write("pkg/sub1/File1.class", new byte[0]));
+		} finally {
+			executor.shutdown();
+		}
+
+		MappedZipFile zip = MappedZipFile.open(jar);
+		Assertions.assertEquals(expected.size(), zip.getEntryNames().size());
+
+		for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+			Assertions.assertArrayEquals(e.getValue(), zip.read(e.getKey()), e.getKey());
+		}
+
+		try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+			Assertions.assertTrue(zipFile.getEntry("pkg/sub3/").isDirectory());
+
+			ZipEntry entry = zipFile.getEntry("pkg/sub1/File1.class");
+			byte[] data = new byte[(int) entry.getSize()];
+
+			try (InputStream is = zipFile.getInputStream(entry)) {
+				int len = 0;
+
+				while (len < data.length) {
+					len += is.read(data, len, data.length - len);
+				}
+			}
+
+			Assertions.assertArrayEquals(expected.get(entry.getName()), data);
+		}
+	}
+
+	@Test
+	public void writeReproducible() throws IOException {
+		Random random = new Random(42);
+		List<String> names = new ArrayList<>();
+		Map<String, byte[]> data = new HashMap<>();
+
+		for (int i = 0; i < 500; i++) {
+			String name = "pkg/sub" + (i % 3) + "/File" + i + ".class";
+			byte[] content = new byte[random.nextInt(2000)];
+
+			for (int j = 0; j < content.length; j++) content[j] = (byte) (j % (i % 11 + 1));
+
+			names.add(name);
+			data.put(name, content);
+		}
+
+		Path first = tempDir.resolve("first.jar");
+		Path second = tempDir.resolve("second.jar");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			try (ParallelZipWriter writer = new ParallelZipWriter(first, executor)) {
+				for (String name : names) writer.write(name, data.get(name));
+			}
+
+			Collections.shuffle(names, random);
+
+			try (ParallelZipWriter writer = new ParallelZipWriter(second, executor)) {
+				for (String name : names) writer.write(name, data.get(name));
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		Assertions.assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.aoqia.leaf.loader.impl.util.log;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import dev.aoqia.leaf.loader.impl.util.SystemProperties;
+
+public class AsyncLogHandlerTest {
+	private static final int CAPACITY = 8192;
+	private static final String DROPPED_PREFIX = "Dropped ";
+	private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+	private final RecordingHandler delegate = new RecordingHandler();
+	private AsyncLogHandler handler;
+
+	@AfterEach
+	public void tearDown() {
+		delegate.release.countDown();
+		if (handler != null) handler.close();
+		System.clearProperty(SystemProperties.LOG_ASYNC_OVERFLOW);
+	}
+
+	/*
+	 * Test that messages from concurrent producers are delivered completely and in each producer's order
+	 */
+	@Test
+	public void testOrderAcrossProducers() throws InterruptedException {
+		handler = new AsyncLogHandler(delegate);
+		int producers = 8;
+		int count = 5000;
+		List<Thread> threads = new ArrayList<>();
+
+		for (int p = 0; p < producers; p++) {
+			String prefix = p + ":";
+
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < count; i++) {
+					log(LogLevel.INFO, prefix + i);
+				}
+			}));
+		}
+
+		for (Thread thread : threads) thread.start();
+		for (Thread thread : threads) thread.join();
+
+		handler.close();
+
+		List<String> messages = delegate.getMessages();
+		int[] next = new int[producers];
+
+		for (String msg : messages) {
+			int pos = msg.indexOf(':');
+			int producer = Integer.parseInt(msg.substring(0, pos));
+
+			Assertions.assertEquals(next[producer]++, Integer.parseInt(msg.substring(pos + 1)), msg);
+		}
+
+		Assertions.assertEquals(producers * count, messages.size());
+	}
+
+	/*
+	 * Test that the drop policy drops messages only while the buffer is full and reports them once, but never errors
+	 */
+	@Test
+	public void testDropCountsDroppedMessages() throws InterruptedException {
+		System.setProperty(SystemProperties.LOG_ASYNC_OVERFLOW, "drop");
+		handler = new AsyncLogHandler(delegate);
+		int extra = 100;
+
+		blockWriter();
+
+		for (int i = 0; i < CAPACITY + extra; i++) {
+			log(LogLevel.INFO, Integer.toString(i));
+		}
+
+		delegate.release.countDown();
+		log(LogLevel.ERROR, "after");
+		handler.close();
+
+		List<String> messages = delegate.getMessages();
+		List<String> reports = new ArrayList<>();
+		int next = 0;
+
+		for (String msg : messages) {
+			if (msg.startsWith(DROPPED_PREFIX)) {
+				reports.add(msg);
+			} else if (!msg.equals("block") && !msg.equals("after")) {
+				Assertions.assertEquals(next++, Integer.parseInt(msg), msg);
+			}
+		}
+
+		Assertions.assertEquals(CAPACITY, next);
+		Assertions.assertEquals(1, reports.size(), reports.toString());
+		Assertions.assertTrue(reports.get(0).startsWith(DROPPED_PREFIX + extra + " "), reports.get(0));
+		Assertions.assertEquals("after", messages.get(messages.size() - 1));
+	}
+
+	/*
+	 * Test that the block policy waits for free space instead of losing messages
+	 */
+	@Test
+	public void testBlockNeverLosesMessages() throws InterruptedException {
+		System.setProperty(SystemProperties.LOG_ASYNC_OVERFLOW, "block");
+		handler = new AsyncLogHandler(delegate);
+		int count = CAPACITY * 2;
+
+		blockWriter();
+
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < count; i++) {
+				log(LogLevel.INFO, Integer.toString(i));
+			}
+		});
+		producer.start();
+		producer.join(200);
+
+		Assertions.assertTrue(producer.isAlive(), "producer didn't block on the full buffer");
+
+		delegate.release.countDown();
+		producer.join();
+		handler.close();
+
+		List<String> messages = delegate.getMessages();
+
+		Assertions.assertEquals(count + 1, messages.size());
+
+		for (int i = 0; i < count; i++) {
+			Assertions.assertEquals(Integer.toString(i), messages.get(i + 1));
+		}
+	}
+
+	/*
+	 * Test that an error is delivered before the logging call returns, after the messages queued before it
+	 */
+	@Test
+	public void testErrorWaitsForDelivery() {
+		handler = new AsyncLogHandler(delegate);
+		delegate.delayMs = 1;
+
+		for (int i = 0; i < 100; i++) {
+			log(LogLevel.INFO, Integer.toString(i));
+		}
+
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> log(LogLevel.ERROR, "error"));
+
+		List<String> messages = delegate.getMessages();
+
+		Assertions.assertEquals(101, messages.size());
+		Assertions.assertEquals("error", messages.get(100));
+	}
+
+	/*
+	 * Test that messages logged by the delegate on the writer thread are delivered directly instead of deadlocking
+	 */
+	@Test
+	public void testDelegateLoggingOnWriterThread() {
+		handler = new AsyncLogHandler(delegate);
+		delegate.nested = true;
+
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			log(LogLevel.INFO, "outer");
+			log(LogLevel.ERROR, "error");
+		});
+
+		List<String> messages = delegate.getMessages();
+
+		Assertions.assertEquals(Arrays.asList("outer", "nested outer", "error", "nested error"), messages);
+	}
+
+	/*
+	 * Test that a failing delegate doesn't stop the writer, so later messages still arrive and errors still return
+	 */
+	@Test
+	public void testDelegateFailure() {
+		handler = new AsyncLogHandler(delegate);
+
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			log(LogLevel.INFO, "fail");
+
+			for (int i = 0; i < CAPACITY * 2; i++) {
+				log(LogLevel.INFO, Integer.toString(i));
+			}
+
+			log(LogLevel.ERROR, "error");
+		});
+
+		List<String> messages = delegate.getMessages();
+
+		Assertions.assertEquals(CAPACITY * 2 + 2, messages.size());
+		Assertions.assertEquals("error", messages.get(messages.size() - 1));
+	}
+
+	/*
+	 * Test that closing delivers all pending messages before closing the delegate
+	 */
+	@Test
+	public void testCloseFlushesPendingMessages() {
+		handler = new AsyncLogHandler(delegate);
+		int count = 1000;
+
+		blockWriter();
+
+		for (int i = 0; i < count; i++) {
+			log(LogLevel.INFO, Integer.toString(i));
+		}
+
+		delegate.release.countDown();
+		handler.close();
+
+		List<String> messages = delegate.getMessages();
+
+		Assertions.assertTrue(delegate.closed);
+		Assertions.assertEquals(count + 1, messages.size());
+		Assertions.assertEquals(Integer.toString(count - 1), messages.get(count));
+	}
+
+	private void log(LogLevel level, String msg) {
+		handler.log(System.currentTimeMillis(), level, LogCategory.TEST, msg, null, false, false);
+	}
+
+	/**
+	 * Make the writer thread wait in the delegate until {@link RecordingHandler#release} counts down, leaving the
+	 * whole buffer to the producers.
+	 */
+	private void blockWriter() {
+		log(LogLevel.INFO, "block");
+
+		try {
+			Assertions.assertTrue(delegate.blocked.await(TIMEOUT.getSeconds(), TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private final class RecordingHandler implements LogHandler {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		private final List<String> messages = new ArrayList<>();
+		volatile long delayMs;
+		volatile boolean nested;
+		volatile boolean closed;
+
+		@Override
+		public void log(long time, LogLevel level, LogCategory category, String msg, Throwable exc, boolean fromReplay, boolean wasSuppressed) {
+			synchronized (messages) {
+				messages.add(msg);
+			}
+
+			try {
+				if (msg.equals("block")) {
+					blocked.countDown();
+					release.await();
+				} else if (delayMs > 0) {
+					Thread.sleep(delayMs);
+				}
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+
+			if (msg.equals("fail")) {
+				throw new IllegalStateException("test failure");
+			}
+
+			if (nested && !msg.startsWith("nested ")) {
+				AsyncLogHandlerTest.this.log(level, "nested " + msg);
+			}
+		}
+
+		@Override
+		public boolean shouldLog(LogLevel level, LogCategory category) {
+			return true;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+		List<String> getMessages() {
+			synchronized (messages) {
+				return new ArrayList<>(messages);
+			}
+		}
+	}
+}
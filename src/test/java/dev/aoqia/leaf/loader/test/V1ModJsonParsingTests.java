@@ -16,7 +16,9 @@
 package dev.aoqia.leaf.loader.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -26,6 +28,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
@@ -34,11 +37,14 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import dev.aoqia.leaf.api.EnvType;
 import dev.aoqia.leaf.loader.api.SemanticVersion;
 import dev.aoqia.leaf.loader.api.metadata.CustomValue;
+import dev.aoqia.leaf.loader.api.metadata.ModEnvironment;
 import dev.aoqia.leaf.loader.impl.metadata.DependencyOverrides;
 import dev.aoqia.leaf.loader.impl.metadata.LoaderModMetadata;
 import dev.aoqia.leaf.loader.impl.metadata.ModMetadataParser;
+import dev.aoqia.leaf.loader.impl.metadata.ModMetadataSnapshot;
 import dev.aoqia.leaf.loader.impl.metadata.ParseMetadataException;
 import dev.aoqia.leaf.loader.impl.metadata.VersionOverrides;
 
@@ -123,6 +129,28 @@ final class V1ModJsonParsingTests {
 
 		final CustomValue.CvObject eightAsObject = eight.getAsObject();
 		assertEquals(2, eightAsObject.size(), "Custom value \"eight\" was expected to have 2 values in object but found " + eightAsObject.size());
+		// Missing and null keys
+		assertNull(customValues.get("nine"));
+		assertNull(customValues.get(null));
+		assertFalse(customValues.containsKey(null));
+	}
+
+	@Test
+	@DisplayName("Schema version after other fields")
+	public void schemaVersionLast() throws IOException, ParseMetadataException {
+		final LoaderModMetadata metadata = parseMetadata(specPath.resolve("schema_version_last.json"));
+		validateRequiredValues(metadata);
+
+		assertEquals(ModEnvironment.CLIENT, metadata.getEnvironment());
+		assertEquals(1, metadata.getDependencies().size());
+
+		final Map<String, CustomValue> customValues = metadata.getCustomValues();
+		assertEquals(2, customValues.size());
+		assertEquals(CustomValue.CvType.BOOLEAN, customValues.get("zero").getType());
+
+		final CustomValue.CvArray two = customValues.get("one").getAsObject().get("two").getAsArray();
+		assertEquals(3, two.get(0).getAsNumber().intValue());
+		assertEquals("four", two.get(1).getAsString());
 	}
 
 	@Test
@@ -187,6 +215,42 @@ final class V1ModJsonParsingTests {
 		validateIconPath(metadata, 512, 256);
 	}
 
+	@Test
+	@DisplayName("Metadata snapshot round trip")
+	public void snapshotRoundTrip() throws IOException, ParseMetadataException {
+		for (String file : new String[] { "long.json", "custom_values.json", "icon_sizes.json", "no_icon.json" }) {
+			final LoaderModMetadata metadata = parseMetadata(specPath.resolve(file));
+			final LoaderModMetadata restored = ModMetadataSnapshot.read(ModMetadataSnapshot.write(metadata));
+
+			assertEquals(metadata.getId(), restored.getId(), file);
+			assertEquals(metadata.getVersion(), restored.getVersion(), file);
+			assertEquals(new ArrayList<>(metadata.getProvides()), new ArrayList<>(restored.getProvides()), file);
+			assertEquals(metadata.getEnvironment(), restored.getEnvironment(), file);
+			assertEquals(metadata.getClassTweaker(), restored.getClassTweaker(), file);
+			assertEquals(new ArrayList<>(metadata.getDependencies()), new ArrayList<>(restored.getDependencies()), file);
+			assertEquals(metadata.getEntrypointKeys(), restored.getEntrypointKeys(), file);
+			assertEquals(metadata.getMixinConfigs(EnvType.CLIENT), restored.getMixinConfigs(EnvType.CLIENT), file);
+			assertEquals(metadata.getMixinConfigs(EnvType.SERVER), restored.getMixinConfigs(EnvType.SERVER), file);
+			assertEquals(metadata.getJars().size(), restored.getJars().size(), file);
+			assertEquals(metadata.getName(), restored.getName(), file);
+			assertEquals(new ArrayList<>(metadata.getContact().asMap().entrySet()), new ArrayList<>(restored.getContact().asMap().entrySet()), file);
+			assertEquals(metadata.getIconPath(64), restored.getIconPath(64), file);
+			assertEquals(metadata.getCustomValues().keySet(), restored.getCustomValues().keySet(), file);
+
+			for (String key : metadata.getEntrypointKeys()) {
+				assertEquals(metadata.getEntrypoints(key).size(), restored.getEntrypoints(key).size(), file);
+			}
+		}
+	}
+
+	@Test
+	public void verifyCorruptSnapshotFails() throws IOException, ParseMetadataException {
+		final byte[] snapshot = ModMetadataSnapshot.write(parseMetadata(specPath.resolve("long.json")));
+		snapshot[snapshot.length / 2] ^= 1;
+
+		assertThrows(IOException.class, () -> ModMetadataSnapshot.read(snapshot), "Corrupt snapshot was not detected");
+	}
+
 	private void validateIconPath(LoaderModMetadata metadata, int preferredSize, int expectedSize) {
 		Optional<String> expected = Optional.of("assets/testing/icon-" + expectedSize + ".png");
 		Optional<String> actual = metadata.getIconPath(preferredSize);
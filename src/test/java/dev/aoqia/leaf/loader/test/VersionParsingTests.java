@@ -15,14 +15,19 @@
  */
 package dev.aoqia.leaf.loader.test;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.function.Predicate;
 
 import org.jetbrains.annotations.Nullable;
 
 import dev.aoqia.leaf.loader.api.Version;
 import dev.aoqia.leaf.loader.api.VersionParsingException;
+import dev.aoqia.leaf.loader.api.metadata.version.VersionPredicate;
 import dev.aoqia.leaf.loader.impl.util.version.SemanticVersionImpl;
+import dev.aoqia.leaf.loader.impl.util.version.VersionParser;
 import dev.aoqia.leaf.loader.impl.util.version.VersionPredicateParser;
+import dev.aoqia.leaf.loader.impl.util.version.VersionRangeMatcher;
 
 public class VersionParsingTests {
 	private static Exception tryParseSemantic(String s, boolean storeX) {
@@ -92,6 +97,20 @@ public class VersionParsingTests {
 		testTrue(tryParseSemantic("1.0.0+20130313144700", false));
 		testTrue(tryParseSemantic("1.0.0-beta+exp.sha.5114f85", false));
 
+		// Test: equality and ordering across different component counts and large components.
+		{
+			SemanticVersionImpl a = new SemanticVersionImpl("1.2", false);
+			SemanticVersionImpl b = new SemanticVersionImpl("1.2.0.0", false);
+			testTrue(a.equals(b));
+			testTrue(a.hashCode() == b.hashCode());
+			testTrue(a.compareTo(b) == 0);
+			testTrue(new SemanticVersionImpl("1.70000", false).compareTo(new SemanticVersionImpl("1.65535.1", false)) > 0);
+			testTrue(new SemanticVersionImpl("1.2.3.4.5", false).compareTo(new SemanticVersionImpl("1.2.3.4", false)) > 0);
+			testTrue(new SemanticVersionImpl("1.0.0-beta.11", false).compareTo(new SemanticVersionImpl("1.0.0-beta.2", false)) > 0);
+			testTrue(new SemanticVersionImpl("1.0.0-beta", false).compareTo(new SemanticVersionImpl("1.0.0-beta.1", false)) < 0);
+			testTrue(Version.parse("1.2.3") == Version.parse("1.2.3"));
+		}
+
 		// Test: comparator range with pre-releases.
 		{
 			Predicate<Version> predicate = VersionPredicateParser.parse(">=0.3.1-beta.2 <0.4.0");
@@ -317,5 +336,47 @@ public class VersionParsingTests {
 			testFalse(predicate.test(new SemanticVersionImpl("2.0.0", false)));
 			testFalse(predicate.test(new SemanticVersionImpl("2.0.0-beta.2", false)));
 		}
+
+		// Alternative predicates compiled into intervals
+
+		{
+			Predicate<Version> predicate = VersionRangeMatcher.compile(VersionPredicateParser.parse(Arrays.asList("<1.2", ">=1.4 <1.6-", "~2.1-", "abc")))::test;
+			testTrue(predicate.test(new SemanticVersionImpl("1.1.9", false)));
+			testTrue(predicate.test(new SemanticVersionImpl("1.4", false)));
+			testTrue(predicate.test(new SemanticVersionImpl("1.5.9-rc.1", false)));
+			testTrue(predicate.test(new SemanticVersionImpl("2.1.0-beta", false)));
+			testTrue(predicate.test(new SemanticVersionImpl("2.1.7", false)));
+			testTrue(predicate.test(VersionParser.parse("abc", false)));
+			testFalse(predicate.test(new SemanticVersionImpl("1.2", false)));
+			testFalse(predicate.test(new SemanticVersionImpl("1.3.5", false)));
+			testFalse(predicate.test(new SemanticVersionImpl("1.4.0-beta", false)));
+			testFalse(predicate.test(new SemanticVersionImpl("1.6-", false)));
+			testFalse(predicate.test(new SemanticVersionImpl("2.2.0-alpha", false)));
+			testFalse(predicate.test(VersionParser.parse("abd", false)));
+			testTrue(VersionPredicateParser.parse(">=1.4 <1.6-") == VersionPredicateParser.parse(">=1.4 <1.6-"));
+		}
+
+		// Semantic predicates only, matched through the interval search
+
+		{
+			Collection<VersionPredicate> predicates = VersionPredicateParser.parse(Arrays.asList("<1.2", ">=1.4 <1.6-", "~2.1-"));
+			Predicate<Version> predicate = VersionRangeMatcher.compile(predicates)::test;
+			Predicate<Version> reference = v -> predicates.stream().anyMatch(p -> p.test(v));
+
+			String[] matching = { "0.0.1", "1.1.9", "1.2-alpha", "1.4", "1.4.0", "1.5.9-rc.1", "1.5.99", "2.1-", "2.1.0-alpha", "2.1.0", "2.1.99" };
+			String[] notMatching = { "1.2", "1.2.0", "1.3.9", "1.4-", "1.4.0-beta", "1.6-", "1.6.0-alpha", "1.6", "2.0.9", "2.2-", "2.2.0-alpha", "2.2.0", "3.0.0" };
+
+			for (String s : matching) {
+				Version version = new SemanticVersionImpl(s, false);
+				testTrue(predicate.test(version));
+				testTrue(reference.test(version));
+			}
+
+			for (String s : notMatching) {
+				Version version = new SemanticVersionImpl(s, false);
+				testFalse(predicate.test(version));
+				testFalse(reference.test(version));
+			}
+		}
 	}
 }
@@ -15,6 +15,9 @@
  */
 package dev.aoqia.leaf.loader.impl.game.zomboid;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -23,7 +26,17 @@ import dev.aoqia.leaf.loader.impl.util.log.LogCategory;
 import dev.aoqia.leaf.loader.impl.util.log.LogHandler;
 import dev.aoqia.leaf.loader.impl.util.log.LogLevel;
 
+/**
+ * A log handler to use the built-in game logging system before B42.
+ *
+ * <p>The game methods are bound to method handles once when the class initializes. Whether a level is
+ * enabled is queried from the game on every call, as the game may change its log severity at any time.
+ */
 public final class LegacyZomboidLogHandler implements LogHandler {
+    private static final MethodType LOG_TYPE = MethodType.methodType(void.class, String.class);
+    private static final MethodType LOG_EXCEPTION_TYPE = MethodType.methodType(void.class, Throwable.class,
+        String.class);
+
     private static final Class<?> DEBUG_TYPE;
     private static final Object DEBUG_TYPE_Leaf;
     private static final Class<?> LOG_SEVERITY;
@@ -34,18 +47,24 @@ public final class LegacyZomboidLogHandler implements LogHandler {
     private static final Object LOG_SEVERITY_Error;
     private static final Class<?> DEBUG_LOG;
     private static final Method DEBUG_LOG_createDebugLogStream;
-    private static final Method DEBUG_LOG_isLogEnabled;
+    private static final MethodHandle DEBUG_LOG_isLogEnabled;
     private static final Class<?> DEBUG_LOG_STREAM;
-    private static final Method DEBUG_LOG_STREAM_trace;
-    private static final Method DEBUG_LOG_STREAM_debugln;
-    private static final Method DEBUG_LOG_STREAM_println;
-    private static final Method DEBUG_LOG_STREAM_warn;
-    private static final Method DEBUG_LOG_STREAM_error;
-    private static final Method DEBUG_LOG_STREAM_printException;
+    private static final MethodHandle DEBUG_LOG_STREAM_trace;
+    private static final MethodHandle DEBUG_LOG_STREAM_debugln;
+    private static final MethodHandle DEBUG_LOG_STREAM_println;
+    private static final MethodHandle DEBUG_LOG_STREAM_warn;
+    private static final MethodHandle DEBUG_LOG_STREAM_error;
+    private static final MethodHandle DEBUG_LOG_STREAM_printException_Trace;
+    private static final MethodHandle DEBUG_LOG_STREAM_printException_Debug;
+    private static final MethodHandle DEBUG_LOG_STREAM_printException_General;
+    private static final MethodHandle DEBUG_LOG_STREAM_printException_Warning;
+    private static final MethodHandle DEBUG_LOG_STREAM_printException_Error;
     private static final Object LOGGER;
 
     static {
         try {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
             LOG_SEVERITY = Class.forName("zombie.debug.LogSeverity");
             final Method logSeverityValueOf = LOG_SEVERITY.getMethod("valueOf", String.class);
             LOG_SEVERITY_Trace = logSeverityValueOf.invoke(null, "Trace");
@@ -57,31 +76,49 @@ public final class LegacyZomboidLogHandler implements LogHandler {
             DEBUG_TYPE = Class.forName("zombie.debug.DebugType");
             DEBUG_TYPE_Leaf = DEBUG_TYPE.getMethod("valueOf", String.class).invoke(null, "Leaf");
 
-            DEBUG_LOG_STREAM = Class.forName("zombie.debug.DebugLogStream");
-            DEBUG_LOG_STREAM_trace = DEBUG_LOG_STREAM.getMethod("trace", String.class);
-            DEBUG_LOG_STREAM_debugln = DEBUG_LOG_STREAM.getMethod("debugln", String.class);
-            DEBUG_LOG_STREAM_println = DEBUG_LOG_STREAM.getMethod("println", String.class);
-            DEBUG_LOG_STREAM_warn = DEBUG_LOG_STREAM.getMethod("warn", Object.class);
-            DEBUG_LOG_STREAM_error = DEBUG_LOG_STREAM.getMethod("error", Object.class);
-            DEBUG_LOG_STREAM_printException = DEBUG_LOG_STREAM.getMethod("printException",
-                Throwable.class, String.class, LOG_SEVERITY);
-
             DEBUG_LOG = Class.forName("zombie.debug.DebugLog");
             DEBUG_LOG_createDebugLogStream = DEBUG_LOG.getDeclaredMethod("createDebugLogStream",
                 DEBUG_TYPE);
-            DEBUG_LOG_isLogEnabled = DEBUG_LOG.getMethod("isLogEnabled", LOG_SEVERITY, DEBUG_TYPE);
+            DEBUG_LOG_isLogEnabled = MethodHandles.insertArguments(
+                    lookup.unreflect(DEBUG_LOG.getMethod("isLogEnabled", LOG_SEVERITY, DEBUG_TYPE)),
+                    1, DEBUG_TYPE_Leaf)
+                .asType(MethodType.methodType(boolean.class, Object.class));
 
             DEBUG_LOG_createDebugLogStream.setAccessible(true);
             LOGGER = DEBUG_LOG_createDebugLogStream.invoke(null, DEBUG_TYPE_Leaf);
             DEBUG_LOG.getMethod("enableLog", DEBUG_TYPE, LOG_SEVERITY)
                 .invoke(null, DEBUG_TYPE_Leaf, LOG_SEVERITY_Trace);
             DEBUG_LOG_createDebugLogStream.setAccessible(false);
+
+            DEBUG_LOG_STREAM = Class.forName("zombie.debug.DebugLogStream");
+            DEBUG_LOG_STREAM_trace = bindLog(lookup, DEBUG_LOG_STREAM.getMethod("trace", String.class));
+            DEBUG_LOG_STREAM_debugln = bindLog(lookup, DEBUG_LOG_STREAM.getMethod("debugln", String.class));
+            DEBUG_LOG_STREAM_println = bindLog(lookup, DEBUG_LOG_STREAM.getMethod("println", String.class));
+            DEBUG_LOG_STREAM_warn = bindLog(lookup, DEBUG_LOG_STREAM.getMethod("warn", Object.class));
+            DEBUG_LOG_STREAM_error = bindLog(lookup, DEBUG_LOG_STREAM.getMethod("error", Object.class));
+
+            final MethodHandle printException = lookup.unreflect(DEBUG_LOG_STREAM.getMethod("printException",
+                Throwable.class, String.class, LOG_SEVERITY)).bindTo(LOGGER);
+            DEBUG_LOG_STREAM_printException_Trace = bindLogException(printException, LOG_SEVERITY_Trace);
+            DEBUG_LOG_STREAM_printException_Debug = bindLogException(printException, LOG_SEVERITY_Debug);
+            DEBUG_LOG_STREAM_printException_General = bindLogException(printException, LOG_SEVERITY_General);
+            DEBUG_LOG_STREAM_printException_Warning = bindLogException(printException, LOG_SEVERITY_Warning);
+            DEBUG_LOG_STREAM_printException_Error = bindLogException(printException, LOG_SEVERITY_Error);
         } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException |
                  InvocationTargetException e) {
             throw new FormattedException("Failed to handle reflection for old log handler", e);
         }
     }
 
+    private static MethodHandle bindLog(MethodHandles.Lookup lookup, Method method)
+        throws IllegalAccessException {
+        return lookup.unreflect(method).bindTo(LOGGER).asType(LOG_TYPE);
+    }
+
+    private static MethodHandle bindLogException(MethodHandle printException, Object severity) {
+        return MethodHandles.insertArguments(printException, 2, severity).asType(LOG_EXCEPTION_TYPE);
+    }
+
     @Override
     public void log(long time, LogLevel level, LogCategory category, String msg, Throwable exc,
         boolean fromReplay, boolean wasSuppressed) {
@@ -101,53 +138,50 @@ public final class LegacyZomboidLogHandler implements LogHandler {
             switch (level) {
                 case ERROR:
                     if (exc == null) {
-                        DEBUG_LOG_STREAM_error.invoke(LOGGER, msg);
+                        DEBUG_LOG_STREAM_error.invokeExact(msg);
                     } else {
-                        DEBUG_LOG_STREAM_printException.invoke(LOGGER, exc, msg,
-                            LOG_SEVERITY_Error);
+                        DEBUG_LOG_STREAM_printException_Error.invokeExact(exc, msg);
                     }
 
                     break;
                 case WARN:
                     if (exc == null) {
-                        DEBUG_LOG_STREAM_warn.invoke(LOGGER, msg);
+                        DEBUG_LOG_STREAM_warn.invokeExact(msg);
                     } else {
-                        DEBUG_LOG_STREAM_printException.invoke(LOGGER, exc, msg,
-                            LOG_SEVERITY_Warning);
+                        DEBUG_LOG_STREAM_printException_Warning.invokeExact(exc, msg);
                     }
 
                     break;
                 case INFO:
                     if (exc == null) {
-                        DEBUG_LOG_STREAM_println.invoke(LOGGER, msg);
+                        DEBUG_LOG_STREAM_println.invokeExact(msg);
                     } else {
-                        DEBUG_LOG_STREAM_printException.invoke(LOGGER, exc, msg,
-                            LOG_SEVERITY_General);
+                        DEBUG_LOG_STREAM_printException_General.invokeExact(exc, msg);
                     }
 
                     break;
                 case DEBUG:
                     if (exc == null) {
-                        DEBUG_LOG_STREAM_debugln.invoke(LOGGER, msg);
+                        DEBUG_LOG_STREAM_debugln.invokeExact(msg);
                     } else {
-                        DEBUG_LOG_STREAM_printException.invoke(LOGGER, exc, msg,
-                            LOG_SEVERITY_Debug);
+                        DEBUG_LOG_STREAM_printException_Debug.invokeExact(exc, msg);
                     }
 
                     break;
                 case TRACE:
                     if (exc == null) {
-                        DEBUG_LOG_STREAM_trace.invoke(LOGGER, msg);
+                        DEBUG_LOG_STREAM_trace.invokeExact(msg);
                     } else {
-                        DEBUG_LOG_STREAM_printException.invoke(LOGGER, exc, msg,
-                            LOG_SEVERITY_Trace);
+                        DEBUG_LOG_STREAM_printException_Trace.invokeExact(exc, msg);
                     }
 
                     break;
                 default:
                     throw new IllegalArgumentException("Unknown level: " + level);
             }
-        } catch (IllegalAccessException | InvocationTargetException e) {
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Throwable e) {
             throw new FormattedException(
                 "Failed to invoke logging functions for log() in OldZomboidLogHandler!", e);
         }
@@ -159,29 +193,37 @@ public final class LegacyZomboidLogHandler implements LogHandler {
             return true;
         }
 
+        return isLogEnabled(level);
+    }
+
+    private static boolean isLogEnabled(LogLevel level) {
+        final Object severity;
+
+        switch (level) {
+            case ERROR:
+                severity = LOG_SEVERITY_Error;
+                break;
+            case WARN:
+                severity = LOG_SEVERITY_Warning;
+                break;
+            case INFO:
+                severity = LOG_SEVERITY_General;
+                break;
+            case DEBUG:
+                severity = LOG_SEVERITY_Debug;
+                break;
+            case TRACE:
+                severity = LOG_SEVERITY_Trace;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown level: " + level);
+        }
+
         try {
-            switch (level) {
-                case ERROR:
-                    return (boolean) DEBUG_LOG_isLogEnabled.invoke(null, LOG_SEVERITY_Error,
-                        DEBUG_TYPE_Leaf);
-                case WARN:
-                    return (boolean) DEBUG_LOG_isLogEnabled.invoke(null, LOG_SEVERITY_Warning,
-                        DEBUG_TYPE_Leaf);
-                case INFO:
-                    return (boolean) DEBUG_LOG_isLogEnabled.invoke(null, LOG_SEVERITY_General,
-                        DEBUG_TYPE_Leaf);
-                case DEBUG:
-                    return (boolean) DEBUG_LOG_isLogEnabled.invoke(null, LOG_SEVERITY_Debug,
-                        DEBUG_TYPE_Leaf);
-                case TRACE:
-                    return (boolean) DEBUG_LOG_isLogEnabled.invoke(null, LOG_SEVERITY_Trace,
-                        DEBUG_TYPE_Leaf);
-            }
-        } catch (IllegalAccessException | InvocationTargetException e) {
+            return (boolean) DEBUG_LOG_isLogEnabled.invokeExact(severity);
+        } catch (Throwable e) {
             throw new FormattedException("Failed to invoke isLogEnabled in shouldLog!", e);
         }
-
-        throw new IllegalArgumentException("Unknown level: " + level);
     }
 
     @Override
@@ -15,6 +15,9 @@
  */
 package dev.aoqia.leaf.loader.impl.game.zomboid;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -27,20 +30,31 @@ import dev.aoqia.leaf.loader.impl.util.log.LogLevel;
  * A log handler to use the built-in game logging system. This one is specifically for >=B42. If
  * something in a future unstable release breaks this class, it should be updated. This class should
  * be merged into {@link LegacyZomboidLogHandler} when unstable becomes stable.
+ *
+ * <p>The game methods are bound to method handles once when the class initializes. Whether a level is
+ * enabled is queried from the game on every call, as the game may change its log severity at any time.
  */
 public final class ZomboidLogHandler implements LogHandler {
+    private static final MethodType LOG_TYPE = MethodType.methodType(void.class, String.class);
+    private static final MethodType LOG_EXCEPTION_TYPE = MethodType.methodType(void.class, Throwable.class,
+        String.class);
+
     private static final Class<?> DEBUG_LOG;
     private static final Class<?> DEBUG_LOG_STREAM;
-    private static final Method DEBUG_LOG_STREAM_isLogEnabled;
+    private static final MethodHandle DEBUG_LOG_STREAM_isLogEnabled;
     private static final Class<?> DEBUG_TYPE;
     private static final Object DEBUG_TYPE_Leaf;
     private static final Object DEBUG_TYPE_Leaf_logStream;
-    private static final Method DEBUG_TYPE_trace;
-    private static final Method DEBUG_TYPE_debugln;
-    private static final Method DEBUG_TYPE_println;
-    private static final Method DEBUG_TYPE_warn;
-    private static final Method DEBUG_TYPE_error;
-    private static final Method DEBUG_TYPE_printException;
+    private static final MethodHandle DEBUG_TYPE_trace;
+    private static final MethodHandle DEBUG_TYPE_debugln;
+    private static final MethodHandle DEBUG_TYPE_println;
+    private static final MethodHandle DEBUG_TYPE_warn;
+    private static final MethodHandle DEBUG_TYPE_error;
+    private static final MethodHandle DEBUG_TYPE_printException_Trace;
+    private static final MethodHandle DEBUG_TYPE_printException_Debug;
+    private static final MethodHandle DEBUG_TYPE_printException_General;
+    private static final MethodHandle DEBUG_TYPE_printException_Warning;
+    private static final MethodHandle DEBUG_TYPE_printException_Error;
     private static final Class<?> LOG_SEVERITY;
     private static final Object LOG_SEVERITY_Trace;
     private static final Object LOG_SEVERITY_Debug;
@@ -50,6 +64,8 @@ public final class ZomboidLogHandler implements LogHandler {
 
     static {
         try {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
             LOG_SEVERITY = Class.forName("zombie.debug.LogSeverity");
             DEBUG_LOG = Class.forName("zombie.debug.DebugLog");
 
@@ -64,27 +80,44 @@ public final class ZomboidLogHandler implements LogHandler {
             DEBUG_TYPE_Leaf = DEBUG_TYPE.getMethod("valueOf", String.class).invoke(null, "Leaf");
             DEBUG_TYPE_Leaf_logStream = DEBUG_TYPE.getMethod("getLogStream")
                 .invoke(DEBUG_TYPE_Leaf);
-            DEBUG_TYPE_trace = DEBUG_TYPE.getMethod("trace", Object.class);
-            DEBUG_TYPE_debugln = DEBUG_TYPE.getMethod("debugln", Object.class);
-            DEBUG_TYPE_println = DEBUG_TYPE.getMethod("println", String.class);
-            DEBUG_TYPE_warn = DEBUG_TYPE.getMethod("warn", Object.class);
-            DEBUG_TYPE_error = DEBUG_TYPE.getMethod("error", Object.class);
-            DEBUG_TYPE_printException = DEBUG_TYPE.getMethod("printException", Throwable.class, String.class,
-                LOG_SEVERITY);
+            DEBUG_TYPE_trace = bindLog(lookup, DEBUG_TYPE.getMethod("trace", Object.class));
+            DEBUG_TYPE_debugln = bindLog(lookup, DEBUG_TYPE.getMethod("debugln", Object.class));
+            DEBUG_TYPE_println = bindLog(lookup, DEBUG_TYPE.getMethod("println", String.class));
+            DEBUG_TYPE_warn = bindLog(lookup, DEBUG_TYPE.getMethod("warn", Object.class));
+            DEBUG_TYPE_error = bindLog(lookup, DEBUG_TYPE.getMethod("error", Object.class));
+
+            final MethodHandle printException = lookup.unreflect(DEBUG_TYPE.getMethod("printException",
+                Throwable.class, String.class, LOG_SEVERITY)).bindTo(DEBUG_TYPE_Leaf);
+            DEBUG_TYPE_printException_Trace = bindLogException(printException, LOG_SEVERITY_Trace);
+            DEBUG_TYPE_printException_Debug = bindLogException(printException, LOG_SEVERITY_Debug);
+            DEBUG_TYPE_printException_General = bindLogException(printException, LOG_SEVERITY_General);
+            DEBUG_TYPE_printException_Warning = bindLogException(printException, LOG_SEVERITY_Warning);
+            DEBUG_TYPE_printException_Error = bindLogException(printException, LOG_SEVERITY_Error);
 
             // Set log stream as enabled just in case.
             DEBUG_TYPE.getMethod("setLogSeverity", LOG_SEVERITY).invoke(DEBUG_TYPE_Leaf, LOG_SEVERITY_Trace);
             DEBUG_LOG.getMethod("setLogEnabled", DEBUG_TYPE, boolean.class).invoke(null, DEBUG_TYPE_Leaf, true);
 
             DEBUG_LOG_STREAM = Class.forName("zombie.debug.DebugLogStream");
-            DEBUG_LOG_STREAM_isLogEnabled = DEBUG_LOG_STREAM.getMethod("isLogEnabled",
-                LOG_SEVERITY);
+            DEBUG_LOG_STREAM_isLogEnabled = lookup.unreflect(DEBUG_LOG_STREAM.getMethod("isLogEnabled",
+                    LOG_SEVERITY))
+                .bindTo(DEBUG_TYPE_Leaf_logStream)
+                .asType(MethodType.methodType(boolean.class, Object.class));
         } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException |
                  InvocationTargetException e) {
             throw new FormattedException("Failed to handle reflection for new log handler", e);
         }
     }
 
+    private static MethodHandle bindLog(MethodHandles.Lookup lookup, Method method)
+        throws IllegalAccessException {
+        return lookup.unreflect(method).bindTo(DEBUG_TYPE_Leaf).asType(LOG_TYPE);
+    }
+
+    private static MethodHandle bindLogException(MethodHandle printException, Object severity) {
+        return MethodHandles.insertArguments(printException, 2, severity).asType(LOG_EXCEPTION_TYPE);
+    }
+
     @Override
     public void log(long time, LogLevel level, LogCategory category, String msg, Throwable exc,
         boolean fromReplay, boolean wasSuppressed) {
@@ -104,53 +137,50 @@ public final class ZomboidLogHandler implements LogHandler {
             switch (level) {
                 case ERROR:
                     if (exc == null) {
-                        DEBUG_TYPE_error.invoke(DEBUG_TYPE_Leaf, msg);
+                        DEBUG_TYPE_error.invokeExact(msg);
                     } else {
-                        DEBUG_TYPE_printException.invoke(DEBUG_TYPE_Leaf, exc, msg,
-                            LOG_SEVERITY_Error);
+                        DEBUG_TYPE_printException_Error.invokeExact(exc, msg);
                     }
 
                     break;
                 case WARN:
                     if (exc == null) {
-                        DEBUG_TYPE_warn.invoke(DEBUG_TYPE_Leaf, msg);
+                        DEBUG_TYPE_warn.invokeExact(msg);
                     } else {
-                        DEBUG_TYPE_printException.invoke(DEBUG_TYPE_Leaf, exc, msg,
-                            LOG_SEVERITY_Warning);
+                        DEBUG_TYPE_printException_Warning.invokeExact(exc, msg);
                     }
 
                     break;
                 case INFO:
                     if (exc == null) {
-                        DEBUG_TYPE_println.invoke(DEBUG_TYPE_Leaf, msg);
+                        DEBUG_TYPE_println.invokeExact(msg);
                     } else {
-                        DEBUG_TYPE_printException.invoke(DEBUG_TYPE_Leaf, exc, msg,
-                            LOG_SEVERITY_General);
+                        DEBUG_TYPE_printException_General.invokeExact(exc, msg);
                     }
 
                     break;
                 case DEBUG:
                     if (exc == null) {
-                        DEBUG_TYPE_debugln.invoke(DEBUG_TYPE_Leaf, msg);
+                        DEBUG_TYPE_debugln.invokeExact(msg);
                     } else {
-                        DEBUG_TYPE_printException.invoke(DEBUG_TYPE_Leaf, exc, msg,
-                            LOG_SEVERITY_Debug);
+                        DEBUG_TYPE_printException_Debug.invokeExact(exc, msg);
                     }
 
                     break;
                 case TRACE:
                     if (exc == null) {
-                        DEBUG_TYPE_trace.invoke(DEBUG_TYPE_Leaf, msg);
+                        DEBUG_TYPE_trace.invokeExact(msg);
                     } else {
-                        DEBUG_TYPE_printException.invoke(DEBUG_TYPE_Leaf, exc, msg,
-                            LOG_SEVERITY_Trace);
+                        DEBUG_TYPE_printException_Trace.invokeExact(exc, msg);
                     }
 
                     break;
                 default:
                     throw new IllegalArgumentException("Unknown level: " + level);
             }
-        } catch (IllegalAccessException | InvocationTargetException e) {
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Throwable e) {
             throw new FormattedException(
                 "Failed to invoke logging functions for log() in NewZomboidLogHandler!", e);
         }
@@ -162,29 +192,37 @@ public final class ZomboidLogHandler implements LogHandler {
             return true;
         }
 
+        return isLogEnabled(level);
+    }
+
+    private static boolean isLogEnabled(LogLevel level) {
+        final Object severity;
+
+        switch (level) {
+            case ERROR:
+                severity = LOG_SEVERITY_Error;
+                break;
+            case WARN:
+                severity = LOG_SEVERITY_Warning;
+                break;
+            case INFO:
+                severity = LOG_SEVERITY_General;
+                break;
+            case DEBUG:
+                severity = LOG_SEVERITY_Debug;
+                break;
+            case TRACE:
+                severity = LOG_SEVERITY_Trace;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown level: " + level);
+        }
+
         try {
-            switch (level) {
-                case ERROR:
-                    return (boolean) DEBUG_LOG_STREAM_isLogEnabled.invoke(DEBUG_TYPE_Leaf_logStream,
-                        LOG_SEVERITY_Error);
-                case WARN:
-                    return (boolean) DEBUG_LOG_STREAM_isLogEnabled.invoke(DEBUG_TYPE_Leaf_logStream,
-                        LOG_SEVERITY_Warning);
-                case INFO:
-                    return (boolean) DEBUG_LOG_STREAM_isLogEnabled.invoke(DEBUG_TYPE_Leaf_logStream,
-                        LOG_SEVERITY_General);
-                case DEBUG:
-                    return (boolean) DEBUG_LOG_STREAM_isLogEnabled.invoke(DEBUG_TYPE_Leaf_logStream,
-                        LOG_SEVERITY_Debug);
-                case TRACE:
-                    return (boolean) DEBUG_LOG_STREAM_isLogEnabled.invoke(DEBUG_TYPE_Leaf_logStream,
-                        LOG_SEVERITY_Trace);
-            }
-        } catch (IllegalAccessException | InvocationTargetException e) {
+            return (boolean) DEBUG_LOG_STREAM_isLogEnabled.invokeExact(severity);
+        } catch (Throwable e) {
             throw new FormattedException("Failed to invoke isLogEnabled in shouldLog!", e);
         }
-
-        throw new IllegalArgumentException("Unknown level: " + level);
     }
 
     @Override